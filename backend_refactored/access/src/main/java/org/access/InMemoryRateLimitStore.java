@@ -0,0 +1,69 @@
+package org.access;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Keeps the state of the rate limiters in memory: the requests are limited per application instance.
+ * <p>
+ * The updates are conditional replacements of the map values: no lock. The keys whose arrival time has passed are dropped
+ * regularly (once per purge interval, by the update triggering the purge), so the map only holds the recently active keys.
+ */
+public class InMemoryRateLimitStore implements RateLimitStore {
+
+    public static final Duration DEFAULT_PURGE_INTERVAL = Duration.ofMinutes(1);
+
+    private final Clock clock;
+
+    private final long purgeIntervalMillis;
+
+    // key -> the theoretical arrival time of the key (epoch millis)
+    private final ConcurrentMap<String, Long> arrivalTimes = new ConcurrentHashMap<>();
+
+    private final AtomicLong nextPurge;
+
+    public InMemoryRateLimitStore() {
+        this(DEFAULT_PURGE_INTERVAL, Clock.systemUTC());
+    }
+
+    public InMemoryRateLimitStore(Duration purgeInterval, Clock clock) {
+        this.clock = clock;
+        this.purgeIntervalMillis = purgeInterval.toMillis();
+        this.nextPurge = new AtomicLong(clock.millis() + this.purgeIntervalMillis);
+    }
+
+    @Override
+    public long get(String key) {
+        Long arrivalTime = this.arrivalTimes.get(key);
+        return arrivalTime == null ? NO_STATE : arrivalTime;
+    }
+
+    @Override
+    public boolean compareAndSet(String key, long expected, long updated) {
+        this.purgeIfDue();
+
+        if (expected == NO_STATE) {
+            return this.arrivalTimes.putIfAbsent(key, updated) == null;
+        }
+        return this.arrivalTimes.replace(key, expected, updated);
+    }
+
+    private void purgeIfDue() {
+        long now = this.clock.millis();
+        long next = this.nextPurge.get();
+        // a single caller wins the purge
+        if (now < next || !this.nextPurge.compareAndSet(next, now + this.purgeIntervalMillis)) {
+            return;
+        }
+        // each removal only happens if the value has not changed in the meantime
+        this.arrivalTimes.entrySet().removeIf(entry -> entry.getValue() <= now);
+    }
+
+    public int size() {
+        return this.arrivalTimes.size();
+    }
+}
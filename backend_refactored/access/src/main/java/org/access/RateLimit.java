@@ -0,0 +1,17 @@
+package org.access;
+
+
+// the rate limit of a key (see RateLimiter): the sustained rate, and the burst (the number of requests accepted at once)
+public record RateLimit(int requestsPerMinute, int burst) {
+
+    public RateLimit {
+        if (requestsPerMinute < 1 || burst < 1) {
+            throw new IllegalArgumentException("The rate and the burst of a rate limit must be positive");
+        }
+    }
+
+    // the time between two requests at the sustained rate (the emission interval of the GCRA), in milliseconds
+    public long emissionIntervalMillis() {
+        return Math.max(1, 60_000L / this.requestsPerMinute);
+    }
+}
@@ -0,0 +1,21 @@
+package org.access;
+
+
+/**
+ * The state of the rate limiters (see {@link RateLimiter}): the theoretical arrival time (epoch millis) of each key.
+ * <p>
+ * An arrival time in the past is equivalent to no state at all: the stores may drop the keys once their arrival time has passed.
+ * The in-memory store ({@link InMemoryRateLimitStore}) limits the requests of each instance, a shared store limits the requests
+ * of all the instances together.
+ */
+public interface RateLimitStore {
+
+    // the value of a key without any state
+    long NO_STATE = 0;
+
+    // the arrival time of the key, or NO_STATE
+    long get(String key);
+
+    // sets the arrival time of the key if it is still the expected one (NO_STATE: the key has no state)
+    boolean compareAndSet(String key, long expected, long updated);
+}
@@ -0,0 +1,60 @@
+package org.access;
+
+import java.time.Clock;
+
+
+/**
+ * Limits the rate of the requests of each key (a user, a company) with the generic cell rate algorithm (GCRA): a token bucket
+ * whose whole state is a single timestamp, the theoretical arrival time (TAT) of the next request.
+ * <p>
+ * Every accepted request moves the TAT one emission interval forward (see {@link RateLimit}). A request is rejected when it comes
+ * more than burst emission intervals before the TAT: the caller is told when to retry. The TAT is read and written with a
+ * compare-and-set on the {@link RateLimitStore}: a failed update means another request of the key was accepted in the meantime,
+ * and the decision is taken again with the new state.
+ */
+public class RateLimiter {
+
+    // the outcome of a request: when it is rejected, the time to wait before a retry is accepted
+    public record Decision(boolean allowed, long retryAfterMillis) {
+
+        private static final Decision ALLOWED = new Decision(true, 0);
+
+        // the value of the Retry-After header (whole seconds, rounded up)
+        public long retryAfterSeconds() {
+            return (this.retryAfterMillis + 999) / 1000;
+        }
+    }
+
+    private final RateLimitStore store;
+
+    private final Clock clock;
+
+    public RateLimiter(RateLimitStore store) {
+        this(store, Clock.systemUTC());
+    }
+
+    public RateLimiter(RateLimitStore store, Clock clock) {
+        this.store = store;
+        this.clock = clock;
+    }
+
+    public Decision tryAcquire(String key, RateLimit limit) {
+        long interval = limit.emissionIntervalMillis();
+        long tolerance = interval * limit.burst();
+
+        while (true) {
+            long now = this.clock.millis();
+            long stored = this.store.get(key);
+
+            long arrivalTime = Math.max(stored, now) + interval;
+            long allowedAt = arrivalTime - tolerance;
+            if (now < allowedAt) {
+                return new Decision(false, allowedAt - now);
+            }
+
+            if (this.store.compareAndSet(key, stored, arrivalTime)) {
+                return Decision.ALLOWED;
+            }
+        }
+    }
+}
@@ -33,6 +33,11 @@ public interface Subscription {
 
     Integer getEncodingDailyLimit();
 
+    // the rate limits of the requests (see RateLimiter): per user, and per company (the requests of all its users)
+    RateLimit getUserRateLimit();
+
+    RateLimit getCompanyRateLimit();
+
     Integer getMinUrlLength();
 
     Integer getMinParameterLength();
@@ -87,6 +92,16 @@ class FreeTier implements Subscription {
         return 20;
     }
 
+    @Override
+    public RateLimit getUserRateLimit() {
+        return new RateLimit(30, 10);
+    }
+
+    @Override
+    public RateLimit getCompanyRateLimit() {
+        return new RateLimit(60, 20);
+    }
+
     @Override
     public Integer getMinUrlLength() {
         return 40;
@@ -150,6 +165,16 @@ class TierOne implements Subscription {
         return 100;
     }
 
+    @Override
+    public RateLimit getUserRateLimit() {
+        return new RateLimit(120, 30);
+    }
+
+    @Override
+    public RateLimit getCompanyRateLimit() {
+        return new RateLimit(600, 100);
+    }
+
     @Override
     public Integer getMinUrlLength() {
         return 25;
@@ -213,6 +238,16 @@ class TierInfinity implements Subscription {
         return null;
     }
 
+    @Override
+    public RateLimit getUserRateLimit() {
+        return new RateLimit(600, 100);
+    }
+
+    @Override
+    public RateLimit getCompanyRateLimit() {
+        return new RateLimit(6000, 1000);
+    }
+
     @Override
     public Integer getMinUrlLength() {
         return 0;
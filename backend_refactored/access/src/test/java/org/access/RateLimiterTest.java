@@ -0,0 +1,146 @@
+package org.access;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterTest {
+
+    // a clock moved forward by the tests
+    private static class MovingClock extends Clock {
+        private Instant instant = Instant.parse("2025-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            this.instant = this.instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return this.instant;
+        }
+    }
+
+    // one request per second, 5 at once
+    private static final RateLimit LIMIT = new RateLimit(60, 5);
+
+    private final MovingClock clock = new MovingClock();
+
+    private final InMemoryRateLimitStore store = new InMemoryRateLimitStore(Duration.ofMinutes(1), clock);
+
+    private final RateLimiter limiter = new RateLimiter(store, clock);
+
+    @Test
+    void testBurstThenSustainedRate() {
+        for (int i = 0; i < LIMIT.burst(); i++) {
+            assertTrue(limiter.tryAcquire("user", LIMIT).allowed());
+        }
+
+        RateLimiter.Decision rejected = limiter.tryAcquire("user", LIMIT);
+        assertFalse(rejected.allowed());
+        assertEquals(1000, rejected.retryAfterMillis());
+        assertEquals(1, rejected.retryAfterSeconds());
+
+        // one more request per emission interval
+        clock.advance(Duration.ofMillis(500));
+        assertFalse(limiter.tryAcquire("user", LIMIT).allowed());
+        clock.advance(Duration.ofMillis(500));
+        assertTrue(limiter.tryAcquire("user", LIMIT).allowed());
+        assertFalse(limiter.tryAcquire("user", LIMIT).allowed());
+
+        // the burst is available again once the bucket is full
+        clock.advance(Duration.ofSeconds(LIMIT.burst()));
+        for (int i = 0; i < LIMIT.burst(); i++) {
+            assertTrue(limiter.tryAcquire("user", LIMIT).allowed());
+        }
+    }
+
+    @Test
+    void testKeysAreIndependent() {
+        for (int i = 0; i < LIMIT.burst(); i++) {
+            assertTrue(limiter.tryAcquire("first", LIMIT).allowed());
+        }
+        assertFalse(limiter.tryAcquire("first", LIMIT).allowed());
+        assertTrue(limiter.tryAcquire("second", LIMIT).allowed());
+    }
+
+    @Test
+    void testTierLimits() {
+        Subscription free = SubscriptionManager.getSubscription(SubscriptionManager.FREE_SUB);
+        Subscription tierOne = SubscriptionManager.getSubscription(SubscriptionManager.TIER1_SUB);
+        Subscription tierInfinity = SubscriptionManager.getSubscription(SubscriptionManager.TIER_INF_SUB);
+
+        for (Subscription lower : List.of(free, tierOne)) {
+            Subscription higher = lower == free ? tierOne : tierInfinity;
+            assertTrue(lower.getUserRateLimit().requestsPerMinute() < higher.getUserRateLimit().requestsPerMinute());
+            assertTrue(lower.getCompanyRateLimit().burst() < higher.getCompanyRateLimit().burst());
+        }
+
+        // a company allows more requests than any of its users
+        for (Subscription subscription : List.of(free, tierOne, tierInfinity)) {
+            assertTrue(subscription.getUserRateLimit().requestsPerMinute() < subscription.getCompanyRateLimit().requestsPerMinute());
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> new RateLimit(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new RateLimit(1, 0));
+    }
+
+    @Test
+    void testPurge() {
+        limiter.tryAcquire("first", LIMIT);
+        limiter.tryAcquire("second", LIMIT);
+        assertEquals(2, store.size());
+
+        // the keys whose arrival time has passed are dropped by the next update after the purge interval
+        clock.advance(Duration.ofMinutes(1));
+        limiter.tryAcquire("third", LIMIT);
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void testConcurrentRequests() throws Exception {
+        // the clock does not move: exactly the burst is accepted
+        RateLimit limit = new RateLimit(60, 1_000);
+        AtomicInteger allowed = new AtomicInteger();
+        int threads = 8;
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        if (limiter.tryAcquire("user", limit).allowed()) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        assertEquals(limit.burst(), allowed.get());
+    }
+}
@@ -0,0 +1,76 @@
+package org.apiUtils.commonClasses;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.tokens.repositories.TokenUserLinkRepository;
+import org.utils.SegmentedLruCache;
+
+import java.time.Clock;
+import java.time.Duration;
+
+
+/**
+ * Tells whether a user is associated with a token: the check of every protected endpoint (see {@link TokenAuthController}).
+ * <p>
+ * The users found with a token link are remembered for a short time: their next requests skip the database.
+ * The revocation of a token evicts its user (see {@link #invalidate(String)}), so the revocation takes effect at once on the
+ * application revoking the token, and within the time to live on the other applications. The users without a link are never
+ * remembered: a new link is taken into account at once.
+ */
+@Component
+public class ActiveTokenLinkCache {
+
+    // how long a user found with a token link is remembered
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofSeconds(10);
+
+    // the maximum number of users remembered
+    public static final long MAX_CACHED_USERS = 100_000;
+
+    private final TokenUserLinkRepository tokenUserLinkRepo;
+
+    private final Duration timeToLive;
+
+    private final Clock clock;
+
+    // email -> the time (epoch millis) until which the user is known to have a token link
+    private final SegmentedLruCache<String, Long> activeUntil;
+
+    @Autowired
+    public ActiveTokenLinkCache(TokenUserLinkRepository tokenUserLinkRepo) {
+        this(tokenUserLinkRepo, DEFAULT_TIME_TO_LIVE, Clock.systemUTC());
+    }
+
+    public ActiveTokenLinkCache(TokenUserLinkRepository tokenUserLinkRepo, Duration timeToLive, Clock clock) {
+        this.tokenUserLinkRepo = tokenUserLinkRepo;
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+        this.activeUntil = new SegmentedLruCache<>(MAX_CACHED_USERS, expiry -> 1);
+    }
+
+    public boolean hasActiveLink(String email) {
+        long now = this.clock.millis();
+
+        Long until = this.activeUntil.get(email);
+        if (until != null && now < until) {
+            return true;
+        }
+
+        if (!this.tokenUserLinkRepo.existsByUserEmail(email)) {
+            this.activeUntil.invalidate(email);
+            return false;
+        }
+
+        this.activeUntil.put(email, now + this.timeToLive.toMillis());
+        return true;
+    }
+
+    // called when the token of the user is revoked
+    public void invalidate(String email) {
+        this.activeUntil.invalidate(email);
+    }
+
+    // the hits, misses and evictions of the cache
+    public SegmentedLruCache.Stats stats() {
+        return this.activeUntil.stats();
+    }
+}
@@ -0,0 +1,66 @@
+package org.apiUtils.commonClasses;
+
+import org.apiUtils.repositories.CounterRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Hands out the sequential ids of the collections (the counters of {@link CounterRepository}).
+ * <p>
+ * With a block size of 1 (the default), every id is an atomic increment of the counter: the ids follow the order of the calls.
+ * With a larger block size ("counter.block-size", hi/lo allocation), the application instance reserves a block of ids with a single
+ * increment and hands them out from memory: the database is only hit once per block. The ids stay unique across the instances,
+ * but are no longer ordered across them, and the unused ids of a block are lost when the instance stops.
+ */
+@Component
+public class CounterIdAllocator {
+
+    public static final long DEFAULT_BLOCK_SIZE = 1;
+
+    // the ids reserved by the instance for a collection: from next (inclusive) to end (exclusive)
+    private static final class Block {
+        private long next;
+        private long end;
+    }
+
+    private final CounterRepository counterRepo;
+
+    private final long blockSize;
+
+    // collection name -> the current block of the collection
+    private final ConcurrentMap<String, Block> blocks = new ConcurrentHashMap<>();
+
+    @Autowired
+    public CounterIdAllocator(CounterRepository counterRepo, @Value("${counter.block-size:" + DEFAULT_BLOCK_SIZE + "}") long blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("The block size must be positive");
+        }
+        this.counterRepo = counterRepo;
+        this.blockSize = blockSize;
+    }
+
+    public long nextId(String collectionName) {
+        if (this.blockSize == 1) {
+            return this.counterRepo.nextId(collectionName);
+        }
+
+        Block block = this.blocks.computeIfAbsent(collectionName, name -> new Block());
+        // the lock is per collection, and only held for the database call once per block
+        synchronized (block) {
+            if (block.next == block.end) {
+                block.next = this.counterRepo.reserveIds(collectionName, this.blockSize);
+                block.end = block.next + this.blockSize;
+            }
+            return block.next++;
+        }
+    }
+
+    public long getBlockSize() {
+        return this.blockSize;
+    }
+}
@@ -1,11 +1,8 @@
 package org.apiUtils.commonClasses;
 
-import java.util.List;
-
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.RestController;
-import org.tokens.entities.TokenUserLink;
 import org.tokens.repositories.TokenUserLinkRepository;
 import org.user.entities.AppUser;
 import org.user.repositories.UserRepository;
@@ -13,7 +10,7 @@ import org.user.repositories.UserRepository;
 @RestController
 @Validated
 public class TokenAuthController {
-        
+
     public static class TokenNotFoundException extends RuntimeException {
         public TokenNotFoundException(String message) {
             super(message);
@@ -23,23 +20,27 @@ public class TokenAuthController {
 
     protected final UserRepository userRepo;
     protected final TokenUserLinkRepository tokenUserLinkRepo;
-    
-    public TokenAuthController(UserRepository userRepo, TokenUserLinkRepository tokenUserLinkRepo) {
+    protected final ActiveTokenLinkCache activeTokenLinkCache;
+
+    public TokenAuthController(UserRepository userRepo, TokenUserLinkRepository tokenUserLinkRepo, ActiveTokenLinkCache activeTokenLinkCache) {
         this.userRepo = userRepo;
         this.tokenUserLinkRepo = tokenUserLinkRepo;
+        this.activeTokenLinkCache = activeTokenLinkCache;
     }
-    
-    
-    @SuppressWarnings("OptionalGetWithoutIsPresent")
-    public AppUser authorizeUserToken(UserDetails userDetails) {
-        AppUser user = this.userRepo.findById(userDetails.getUsername()).get();
-        // look for tokens
-        List<TokenUserLink> tokenUserLinks = this.tokenUserLinkRepo.findByUser(user);
 
-        if (tokenUserLinks.isEmpty()) {
+
+    public AppUser authorizeUserToken(UserDetails userDetails) {
+        // look for tokens: an indexed existence check, skipped while the user is known to have a token link
+        if (!this.activeTokenLinkCache.hasActiveLink(userDetails.getUsername())) {
             throw new TokenNotFoundException("The user is currently associated with no tokens. Their access might have been revoked.");
         }
 
-        return user;
+        // the user loaded by the authentication is reused (the principal of a session token only carries its claims)
+        if (userDetails instanceof UserDetailsImp userDetailsImp && userDetailsImp.getUser() != null) {
+            return userDetailsImp.getUser();
+        }
+
+        return this.userRepo.findById(userDetails.getUsername()).orElseThrow(
+                () -> new TokenNotFoundException("There is no user with the email: " + userDetails.getUsername()));
     }
 }
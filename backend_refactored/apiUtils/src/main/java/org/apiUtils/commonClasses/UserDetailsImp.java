@@ -1,5 +1,7 @@
 package org.apiUtils.commonClasses;
 
+import org.access.Role;
+import org.access.Subscription;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.user.entities.AppUser;
@@ -8,25 +10,73 @@ import java.util.Collection;
 
 public class UserDetailsImp implements UserDetails {
 
+    // null when the principal is built from the claims of a session token (see SessionTokenService)
     private final AppUser user;
 
+    private final String email;
+
+    private final Role role;
+
+    private final String companyId;
+
+    // the subscription of the company of the user (the rate limits): null for the session tokens issued without it
+    private final Subscription subscription;
+
+    // the id of the token user link of the user: only known from the claims of a session token
+    private final String tokenLinkId;
+
     public UserDetailsImp(AppUser user) {
         this.user = user;
+        this.email = user.getEmail();
+        this.role = user.getRole();
+        this.companyId = user.getCompany() == null ? null : user.getCompany().getId();
+        this.subscription = user.getCompany() == null ? null : user.getCompany().getSubscription();
+        this.tokenLinkId = null;
+    }
+
+    // the principal of a session token: built from its claims, without any database access
+    public UserDetailsImp(String email, Role role, String companyId, Subscription subscription, String tokenLinkId) {
+        this.user = null;
+        this.email = email;
+        this.role = role;
+        this.companyId = companyId;
+        this.subscription = subscription;
+        this.tokenLinkId = tokenLinkId;
     }
 
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
-        return this.user.getRole().getAuthorities();
+        return this.role.getAuthorities();
     }
 
     @Override
     public String getUsername() {
-        return user.getEmail();
+        return this.email;
     }
 
+    // no password for the principal of a session token
     @Override
     public String getPassword() {
-        return user.getPassword();
+        return this.user == null ? null : this.user.getPassword();
+    }
+
+    public AppUser getUser() {
+        return this.user;
+    }
+
+    public Role getRole() {
+        return this.role;
+    }
+
+    public String getCompanyId() {
+        return this.companyId;
+    }
+
+    public Subscription getSubscription() {
+        return this.subscription;
     }
 
-}
\ No newline at end of file
+    public String getTokenLinkId() {
+        return this.tokenLinkId;
+    }
+}
@@ -3,6 +3,7 @@ package org.apiUtils.configurations;
 import org.apiUtils.commonClasses.UserDetailsImp;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Component;
@@ -12,7 +13,7 @@ import org.user.repositories.UserRepository;
 
 @Component
 @SuppressWarnings("unused")
-public class AppUserDetailService implements UserDetailsService {
+public class AppUserDetailService implements UserDetailsService, UserDetailsPasswordService {
     private final UserRepository userRepo;
 
     @Autowired
@@ -27,4 +28,11 @@ public class AppUserDetailService implements UserDetailsService {
         );
         return new UserDetailsImp(user);
     }
+
+    // called on a successful login when the password hash is outdated: the password hashed with the current settings is saved
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        this.userRepo.updatePassword(user.getUsername(), newPassword);
+        return this.loadUserByUsername(user.getUsername());
+    }
 }
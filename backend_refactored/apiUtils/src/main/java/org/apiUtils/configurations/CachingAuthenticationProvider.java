@@ -0,0 +1,143 @@
+package org.apiUtils.configurations;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import org.utils.SegmentedLruCache;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+
+
+/**
+ * Authenticates the (HTTP Basic) credentials of the users, caching the successful authentications for a short time.
+ * <p>
+ * The password check is deliberately slow (BCrypt): without the cache, every api call pays for a user lookup and a password check.
+ * A successful authentication is cached by username, along with a digest of the credentials that were checked: the next requests
+ * sending the same credentials within the time to live skip both. Any other credentials go through the full check.
+ * <p>
+ * The digest is an HMAC keyed with a random secret of the application instance: the cache never holds the passwords themselves,
+ * nor a digest that could be attacked offline. The cached authentications of a user are evicted (see {@link #evict(String)})
+ * when the user's password changes or when the user's token is revoked.
+ */
+@Component
+public class CachingAuthenticationProvider implements AuthenticationProvider {
+
+    // how long an authentication is reused
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofSeconds(60);
+
+    // the maximum number of users whose authentication is cached
+    public static final long MAX_CACHED_USERS = 100_000;
+
+    private static final String DIGEST_ALGORITHM = "HmacSHA256";
+
+    private record CachedAuthentication(byte[] credentialsDigest, Authentication authentication, long expiresAt) {
+    }
+
+    private final DaoAuthenticationProvider delegate;
+
+    private final Duration timeToLive;
+
+    private final Clock clock;
+
+    private final SecretKeySpec digestKey;
+
+    // username -> the last successful authentication of the user
+    private final SegmentedLruCache<String, CachedAuthentication> authentications;
+
+    @Autowired
+    public CachingAuthenticationProvider(UserDetailsService userDetailsService, ObjectProvider<PasswordEncoder> passwordEncoder,
+                                         PasswordHashingService passwordHashingService) {
+        // a PasswordEncoder bean replaces the password hashing of the application (e.g. in the tests), if there is a single one
+        this(userDetailsService, passwordEncoder.getIfUnique(passwordHashingService::asPasswordEncoder),
+                DEFAULT_TIME_TO_LIVE, Clock.systemUTC());
+    }
+
+    public CachingAuthenticationProvider(UserDetailsService userDetailsService, PasswordEncoder passwordEncoder,
+                                         Duration timeToLive, Clock clock) {
+        this.delegate = new DaoAuthenticationProvider(passwordEncoder);
+        this.delegate.setUserDetailsService(userDetailsService);
+        // the outdated hashes are replaced on a successful login (see PasswordEncoder.upgradeEncoding)
+        if (userDetailsService instanceof UserDetailsPasswordService userDetailsPasswordService) {
+            this.delegate.setUserDetailsPasswordService(userDetailsPasswordService);
+        }
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+        this.authentications = new SegmentedLruCache<>(MAX_CACHED_USERS, authentication -> 1);
+
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.digestKey = new SecretKeySpec(key, DIGEST_ALGORITHM);
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        String username = authentication.getName();
+        Object credentials = authentication.getCredentials();
+
+        if (username == null || credentials == null) {
+            return this.delegate.authenticate(authentication);
+        }
+
+        byte[] digest = credentialsDigest(username, credentials.toString());
+        long now = this.clock.millis();
+
+        CachedAuthentication cached = this.authentications.get(username);
+        if (cached != null && now < cached.expiresAt() && MessageDigest.isEqual(cached.credentialsDigest(), digest)) {
+            return cached.authentication();
+        }
+
+        // a failed authentication throws: the cached authentication of the user (if any) is left untouched
+        Authentication result = this.delegate.authenticate(authentication);
+        this.authentications.put(username, new CachedAuthentication(digest, result, now + this.timeToLive.toMillis()));
+
+        return result;
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return UsernamePasswordAuthenticationToken.class.isAssignableFrom(authentication);
+    }
+
+    // the next request of the user goes through the full authentication
+    public void evict(String username) {
+        this.authentications.invalidate(username);
+    }
+
+    public void evictAll() {
+        this.authentications.invalidateAll();
+    }
+
+    // the hits, misses and evictions of the cache
+    public SegmentedLruCache.Stats stats() {
+        return this.authentications.stats();
+    }
+
+    private byte[] credentialsDigest(String username, String credentials) {
+        try {
+            // the Mac objects are not thread-safe: one per call
+            Mac mac = Mac.getInstance(DIGEST_ALGORITHM);
+            mac.init(this.digestKey);
+            mac.update(username.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return mac.doFinal(credentials.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            // HmacSHA256 is available on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+}
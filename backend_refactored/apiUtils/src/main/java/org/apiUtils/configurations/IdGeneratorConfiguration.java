@@ -0,0 +1,27 @@
+package org.apiUtils.configurations;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.utils.IdGenerator;
+import org.utils.SnowflakeIdGenerator;
+import org.utils.UuidV7Generator;
+
+
+// the generator of the ids of the new documents ("id.generator"):
+// - "uuid7" (default): version 7 UUIDs, unique across the instances without any setting
+// - "snowflake": shorter 64 bits ids, each instance must be given its own "id.generator.node-id" (0 to 1023)
+@Configuration
+@SuppressWarnings("unused")
+public class IdGeneratorConfiguration {
+
+    @Bean
+    public IdGenerator idGenerator(@Value("${id.generator:uuid7}") String generator,
+                                   @Value("${id.generator.node-id:0}") int nodeId) {
+        return switch (generator.toLowerCase()) {
+            case "uuid7" -> new UuidV7Generator();
+            case "snowflake" -> new SnowflakeIdGenerator(nodeId);
+            default -> throw new IllegalArgumentException("Unknown id generator: " + generator + " (uuid7 or snowflake)");
+        };
+    }
+}
@@ -0,0 +1,142 @@
+package org.apiUtils.configurations;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * Hashes and checks the passwords of the users and the values of the tokens: the single BCrypt encoder of the application.
+ * <p>
+ * The cost of BCrypt ("password.bcrypt.strength", 4 to 31) is set per environment: each step doubles the time of a hash and of a check.
+ * Changing it does not break the stored hashes, since a BCrypt hash carries its own cost. A hash whose cost differs from the configured one
+ * (or a hash of another algorithm, prefixed by its id as with the DelegatingPasswordEncoder of Spring Security) still matches, and
+ * {@link #upgradeEncoding(String)} tells the authentication to hash the password again on the next successful login.
+ * <p>
+ * The times of the hashes and of the checks are published as meters ("password.hashing", tagged by operation), along with the number of
+ * re-hashed passwords ("password.upgrades").
+ */
+@Component
+public class PasswordHashingService {
+
+    public static final int DEFAULT_STRENGTH = 10;
+
+    public static final String HASHING_TIMER = "password.hashing";
+
+    public static final String UPGRADES_COUNTER = "password.upgrades";
+
+    // the version, cost and salt + hash of a BCrypt hash
+    private static final Pattern BCRYPT_PATTERN = Pattern.compile("^\\$2[aby]?\\$(\\d\\d)\\$[./0-9A-Za-z]{53}$");
+
+    private final int strength;
+
+    private final BCryptPasswordEncoder bcrypt;
+
+    // the hashes of the other algorithms ("{id}hash")
+    private final PasswordEncoder legacyEncoder = PasswordEncoderFactories.createDelegatingPasswordEncoder();
+
+    private final Timer hashTimer;
+
+    private final Timer verifyTimer;
+
+    private final Counter upgradeCounter;
+
+    // the service seen as a PasswordEncoder, for the authentication of Spring Security
+    private final PasswordEncoder passwordEncoder = new PasswordEncoder() {
+        @Override
+        public String encode(CharSequence rawPassword) {
+            return PasswordHashingService.this.encode(rawPassword);
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            return PasswordHashingService.this.matches(rawPassword, encodedPassword);
+        }
+
+        @Override
+        public boolean upgradeEncoding(String encodedPassword) {
+            return PasswordHashingService.this.upgradeEncoding(encodedPassword);
+        }
+    };
+
+    @Autowired
+    public PasswordHashingService(@Value("${password.bcrypt.strength:" + DEFAULT_STRENGTH + "}") int strength,
+                                  ObjectProvider<MeterRegistry> meterRegistry) {
+        this(strength, meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+    public PasswordHashingService(int strength, MeterRegistry meterRegistry) {
+        // the BCryptPasswordEncoder rejects the costs out of 4 to 31
+        this.bcrypt = new BCryptPasswordEncoder(strength);
+        this.strength = strength;
+
+        this.hashTimer = Timer.builder(HASHING_TIMER)
+                .tags("operation", "hash")
+                .description("The time taken to hash a password")
+                .register(meterRegistry);
+
+        this.verifyTimer = Timer.builder(HASHING_TIMER)
+                .tags("operation", "verify")
+                .description("The time taken to check a password against its hash")
+                .register(meterRegistry);
+
+        this.upgradeCounter = Counter.builder(UPGRADES_COUNTER)
+                .description("The number of outdated hashes found at a successful login (the password is hashed again)")
+                .register(meterRegistry);
+    }
+
+    public int getStrength() {
+        return this.strength;
+    }
+
+    public String encode(CharSequence rawPassword) {
+        return this.hashTimer.record(() -> this.bcrypt.encode(rawPassword));
+    }
+
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+
+        //noinspection DataFlowIssue
+        return this.verifyTimer.record(() -> encodedPassword.startsWith("{")
+                ? this.legacyEncoder.matches(rawPassword, encodedPassword)
+                : this.bcrypt.matches(rawPassword, encodedPassword));
+    }
+
+    // whether the hash was computed with another algorithm or another cost (the password should be hashed again)
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+
+        boolean upgrade;
+        if (encodedPassword.startsWith("{")) {
+            upgrade = true;
+        }
+        else {
+            Matcher matcher = BCRYPT_PATTERN.matcher(encodedPassword);
+            upgrade = matcher.matches() && Integer.parseInt(matcher.group(1)) != this.strength;
+        }
+
+        if (upgrade) {
+            this.upgradeCounter.increment();
+        }
+        return upgrade;
+    }
+
+    public PasswordEncoder asPasswordEncoder() {
+        return this.passwordEncoder;
+    }
+}
@@ -0,0 +1,33 @@
+package org.apiUtils.configurations;
+
+import org.access.InMemoryRateLimitStore;
+import org.access.RateLimiter;
+import org.apiUtils.repositories.MongoRateLimitStore;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+
+// the store of the rate limiters of the requests ("rate-limit.backend", see RateLimitFilter):
+// - "memory" (default): the requests are limited per application instance, without any database access
+// - "mongo": the requests are limited across all the instances, at the cost of two database round trips per limit
+@Configuration
+@SuppressWarnings("unused")
+public class RateLimitConfiguration {
+
+    @Bean
+    public RateLimiter rateLimiter(@Value("${rate-limit.backend:memory}") String backend,
+                                   ObjectProvider<MongoTemplate> mongoTemplate) {
+        return switch (backend.toLowerCase()) {
+            case "memory" -> new RateLimiter(new InMemoryRateLimitStore());
+            case "mongo" -> {
+                MongoRateLimitStore store = new MongoRateLimitStore(mongoTemplate.getObject());
+                store.ensureIndexes();
+                yield new RateLimiter(store);
+            }
+            default -> throw new IllegalArgumentException("Unknown rate limit backend: " + backend + " (memory or mongo)");
+        };
+    }
+}
@@ -0,0 +1,64 @@
+package org.apiUtils.configurations;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.access.RateLimiter;
+import org.access.Subscription;
+import org.apiUtils.commonClasses.UserDetailsImp;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+
+/**
+ * Limits the rate of the requests of each user and of each company, with the limits of the subscription of the company
+ * (see {@link Subscription#getUserRateLimit()} and {@link Subscription#getCompanyRateLimit()}).
+ * <p>
+ * The filter runs once the request is authenticated and authorized, before any controller: a request over a limit is rejected
+ * (429) with the number of seconds to wait in the Retry-After header. The anonymous requests and the principals without a known
+ * subscription are not limited. A request accepted for its user and rejected for its company still counts for its user.
+ * <p>
+ * The filter is added to the security filter chain only (see {@link SecurityConfiguration}): it is not a bean, so that it is not
+ * registered as a servlet filter as well.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final RateLimiter rateLimiter;
+
+    public RateLimitFilter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !(authentication.getPrincipal() instanceof UserDetailsImp principal)
+                || principal.getSubscription() == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        Subscription subscription = principal.getSubscription();
+
+        RateLimiter.Decision decision = this.rateLimiter.tryAcquire("user:" + principal.getUsername(), subscription.getUserRateLimit());
+        if (decision.allowed() && principal.getCompanyId() != null) {
+            decision = this.rateLimiter.tryAcquire("company:" + principal.getCompanyId(), subscription.getCompanyRateLimit());
+        }
+
+        if (!decision.allowed()) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(decision.retryAfterSeconds()));
+            response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), "Too many requests");
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+}
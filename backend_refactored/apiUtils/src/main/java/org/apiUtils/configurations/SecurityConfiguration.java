@@ -1,24 +1,45 @@
 package org.apiUtils.configurations;
 
 import org.access.AuthoritiesManager;
+import org.access.RateLimiter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityCustomizer;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.intercept.AuthorizationFilter;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 import org.springframework.security.web.util.matcher.RegexRequestMatcher;
 
 @Configuration
 @EnableWebSecurity
 @SuppressWarnings("unused")
 public class SecurityConfiguration {
+
+    // the first path segments of the application endpoints: they can never be the hash of a company domain
+    public static final String RESERVED_PATH_SEGMENTS = "api|webjars|error|actuator|swagger-ui|v3";
+
+    // the hash of a company domain, as the first path segment of a short url: the base 26 id of the company number plus
+    // AuthController.companySiteHashOffset, so at least 3 lowercase letters ("bmm" for the first company) without a leading "a",
+    // and at most the 14 letters of the largest long
+    public static final String SHORT_URL_DOMAIN_HASH_REGEX = "(?!(?:" + RESERVED_PATH_SEGMENTS + ")$)[b-z][a-z]{2,13}";
+
+    // the short urls clicked by the end users: "/{domainHash}/**" (query string included)
+    public static final String SHORT_URL_PATH_REGEX = "^/(?!(?:" + RESERVED_PATH_SEGMENTS + ")(?:[/?]|$))[b-z][a-z]{2,13}(?:[/?].*)?$";
+
     @SuppressWarnings("Convert2MethodRef")
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain filterChain(HttpSecurity http, SessionTokenService sessionTokenService, RateLimiter rateLimiter)
+            throws Exception {
 
         http.httpBasic(Customizer.withDefaults())
+                // the session tokens (see the login endpoint) are verified without any database access, before the HTTP Basic credentials
+                .addFilterBefore(new SessionTokenAuthenticationFilter(sessionTokenService), BasicAuthenticationFilter.class)
+                // the rate limits of the subscriptions: checked once the request is authorized, before any controller
+                .addFilterAfter(new RateLimitFilter(rateLimiter), AuthorizationFilter.class)
                 .csrf(csrf -> csrf.disable())
                 // any request to the api/auth/register is allowed
                 .authorizeHttpRequests(
@@ -30,6 +51,9 @@ public class SecurityConfiguration {
                     .requestMatchers("/api-docs/**").permitAll()
                     .requestMatchers("/swagger-resources/**").permitAll()
                     .requestMatchers("/webjars/**").permitAll()
+
+                    // the short urls are public: the redirects go through the filter chain (and its rate limits) anonymously
+                    .requestMatchers(RegexRequestMatcher.regexMatcher(HttpMethod.GET, SHORT_URL_PATH_REGEX)).permitAll()
                     
                     // url encoding endpoints
                     .requestMatchers(RegexRequestMatcher.regexMatcher("/api/url/encode.*")).hasAuthority(AuthoritiesManager.CAN_ENCODE_URL_STR)
@@ -0,0 +1,63 @@
+package org.apiUtils.configurations;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apiUtils.commonClasses.UserDetailsImp;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+
+/**
+ * Authenticates the requests sending a session token ("Authorization: Bearer {token}", see {@link SessionTokenService}).
+ * <p>
+ * The principal is built from the claims of the token: no database access and no password check. An invalid or expired token is
+ * rejected (401). The requests without a session token go on to the HTTP Basic authentication.
+ * <p>
+ * The filter is added to the security filter chain only (see {@link SecurityConfiguration}): it is not a bean, so that it is not
+ * registered as a servlet filter as well.
+ */
+public class SessionTokenAuthenticationFilter extends OncePerRequestFilter {
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final SessionTokenService sessionTokenService;
+
+    public SessionTokenAuthenticationFilter(SessionTokenService sessionTokenService) {
+        this.sessionTokenService = sessionTokenService;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+
+        if (authorization == null || !authorization.regionMatches(true, 0, BEARER_PREFIX, 0, BEARER_PREFIX.length())) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        UserDetailsImp principal;
+        try {
+            principal = this.sessionTokenService.verify(authorization.substring(BEARER_PREFIX.length()).trim());
+        } catch (SessionTokenService.InvalidSessionTokenException e) {
+            SecurityContextHolder.clearContext();
+            response.setHeader(HttpHeaders.WWW_AUTHENTICATE, "Bearer error=\"invalid_token\"");
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, e.getMessage());
+            return;
+        }
+
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        context.setAuthentication(UsernamePasswordAuthenticationToken.authenticated(principal, null, principal.getAuthorities()));
+        SecurityContextHolder.setContext(context);
+
+        filterChain.doFilter(request, response);
+    }
+}
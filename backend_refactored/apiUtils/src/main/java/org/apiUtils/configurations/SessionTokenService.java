@@ -0,0 +1,151 @@
+package org.apiUtils.configurations;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.access.RoleManager;
+import org.access.Subscription;
+import org.access.SubscriptionManager;
+import org.apiUtils.commonClasses.UserDetailsImp;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.user.entities.AppUser;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+
+
+/**
+ * Issues and verifies the session tokens: short-lived tokens exchanged once for the credentials of a user (see the login endpoint),
+ * then sent as "Authorization: Bearer {token}" instead of the HTTP Basic credentials.
+ * <p>
+ * A session token is "{claims}.{signature}" (both base64url encoded): the claims (email, role, company id, subscription tier,
+ * token link id and expiry) signed with HMAC-SHA256. The verification is a signature check: no database access and no password check.
+ * <p>
+ * The applications verifying the tokens of each other must share the secret ("session.token.secret", base64 encoded).
+ * Without it, every instance signs with a random secret: its tokens are only valid on the instance, until it restarts.
+ */
+@Component
+public class SessionTokenService {
+
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(15);
+
+    private static final String SIGNATURE_ALGORITHM = "HmacSHA256";
+
+    public static class InvalidSessionTokenException extends RuntimeException {
+        public InvalidSessionTokenException(String message) {
+            super(message);
+        }
+    }
+
+    // the claims of a session token (expiresAt: epoch seconds, subscription: the tier of the company, for the rate limits)
+    public record SessionClaims(String email, String role, String companyId, String subscription, String tokenLinkId, long expiresAt) {
+    }
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec signingKey;
+
+    private final Duration timeToLive;
+
+    private final Clock clock;
+
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public SessionTokenService(@Value("${session.token.secret:}") String secret,
+                               @Value("${session.token.time-to-live:PT15M}") Duration timeToLive) {
+        this(secret.isBlank() ? randomSecret() : Base64.getDecoder().decode(secret), timeToLive, Clock.systemUTC());
+    }
+
+    public SessionTokenService(byte[] secret, Duration timeToLive, Clock clock) {
+        this.signingKey = new SecretKeySpec(secret, SIGNATURE_ALGORITHM);
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+        this.objectMapper = new ObjectMapper();
+    }
+
+    private static byte[] randomSecret() {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        return secret;
+    }
+
+    public Duration getTimeToLive() {
+        return this.timeToLive;
+    }
+
+    // the session token of a user associated with the given token link
+    public String issue(AppUser user, String tokenLinkId) {
+        SessionClaims claims = new SessionClaims(user.getEmail(), user.getRole().role(), user.getCompany().getId(),
+                user.getCompany().getSubscription().getTier(), tokenLinkId, this.clock.instant().plus(this.timeToLive).getEpochSecond());
+
+        try {
+            String encodedClaims = ENCODER.encodeToString(this.objectMapper.writeValueAsBytes(claims));
+            return encodedClaims + "." + ENCODER.encodeToString(sign(encodedClaims));
+        } catch (JsonProcessingException e) {
+            // the claims are plain strings and numbers
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the principal of a session token, built from its claims.
+     *
+     * @throws InvalidSessionTokenException if the token is malformed, its signature does not match or it has expired
+     */
+    public UserDetailsImp verify(String token) {
+        int separator = token.indexOf('.');
+        if (separator <= 0 || separator != token.lastIndexOf('.')) {
+            throw new InvalidSessionTokenException("Malformed session token");
+        }
+
+        String encodedClaims = token.substring(0, separator);
+
+        SessionClaims claims;
+        try {
+            byte[] signature = DECODER.decode(token.substring(separator + 1));
+            if (!MessageDigest.isEqual(sign(encodedClaims), signature)) {
+                throw new InvalidSessionTokenException("Invalid session token signature");
+            }
+            claims = this.objectMapper.readValue(DECODER.decode(encodedClaims), SessionClaims.class);
+        } catch (IllegalArgumentException | IOException e) {
+            throw new InvalidSessionTokenException("Malformed session token");
+        }
+
+        if (this.clock.instant().getEpochSecond() >= claims.expiresAt()) {
+            throw new InvalidSessionTokenException("Expired session token");
+        }
+
+        try {
+            // the tokens issued before the subscription claim carry no rate limits
+            Subscription subscription = claims.subscription() == null ? null : SubscriptionManager.getSubscription(claims.subscription());
+            return new UserDetailsImp(claims.email(), RoleManager.getRole(claims.role()), claims.companyId(), subscription,
+                    claims.tokenLinkId());
+        } catch (RoleManager.NoExistingRoleException | SubscriptionManager.NoExistingSubscription e) {
+            throw new InvalidSessionTokenException("Malformed session token");
+        }
+    }
+
+    private byte[] sign(String encodedClaims) {
+        try {
+            // the Mac objects are not thread-safe: one per call
+            Mac mac = Mac.getInstance(SIGNATURE_ALGORITHM);
+            mac.init(this.signingKey);
+            return mac.doFinal(encodedClaims.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            // HmacSHA256 is available on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.apiUtils.configurations;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+
+
+/**
+ * Computes the fingerprints of the tokens (AppToken): the keys the tokens are looked up by.
+ * <p>
+ * A token is saved as a BCrypt hash, which cannot be looked up: finding the token matching a raw value would take one BCrypt check
+ * per candidate token. The fingerprint is an HMAC-SHA256 of the raw token: deterministic, so it is indexed, and non-reversible.
+ * A token is then verified with one indexed lookup and one BCrypt check.
+ * <p>
+ * The key ("token.fingerprint.key", base64 encoded) must be shared by the applications and must not change: the tokens are looked up
+ * by the fingerprints computed with it. Without it, a public default key is used: the fingerprints of the (random, 122 bits) tokens
+ * are still non-reversible, but a secret key also protects them if the database leaks.
+ */
+@Component
+public class TokenFingerprintService {
+
+    private static final String FINGERPRINT_ALGORITHM = "HmacSHA256";
+
+    private static final byte[] DEFAULT_KEY = "url-shortener-token-fingerprint".getBytes(StandardCharsets.UTF_8);
+
+    private final SecretKeySpec key;
+
+    @Autowired
+    public TokenFingerprintService(@Value("${token.fingerprint.key:}") String key) {
+        this(key.isBlank() ? DEFAULT_KEY : Base64.getDecoder().decode(key));
+    }
+
+    public TokenFingerprintService(byte[] key) {
+        this.key = new SecretKeySpec(key, FINGERPRINT_ALGORITHM);
+    }
+
+    public String fingerprint(String rawToken) {
+        try {
+            // the Mac objects are not thread-safe: one per call
+            Mac mac = Mac.getInstance(FINGERPRINT_ALGORITHM);
+            mac.init(this.key);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(mac.doFinal(rawToken.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            // HmacSHA256 is available on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+}
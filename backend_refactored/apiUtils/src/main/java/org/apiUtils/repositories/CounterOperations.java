@@ -0,0 +1,22 @@
+package org.apiUtils.repositories;
+
+
+// the operations on the CollectionCounter documents that cannot be expressed as derived queries (implemented with the MongoTemplate)
+public interface CounterOperations {
+
+    /**
+     * Returns the current count of the collection and increments it, creating the counter (at 0) the first time.
+     * <p>
+     * A single atomic update (an upsert incrementing the count): concurrent calls, possibly from several application instances,
+     * never get the same id.
+     */
+    default long nextId(String collectionName) {
+        return this.reserveIds(collectionName, 1);
+    }
+
+    /**
+     * Reserves a block of ids: increments the count of the collection by the given number atomically and returns the first id
+     * of the block (the ids from the returned value, inclusive, to the returned value + count, exclusive, belong to the caller).
+     */
+    long reserveIds(String collectionName, long count);
+}
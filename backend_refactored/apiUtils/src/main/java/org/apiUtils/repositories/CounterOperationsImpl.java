@@ -0,0 +1,40 @@
+package org.apiUtils.repositories;
+
+import org.apiUtils.entities.CollectionCounter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+
+// the implementation of the custom repository fragment: Spring Data finds it thanks to the "Impl" suffix
+@SuppressWarnings("unused")
+public class CounterOperationsImpl implements CounterOperations {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public CounterOperationsImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public long reserveIds(String collectionName, long count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one id must be reserved");
+        }
+
+        // the counter is created by the first increment: the server retries the concurrent upserts of a missing counter
+        // (the filter is an equality on the _id)
+        CollectionCounter counter = this.mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(collectionName)),
+                new Update().inc("count", count),
+                FindAndModifyOptions.options().upsert(true).returnNew(true),
+                CollectionCounter.class);
+
+        //noinspection DataFlowIssue
+        return counter.getCount() - count;
+    }
+}
@@ -0,0 +1,72 @@
+package org.apiUtils.repositories;
+
+import org.access.RateLimitStore;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.util.Date;
+
+
+/**
+ * Keeps the state of the rate limiters in the database: the requests are limited across all the application instances.
+ * <p>
+ * One document per key: the compare-and-set is a conditional update on the arrival time (an insertion for a new key, the unique
+ * _id rejecting the concurrent ones). Each check costs two round trips to the database. The documents are removed by a TTL index
+ * once their arrival time has passed.
+ */
+public class MongoRateLimitStore implements RateLimitStore {
+
+    public static final String COLLECTION_NAME = "rate_limits";
+
+    public static final String EXPIRY_INDEX_NAME = "expiresAt_ttl";
+
+    private static final String ARRIVAL_TIME = "arrivalTime";
+
+    private static final String EXPIRES_AT = "expiresAt";
+
+    private final MongoTemplate mongoTemplate;
+
+    public MongoRateLimitStore(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    // (the automatic index creation of Spring Data is disabled by default), ensureIndex does nothing if the index already exists
+    public void ensureIndexes() {
+        this.mongoTemplate.indexOps(COLLECTION_NAME).ensureIndex(new Index()
+                .on(EXPIRES_AT, Sort.Direction.ASC)
+                .expire(Duration.ZERO)
+                .named(EXPIRY_INDEX_NAME));
+    }
+
+    @Override
+    public long get(String key) {
+        Document state = this.mongoTemplate.findById(key, Document.class, COLLECTION_NAME);
+        return state == null ? NO_STATE : state.getLong(ARRIVAL_TIME);
+    }
+
+    @Override
+    public boolean compareAndSet(String key, long expected, long updated) {
+        if (expected == NO_STATE) {
+            try {
+                this.mongoTemplate.insert(new Document("_id", key)
+                        .append(ARRIVAL_TIME, updated)
+                        .append(EXPIRES_AT, new Date(updated)), COLLECTION_NAME);
+                return true;
+            } catch (DuplicateKeyException e) {
+                return false;
+            }
+        }
+
+        return this.mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(key).and(ARRIVAL_TIME).is(expected)),
+                new Update().set(ARRIVAL_TIME, updated).set(EXPIRES_AT, new Date(updated)),
+                COLLECTION_NAME).getMatchedCount() == 1;
+    }
+}
@@ -0,0 +1,183 @@
+package org.apiUtils.tests;
+
+import org.apiUtils.configurations.CachingAuthenticationProvider;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class AuthenticationCacheTest {
+
+    private static final String PASSWORD = "password123";
+
+    private static final Duration TIME_TO_LIVE = Duration.ofSeconds(60);
+
+    private final BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder();
+
+    // the number of password checks (BCrypt matches)
+    private final AtomicInteger passwordChecks = new AtomicInteger();
+
+    // the number of user lookups
+    private final AtomicInteger userLookups = new AtomicInteger();
+
+    private final TestClock clock = new TestClock();
+
+    private final CachingAuthenticationProvider provider;
+
+    AuthenticationCacheTest() {
+        Map<String, String> passwords = Map.of(
+                "user1@company.com", bcrypt.encode(PASSWORD),
+                "user2@company.com", bcrypt.encode(PASSWORD));
+
+        UserDetailsService userDetailsService = email -> {
+            userLookups.incrementAndGet();
+            String password = passwords.get(email);
+            if (password == null) {
+                throw new UsernameNotFoundException("There is no user with the email: " + email);
+            }
+            return User.withUsername(email).password(password).authorities("ROLE_USER").build();
+        };
+
+        PasswordEncoder countingEncoder = new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                return bcrypt.encode(rawPassword);
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                passwordChecks.incrementAndGet();
+                return bcrypt.matches(rawPassword, encodedPassword);
+            }
+        };
+
+        provider = new CachingAuthenticationProvider(userDetailsService, countingEncoder, TIME_TO_LIVE, clock);
+    }
+
+    private Authentication authenticate(String email, String password) {
+        return provider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated(email, password));
+    }
+
+    @Test
+    void testRepeatedAuthenticationIsCached() {
+        Authentication first = authenticate("user1@company.com", PASSWORD);
+        assertTrue(first.isAuthenticated());
+        assertEquals(1, passwordChecks.get());
+        assertEquals(1, userLookups.get());
+
+        for (int i = 0; i < 10; i++) {
+            Authentication next = authenticate("user1@company.com", PASSWORD);
+            assertSame(first, next);
+        }
+
+        // neither the user lookup nor the password check are repeated
+        assertEquals(1, passwordChecks.get());
+        assertEquals(1, userLookups.get());
+        assertEquals(10, provider.stats().hits());
+    }
+
+    @Test
+    void testWrongPasswordIsNeverCached() {
+        authenticate("user1@company.com", PASSWORD);
+
+        // a wrong password goes through the full check, even with a cached authentication of the user
+        for (int i = 0; i < 3; i++) {
+            assertThrows(BadCredentialsException.class, () -> authenticate("user1@company.com", "wrong_password"));
+        }
+        assertEquals(4, passwordChecks.get());
+
+        // the cached authentication is kept
+        authenticate("user1@company.com", PASSWORD);
+        assertEquals(4, passwordChecks.get());
+    }
+
+    @Test
+    void testUnknownUser() {
+        assertThrows(BadCredentialsException.class, () -> authenticate("unknown@company.com", PASSWORD));
+        assertThrows(BadCredentialsException.class, () -> authenticate("unknown@company.com", PASSWORD));
+        assertEquals(2, userLookups.get());
+    }
+
+    @Test
+    void testUsersAreCachedSeparately() {
+        authenticate("user1@company.com", PASSWORD);
+        authenticate("user2@company.com", PASSWORD);
+        assertEquals(2, passwordChecks.get());
+
+        authenticate("user1@company.com", PASSWORD);
+        authenticate("user2@company.com", PASSWORD);
+        assertEquals(2, passwordChecks.get());
+    }
+
+    @Test
+    void testTimeToLive() {
+        authenticate("user1@company.com", PASSWORD);
+
+        clock.advance(TIME_TO_LIVE.minusSeconds(1));
+        authenticate("user1@company.com", PASSWORD);
+        assertEquals(1, passwordChecks.get());
+
+        // the authentication expired: the credentials are checked again, then cached again
+        clock.advance(Duration.ofSeconds(1));
+        authenticate("user1@company.com", PASSWORD);
+        assertEquals(2, passwordChecks.get());
+
+        authenticate("user1@company.com", PASSWORD);
+        assertEquals(2, passwordChecks.get());
+    }
+
+    @Test
+    void testEviction() {
+        authenticate("user1@company.com", PASSWORD);
+        authenticate("user2@company.com", PASSWORD);
+
+        provider.evict("user1@company.com");
+
+        authenticate("user1@company.com", PASSWORD);
+        assertEquals(3, passwordChecks.get());
+
+        // the other users are not affected
+        authenticate("user2@company.com", PASSWORD);
+        assertEquals(3, passwordChecks.get());
+
+        provider.evictAll();
+        authenticate("user1@company.com", PASSWORD);
+        authenticate("user2@company.com", PASSWORD);
+        assertEquals(5, passwordChecks.get());
+    }
+
+    @Test
+    void testSupports() {
+        assertTrue(provider.supports(UsernamePasswordAuthenticationToken.class));
+        assertFalse(provider.supports(Authentication.class));
+    }
+
+    // a client sending the same credentials over several windows: the delegated authentication (the user lookup and the BCrypt
+    // check) runs once per time to live, whatever the number of requests
+    @Test
+    void testDelegatedOncePerTimeToLive() {
+        int windows = 3;
+        int requestsPerWindow = 1_000;
+
+        for (int window = 0; window < windows; window++) {
+            for (int i = 0; i < requestsPerWindow; i++) {
+                authenticate("user1@company.com", PASSWORD);
+                clock.advance(TIME_TO_LIVE.dividedBy(requestsPerWindow));
+            }
+            assertEquals(window + 1, userLookups.get());
+            assertEquals(window + 1, passwordChecks.get());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.apiUtils.tests;
+
+import org.apiUtils.commonClasses.CounterIdAllocator;
+import org.apiUtils.repositories.CounterRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+
+class CounterIdAllocatorTest {
+
+    private static final String COLLECTION = "collection";
+
+    // the counter of the database: reserveIds is an atomic increment
+    private final AtomicLong count = new AtomicLong();
+
+    private final CounterRepository counterRepo = mock(CounterRepository.class);
+
+    CounterIdAllocatorTest() {
+        when(counterRepo.reserveIds(anyString(), anyLong())).thenAnswer(invocation -> {
+            long reserved = invocation.getArgument(1);
+            return count.getAndAdd(reserved);
+        });
+        when(counterRepo.nextId(anyString())).thenAnswer(invocation -> count.getAndIncrement());
+    }
+
+    @Test
+    void testWithoutBlocks() {
+        CounterIdAllocator allocator = new CounterIdAllocator(counterRepo, CounterIdAllocator.DEFAULT_BLOCK_SIZE);
+
+        for (long i = 0; i < 10; i++) {
+            assertEquals(i, allocator.nextId(COLLECTION));
+        }
+        // one database call per id
+        verify(counterRepo, times(10)).nextId(COLLECTION);
+        verify(counterRepo, never()).reserveIds(anyString(), anyLong());
+    }
+
+    @Test
+    void testBlocks() {
+        CounterIdAllocator allocator = new CounterIdAllocator(counterRepo, 100);
+
+        for (long i = 0; i < 250; i++) {
+            assertEquals(i, allocator.nextId(COLLECTION));
+        }
+        // one database call per block
+        verify(counterRepo, times(3)).reserveIds(COLLECTION, 100);
+        assertEquals(300, count.get());
+    }
+
+    @Test
+    void testInstancesShareTheCounter() {
+        // two application instances: their ids never collide
+        CounterIdAllocator first = new CounterIdAllocator(counterRepo, 10);
+        CounterIdAllocator second = new CounterIdAllocator(counterRepo, 10);
+
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(ids.add(first.nextId(COLLECTION)));
+            assertTrue(ids.add(second.nextId(COLLECTION)));
+        }
+    }
+
+    @Test
+    void testConcurrentAllocation() throws Exception {
+        CounterIdAllocator allocator = new CounterIdAllocator(counterRepo, 64);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        int threads = 8;
+        int idsPerThread = 1_000;
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < idsPerThread; i++) {
+                        assertTrue(ids.add(allocator.nextId(COLLECTION)));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        assertEquals(threads * idsPerThread, ids.size());
+    }
+
+    @Test
+    void testInvalidBlockSize() {
+        assertThrows(IllegalArgumentException.class, () -> new CounterIdAllocator(counterRepo, 0));
+    }
+}
@@ -0,0 +1,92 @@
+package org.apiUtils.tests;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.access.RoleManager;
+import org.access.SubscriptionManager;
+import org.apiUtils.configurations.AppUserDetailService;
+import org.apiUtils.configurations.CachingAuthenticationProvider;
+import org.apiUtils.configurations.PasswordHashingService;
+import org.company.entities.Company;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.user.entities.AppUser;
+import org.user.repositories.UserRepository;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+
+class PasswordHashingTest {
+
+    private static final String PASSWORD = "password123";
+
+    // low costs: the tests do not need slow hashes
+    private static final int STRENGTH = 5;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final PasswordHashingService service = new PasswordHashingService(STRENGTH, meterRegistry);
+
+    private final Company company = new Company("hashing_company", "hashingCompany", "hashingAddress",
+            "owner@hashing.com", "hashing.com", SubscriptionManager.getSubscription("TIER_1"));
+
+    @Test
+    void testHashAndVerify() {
+        String hash = service.encode(PASSWORD);
+
+        assertTrue(hash.startsWith("$2a$05$"));
+        assertTrue(service.matches(PASSWORD, hash));
+        assertFalse(service.matches("wrong_password", hash));
+        assertFalse(service.matches(PASSWORD, null));
+
+        // the hashes of the former encoders (default cost) still match
+        assertTrue(service.matches(PASSWORD, new BCryptPasswordEncoder().encode(PASSWORD)));
+    }
+
+    @Test
+    void testMeters() {
+        String hash = service.encode(PASSWORD);
+        service.matches(PASSWORD, hash);
+        service.matches("wrong_password", hash);
+
+        assertEquals(1, meterRegistry.get(PasswordHashingService.HASHING_TIMER).tag("operation", "hash").timer().count());
+        assertEquals(2, meterRegistry.get(PasswordHashingService.HASHING_TIMER).tag("operation", "verify").timer().count());
+    }
+
+    @Test
+    void testUpgradeEncoding() {
+        assertFalse(service.upgradeEncoding(service.encode(PASSWORD)));
+
+        // another cost (higher or lower) or another algorithm
+        assertTrue(service.upgradeEncoding(new BCryptPasswordEncoder(4).encode(PASSWORD)));
+        assertTrue(service.upgradeEncoding(new BCryptPasswordEncoder(6).encode(PASSWORD)));
+        assertTrue(service.matches(PASSWORD, "{noop}" + PASSWORD));
+        assertTrue(service.upgradeEncoding("{noop}" + PASSWORD));
+
+        assertEquals(3, meterRegistry.get(PasswordHashingService.UPGRADES_COUNTER).counter().count());
+    }
+
+    @Test
+    void testUpgradeOnLogin() {
+        AppUser user = new AppUser("user@hashing.com", "hashingUser", new BCryptPasswordEncoder(4).encode(PASSWORD), "Hashing",
+                "User", null, company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE));
+
+        UserRepository userRepo = mock(UserRepository.class);
+        when(userRepo.findById(user.getEmail())).thenReturn(Optional.of(user));
+
+        CachingAuthenticationProvider provider = new CachingAuthenticationProvider(new AppUserDetailService(userRepo),
+                service.asPasswordEncoder(), CachingAuthenticationProvider.DEFAULT_TIME_TO_LIVE, new TestClock());
+
+        assertTrue(provider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated(user.getEmail(), PASSWORD)).isAuthenticated());
+
+        // the password is hashed again with the configured cost
+        ArgumentCaptor<String> newHash = ArgumentCaptor.forClass(String.class);
+        verify(userRepo).updatePassword(eq(user.getEmail()), newHash.capture());
+        assertTrue(newHash.getValue().startsWith("$2a$05$"));
+        assertTrue(service.matches(PASSWORD, newHash.getValue()));
+    }
+}
@@ -0,0 +1,112 @@
+package org.apiUtils.tests;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.access.InMemoryRateLimitStore;
+import org.access.RateLimit;
+import org.access.RateLimiter;
+import org.access.RoleManager;
+import org.access.Subscription;
+import org.access.SubscriptionManager;
+import org.apiUtils.commonClasses.UserDetailsImp;
+import org.apiUtils.configurations.RateLimitFilter;
+import org.company.entities.Company;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.user.entities.AppUser;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+
+class RateLimitFilterTest {
+
+    private final TestClock clock = new TestClock();
+
+    private final RateLimitFilter filter = new RateLimitFilter(
+            new RateLimiter(new InMemoryRateLimitStore(InMemoryRateLimitStore.DEFAULT_PURGE_INTERVAL, clock), clock));
+
+    private final Subscription subscription = SubscriptionManager.getSubscription(SubscriptionManager.FREE_SUB);
+
+    private final Company company = new Company("limited_company", "limitedCompany", "limitedAddress", "owner@limited.com",
+            "limited.com", subscription);
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private AppUser user(String name) {
+        return new AppUser(name + "@limited.com", name, "password123", "Limited", "User", null, company,
+                RoleManager.getRole(RoleManager.EMPLOYEE_ROLE));
+    }
+
+    private void authenticate(UserDetailsImp principal) {
+        SecurityContextHolder.getContext().setAuthentication(
+                UsernamePasswordAuthenticationToken.authenticated(principal, null, principal.getAuthorities()));
+    }
+
+    // true if the request reached the rest of the chain (the controllers)
+    private boolean send(HttpServletResponse response) throws Exception {
+        FilterChain chain = mock(FilterChain.class);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        filter.doFilter(request, response, chain);
+        return mockingDetails(chain).getInvocations().size() == 1;
+    }
+
+    @Test
+    void testUserLimit() throws Exception {
+        authenticate(new UserDetailsImp(user("first")));
+        RateLimit limit = subscription.getUserRateLimit();
+
+        for (int i = 0; i < limit.burst(); i++) {
+            assertTrue(send(mock(HttpServletResponse.class)));
+        }
+
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        assertFalse(send(response));
+        verify(response).setHeader(HttpHeaders.RETRY_AFTER, String.valueOf((limit.emissionIntervalMillis() + 999) / 1000));
+        verify(response).sendError(eq(429), anyString());
+
+        // accepted again after the retry delay
+        clock.advance(Duration.ofMillis(limit.emissionIntervalMillis()));
+        assertTrue(send(mock(HttpServletResponse.class)));
+    }
+
+    @Test
+    void testCompanyLimit() throws Exception {
+        RateLimit limit = subscription.getCompanyRateLimit();
+
+        // the users of the company share its limit (the session token principals as well)
+        int accepted = 0;
+        for (int i = 0; i < limit.burst() + 5; i++) {
+            authenticate(i % 2 == 0 ? new UserDetailsImp(user("user" + i))
+                    : new UserDetailsImp("user" + i + "@limited.com", RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), company.getId(),
+                    subscription, "link_id"));
+            if (send(mock(HttpServletResponse.class))) {
+                accepted++;
+            }
+        }
+        assertEquals(limit.burst(), accepted);
+    }
+
+    @Test
+    void testUnlimitedRequests() throws Exception {
+        // the anonymous requests, and the session tokens issued without a subscription
+        for (int i = 0; i < 100; i++) {
+            assertTrue(send(mock(HttpServletResponse.class)));
+        }
+
+        authenticate(new UserDetailsImp("user@limited.com", RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), company.getId(), null,
+                "link_id"));
+        for (int i = 0; i < 100; i++) {
+            assertTrue(send(mock(HttpServletResponse.class)));
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.apiUtils.tests;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.access.Role;
+import org.access.RoleManager;
+import org.access.SubscriptionManager;
+import org.apiUtils.commonClasses.UserDetailsImp;
+import org.apiUtils.configurations.SessionTokenAuthenticationFilter;
+import org.apiUtils.configurations.SessionTokenService;
+import org.company.entities.Company;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.user.entities.AppUser;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+
+class SessionTokenTest {
+
+    private static final byte[] SECRET = "a secret shared by the applications".getBytes();
+
+    private static final Instant NOW = Instant.parse("2025-01-01T00:00:00Z");
+
+    private final Company company = new Company("session_company", "sessionCompany", "sessionAddress", "owner@session.com",
+            "session.com", SubscriptionManager.getSubscription("TIER_1"));
+
+    private final Role role = RoleManager.getRole(RoleManager.ADMIN_ROLE);
+
+    private final AppUser user = new AppUser("admin@session.com", "sessionAdmin", "password123", "Session", "Admin", null, company, role);
+
+    private final SessionTokenService service = serviceAt(NOW);
+
+    private static SessionTokenService serviceAt(Instant instant) {
+        return new SessionTokenService(SECRET, SessionTokenService.DEFAULT_TIME_TO_LIVE, Clock.fixed(instant, ZoneOffset.UTC));
+    }
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void testIssueAndVerify() {
+        String token = service.issue(user, "link_id");
+
+        UserDetailsImp principal = service.verify(token);
+        assertEquals(user.getEmail(), principal.getUsername());
+        assertEquals(role, principal.getRole());
+        assertEquals(role.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList(),
+                principal.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
+        assertEquals(company.getId(), principal.getCompanyId());
+        assertEquals("link_id", principal.getTokenLinkId());
+        assertSame(company.getSubscription(), principal.getSubscription());
+
+        // the principal is built from the claims only
+        assertNull(principal.getUser());
+        assertNull(principal.getPassword());
+
+        // the other instances sharing the secret accept the token
+        assertEquals(user.getEmail(), serviceAt(NOW.plusSeconds(60)).verify(token).getUsername());
+    }
+
+    @Test
+    void testExpiredToken() {
+        String token = service.issue(user, "link_id");
+
+        Duration timeToLive = SessionTokenService.DEFAULT_TIME_TO_LIVE;
+        assertDoesNotThrow(() -> serviceAt(NOW.plus(timeToLive).minusSeconds(1)).verify(token));
+        assertThrows(SessionTokenService.InvalidSessionTokenException.class, () -> serviceAt(NOW.plus(timeToLive)).verify(token));
+    }
+
+    @Test
+    void testTamperedToken() {
+        String token = service.issue(user, "link_id");
+        String claims = token.substring(0, token.indexOf('.'));
+        String signature = token.substring(token.indexOf('.') + 1);
+
+        // claims changed to another role: the signature does not match
+        String decodedClaims = new String(Base64.getUrlDecoder().decode(claims));
+        String forgedClaims = Base64.getUrlEncoder().withoutPadding().encodeToString(decodedClaims.replace("ADMIN", "OWNER").getBytes());
+        assertThrows(SessionTokenService.InvalidSessionTokenException.class, () -> service.verify(forgedClaims + "." + signature));
+
+        // a token signed with another secret
+        SessionTokenService otherService = new SessionTokenService("another secret".getBytes(), SessionTokenService.DEFAULT_TIME_TO_LIVE,
+                Clock.fixed(NOW, ZoneOffset.UTC));
+        assertThrows(SessionTokenService.InvalidSessionTokenException.class, () -> service.verify(otherService.issue(user, "link_id")));
+
+        // malformed tokens
+        for (String malformed : new String[]{"", ".", "abc", claims, claims + ".", "." + signature, token + ".abc", claims + ".%%%"}) {
+            assertThrows(SessionTokenService.InvalidSessionTokenException.class, () -> service.verify(malformed), malformed);
+        }
+    }
+
+    @Test
+    void testFilterAuthenticatesSessionToken() throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+        when(request.getHeader(HttpHeaders.AUTHORIZATION)).thenReturn("Bearer " + service.issue(user, "link_id"));
+
+        new SessionTokenAuthenticationFilter(service).doFilter(request, response, chain);
+
+        verify(chain).doFilter(request, response);
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        assertNotNull(authentication);
+        assertTrue(authentication.isAuthenticated());
+        assertEquals(user.getEmail(), ((UserDetailsImp) authentication.getPrincipal()).getUsername());
+    }
+
+    @Test
+    void testFilterRejectsInvalidToken() throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+        when(request.getHeader(HttpHeaders.AUTHORIZATION)).thenReturn("Bearer invalid.token");
+
+        new SessionTokenAuthenticationFilter(service).doFilter(request, response, chain);
+
+        verify(chain, never()).doFilter(request, response);
+        verify(response).sendError(eq(HttpServletResponse.SC_UNAUTHORIZED), anyString());
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    void testFilterIgnoresBasicCredentials() throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+        when(request.getHeader(HttpHeaders.AUTHORIZATION)).thenReturn("Basic YWRtaW46cGFzc3dvcmQ=");
+
+        new SessionTokenAuthenticationFilter(service).doFilter(request, response, chain);
+
+        // left to the HTTP Basic authentication
+        verify(chain).doFilter(request, response);
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+}
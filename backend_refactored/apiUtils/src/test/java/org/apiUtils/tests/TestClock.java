@@ -0,0 +1,32 @@
+package org.apiUtils.tests;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+
+// a clock moved forward by the tests
+class TestClock extends Clock {
+    private Instant instant = Instant.parse("2025-01-01T00:00:00Z");
+
+    void advance(Duration duration) {
+        this.instant = this.instant.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return this;
+    }
+
+    @Override
+    public Instant instant() {
+        return this.instant;
+    }
+}
@@ -0,0 +1,106 @@
+package org.apiUtils.tests;
+
+import org.access.Role;
+import org.access.RoleManager;
+import org.access.SubscriptionManager;
+import org.apiUtils.commonClasses.ActiveTokenLinkCache;
+import org.apiUtils.commonClasses.TokenAuthController;
+import org.apiUtils.commonClasses.UserDetailsImp;
+import org.company.entities.Company;
+import org.junit.jupiter.api.Test;
+import org.tokens.repositories.TokenUserLinkRepository;
+import org.user.entities.AppUser;
+import org.user.repositories.UserRepository;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+
+class TokenAuthorizationTest {
+
+    private static final Duration TIME_TO_LIVE = Duration.ofSeconds(10);
+
+    private final Company company = new Company("authorization_company", "authorizationCompany", "authorizationAddress",
+            "owner@authorization.com", "authorization.com", SubscriptionManager.getSubscription("TIER_1"));
+
+    private final Role role = RoleManager.getRole(RoleManager.EMPLOYEE_ROLE);
+
+    private final AppUser user = new AppUser("employee@authorization.com", "authorizationEmployee", "password123", "Authorization",
+            "Employee", null, company, role);
+
+    private final UserRepository userRepo = mock(UserRepository.class);
+
+    private final TokenUserLinkRepository tokenUserLinkRepo = mock(TokenUserLinkRepository.class);
+
+    private final TestClock clock = new TestClock();
+
+    private final ActiveTokenLinkCache activeTokenLinkCache = new ActiveTokenLinkCache(tokenUserLinkRepo, TIME_TO_LIVE, clock);
+
+    private final TokenAuthController controller = new TokenAuthController(userRepo, tokenUserLinkRepo, activeTokenLinkCache);
+
+    @Test
+    void testPrincipalIsReused() {
+        when(tokenUserLinkRepo.existsByUserEmail(user.getEmail())).thenReturn(true);
+
+        assertSame(user, controller.authorizeUserToken(new UserDetailsImp(user)));
+
+        // a single existence check: neither the user nor the links are loaded
+        verifyNoInteractions(userRepo);
+        verify(tokenUserLinkRepo).existsByUserEmail(user.getEmail());
+        verifyNoMoreInteractions(tokenUserLinkRepo);
+    }
+
+    @Test
+    void testSessionTokenPrincipalLoadsTheUser() {
+        when(tokenUserLinkRepo.existsByUserEmail(user.getEmail())).thenReturn(true);
+        when(userRepo.findById(user.getEmail())).thenReturn(Optional.of(user));
+
+        UserDetailsImp principal = new UserDetailsImp(user.getEmail(), role, company.getId(), company.getSubscription(), "link_id");
+        assertSame(user, controller.authorizeUserToken(principal));
+        verify(userRepo).findById(user.getEmail());
+
+        // a deleted user
+        when(userRepo.findById(user.getEmail())).thenReturn(Optional.empty());
+        assertThrows(TokenAuthController.TokenNotFoundException.class, () -> controller.authorizeUserToken(principal));
+    }
+
+    @Test
+    void testActiveLinkIsCached() {
+        when(tokenUserLinkRepo.existsByUserEmail(user.getEmail())).thenReturn(true);
+
+        for (int i = 0; i < 10; i++) {
+            controller.authorizeUserToken(new UserDetailsImp(user));
+        }
+        verify(tokenUserLinkRepo, times(1)).existsByUserEmail(user.getEmail());
+
+        // checked again once the time to live is over
+        clock.advance(TIME_TO_LIVE);
+        controller.authorizeUserToken(new UserDetailsImp(user));
+        verify(tokenUserLinkRepo, times(2)).existsByUserEmail(user.getEmail());
+    }
+
+    @Test
+    void testRevocation() {
+        when(tokenUserLinkRepo.existsByUserEmail(user.getEmail())).thenReturn(true);
+        controller.authorizeUserToken(new UserDetailsImp(user));
+
+        // the token is revoked: the link is deleted and the user invalidated
+        when(tokenUserLinkRepo.existsByUserEmail(user.getEmail())).thenReturn(false);
+        activeTokenLinkCache.invalidate(user.getEmail());
+
+        assertThrows(TokenAuthController.TokenNotFoundException.class, () -> controller.authorizeUserToken(new UserDetailsImp(user)));
+    }
+
+    @Test
+    void testMissingLinkIsNeverCached() {
+        when(tokenUserLinkRepo.existsByUserEmail(user.getEmail())).thenReturn(false);
+        assertThrows(TokenAuthController.TokenNotFoundException.class, () -> controller.authorizeUserToken(new UserDetailsImp(user)));
+
+        // the user gets a token: taken into account at once
+        when(tokenUserLinkRepo.existsByUserEmail(user.getEmail())).thenReturn(true);
+        assertSame(user, controller.authorizeUserToken(new UserDetailsImp(user)));
+    }
+}
@@ -6,8 +6,12 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import jakarta.validation.Valid;
 import org.apache.commons.validator.routines.UrlValidator;
+import org.apiUtils.commonClasses.CounterIdAllocator;
+import org.apiUtils.commonClasses.TokenAuthController;
 import org.apiUtils.configurations.EmailService;
-import org.apiUtils.repositories.CounterRepository;
+import org.apiUtils.configurations.PasswordHashingService;
+import org.apiUtils.configurations.SessionTokenService;
+import org.apiUtils.configurations.TokenFingerprintService;
 import org.authApi.exceptions.CompanyAndUserExceptions;
 import org.authApi.exceptions.CompanyExceptions;
 import org.authApi.exceptions.TokenAndUserExceptions;
@@ -20,13 +24,13 @@ import org.company.entities.CompanyUrlData;
 import org.company.entities.TopLevelDomain;
 import org.company.repositories.CompanyRepository;
 import org.company.repositories.CompanyUrlDataRepository;
+import org.company.services.CompanyDomainHashIndex;
 import org.company.repositories.TopLevelDomainRepository;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Bean;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -40,6 +44,8 @@ import org.user.entities.AppUser;
 import org.user.repositories.UserRepository;
 import org.utils.CustomErrorMessage;
 import org.utils.CustomGenerator;
+import org.utils.IdAlphabet;
+import org.utils.IdGenerator;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -53,7 +59,9 @@ import org.access.RoleManager;
 import org.access.Subscription;
 import org.access.SubscriptionManager;
 import java.text.SimpleDateFormat;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -68,16 +76,25 @@ public class AuthController {
     private final UserRepository userRepo;
     private final TopLevelDomainRepository topLevelDomainRepo;
     private final TokenUserLinkRepository tokenUserLinkRepo;
-    private final CounterRepository counterRepo;
+    private final CounterIdAllocator counterIdAllocator;
     private final CompanyUrlDataRepository companyUrlDataRepo;
+    private final CompanyDomainHashIndex companyDomainHashIndex;
+    private final SessionTokenService sessionTokenService;
+    private final TokenFingerprintService tokenFingerprintService;
+    private final PasswordHashingService passwordHashingService;
     
     private final CustomGenerator gen;
+    private final IdGenerator idGenerator;
     private final EmailService emailService;
     private final UrlValidator urlValidator;
 
     private final ObjectMapper om;
 
     public static final long companySiteHashOffset = 1000L;
+
+    // the alphabet of the url dictionaries of the new companies: the densest one gives the shortest codes
+    // (the values kept as they are in the encoded urls are marked, so they are never taken for codes: see IdAlphabet.marksRawValues)
+    public static final IdAlphabet companyUrlDataIdAlphabet = IdAlphabet.BASE_64_URL_SAFE;
     @Autowired
 
     public AuthController(
@@ -86,20 +103,30 @@ public class AuthController {
         UserRepository userRepo,
         TokenRepository tokenRepo,
         TokenUserLinkRepository tokenUserLinkRepo,
-        CounterRepository counterRepo,
+        CounterIdAllocator counterIdAllocator,
         CompanyUrlDataRepository companyUrlDataRepo,
+        CompanyDomainHashIndex companyDomainHashIndex,
+        SessionTokenService sessionTokenService,
+        TokenFingerprintService tokenFingerprintService,
+        PasswordHashingService passwordHashingService,
         EmailService emailService,
-        CustomGenerator gen
+        CustomGenerator gen,
+        IdGenerator idGenerator
     ) {
         this.companyRepo = companyRepo;
         this.topLevelDomainRepo = topLevelDomainRepo;
         this.userRepo = userRepo;
         this.tokenRepo = tokenRepo;
         this.tokenUserLinkRepo = tokenUserLinkRepo;
-        this.counterRepo = counterRepo;
+        this.counterIdAllocator = counterIdAllocator;
         this.companyUrlDataRepo = companyUrlDataRepo;
+        this.companyDomainHashIndex = companyDomainHashIndex;
+        this.sessionTokenService = sessionTokenService;
+        this.tokenFingerprintService = tokenFingerprintService;
+        this.passwordHashingService = passwordHashingService;
         
         this.gen = gen;
+        this.idGenerator = idGenerator;
         this.emailService = emailService;
         this.urlValidator = new UrlValidator(); 
 
@@ -111,12 +138,6 @@ public class AuthController {
         this.om.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
     }
 
-    @Bean("companyControllerEncoder")
-    public PasswordEncoder encoder() {
-        return new BCryptPasswordEncoder();
-    }
-
-
     ////////////////////////////////////// METHODS FOR REGISTERING A COMPANY //////////////////////////////////////
     private void validateNewCompany(CompanyRegisterRequest req) {
         // any new company must satisfy the uniqueness constraints:
@@ -216,20 +237,16 @@ public class AuthController {
 
 
         // 5. create the top level domain
-        String idTopLevelDomain  = UUID.randomUUID().toString();        
-        while (this.topLevelDomainRepo.existsById(idTopLevelDomain)) {
-            idTopLevelDomain = UUID.randomUUID().toString();
-        }
+        // the generated ids are unique: no need to check the database
+        String idTopLevelDomain = this.idGenerator.nextId();
         
         TopLevelDomain topLevelDomain = new TopLevelDomain(idTopLevelDomain, req.topLevelDomain(), company);
         this.topLevelDomainRepo.save(topLevelDomain);
 
         // 6. create the owner token    
-        String idOwnerToken = UUID.randomUUID().toString();
-        while (this.tokenRepo.existsById(idOwnerToken)) {
-            idOwnerToken = UUID.randomUUID().toString();
-        }
+        String idOwnerToken = this.idGenerator.nextId();
 
+        // the token value is a secret: random, not generated as an id
         String ownerTokenString = UUID.randomUUID().toString();
 
         // 7. send the owner token to the owner via email
@@ -239,7 +256,8 @@ public class AuthController {
 
         // 8. create the owner token
         AppToken ownerToken = new AppToken(idOwnerToken, 
-                                this.encoder().encode(ownerTokenString), 
+                                this.passwordHashingService.encode(ownerTokenString), 
+                                this.tokenFingerprintService.fingerprint(ownerTokenString),
                                 company, 
                                 RoleManager.getRole(RoleManager.OWNER_ROLE)
                                 );
@@ -247,16 +265,15 @@ public class AuthController {
         this.tokenRepo.save(ownerToken);
 
         // 9. create a urlCompanyData object: the hash of the site will be generated by using
-        String companyUrlDataId = UUID.randomUUID().toString();
-
-        while (this.companyUrlDataRepo.existsById(companyUrlDataId)) {
-            companyUrlDataId= UUID.randomUUID().toString();
-        }
+        String companyUrlDataId = this.idGenerator.nextId();
 
-        String companySiteHash = this.gen.generateId(this.counterRepo.nextId(Company.COMPANY_COLLECTION_NAME) + companySiteHashOffset);
-        CompanyUrlData urlCompanyData = new CompanyUrlData(companyUrlDataId, company, companySiteHash);
+        String companySiteHash = this.gen.generateId(this.counterIdAllocator.nextId(Company.COMPANY_COLLECTION_NAME) + companySiteHashOffset);
+        CompanyUrlData urlCompanyData = new CompanyUrlData(companyUrlDataId, company, companySiteHash, companyUrlDataIdAlphabet);
         this.companyUrlDataRepo.save(urlCompanyData);
 
+        // the short urls of the company can be routed right away
+        this.companyDomainHashIndex.register(urlCompanyData);
+
         // 10. serialize the company
         String companySerialized = this.om.writeValueAsString(company);
 
@@ -300,24 +317,18 @@ public class AuthController {
     private AppToken validateOwnerToken(CompanyVerifyRequest req, Company company) {
         // Find tokens for this company with owner role
         Role ownerRole = RoleManager.getRole(RoleManager.OWNER_ROLE);
-        List<AppToken> companyTokens = this.tokenRepo.findByCompanyAndRole(company, ownerRole);
+        long companyTokens = this.tokenRepo.countByCompanyAndRole(company, ownerRole);
 
-        if (companyTokens.isEmpty()) {
+        if (companyTokens == 0) {
             throw new TokenAndUserExceptions.MissingTokenException("No token found for company verification");
         }
 
-        if (companyTokens.size() > 1) {
+        if (companyTokens > 1) {
             throw new CompanyAndUserExceptions.MultipleOwnersException("Multiple tokens found for company verification");
         }
         
         // Find a matching token
-        AppToken ownerToken = null;
-        for (AppToken token : companyTokens) {
-            if (this.encoder().matches(req.token(), token.getTokenHash())) {
-                ownerToken = token;
-                break;
-            }
-        }
+        AppToken ownerToken = this.findMatchingToken(req.token(), company, ownerRole);
         
         if (ownerToken == null) {
             throw new TokenAndUserExceptions.InvalidTokenException("Invalid verification token");
@@ -383,11 +394,8 @@ public class AuthController {
         // 5. create a link between the owner and the token
         AppUser ownerUser = this.userRepo.findById(req.email()).get();
 
-        // Generate a random ID for the token-user link
-        String tokenUserLinkId = UUID.randomUUID().toString();
-        while (this.tokenUserLinkRepo.existsById(tokenUserLinkId)) {
-            tokenUserLinkId = UUID.randomUUID().toString();
-        }
+        // Generate an ID for the token-user link
+        String tokenUserLinkId = this.idGenerator.nextId();
         
         TokenUserLink tokenUserLink = new TokenUserLink(tokenUserLinkId, ownerToken, ownerUser);
         
@@ -400,6 +408,38 @@ public class AuthController {
     }
 
 
+    // the token of the company and role matching the raw token, null if there is none
+    // the token is looked up by fingerprint (an indexed lookup) and confirmed by a single BCrypt check: the cost does not depend
+    // on the number of tokens of the company
+    private AppToken findMatchingToken(String rawToken, Company company, Role role) {
+        String fingerprint = this.tokenFingerprintService.fingerprint(rawToken);
+
+        Optional<AppToken> token = this.tokenRepo.findByTokenFingerprint(fingerprint);
+        if (token.isPresent()) {
+            AppToken candidate = token.get();
+            boolean matches = candidate.getCompany() != null && candidate.getCompany().getId().equals(company.getId())
+                    && role.equals(candidate.getRole())
+                    && this.passwordHashingService.matches(rawToken, candidate.getTokenHash());
+            return matches ? candidate : null;
+        }
+
+        // the tokens issued before the fingerprints existed are still checked one by one: the matching token gets its fingerprint,
+        // so the scan shrinks as the old tokens are used
+        for (AppToken candidate : this.tokenRepo.findByCompanyAndRoleAndTokenFingerprintIsNull(company, role)) {
+            if (this.passwordHashingService.matches(rawToken, candidate.getTokenHash())) {
+                this.tokenRepo.assignFingerprint(candidate.getTokenId(), fingerprint);
+                // the loaded token may be the stored instance (in memory repositories)
+                if (candidate.getTokenFingerprint() == null) {
+                    candidate.assignFingerprint(fingerprint);
+                }
+                return candidate;
+            }
+        }
+
+        return null;
+    }
+
+
     ////////////////////////////////////// METHODS FOR REGISTERING A USER //////////////////////////////////////
 
     private Role initialVerification(UserRegisterRequest req) {
@@ -443,7 +483,7 @@ public class AuthController {
         // create the owner user
         AppUser owner = new AppUser(req.email(),
                                 req.username(),
-                                encoder().encode(req.password()),
+                                this.passwordHashingService.encode(req.password()),
                                 req.firstName(),
                                 req.lastName(),
                                 req.middleName(),
@@ -461,21 +501,12 @@ public class AuthController {
         Role requestedRole = RoleManager.getRole(req.role());
         
         // Find tokens for this company and role
-        List<AppToken> tokens = this.tokenRepo.findByCompanyAndRole(company, requestedRole);
-
-        if (tokens.isEmpty()) {
+        if (this.tokenRepo.countByCompanyAndRole(company, requestedRole) == 0) {
             throw new TokenAndUserExceptions.TokenNotFoundForRoleException("No token found for role " + req.role() + " in this company");
         }
 
-        // iterate through the tokens and check if the roleToken is correct
-        AppToken matchingToken = null;
-        
-        for (AppToken token : tokens) {
-            if (encoder().matches(req.roleToken(), token.getTokenHash())) {
-                matchingToken = token; 
-                break;
-            }
-        }
+        // check if the roleToken is correct
+        AppToken matchingToken = this.findMatchingToken(req.roleToken(), company, requestedRole);
 
         if (matchingToken == null) {
             throw new TokenAndUserExceptions.InvalidTokenException("The passed token does not match any token for this specific role and company");
@@ -520,7 +551,7 @@ public class AuthController {
         // 5. create the user
         AppUser user = new AppUser(req.email(),
                                 req.username(),
-                                encoder().encode(req.password()),
+                                this.passwordHashingService.encode(req.password()),
                                 req.firstName(),
                                 req.lastName(),
                                 req.middleName(),
@@ -532,11 +563,8 @@ public class AuthController {
         // activate the token
         matchingToken.activate();
 
-        // Generate a random ID for the token-user link
-        String tokenUserLinkId = UUID.randomUUID().toString();
-        while (this.tokenUserLinkRepo.existsById(tokenUserLinkId)) {
-            tokenUserLinkId = UUID.randomUUID().toString();
-        }
+        // Generate an ID for the token-user link
+        String tokenUserLinkId = this.idGenerator.nextId();
 
         TokenUserLink tokenUserLink = new TokenUserLink(tokenUserLinkId, matchingToken, user);
 
@@ -595,5 +623,33 @@ public class AuthController {
         return new ResponseEntity<>(this.om.writeValueAsString(newUser),
                 HttpStatus.CREATED);
     }
-}
 
+
+    ////////////////////////////////////// METHODS FOR THE LOGIN //////////////////////////////////////
+    @Operation(summary = "Log in",
+               description = "Exchanges the credentials of the user (HTTP Basic) for a short-lived session token, " +
+                       "sent as \"Authorization: Bearer {token}\" by the next requests")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Session token issued"),
+        @ApiResponse(responseCode = "401", description = "Invalid credentials"),
+        @ApiResponse(responseCode = "403", description = "The user is associated with no token",
+                     content = @Content(mediaType = "application/json",
+                                       schema = @Schema(implementation = CustomErrorMessage.class)))
+    })
+    @PostMapping("/api/auth/login")
+    public ResponseEntity<String> login(@AuthenticationPrincipal UserDetails userDetails) throws JsonProcessingException {
+        AppUser user = this.userRepo.findById(userDetails.getUsername()).orElseThrow(
+                () -> new TokenAuthController.TokenNotFoundException("There is no user with the email: " + userDetails.getUsername()));
+
+        // the session token carries the token link of the user: the revocation of the token ends the session as well
+        TokenUserLink tokenUserLink = this.tokenUserLinkRepo.findFirstByUser(user).orElseThrow(
+                () -> new TokenAuthController.TokenNotFoundException("The user is currently associated with no tokens. Their access might have been revoked."));
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("token", this.sessionTokenService.issue(user, tokenUserLink.getId()));
+        response.put("token_type", "Bearer");
+        response.put("expires_in", this.sessionTokenService.getTimeToLive().toSeconds());
+
+        return ResponseEntity.ok(this.om.writeValueAsString(response));
+    }
+}
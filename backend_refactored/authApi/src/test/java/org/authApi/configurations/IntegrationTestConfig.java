@@ -19,6 +19,7 @@ import java.util.Properties;
 @ComponentScan(basePackages = {
     "org.apiUtils",
     "org.authApi.controllers",
+        "org.company.services",
 })
 @EnableMongoRepositories(basePackages = {"org.company.repositories", 
                                         "org.user.repositories", 
@@ -19,6 +19,7 @@ import org.utils.CustomGenerator;
 @ComponentScan(basePackages = {
         "org.apiUtils",
         "org.authApi.controllers",
+        "org.company.services",
         "org.stubs.repositories"
 })
 @PropertySource("classpath:mail.properties")
@@ -1,5 +1,14 @@
 package org.authApi.tests;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apiUtils.commonClasses.CounterIdAllocator;
+import org.apiUtils.commonClasses.TokenAuthController;
+import org.apiUtils.commonClasses.UserDetailsImp;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apiUtils.configurations.PasswordHashingService;
+import org.apiUtils.configurations.SessionTokenService;
+import org.apiUtils.configurations.TokenFingerprintService;
 import org.authApi.controllers.AuthController;
 import org.authApi.exceptions.CompanyAndUserExceptions;
 import org.authApi.exceptions.CompanyExceptions;
@@ -11,6 +20,7 @@ import org.authApi.requests.UserRegisterRequest;
 import org.company.entities.Company;
 import org.company.entities.CompanyUrlData;
 import org.company.entities.TopLevelDomain;
+import org.company.services.CompanyDomainHashIndex;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -19,6 +29,7 @@ import org.tokens.entities.AppToken;
 import org.tokens.entities.TokenUserLink;
 import org.user.entities.AppUser;
 import org.utils.CustomGenerator;
+import org.utils.UuidV7Generator;
 
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -29,8 +40,11 @@ import org.access.SubscriptionManager;
 
 import java.lang.reflect.Field;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
@@ -44,7 +58,11 @@ public class AuthManagementControllerTest {
     private final StubTokenUserLinkRepo tokenUserLinkRepo;
 
     private final StubCompanyUrlDataRepo companyUrlDataRepo;
+    private final CompanyDomainHashIndex companyDomainHashIndex;
     private final StubCounterRepo counterRepo;
+    private final SessionTokenService sessionTokenService;
+    private final TokenFingerprintService tokenFingerprintService;
+    private final PasswordHashingService passwordHashingService;
 
     private final CustomGenerator gen = new CustomGenerator();
     private final AuthController authCon;
@@ -173,7 +191,11 @@ public class AuthManagementControllerTest {
         this.tokenRepo = new StubTokenRepo(this.companyRepo);
         this.tokenUserLinkRepo = new StubTokenUserLinkRepo(this.tokenRepo, this.userRepo);
         this.companyUrlDataRepo = new StubCompanyUrlDataRepo(); 
+        this.companyDomainHashIndex = new CompanyDomainHashIndex(this.companyUrlDataRepo);
         this.counterRepo = new StubCounterRepo();
+        this.sessionTokenService = new SessionTokenService("", SessionTokenService.DEFAULT_TIME_TO_LIVE);
+        this.tokenFingerprintService = new TokenFingerprintService("");
+        this.passwordHashingService = new PasswordHashingService(PasswordHashingService.DEFAULT_STRENGTH, new SimpleMeterRegistry());
     
         
         // set a stubCustomGenerator, so we can verify the registerCompany method properly
@@ -182,10 +204,15 @@ public class AuthManagementControllerTest {
                 this.userRepo,
                 this.tokenRepo,
                 this.tokenUserLinkRepo,
-                this.counterRepo,
+                new CounterIdAllocator(this.counterRepo, CounterIdAllocator.DEFAULT_BLOCK_SIZE),
                 this.companyUrlDataRepo,
+                this.companyDomainHashIndex,
+                this.sessionTokenService,
+                this.tokenFingerprintService,
+                this.passwordHashingService,
                 null,
-                this.gen);
+                this.gen,
+                new UuidV7Generator());
     }
 
    // Helper method for password encoding
@@ -504,6 +531,10 @@ public class AuthManagementControllerTest {
             
             String expectedHash = this.gen.generateId(counterRepo.findByCollectionName(Company.COMPANY_COLLECTION_NAME).get().getCount() - 1 + AuthController.companySiteHashOffset);
             assertEquals(expectedHash, urlData.get().getCompanyDomainHashed());
+
+            // verify the short urls of the company can be routed
+            assertEquals(i + 1, companyDomainHashIndex.size(), "The company should be added to the domain hash index");
+            assertEquals(newCompany.getId(), companyDomainHashIndex.find(expectedHash).get().getCompany().getId());
             
             // verify the counts
             assertEquals(0, tokenUserLinkRepo.count(), "There should be no token user links");  
@@ -1786,6 +1817,48 @@ public class AuthManagementControllerTest {
     }
 
 
+    @SuppressWarnings("OptionalGetWithoutIsPresent")
+    @Test
+    void testTokenLookupByFingerprint() {
+        Role ownerRole = RoleManager.getRole(RoleManager.OWNER_ROLE);
+
+        Company fingerprinted = new Company("fingerprint_company", "fingerprintCompany", "fingerprintAddress",
+                "owner@fingerprint.com", "fingerprint.com", SubscriptionManager.getSubscription("TIER_1"));
+        Company legacy = new Company("legacy_company", "legacyCompany", "legacyAddress",
+                "owner@legacy.com", "legacy.com", SubscriptionManager.getSubscription("TIER_1"));
+        Company other = new Company("other_company", "otherCompany", "otherAddress",
+                "owner@other.com", "other.com", SubscriptionManager.getSubscription("TIER_1"));
+        companyRepo.saveAll(List.of(fingerprinted, legacy, other));
+
+        for (Company company : List.of(fingerprinted, legacy, other)) {
+            userRepo.save(new AppUser(company.getOwnerEmail(), company.getCompanyName() + "Owner", "password123",
+                    "firstName", "lastName", null, company, ownerRole));
+        }
+
+        // a token with a fingerprint and a token issued before the fingerprints existed
+        tokenRepo.save(new AppToken("fingerprint_token_id", encoder().encode("fingerprint_token"),
+                tokenFingerprintService.fingerprint("fingerprint_token"), fingerprinted, ownerRole));
+        tokenRepo.save(new AppToken("legacy_token_id", encoder().encode("legacy_token"), legacy, ownerRole));
+        tokenRepo.save(new AppToken("other_token_id", encoder().encode("other_token"),
+                tokenFingerprintService.fingerprint("other_token"), other, ownerRole));
+
+        assertDoesNotThrow(() -> authCon.verifyCompany(new CompanyVerifyRequest("fingerprint_company", "fingerprint_token", "owner@fingerprint.com")));
+
+        // the legacy token is verified by a scan, then gets its fingerprint
+        assertDoesNotThrow(() -> authCon.verifyCompany(new CompanyVerifyRequest("legacy_company", "legacy_token", "owner@legacy.com")));
+        assertEquals(tokenFingerprintService.fingerprint("legacy_token"), tokenRepo.findById("legacy_token_id").get().getTokenFingerprint());
+        assertEquals(Optional.of("legacy_token_id"),
+                tokenRepo.findByTokenFingerprint(tokenFingerprintService.fingerprint("legacy_token")).map(AppToken::getTokenId));
+
+        // the token of another company does not verify the company
+        assertThrows(TokenAndUserExceptions.InvalidTokenException.class,
+                () -> authCon.verifyCompany(new CompanyVerifyRequest("other_company", "fingerprint_token", "owner@other.com")));
+        assertThrows(TokenAndUserExceptions.InvalidTokenException.class,
+                () -> authCon.verifyCompany(new CompanyVerifyRequest("other_company", "unknown_token", "owner@other.com")));
+        assertFalse(companyRepo.findById("other_company").get().getVerified());
+    }
+
+
     @SuppressWarnings("OptionalGetWithoutIsPresent")
     @Test
     void testFullRegistrationFlow() throws IllegalAccessException, NoSuchFieldException {
@@ -1869,6 +1942,9 @@ public class AuthManagementControllerTest {
             Field tokenHashField = AppToken.class.getDeclaredField("tokenHash");
             tokenHashField.setAccessible(true);
             tokenHashField.set(ownerToken, this.encoder().encode("owner_token_" + i));
+            Field tokenFingerprintField = AppToken.class.getDeclaredField("tokenFingerprint");
+            tokenFingerprintField.setAccessible(true);
+            tokenFingerprintField.set(ownerToken, this.tokenFingerprintService.fingerprint("owner_token_" + i));
             tokenRepo.save(ownerToken);
 
             String finalTokenString = "owner_token_" + i;
@@ -1907,4 +1983,42 @@ public class AuthManagementControllerTest {
                         "Link should be associated with the correct token");
         }
     }
+
+
+    //////////////////////// login ////////////////////////
+    @Test
+    void testLogin() throws Exception {
+        Company company = new Company("login_company", "loginCompany", "loginAddress", "owner@login.com", "login.com", SubscriptionManager.getSubscription("TIER_1"));
+        companyRepo.save(company);
+
+        Role role = RoleManager.getRole(RoleManager.ADMIN_ROLE);
+        AppUser user = new AppUser("admin@login.com", "loginAdmin", "password123", "Login", "Admin", null, company, role);
+        userRepo.save(user);
+
+        // without a token link, no session token is issued
+        assertThrows(TokenAuthController.TokenNotFoundException.class, () -> authCon.login(new UserDetailsImp(user)));
+
+        AppToken token = new AppToken(gen.randomString(12), encoder().encode("tokenId"), company, role);
+        token.activate();
+        tokenRepo.save(token);
+        TokenUserLink link = new TokenUserLink("login_link_id", token, user);
+        tokenUserLinkRepo.save(link);
+
+        ResponseEntity<String> response = authCon.login(new UserDetailsImp(user));
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+
+        Map<String, Object> body = new ObjectMapper().readValue(response.getBody(), new TypeReference<>() {});
+        assertEquals("Bearer", body.get("token_type"));
+        assertEquals((int) SessionTokenService.DEFAULT_TIME_TO_LIVE.toSeconds(), body.get("expires_in"));
+
+        // the session token carries the claims of the user
+        UserDetailsImp principal = sessionTokenService.verify((String) body.get("token"));
+        assertEquals(user.getEmail(), principal.getUsername());
+        assertEquals(role, principal.getRole());
+        assertEquals(company.getId(), principal.getCompanyId());
+        assertEquals(link.getId(), principal.getTokenLinkId());
+        assertNull(principal.getUser());
+        assertNull(principal.getPassword());
+    }
 }
+
@@ -2,6 +2,7 @@ package org.company.entities;
 
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import org.springframework.data.annotation.Id;
+import org.utils.IdAlphabet;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.DocumentReference;
 import java.util.ArrayList;
@@ -22,8 +23,13 @@ public class CompanyUrlData {
     - companySiteHash: an encoding of the company: saved independently as it will be used for each shorter url
     - dataEncoded: natural strings -> hashes
     - dataDecoded: hashes -> natural string , this way both operations are optimized (for the cost of double memory usage)
+    - idAlphabet: the alphabet of the hashes saved in the data: missing from the documents created before
+    the alphabet was configurable (which all use the base 26 alphabet)
     
     - DataEncoded: List[level1Data, level2Data, ... ] where each levelData is a hash map that saves the encoded data seen in the given level. For example: {"some_value": "some_hash"}
+
+    The dataEncoded / dataDecoded lists are the former layout of the company dictionary: the entries are now saved as
+    UrlDictionaryEntry documents. The lists of the existing documents are imported (and then cleared) at startup.
     
     */
 
@@ -35,15 +41,23 @@ public class CompanyUrlData {
     @DocumentReference
     private Company company;
 
+    // unique: the short urls are routed to their company by this hash (see CompanyUrlDataOperationsImpl.ensureIndexes)
     private String companyDomainHashed;
 
     private List<Map<String, String>> dataEncoded;
     private List<Map<String, String>> dataDecoded;
 
+    private IdAlphabet idAlphabet;
+
     public CompanyUrlData(String id, Company company, String companyDomainHashed) {
+        this(id, company, companyDomainHashed, IdAlphabet.BASE_26);
+    }
+
+    public CompanyUrlData(String id, Company company, String companyDomainHashed, IdAlphabet idAlphabet) {
         this.id = id;
         this.company = company;
         this.companyDomainHashed = companyDomainHashed;
+        this.idAlphabet = idAlphabet;
         this.dataEncoded = new ArrayList<>();
         this.dataDecoded = new ArrayList<>();
     }
@@ -60,6 +74,11 @@ public class CompanyUrlData {
         return companyDomainHashed;
     }
 
+    // the alphabet cannot change once the data is created: the hashes of different alphabets collide
+    public IdAlphabet getIdAlphabet() {
+        return idAlphabet == null ? IdAlphabet.BASE_26 : idAlphabet;
+    }
+
 
     // private getters for Jackson
     public List<Map<String, String>> getDataEncoded() {
@@ -70,6 +89,17 @@ public class CompanyUrlData {
         return dataDecoded;
     }
 
+    // whether the document still holds a dictionary in the former layout
+    public boolean hasLegacyDictionary() {
+        return dataDecoded != null && dataDecoded.stream().anyMatch(m -> !m.isEmpty());
+    }
+
+    // called once the legacy dictionary is imported as UrlDictionaryEntry documents
+    public void clearLegacyDictionary() {
+        this.dataEncoded = new ArrayList<>();
+        this.dataDecoded = new ArrayList<>();
+    }
+
 
 
     // private setters and no-arg constructor added so that Jackson can work properly
@@ -99,6 +129,11 @@ public class CompanyUrlData {
         this.dataDecoded = dataDecoded;
     }
 
+    @SuppressWarnings("unused")
+    private void setIdAlphabet(IdAlphabet idAlphabet) {
+        this.idAlphabet = idAlphabet;
+    }
+
     @SuppressWarnings("unused")
     private void setId(String id) {
         this.id = id;
@@ -0,0 +1,47 @@
+package org.company.entities;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+
+// the order of the next code of a given level of a company dictionary: incremented atomically ($inc) for each new entry
+@Document(UrlDictionaryCounter.COLLECTION_NAME)
+public class UrlDictionaryCounter {
+    public static final String COLLECTION_NAME = "UrlDictionaryCounter";
+
+    @Id
+    private String id;
+
+    private long nextOrder;
+
+    public static String counterId(String companyId, int level) {
+        return companyId + ":" + level;
+    }
+
+    public UrlDictionaryCounter(String id, long nextOrder) {
+        this.id = id;
+        this.nextOrder = nextOrder;
+    }
+
+    @SuppressWarnings("unused")
+    private UrlDictionaryCounter() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getNextOrder() {
+        return nextOrder;
+    }
+
+    @SuppressWarnings("unused")
+    private void setId(String id) {
+        this.id = id;
+    }
+
+    @SuppressWarnings("unused")
+    private void setNextOrder(long nextOrder) {
+        this.nextOrder = nextOrder;
+    }
+}
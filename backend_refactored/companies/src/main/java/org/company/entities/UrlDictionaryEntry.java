@@ -0,0 +1,107 @@
+package org.company.entities;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+
+// the unique indexes of the collection are created at startup by UrlDictionaryEntryOperationsImpl.ensureIndexes
+// (the index annotations are only applied when the automatic index creation is enabled, which it is not by default)
+@Document(UrlDictionaryEntry.COLLECTION_NAME)
+public class UrlDictionaryEntry {
+    /*
+    A single entry of the url dictionary of a company: the code of a value (path segment, path variable,
+    query parameter name or value) in a given level of the company urls.
+
+    The entries replace the dataEncoded / dataDecoded lists of the CompanyUrlData document: each entry is written once
+    (when the value is first encoded) and the decoder only fetches the entries of the codes it needs.
+
+    An alias is an extra code of a value imported from the former layout (where a lost update could give a value two codes):
+    it is only kept to decode the urls already encoded with it, the value is always encoded with its main code.
+    */
+
+    public static final String COLLECTION_NAME = "UrlDictionaryEntry";
+
+    @Id
+    private String id;
+
+    private String companyId;
+
+    private int level;
+
+    private String value;
+
+    private String code;
+
+    private boolean alias;
+
+    public UrlDictionaryEntry(String companyId, int level, String value, String code) {
+        this(companyId, level, value, code, false);
+    }
+
+    public UrlDictionaryEntry(String companyId, int level, String value, String code, boolean alias) {
+        this.companyId = companyId;
+        this.level = level;
+        this.value = value;
+        this.code = code;
+        this.alias = alias;
+    }
+
+    // private setters and no-arg constructor added so that Jackson can work properly
+    @SuppressWarnings("unused")
+    private UrlDictionaryEntry() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getCompanyId() {
+        return companyId;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public boolean isAlias() {
+        return alias;
+    }
+
+    @SuppressWarnings("unused")
+    private void setId(String id) {
+        this.id = id;
+    }
+
+    @SuppressWarnings("unused")
+    private void setCompanyId(String companyId) {
+        this.companyId = companyId;
+    }
+
+    @SuppressWarnings("unused")
+    private void setLevel(int level) {
+        this.level = level;
+    }
+
+    @SuppressWarnings("unused")
+    private void setValue(String value) {
+        this.value = value;
+    }
+
+    @SuppressWarnings("unused")
+    private void setCode(String code) {
+        this.code = code;
+    }
+
+    @SuppressWarnings("unused")
+    private void setAlias(boolean alias) {
+        this.alias = alias;
+    }
+}
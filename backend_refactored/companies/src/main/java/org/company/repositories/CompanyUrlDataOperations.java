@@ -0,0 +1,16 @@
+package org.company.repositories;
+
+import org.company.entities.CompanyUrlData;
+
+import java.util.List;
+
+
+// the operations on the CompanyUrlData documents that cannot be expressed as derived queries (implemented with the MongoTemplate)
+public interface CompanyUrlDataOperations {
+
+    /**
+     * Returns all the documents without their legacy dictionary lists: what is needed to route a short url to its company
+     * (the company, the hash of its domain and the alphabet of its dictionary) without loading the dictionaries in the former layout.
+     */
+    List<CompanyUrlData> findAllRoutingData();
+}
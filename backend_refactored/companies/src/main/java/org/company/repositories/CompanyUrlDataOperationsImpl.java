@@ -0,0 +1,42 @@
+package org.company.repositories;
+
+import jakarta.annotation.PostConstruct;
+import org.company.entities.CompanyUrlData;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+
+
+// the implementation of the custom repository fragment: Spring Data finds it thanks to the "Impl" suffix
+@SuppressWarnings("unused")
+public class CompanyUrlDataOperationsImpl implements CompanyUrlDataOperations {
+
+    public static final String DOMAIN_HASH_INDEX_NAME = "company_domain_hash";
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public CompanyUrlDataOperationsImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    // the short urls are routed to their company by the hash of its domain: a hash belongs to a single company
+    // (the automatic index creation of Spring Data is disabled by default), ensureIndex does nothing if the index already exists
+    @PostConstruct
+    public void ensureIndexes() {
+        this.mongoTemplate.indexOps(CompanyUrlData.class).ensureIndex(new Index()
+                .on("companyDomainHashed", Sort.Direction.ASC)
+                .named(DOMAIN_HASH_INDEX_NAME).unique());
+    }
+
+    @Override
+    public List<CompanyUrlData> findAllRoutingData() {
+        Query query = new Query();
+        query.fields().exclude("dataEncoded", "dataDecoded");
+        return this.mongoTemplate.find(query, CompanyUrlData.class);
+    }
+}
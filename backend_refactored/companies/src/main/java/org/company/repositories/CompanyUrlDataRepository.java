@@ -4,6 +4,7 @@ import org.bson.types.ObjectId;
 import org.company.entities.Company;
 import org.company.entities.CompanyUrlData;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -12,9 +13,20 @@ import java.util.Optional;
 // for MongoDB repositories to be recognized as beans (in different subprojects), the @EnableMongoRepositories annotation must be added
 // to the main app configuration file. (generally the one with the @SpringBootApplication annotation)
 @Repository
-public interface CompanyUrlDataRepository extends MongoRepository<CompanyUrlData, ObjectId> {
+public interface CompanyUrlDataRepository extends MongoRepository<CompanyUrlData, ObjectId>, CompanyUrlDataOperations {
     boolean existsById(String id);
     Optional<CompanyUrlData> findFirstByCompany(Company company);
     List<CompanyUrlData> findByCompany(Company company);
     List<CompanyUrlData> findAll();
+
+    // served by the unique index on the hash (see CompanyUrlDataOperationsImpl.ensureIndexes)
+    Optional<CompanyUrlData> findFirstByCompanyDomainHashed(String companyDomainHashed);
+
+    // the documents whose lists (the former layout of the dictionary) are not empty: the candidates for the migration
+    @Query("{ 'dataDecoded.0': { $exists: true } }")
+    List<CompanyUrlData> findWithLegacyDictionary();
+
+    // the document of the given id if it still holds a legacy dictionary (served by the index on the id)
+    @Query("{ '_id': ?0, 'dataDecoded.0': { $exists: true } }")
+    Optional<CompanyUrlData> findWithLegacyDictionaryById(String id);
 }
@@ -0,0 +1,67 @@
+package org.company.repositories;
+
+import org.company.entities.UrlDictionaryEntry;
+import org.utils.IdAlphabet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+// the operations of the url dictionary that cannot be expressed as derived queries (implemented with the MongoTemplate)
+public interface UrlDictionaryEntryOperations {
+
+    /**
+     * Returns the code of the value in the given level of the company dictionary, assigning a new one if the value
+     * was never encoded. The order of the new code is reserved with an atomic increment of the level counter and the entry
+     * is inserted with an upsert: concurrent calls (even from different application instances) agree on a single code.
+     */
+    String getOrAssignCode(String companyId, int level, String value, IdAlphabet idAlphabet);
+
+    /**
+     * Returns the codes (value -> code) of the values in the given level of the company dictionary, assigning new ones to the values
+     * that were never encoded: the bulk version of {@link #getOrAssignCode}. The orders of the new codes are reserved with a single
+     * increment of the level counter and the entries are inserted with a single batch of upserts: the number of round trips does not
+     * depend on the number of values.
+     */
+    Map<String, String> getOrAssignCodes(String companyId, int level, Collection<String> values, IdAlphabet idAlphabet);
+
+    /**
+     * Imports the dictionary saved in the (legacy) CompanyUrlData document: one map (value -> code) and one map (code -> value) per level.
+     * Every code of the decoding maps is kept: the code of the encoding map is the main code of its value, the other codes
+     * of the same value are imported as aliases. The counters of the levels are moved past the imported codes before the entries are inserted.
+     * Importing the same data twice is harmless.
+     */
+    void importEntries(String companyId, List<Map<String, String>> encodedData, List<Map<String, String>> decodedData, IdAlphabet idAlphabet);
+
+    /**
+     * The entries of one level of a legacy dictionary. The main code of a value is its code in the encoding map
+     * (or its first code if the encoding map misses it): the result does not depend on the iteration order of the maps.
+     */
+    static List<UrlDictionaryEntry> legacyEntries(String companyId, int level, Map<String, String> encoded,
+                                                  Map<String, String> decoded, IdAlphabet idAlphabet) {
+        // value -> its codes
+        Map<String, List<String>> codes = new HashMap<>();
+        for (Map.Entry<String, String> e : decoded.entrySet()) {
+            codes.computeIfAbsent(e.getValue(), v -> new ArrayList<>()).add(e.getKey());
+        }
+
+        List<UrlDictionaryEntry> entries = new ArrayList<>();
+        for (Map.Entry<String, List<String>> e : codes.entrySet()) {
+            String value = e.getKey();
+            String mainCode = encoded == null ? null : encoded.get(value);
+            if (mainCode == null || !e.getValue().contains(mainCode)) {
+                mainCode = e.getValue().stream().min(Comparator.comparingLong(idAlphabet::orderFromId)).orElseThrow();
+            }
+
+            for (String code : e.getValue()) {
+                entries.add(new UrlDictionaryEntry(companyId, level, value, code, !code.equals(mainCode)));
+            }
+        }
+
+        return entries;
+    }
+}
@@ -0,0 +1,221 @@
+package org.company.repositories;
+
+import org.company.entities.UrlDictionaryCounter;
+import org.company.entities.UrlDictionaryEntry;
+import com.mongodb.bulk.BulkWriteError;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.utils.IdAlphabet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+// the implementation of the custom repository fragment: Spring Data finds it thanks to the "Impl" suffix
+@SuppressWarnings("unused")
+public class UrlDictionaryEntryOperationsImpl implements UrlDictionaryEntryOperations {
+
+    public static final String VALUE_INDEX_NAME = "company_level_value";
+
+    public static final String CODE_INDEX_NAME = "company_level_code";
+
+    // the error code of a duplicate key
+    private static final int DUPLICATE_KEY_ERROR = 11000;
+
+    // the number of orders tried for a code before giving up on the collisions
+    private static final int MAX_CODE_ATTEMPTS = 10;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public UrlDictionaryEntryOperationsImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    // the atomicity of getOrAssignCode relies on the unique indexes: they are created explicitly
+    // (the automatic index creation of Spring Data is disabled by default), ensureIndex does nothing if they already exist
+    @PostConstruct
+    public void ensureIndexes() {
+        IndexOperations indexOps = this.mongoTemplate.indexOps(UrlDictionaryEntry.class);
+
+        // the partial index only covers the main codes: the entries written before the aliases existed are main codes
+        this.mongoTemplate.updateMulti(new Query(Criteria.where("alias").exists(false)),
+                new Update().set("alias", false), UrlDictionaryEntry.class);
+
+        // a value has a single (main) code per level...
+        indexOps.ensureIndex(new Index()
+                .on("companyId", Sort.Direction.ASC).on("level", Sort.Direction.ASC).on("value", Sort.Direction.ASC)
+                .named(VALUE_INDEX_NAME).unique()
+                .partial(PartialIndexFilter.of(Criteria.where("alias").is(false))));
+
+        // ... and a code stands for a single value per level (this index also serves the decoding lookups)
+        indexOps.ensureIndex(new Index()
+                .on("companyId", Sort.Direction.ASC).on("level", Sort.Direction.ASC).on("code", Sort.Direction.ASC)
+                .named(CODE_INDEX_NAME).unique());
+    }
+
+    // the main code of the value (the upsert of a missing entry also sets these fields)
+    private static Query entryQuery(String companyId, int level, String value) {
+        return new Query(Criteria.where("companyId").is(companyId).and("level").is(level).and("value").is(value).and("alias").is(false));
+    }
+
+    // reserves the next orders of the level: returns the first one
+    private long reserveOrders(String companyId, int level, long count) {
+        Query counterQuery = new Query(Criteria.where("_id").is(UrlDictionaryCounter.counterId(companyId, level)));
+
+        UrlDictionaryCounter counter = this.mongoTemplate.findAndModify(counterQuery,
+                new Update().inc("nextOrder", count),
+                FindAndModifyOptions.options().upsert(true).returnNew(true),
+                UrlDictionaryCounter.class);
+
+        //noinspection DataFlowIssue (an upsert always returns a document)
+        return counter.getNextOrder() - count;
+    }
+
+    // the main codes of the given values (value -> code)
+    private Map<String, String> findCodes(String companyId, int level, Collection<String> values) {
+        Query query = new Query(Criteria.where("companyId").is(companyId).and("level").is(level).and("value").in(values).and("alias").is(false));
+
+        Map<String, String> codes = new HashMap<>();
+        for (UrlDictionaryEntry entry : this.mongoTemplate.find(query, UrlDictionaryEntry.class)) {
+            codes.put(entry.getValue(), entry.getCode());
+        }
+        return codes;
+    }
+
+    // a duplicate on the code index: the reserved order was already taken by an entry the counter does not know about
+    // (e.g. an entry imported by a migration that had not moved the counter yet)
+    private static boolean isCodeCollision(String message) {
+        return message != null && message.contains(CODE_INDEX_NAME);
+    }
+
+    @Override
+    public String getOrAssignCode(String companyId, int level, String value, IdAlphabet idAlphabet) {
+        Query entryQuery = entryQuery(companyId, level, value);
+
+        for (int attempt = 1; ; attempt++) {
+            UrlDictionaryEntry existing = this.mongoTemplate.findOne(entryQuery, UrlDictionaryEntry.class);
+            if (existing != null) {
+                return existing.getCode();
+            }
+
+            String code = idAlphabet.generateId(reserveOrders(companyId, level, 1));
+
+            // the code is only written if the entry does not exist yet: a concurrent request might have inserted it in the meantime
+            // (in which case the reserved order is simply skipped)
+            try {
+                UrlDictionaryEntry entry = this.mongoTemplate.findAndModify(entryQuery,
+                        new Update().setOnInsert("code", code),
+                        FindAndModifyOptions.options().upsert(true).returnNew(true),
+                        UrlDictionaryEntry.class);
+
+                //noinspection DataFlowIssue (an upsert always returns a document)
+                return entry.getCode();
+            }
+            catch (DuplicateKeyException e) {
+                // either two concurrent upserts of the same value (the unique value index lets only one of them insert the entry:
+                // the next attempt reads it) or a code collision (the next attempt reserves a new order)
+                if (isCodeCollision(e.getMessage()) && attempt >= MAX_CODE_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @Override
+    public Map<String, String> getOrAssignCodes(String companyId, int level, Collection<String> values, IdAlphabet idAlphabet) {
+        Map<String, String> codes = findCodes(companyId, level, values);
+
+        List<String> newValues = values.stream().distinct().filter(value -> !codes.containsKey(value)).toList();
+
+        for (int attempt = 1; !newValues.isEmpty(); attempt++) {
+            long order = reserveOrders(companyId, level, newValues.size());
+
+            // as in getOrAssignCode: the codes are only written if the entries do not exist yet, the entries inserted in the meantime
+            // by concurrent requests keep their codes (the reserved orders are skipped)
+            BulkOperations entryOps = this.mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UrlDictionaryEntry.class);
+            for (String value : newValues) {
+                entryOps.upsert(entryQuery(companyId, level, value), new Update().setOnInsert("code", idAlphabet.generateId(order++)));
+            }
+
+            // the values whose code collided with an existing one: they get new orders in the next attempt
+            List<String> collisions = new ArrayList<>();
+            try {
+                entryOps.execute();
+            }
+            catch (BulkOperationException e) {
+                // the concurrent upserts of the same values: the unique value index lets only one of them insert each entry
+                for (BulkWriteError error : e.getErrors()) {
+                    if (error.getCode() != DUPLICATE_KEY_ERROR || (isCodeCollision(error.getMessage()) && attempt >= MAX_CODE_ATTEMPTS)) {
+                        throw e;
+                    }
+                    if (isCodeCollision(error.getMessage())) {
+                        collisions.add(newValues.get(error.getIndex()));
+                    }
+                }
+            }
+
+            // the codes that won
+            Map<String, String> assigned = findCodes(companyId, level, newValues);
+            codes.putAll(assigned);
+
+            newValues = collisions.stream().filter(value -> !assigned.containsKey(value)).toList();
+        }
+
+        return codes;
+    }
+
+    @Override
+    public void importEntries(String companyId, List<Map<String, String>> encodedData, List<Map<String, String>> decodedData, IdAlphabet idAlphabet) {
+        List<UrlDictionaryEntry> entries = new ArrayList<>();
+        BulkOperations counterOps = this.mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UrlDictionaryCounter.class);
+
+        for (int level = 0; level < decodedData.size(); level++) {
+            Map<String, String> encoded = level < encodedData.size() ? encodedData.get(level) : null;
+            entries.addAll(UrlDictionaryEntryOperations.legacyEntries(companyId, level, encoded, decodedData.get(level), idAlphabet));
+
+            long nextOrder = 0;
+            for (String code : decodedData.get(level).keySet()) {
+                nextOrder = Math.max(nextOrder, idAlphabet.orderFromId(code) + 1);
+            }
+
+            // the new codes of the level must come after the imported ones
+            counterOps.upsert(new Query(Criteria.where("_id").is(UrlDictionaryCounter.counterId(companyId, level))),
+                    new Update().max("nextOrder", nextOrder));
+        }
+
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        // the counters are moved first: a code assigned while (or after a crash during) the import cannot collide with an imported one
+        counterOps.execute();
+
+        // a single unordered batch: the entries already imported (e.g. by a concurrent migration) are rejected by the unique indexes
+        try {
+            this.mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UrlDictionaryEntry.class).insert(entries).execute();
+        }
+        catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY_ERROR) {
+                    throw e;
+                }
+            }
+        }
+    }
+}
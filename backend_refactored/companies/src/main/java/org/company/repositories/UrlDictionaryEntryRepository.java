@@ -0,0 +1,19 @@
+package org.company.repositories;
+
+import org.company.entities.UrlDictionaryEntry;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+
+@Repository
+public interface UrlDictionaryEntryRepository extends MongoRepository<UrlDictionaryEntry, String>, UrlDictionaryEntryOperations {
+    List<UrlDictionaryEntry> findByCompanyId(String companyId);
+
+    // the decoder only fetches the entries of the codes found in the encoded url
+    List<UrlDictionaryEntry> findByCompanyIdAndLevelAndCodeIn(String companyId, int level, Collection<String> codes);
+
+    long countByCompanyId(String companyId);
+}
@@ -0,0 +1,66 @@
+package org.company.services;
+
+import org.company.entities.CompanyUrlData;
+import org.company.repositories.CompanyUrlDataRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Routes a short url to its company in a single lookup: the hash of the company domain (the first path segment of a short url)
+ * -> the CompanyUrlData document of the company.
+ * <p>
+ * The map is warmed at startup with all the companies and the new companies are added when they register.
+ * A hash missing from the map (e.g. a company registered by another application instance) is looked up in the database
+ * (through the unique index on the hash) and added to the map.
+ * <p>
+ * The documents are held without their legacy dictionary lists: only their company, hash and alphabet are meant to be used
+ * (the UrlDictionaryService reads the legacy lists from the database when it loads a dictionary).
+ */
+@Service
+public class CompanyDomainHashIndex {
+
+    private final CompanyUrlDataRepository urlDataRepo;
+
+    // company domain hash -> CompanyUrlData
+    private final ConcurrentHashMap<String, CompanyUrlData> companies;
+
+    @Autowired
+    public CompanyDomainHashIndex(CompanyUrlDataRepository urlDataRepo) {
+        this.urlDataRepo = urlDataRepo;
+        this.companies = new ConcurrentHashMap<>();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        for (CompanyUrlData companyUrlData : this.urlDataRepo.findAllRoutingData()) {
+            register(companyUrlData);
+        }
+    }
+
+    // called once the CompanyUrlData document of a new company is saved
+    public void register(CompanyUrlData companyUrlData) {
+        this.companies.put(companyUrlData.getCompanyDomainHashed(), companyUrlData);
+    }
+
+    public Optional<CompanyUrlData> find(String domainHash) {
+        CompanyUrlData companyUrlData = this.companies.get(domainHash);
+        if (companyUrlData != null) {
+            return Optional.of(companyUrlData);
+        }
+
+        Optional<CompanyUrlData> stored = this.urlDataRepo.findFirstByCompanyDomainHashed(domainHash);
+        stored.ifPresent(this::register);
+        return stored;
+    }
+
+    // the number of companies in the map
+    public int size() {
+        return this.companies.size();
+    }
+}
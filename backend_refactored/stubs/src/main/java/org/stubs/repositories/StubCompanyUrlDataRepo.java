@@ -55,6 +55,41 @@ public class StubCompanyUrlDataRepo implements CompanyUrlDataRepository {
         return res;
     }
 
+    @Override
+    public Optional<CompanyUrlData> findFirstByCompanyDomainHashed(String companyDomainHashed) {
+        for (CompanyUrlData data : this.db) {
+            if (data.getCompanyDomainHashed().equals(companyDomainHashed)) {
+                return Optional.of(data);
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public List<CompanyUrlData> findAllRoutingData() {
+        return new ArrayList<>(this.db);
+    }
+
+    @Override
+    public List<CompanyUrlData> findWithLegacyDictionary() {
+        List<CompanyUrlData> res = new ArrayList<>();
+        for (CompanyUrlData data : this.db) {
+            if (!data.getDataDecoded().isEmpty()) {
+                res.add(data);
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public Optional<CompanyUrlData> findWithLegacyDictionaryById(String id) {
+        for (CompanyUrlData data : this.db) {
+            if (data.getId() != null && data.getId().equals(id) && !data.getDataDecoded().isEmpty()) {
+                return Optional.of(data);
+            }
+        }
+        return Optional.empty();
+    }
 
     @Override
     public <S extends CompanyUrlData> S save(S entity) {
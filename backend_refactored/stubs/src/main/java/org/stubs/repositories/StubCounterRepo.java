@@ -61,6 +61,13 @@ public class StubCounterRepo implements CounterRepository {
         return new ArrayList<>(this.db);
     }
 
+    @Override
+    public long reserveIds(String collectionName, long count) {
+        CollectionCounter counter = this.findById(collectionName).orElseGet(() -> this.save(new CollectionCounter(collectionName)));
+        counter.setCount(counter.getCount() + count);
+        return counter.getCount() - count;
+    }
+
 
     // stub implementations for unused methods
     @Override
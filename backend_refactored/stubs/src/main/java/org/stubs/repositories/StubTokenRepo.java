@@ -2,6 +2,7 @@ package org.stubs.repositories;
 
 import org.access.Role;
 import org.company.entities.Company;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -47,6 +48,27 @@ public class StubTokenRepo implements TokenRepository {
                 .findFirst();
     }
 
+    @Override
+    public Optional<AppToken> findByTokenFingerprint(String tokenFingerprint) {
+        return this.db.stream()
+                .filter(token -> tokenFingerprint.equals(token.getTokenFingerprint()))
+                .findFirst();
+    }
+
+    @Override
+    public List<AppToken> findByCompanyAndRoleAndTokenFingerprintIsNull(Company company, Role role) {
+        return this.findByCompanyAndRole(company, role).stream()
+                .filter(token -> token.getTokenFingerprint() == null)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void assignFingerprint(String tokenId, String tokenFingerprint) {
+        this.findById(tokenId)
+                .filter(token -> token.getTokenFingerprint() == null)
+                .ifPresent(token -> token.assignFingerprint(tokenFingerprint));
+    }
+
     @Override
     public List<AppToken> findByTokenState(TokenState tokenState) {
         return this.db.stream()
@@ -95,6 +117,12 @@ public class StubTokenRepo implements TokenRepository {
     // Implement the basic MongoRepository methods
     @Override
     public <S extends AppToken> S save(S entity) {
+        // the unique index on the fingerprint
+        if (entity.getTokenFingerprint() != null && this.db.stream().anyMatch(token ->
+                !token.getTokenId().equals(entity.getTokenId()) && entity.getTokenFingerprint().equals(token.getTokenFingerprint()))) {
+            throw new DuplicateKeyException("A token with the same fingerprint already exists");
+        }
+
         for (int i = 0; i < this.db.size(); i++) {
             if (this.db.get(i).getTokenId().equals(entity.getTokenId())) {
                 this.db.set(i, entity);
@@ -67,6 +67,11 @@ public class StubTokenUserLinkRepo implements TokenUserLinkRepository {
         ).findFirst();
     }
 
+    @Override
+    public boolean existsByUserEmail(String email) {
+        return this.db.stream().anyMatch(link -> link.getUser() != null && link.getUser().getEmail().equals(email));
+    }
+
     @Override
     public Optional<TokenUserLink> findByUserAndToken(AppUser user, AppToken token) {
         return this.db.stream()
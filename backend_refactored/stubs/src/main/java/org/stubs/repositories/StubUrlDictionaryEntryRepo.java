@@ -0,0 +1,249 @@
+package org.stubs.repositories;
+
+import org.company.entities.UrlDictionaryEntry;
+import org.company.repositories.UrlDictionaryEntryOperations;
+import org.company.repositories.UrlDictionaryEntryRepository;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.repository.query.FluentQuery;
+import org.springframework.stereotype.Repository;
+import org.utils.IdAlphabet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+// all the methods are synchronized: the stub stands for the atomic operations of the database (upserts and $inc)
+@Repository
+@SuppressWarnings({"null", "NullableProblems", "ConstantConditions"})
+public class StubUrlDictionaryEntryRepo implements UrlDictionaryEntryRepository {
+    private final List<UrlDictionaryEntry> db;
+
+    // counter id -> order of the next code
+    private final Map<String, Long> counters;
+
+    public StubUrlDictionaryEntryRepo() {
+        this.db = new ArrayList<>();
+        this.counters = new HashMap<>();
+    }
+
+    private UrlDictionaryEntry find(String companyId, int level, String value) {
+        for (UrlDictionaryEntry e : this.db) {
+            if (e.getCompanyId().equals(companyId) && e.getLevel() == level && e.getValue().equals(value) && !e.isAlias()) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    private boolean codeExists(String companyId, int level, String code) {
+        for (UrlDictionaryEntry e : this.db) {
+            if (e.getCompanyId().equals(companyId) && e.getLevel() == level && e.getCode().equals(code)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String counterId(String companyId, int level) {
+        return companyId + ":" + level;
+    }
+
+    @Override
+    public synchronized String getOrAssignCode(String companyId, int level, String value, IdAlphabet idAlphabet) {
+        UrlDictionaryEntry existing = find(companyId, level, value);
+        if (existing != null) {
+            return existing.getCode();
+        }
+
+        long order = this.counters.merge(counterId(companyId, level), 1L, Long::sum) - 1;
+        UrlDictionaryEntry entry = new UrlDictionaryEntry(companyId, level, value, idAlphabet.generateId(order));
+        this.db.add(entry);
+        return entry.getCode();
+    }
+
+    @Override
+    public synchronized Map<String, String> getOrAssignCodes(String companyId, int level, Collection<String> values, IdAlphabet idAlphabet) {
+        Map<String, String> codes = new HashMap<>();
+        for (String value : values) {
+            codes.put(value, getOrAssignCode(companyId, level, value, idAlphabet));
+        }
+        return codes;
+    }
+
+    @Override
+    public synchronized void importEntries(String companyId, List<Map<String, String>> encodedData, List<Map<String, String>> decodedData, IdAlphabet idAlphabet) {
+        for (int level = 0; level < decodedData.size(); level++) {
+            Map<String, String> encoded = level < encodedData.size() ? encodedData.get(level) : null;
+
+            // the entries rejected by the unique indexes of the database are skipped
+            for (UrlDictionaryEntry entry : UrlDictionaryEntryOperations.legacyEntries(companyId, level, encoded, decodedData.get(level), idAlphabet)) {
+                if (!codeExists(companyId, level, entry.getCode()) && (entry.isAlias() || find(companyId, level, entry.getValue()) == null)) {
+                    this.db.add(entry);
+                }
+            }
+
+            long nextOrder = 0;
+            for (String code : decodedData.get(level).keySet()) {
+                nextOrder = Math.max(nextOrder, idAlphabet.orderFromId(code) + 1);
+            }
+            this.counters.merge(counterId(companyId, level), nextOrder, Math::max);
+        }
+    }
+
+    @Override
+    public synchronized List<UrlDictionaryEntry> findByCompanyId(String companyId) {
+        List<UrlDictionaryEntry> res = new ArrayList<>();
+        for (UrlDictionaryEntry e : this.db) {
+            if (e.getCompanyId().equals(companyId)) {
+                res.add(e);
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public synchronized List<UrlDictionaryEntry> findByCompanyIdAndLevelAndCodeIn(String companyId, int level, Collection<String> codes) {
+        List<UrlDictionaryEntry> res = new ArrayList<>();
+        for (UrlDictionaryEntry e : this.db) {
+            if (e.getCompanyId().equals(companyId) && e.getLevel() == level && codes.contains(e.getCode())) {
+                res.add(e);
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public synchronized long countByCompanyId(String companyId) {
+        return this.db.stream().filter(e -> e.getCompanyId().equals(companyId)).count();
+    }
+
+    @Override
+    public synchronized <S extends UrlDictionaryEntry> S save(S entity) {
+        this.db.add(entity);
+        return entity;
+    }
+
+    @Override
+    public synchronized <S extends UrlDictionaryEntry> List<S> saveAll(Iterable<S> entities) {
+        List<S> savedEntities = new ArrayList<>();
+        for (S entity : entities) {
+            savedEntities.add(save(entity));
+        }
+        return savedEntities;
+    }
+
+    @Override
+    public synchronized List<UrlDictionaryEntry> findAll() {
+        return new ArrayList<>(this.db);
+    }
+
+    @Override
+    public synchronized long count() {
+        return this.db.size();
+    }
+
+    @Override
+    public synchronized void deleteAll() {
+        this.db.clear();
+        this.counters.clear();
+    }
+
+    // The remaining methods from MongoRepository interface that we don't expect to use in tests
+
+    @Override
+    public Optional<UrlDictionaryEntry> findById(String id) {
+        return Optional.empty();
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        return false;
+    }
+
+    @Override
+    public List<UrlDictionaryEntry> findAllById(Iterable<String> ids) {
+        return new ArrayList<>();
+    }
+
+    @Override
+    public void deleteById(String id) {
+        // Not implemented for test stub
+    }
+
+    @Override
+    public void delete(UrlDictionaryEntry entity) {
+        // Not implemented for test stub
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends String> ids) {
+        // Not implemented for test stub
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends UrlDictionaryEntry> entities) {
+        // Not implemented for test stub
+    }
+
+    @Override
+    public <S extends UrlDictionaryEntry> S insert(S entity) {
+        return save(entity);
+    }
+
+    @Override
+    public <S extends UrlDictionaryEntry> List<S> insert(Iterable<S> entities) {
+        return saveAll(entities);
+    }
+
+    @Override
+    public <S extends UrlDictionaryEntry> Optional<S> findOne(Example<S> example) {
+        return Optional.empty();
+    }
+
+    @Override
+    public <S extends UrlDictionaryEntry> List<S> findAll(Example<S> example) {
+        return List.of();
+    }
+
+    @Override
+    public <S extends UrlDictionaryEntry> List<S> findAll(Example<S> example, Sort sort) {
+        return List.of();
+    }
+
+    @Override
+    public <S extends UrlDictionaryEntry> Page<S> findAll(Example<S> example, Pageable pageable) {
+        return null;
+    }
+
+    @Override
+    public <S extends UrlDictionaryEntry> long count(Example<S> example) {
+        return 0;
+    }
+
+    @Override
+    public <S extends UrlDictionaryEntry> boolean exists(Example<S> example) {
+        return false;
+    }
+
+    @Override
+    public <S extends UrlDictionaryEntry, R> R findBy(Example<S> example, Function<FluentQuery.FetchableFluentQuery<S>, R> queryFunction) {
+        return null;
+    }
+
+    @Override
+    public List<UrlDictionaryEntry> findAll(Sort sort) {
+        return List.of();
+    }
+
+    @Override
+    public Page<UrlDictionaryEntry> findAll(Pageable pageable) {
+        return null;
+    }
+}
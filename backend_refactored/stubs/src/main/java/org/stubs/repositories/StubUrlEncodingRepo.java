@@ -13,11 +13,14 @@ import org.user.repositories.UrlEncodingRepository;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @SuppressWarnings("NullableProblems")
 @Repository
@@ -100,6 +103,51 @@ public class StubUrlEncodingRepo implements UrlEncodingRepository {
                 .collect(Collectors.toList());
     }
     
+    @Override
+    public long countByUserAndUrlEncodingTimeAfter(AppUser user, LocalDateTime time) {
+        return this.findByUserAndUrlEncodingTimeAfter(user, time).size();
+    }
+
+    @Override
+    public Map<String, Long> countEncodingsByUserSince(LocalDateTime time) {
+        return urlEncodings.stream()
+                .filter(encoding -> encoding.getUrlEncodingTime().isAfter(time))
+                .collect(Collectors.groupingBy(encoding -> encoding.getUser().getEmail(), Collectors.counting()));
+    }
+
+    @Override
+    public long insertAll(Collection<UrlEncoding> urlEncodings) {
+        long inserted = 0;
+        for (UrlEncoding urlEncoding : urlEncodings) {
+            // the encodings already saved are rejected by the index on the id
+            if (this.urlEncodings.stream().noneMatch(e -> e.getId().equals(urlEncoding.getId()))) {
+                this.urlEncodings.add(urlEncoding);
+                inserted++;
+            }
+        }
+        return inserted;
+    }
+
+    @Override
+    public long pruneHistory(Map<String, Long> thresholds, LocalDateTime before) {
+        int size = urlEncodings.size();
+        urlEncodings.removeIf(encoding -> {
+            Long threshold = thresholds.get(encoding.getUser().getEmail());
+            return threshold != null && encoding.getUrlEncodingCount() <= threshold && encoding.getUrlEncodingTime().isBefore(before);
+        });
+        return size - urlEncodings.size();
+    }
+
+    @Override
+    public Stream<UrlEncoding> streamHistory(AppUser user, long after, long before, int limit) {
+        // a copy: the stream is read while the history is written
+        Stream<UrlEncoding> history = new ArrayList<>(urlEncodings).stream()
+                .filter(encoding -> encoding.getUser().getEmail().equals(user.getEmail())
+                        && encoding.getUrlEncodingCount() > after && encoding.getUrlEncodingCount() < before)
+                .sorted(Comparator.comparingLong(UrlEncoding::getUrlEncodingCount).reversed());
+        return limit > 0 ? history.limit(limit) : history;
+    }
+
     @Override
     public <S extends UrlEncoding> S save(S entity) {
         // Remove existing entity with same ID if present
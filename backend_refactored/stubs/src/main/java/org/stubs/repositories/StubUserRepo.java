@@ -115,6 +115,29 @@ public class StubUserRepo implements UserRepository {
         return Optional.empty();
     }
 
+    @Override
+    public long incrementUrlEncodingCount(String email, long count) {
+        AppUser user = findById(email).orElseThrow(() -> new IllegalStateException("There is no user with the email: " + email));
+        for (long i = 0; i < count; i++) {
+            user.incrementUrlEncodingCount();
+        }
+        return user.getUrlEncodingCount();
+    }
+
+    @Override
+    public List<AppUser> findByEmailGreaterThan(String email, Pageable pageable) {
+        return this.db.stream()
+                .filter(u -> u.getEmail().compareTo(email) > 0)
+                .sorted(Comparator.comparing(AppUser::getEmail))
+                .limit(pageable.getPageSize())
+                .toList();
+    }
+
+    @Override
+    public void updatePassword(String email, String passwordHash) {
+        findById(email).ifPresent(user -> user.setPassword(passwordHash));
+    }
+
     @Override
     public Optional<AppUser> findByUsername(String username) {
         for (AppUser u : this.db) {
@@ -8,14 +8,18 @@ import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.access.Role;
 import org.access.RoleManager;
 import org.access.Subscription;
+import org.apiUtils.commonClasses.ActiveTokenLinkCache;
 import org.apiUtils.commonClasses.TokenAuthController;
+import org.apiUtils.configurations.CachingAuthenticationProvider;
+import org.apiUtils.configurations.PasswordHashingService;
+import org.apiUtils.configurations.TokenFingerprintService;
 import org.company.entities.Company;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -28,15 +32,17 @@ import org.springframework.validation.annotation.Validated;
 import org.tokenApi.exceptions.TokenExceptions;
 import org.user.entities.AppUser;
 import org.user.repositories.UserRepository;
+import org.utils.IdGenerator;
 
+import java.security.SecureRandom;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
 
 @RestController
 @Validated
@@ -44,23 +50,40 @@ public class TokenController extends TokenAuthController {
 
     private final TokenRepository tokenRepo;
     private final ObjectMapper objectMapper;
-    private final BCryptPasswordEncoder encoder;
+    private final PasswordHashingService passwordHashingService;
+    private final IdGenerator idGenerator;
+    private final CachingAuthenticationProvider authenticationProvider;
+    private final TokenFingerprintService tokenFingerprintService;
+
+    // the number of random bytes of a token value
+    private static final int TOKEN_BYTES = 16;
+    // a collision of two 128 bits random values is never expected: the retries only guard against a broken random source
+    private static final int MAX_TOKEN_ATTEMPTS = 3;
+
+    private final SecureRandom random = new SecureRandom();
 
     @Autowired
     public TokenController(
                         UserRepository userRepository,
                         TokenUserLinkRepository tokenUserLinkRepository,
-                        TokenRepository tokenRepository) {
-
-        super(userRepository, tokenUserLinkRepository);
+                        TokenRepository tokenRepository,
+                        CachingAuthenticationProvider authenticationProvider,
+                        ActiveTokenLinkCache activeTokenLinkCache,
+                        TokenFingerprintService tokenFingerprintService,
+                        PasswordHashingService passwordHashingService,
+                        IdGenerator idGenerator) {
+
+        super(userRepository, tokenUserLinkRepository, activeTokenLinkCache);
         this.tokenRepo = tokenRepository;
+        this.authenticationProvider = authenticationProvider;
+        this.tokenFingerprintService = tokenFingerprintService;
 
         this.objectMapper = new ObjectMapper();
         this.objectMapper.registerModule(new JavaTimeModule());
         this.objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
         this.objectMapper.setDateFormat(new SimpleDateFormat("dd-MM-yyyy hh:mm"));
-
-        this.encoder = new BCryptPasswordEncoder();
+        this.passwordHashingService = passwordHashingService;
+        this.idGenerator = idGenerator;
     }
 
     /**
@@ -86,40 +109,34 @@ public class TokenController extends TokenAuthController {
         }
     }
 
-    // can be annotated as @Transactional, but might slow down the performance significantly.
-    private String generateCompanyUniqueToken(Company company) {
-        // extract the company tokens from the database
-        List<AppToken> companyTokens = tokenRepo.findByCompany(company); 
-
-        boolean match = true;
-
-        String tokenValue = null;
-        while (match) {
-            match = false;
-            tokenValue = UUID.randomUUID().toString();
-            // iterate over the company tokens and check if the token is unique
-            for (AppToken token : companyTokens) {
-                if (encoder.matches(tokenValue, token.getTokenHash())) {
-                    match = true;
-                    break;
-                }
-            }
-        }
-        
-        // at this point of the code we know that the token is unique
-        return tokenValue;
+    // a token value: 128 random bits
+    private String generateTokenValue() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        this.random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
     }
 
-    private void saveToken(String tokenValue, Company company, Role requestedRole) {
-        // create the new token
-        String tokenId = UUID.randomUUID().toString(); 
-
-        while (tokenRepo.findById(tokenId).isPresent()) {
-            tokenId = UUID.randomUUID().toString();
+    // saves a new token and returns its raw value
+    // the uniqueness of the value is guaranteed by the unique index on the fingerprint, not by comparing the value to the
+    // company tokens: the cost does not depend on the number of tokens
+    private String saveUniqueToken(Company company, Role requestedRole) {
+        // create the new token (the generated ids are unique: no need to check the database)
+        String tokenId = idGenerator.nextId();
+
+        for (int attempt = 1; ; attempt++) {
+            String tokenValue = generateTokenValue();
+            AppToken token = new AppToken(tokenId, passwordHashingService.encode(tokenValue), tokenFingerprintService.fingerprint(tokenValue),
+                    company, requestedRole);
+            try {
+                tokenRepo.save(token);
+                return tokenValue;
+            }
+            catch (DuplicateKeyException e) {
+                if (attempt == MAX_TOKEN_ATTEMPTS) {
+                    throw e;
+                }
+            }
         }
-
-        AppToken token = new AppToken(tokenId, tokenValue, company, requestedRole);
-        tokenRepo.save(token);
     }
 
     /**
@@ -144,10 +161,9 @@ public class TokenController extends TokenAuthController {
         // make sure limits are not exceeded
         checkTokenLimit(company, requestedRole);
 
-        // generate a unique token for the company
-        String tokenValue = generateCompanyUniqueToken(company);
-        
-        saveToken(tokenValue, company, requestedRole);
+        // generate and save a unique token
+        String tokenValue = saveUniqueToken(company, requestedRole);
+
         // Create response with token value
 
         Map<String, String> response = new HashMap<>();
@@ -215,6 +231,10 @@ public class TokenController extends TokenAuthController {
         // revoke the token
         this.revokeTokenTransaction(validateUserTokenLink(targetUser));
 
+        // the next request of the target user goes through the full authentication and token check (instead of reusing cached ones)
+        this.authenticationProvider.evict(targetUser.getEmail());
+        this.activeTokenLinkCache.invalidate(targetUser.getEmail());
+
         Map<String, String> response = new HashMap<>();
         response.put("message", "Token(s) successfully revoked for user: " + targetUser.getEmail());
         return ResponseEntity.ok(objectMapper.writeValueAsString(response));
@@ -1,6 +1,7 @@
 package org.tokenApi.tests;
 
 
+import org.access.RateLimit;
 import org.access.Subscription;
 
 class SubTest1 implements Subscription {
@@ -34,6 +35,16 @@ class SubTest1 implements Subscription {
         return 10;
     }
 
+    @Override
+    public RateLimit getUserRateLimit() {
+        return new RateLimit(30, 10);
+    }
+
+    @Override
+    public RateLimit getCompanyRateLimit() {
+        return new RateLimit(60, 20);
+    }
+
     @Override
     public Integer getMinUrlLength() {
         return 20;
@@ -81,6 +92,16 @@ class SubTest2 implements Subscription {
         return 1;
     }
 
+    @Override
+    public RateLimit getUserRateLimit() {
+        return new RateLimit(30, 10);
+    }
+
+    @Override
+    public RateLimit getCompanyRateLimit() {
+        return new RateLimit(60, 20);
+    }
+
     @Override
     public Integer getMinUrlLength() {
         return 100;
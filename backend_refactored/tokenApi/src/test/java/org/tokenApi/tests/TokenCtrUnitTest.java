@@ -3,18 +3,25 @@ package org.tokenApi.tests;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.access.Role;
 import org.access.RoleManager;
 import org.access.Subscription;
 import org.access.SubscriptionManager;
+import org.apiUtils.commonClasses.ActiveTokenLinkCache;
 import org.apiUtils.commonClasses.TokenAuthController;
 import org.apiUtils.commonClasses.UserDetailsImp;
+import org.apiUtils.configurations.AppUserDetailService;
+import org.apiUtils.configurations.CachingAuthenticationProvider;
+import org.apiUtils.configurations.PasswordHashingService;
+import org.apiUtils.configurations.TokenFingerprintService;
 import org.company.entities.Company;
 import org.company.entities.CompanyUrlData;
 import org.company.entities.TopLevelDomain;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -28,8 +35,10 @@ import org.tokens.entities.TokenUserLink;
 import org.url.UrlProcessor;
 import org.user.entities.AppUser;
 import org.utils.CustomGenerator;
+import org.utils.UuidV7Generator;
 
 import java.text.SimpleDateFormat;
+import java.time.Clock;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Comparator;
@@ -38,6 +47,10 @@ import java.util.Map;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 
 class BaseTest {
@@ -53,6 +66,10 @@ class BaseTest {
     protected final CustomGenerator gen;
     protected final UrlProcessor urlProcessor;
     protected final PasswordEncoder encoder;
+    protected final CachingAuthenticationProvider authenticationProvider;
+    protected final ActiveTokenLinkCache activeTokenLinkCache;
+    protected final TokenFingerprintService tokenFingerprintService;
+    protected final PasswordHashingService passwordHashingService;
 
     public BaseTest() {
         companyRepo = new StubCompanyRepo();
@@ -66,6 +83,11 @@ class BaseTest {
         gen = new CustomGenerator();
         urlProcessor = new UrlProcessor(gen);
         encoder = new BCryptPasswordEncoder();
+        authenticationProvider = new CachingAuthenticationProvider(new AppUserDetailService(userRepo), encoder,
+                CachingAuthenticationProvider.DEFAULT_TIME_TO_LIVE, Clock.systemUTC());
+        activeTokenLinkCache = new ActiveTokenLinkCache(tokenUserLinkRepo);
+        tokenFingerprintService = new TokenFingerprintService("");
+        passwordHashingService = new PasswordHashingService(PasswordHashingService.DEFAULT_STRENGTH, new SimpleMeterRegistry());
     }
 
     @BeforeEach
@@ -191,7 +213,12 @@ class GenerateTokenTest extends BaseTest {
         tokenController = new TokenController(
             userRepo,
             tokenUserLinkRepo,
-            tokenRepo
+            tokenRepo,
+            authenticationProvider,
+            activeTokenLinkCache,
+            tokenFingerprintService,
+            passwordHashingService,
+            new UuidV7Generator()
         );
     }
 
@@ -398,6 +425,57 @@ class GenerateTokenTest extends BaseTest {
             }
         }
     }
+
+    @Test
+    public void testGeneratedTokenIsHashedAndFingerprinted() throws Exception {
+        Company company = setUpCompany("TIER_1");
+        AppUser owner = setUpUser(company, RoleManager.getRole(RoleManager.OWNER_ROLE), true);
+
+        ResponseEntity<String> response = tokenController.generateToken(RoleManager.EMPLOYEE_ROLE, new UserDetailsImp(owner));
+        String tokenValue = new ObjectMapper().readValue(response.getBody(), new TypeReference<Map<String, String>>() {}).get("token");
+
+        // the raw value is never stored: the token is found by its fingerprint and confirmed by its hash
+        AppToken token = tokenRepo.findByTokenFingerprint(tokenFingerprintService.fingerprint(tokenValue)).orElseThrow();
+        assertNotEquals(tokenValue, token.getTokenHash());
+        assertTrue(encoder.matches(tokenValue, token.getTokenHash()));
+        assertEquals(RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), token.getRole());
+    }
+
+    // the generation of a token for a company with many tokens: the new value is neither compared to the existing tokens nor probed
+    // in the database (the unique index on the fingerprint rejects a duplicate)
+    @Test
+    public void testGenerationDoesNotScanTheCompanyTokens() throws Exception {
+        int companyTokens = 1_000;
+        int generations = 5;
+        Role adminRole = RoleManager.getRole(RoleManager.ADMIN_ROLE);
+        Company company = setUpCompany("test1");
+        AppUser owner = setUpUser(company, RoleManager.getRole(RoleManager.OWNER_ROLE), true);
+        UserDetails ownerDetails = new UserDetailsImp(owner);
+
+        // the existing tokens of the company (the hashes are not real BCrypt hashes: setting up thousands of them would take minutes)
+        for (int i = 0; i < companyTokens; i++) {
+            tokenRepo.save(new AppToken("existing_token_" + i, "hash_" + i, tokenFingerprintService.fingerprint("existing_" + i),
+                    company, adminRole));
+        }
+
+        StubTokenRepo spiedTokenRepo = Mockito.spy(tokenRepo);
+        TokenController spiedController = new TokenController(userRepo, tokenUserLinkRepo, spiedTokenRepo, authenticationProvider,
+                activeTokenLinkCache, tokenFingerprintService, passwordHashingService, new UuidV7Generator());
+
+        for (int i = 0; i < generations; i++) {
+            assertEquals(HttpStatus.OK, spiedController.generateToken(RoleManager.EMPLOYEE_ROLE, ownerDetails).getStatusCode());
+        }
+
+        // one insert per token, and only the count of the tokens of the role is read
+        verify(spiedTokenRepo, times(generations)).save(any(AppToken.class));
+        verify(spiedTokenRepo, never()).existsById(any());
+        verify(spiedTokenRepo, never()).findAll();
+        verify(spiedTokenRepo, never()).findByCompany(any());
+        verify(spiedTokenRepo, never()).findByCompanyAndRole(any(), any());
+        verify(spiedTokenRepo, never()).findByCompanyAndRoleIn(any(), any());
+        verify(spiedTokenRepo, never()).findByCompanyAndRoleAndTokenFingerprintIsNull(any(), any());
+        verify(spiedTokenRepo, never()).findByTokenFingerprint(any());
+    }
 }
 
 
@@ -410,7 +488,12 @@ class RevokeTokenTest extends BaseTest {
         tokenController = new TokenController(
             userRepo,
             tokenUserLinkRepo,
-            tokenRepo
+            tokenRepo,
+            authenticationProvider,
+            activeTokenLinkCache,
+            tokenFingerprintService,
+            passwordHashingService,
+            new UuidV7Generator()
         );
     }    
     
@@ -675,7 +758,12 @@ class GetAllTokensTest extends BaseTest {
         tokenController = new TokenController(
             userRepo,
             tokenUserLinkRepo,
-            tokenRepo
+            tokenRepo,
+            authenticationProvider,
+            activeTokenLinkCache,
+            tokenFingerprintService,
+            passwordHashingService,
+            new UuidV7Generator()
         );
     }
 
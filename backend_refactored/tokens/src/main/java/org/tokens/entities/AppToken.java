@@ -37,6 +37,12 @@ public class AppToken {
     @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     private String tokenHash;
 
+    // the lookup key of the token: a keyed digest of the raw token (unique index, see TokenOperationsImpl.ensureIndexes)
+    // the tokens issued before the fingerprints existed have none
+    @Schema(description = "Fingerprint of the token value for lookups", accessMode = Schema.AccessMode.WRITE_ONLY)
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+    private String tokenFingerprint;
+
     @Schema(description = "Current state of the token", example = "ACTIVE")
     private TokenState tokenState;
 
@@ -53,9 +59,10 @@ public class AppToken {
     @Schema(description = "Time when the token was created", example = "2023-12-31T23:59:59")
     private LocalDateTime createdAt;
 
-    public AppToken(String tokenId, String tokenHash, Company company, Role role, LocalDateTime expirationTime) {
+    public AppToken(String tokenId, String tokenHash, String tokenFingerprint, Company company, Role role, LocalDateTime expirationTime) {
         this.tokenId = tokenId;
         this.tokenHash = tokenHash;
+        this.tokenFingerprint = tokenFingerprint;
         this.company = company;
         this.role = role;
 
@@ -65,8 +72,17 @@ public class AppToken {
         this.createdAt = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
     }
 
+    public AppToken(String tokenId, String tokenHash, String tokenFingerprint, Company company, Role role) {
+        this(tokenId, tokenHash, tokenFingerprint, company, role, null);
+    }
+
+    // a token without fingerprint
+    public AppToken(String tokenId, String tokenHash, Company company, Role role, LocalDateTime expirationTime) {
+        this(tokenId, tokenHash, null, company, role, expirationTime);
+    }
+
     public AppToken(String tokenId, String tokenHash, Company company, Role role) {
-        this(tokenId, tokenHash, company, role, null);
+        this(tokenId, tokenHash, null, company, role, null);
     }
     
     // Private no-argument constructor
@@ -81,6 +97,14 @@ public class AppToken {
         this.tokenState = TokenState.ACTIVE;
     }
 
+    // the fingerprint of a token issued before the fingerprints existed
+    public void assignFingerprint(String tokenFingerprint) {
+        if (this.tokenFingerprint != null) {
+            throw new IllegalStateException("The token already has a fingerprint");
+        }
+        this.tokenFingerprint = tokenFingerprint;
+    }
+
     public void expire() {
         if (this.tokenState == TokenState.EXPIRED) {
             throw new IllegalStateException("Expired tokens cannot be made expired again");
@@ -97,6 +121,10 @@ public class AppToken {
         return tokenHash;
     }
     
+    public String getTokenFingerprint() {
+        return tokenFingerprint;
+    }
+
     public TokenState getTokenState() {
         return tokenState;
     }
@@ -134,6 +162,11 @@ public class AppToken {
         this.tokenHash = tokenHash;
     }
     
+    @SuppressWarnings("unused")
+    private void setTokenFingerprint(String tokenFingerprint) {
+        this.tokenFingerprint = tokenFingerprint;
+    }
+
     @SuppressWarnings("unused")
     private void setTokenState(TokenState tokenState) {
         this.tokenState = tokenState;
@@ -0,0 +1,12 @@
+package org.tokens.repositories;
+
+
+// the operations on the AppToken documents that cannot be expressed as derived queries (implemented with the MongoTemplate)
+public interface TokenOperations {
+
+    /**
+     * Sets the fingerprint of a token issued before the fingerprints existed (once it was matched by its hash),
+     * without rewriting the rest of the document. Does nothing if the token already has a fingerprint.
+     */
+    void assignFingerprint(String tokenId, String tokenFingerprint);
+}
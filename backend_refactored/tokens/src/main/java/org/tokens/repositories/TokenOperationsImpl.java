@@ -0,0 +1,43 @@
+package org.tokens.repositories;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.tokens.entities.AppToken;
+
+
+// the implementation of the custom repository fragment: Spring Data finds it thanks to the "Impl" suffix
+@SuppressWarnings("unused")
+public class TokenOperationsImpl implements TokenOperations {
+
+    public static final String FINGERPRINT_INDEX_NAME = "token_fingerprint";
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public TokenOperationsImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    // the tokens are looked up by fingerprint: a fingerprint belongs to a single token (the tokens without fingerprint are left out)
+    // (the automatic index creation of Spring Data is disabled by default), ensureIndex does nothing if the index already exists
+    @PostConstruct
+    public void ensureIndexes() {
+        this.mongoTemplate.indexOps(AppToken.class).ensureIndex(new Index()
+                .on("tokenFingerprint", Sort.Direction.ASC)
+                .named(FINGERPRINT_INDEX_NAME).unique().sparse());
+    }
+
+    @Override
+    public void assignFingerprint(String tokenId, String tokenFingerprint) {
+        this.mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(tokenId).and("tokenFingerprint").exists(false)),
+                new Update().set("tokenFingerprint", tokenFingerprint),
+                AppToken.class);
+    }
+}
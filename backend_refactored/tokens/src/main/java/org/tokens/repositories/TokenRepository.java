@@ -11,11 +11,17 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface TokenRepository extends MongoRepository<AppToken, String> {
+public interface TokenRepository extends MongoRepository<AppToken, String>, TokenOperations {
     @SuppressWarnings("null")
     Optional<AppToken> findById(String id);
     
     Optional<AppToken> findByTokenId(String tokenId);
+
+    // served by the unique index on the fingerprint (see TokenOperationsImpl.ensureIndexes)
+    Optional<AppToken> findByTokenFingerprint(String tokenFingerprint);
+
+    // the tokens issued before the fingerprints existed
+    List<AppToken> findByCompanyAndRoleAndTokenFingerprintIsNull(Company company, Role role);
     
     List<AppToken> findByTokenState(AppToken.TokenState tokenState);
 
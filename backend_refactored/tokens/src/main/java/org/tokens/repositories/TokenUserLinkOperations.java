@@ -0,0 +1,13 @@
+package org.tokens.repositories;
+
+
+// the operations on the TokenUserLink documents that cannot be expressed as derived queries (implemented with the MongoTemplate)
+public interface TokenUserLinkOperations {
+
+    /**
+     * Whether the user (given by email: the id referenced by the links) is associated with a token.
+     * <p>
+     * An indexed existence check: no link is loaded (nor the token and the user it references).
+     */
+    boolean existsByUserEmail(String email);
+}
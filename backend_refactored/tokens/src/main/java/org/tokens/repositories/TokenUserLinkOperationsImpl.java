@@ -0,0 +1,40 @@
+package org.tokens.repositories;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.tokens.entities.TokenUserLink;
+
+
+// the implementation of the custom repository fragment: Spring Data finds it thanks to the "Impl" suffix
+@SuppressWarnings("unused")
+public class TokenUserLinkOperationsImpl implements TokenUserLinkOperations {
+
+    public static final String USER_INDEX_NAME = "user";
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public TokenUserLinkOperationsImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    // every authorized request looks the links up by user
+    // (the automatic index creation of Spring Data is disabled by default), ensureIndex does nothing if the index already exists
+    @PostConstruct
+    public void ensureIndexes() {
+        this.mongoTemplate.indexOps(TokenUserLink.class).ensureIndex(new Index()
+                .on("user", Sort.Direction.ASC)
+                .named(USER_INDEX_NAME));
+    }
+
+    @Override
+    public boolean existsByUserEmail(String email) {
+        // the document reference is saved as the id of the user
+        return this.mongoTemplate.exists(new Query(Criteria.where("user").is(email)), TokenUserLink.class);
+    }
+}
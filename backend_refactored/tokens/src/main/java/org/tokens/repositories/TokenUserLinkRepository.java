@@ -10,7 +10,7 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface TokenUserLinkRepository extends MongoRepository<TokenUserLink, String> {
+public interface TokenUserLinkRepository extends MongoRepository<TokenUserLink, String>, TokenUserLinkOperations {
     @SuppressWarnings("null")
     Optional<TokenUserLink> findById(String id);
     
@@ -0,0 +1,52 @@
+package org.urlApi.controllers;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import jakarta.servlet.http.HttpServletRequest;
+import org.apiUtils.configurations.SecurityConfiguration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import org.urlApi.services.ShortUrlResolver;
+
+
+/**
+ * The public endpoint of the short urls: the end users clicking a short url are redirected to the original url.
+ * <p>
+ * The requests are permitted without authentication (see {@link SecurityConfiguration#SHORT_URL_PATH_REGEX}) and skip the token
+ * checks of the api endpoints: a short url is resolved from memory by the {@link ShortUrlResolver}.
+ */
+@RestController
+public class RedirectController {
+
+    private final ShortUrlResolver shortUrlResolver;
+
+    @Autowired
+    public RedirectController(ShortUrlResolver shortUrlResolver) {
+        this.shortUrlResolver = shortUrlResolver;
+    }
+
+    @Operation(summary = "Follow a short url",
+               description = "Redirects to the original url of the short url")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "302", description = "Redirect to the original url"),
+        @ApiResponse(responseCode = "404", description = "No company matches the short url")
+    })
+    @GetMapping("/{domainHash:" + SecurityConfiguration.SHORT_URL_DOMAIN_HASH_REGEX + "}/**")
+    public ResponseEntity<Void> redirect(@PathVariable String domainHash, HttpServletRequest request) {
+        // the path of the short url, starting with the hash of the company domain
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+
+        String originalUrl = this.shortUrlResolver.resolve(request.getScheme() + "://", path, request.getQueryString());
+
+        // a temporary redirect: the original url follows the active top level domain of the company, which might change
+        return ResponseEntity.status(HttpStatus.FOUND)
+                .header(HttpHeaders.LOCATION, originalUrl)
+                .build();
+    }
+}
@@ -7,6 +7,7 @@ import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
 import org.access.Subscription;
 import org.apache.commons.validator.routines.UrlValidator;
+import org.apiUtils.commonClasses.ActiveTokenLinkCache;
 import org.apiUtils.commonClasses.TokenAuthController;
 import org.company.entities.CompanyUrlData;
 import org.company.repositories.CompanyUrlDataRepository;
@@ -14,34 +15,54 @@ import org.company.entities.Company;
 import org.company.entities.TopLevelDomain;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.PropertySource;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.tokens.repositories.TokenUserLinkRepository;
 import org.springframework.validation.annotation.Validated;
 import org.user.entities.UrlEncoding;
 import org.urlApi.exceptions.UrlExceptions;
+import org.urlApi.services.DailyEncodingCounter;
+import org.urlApi.services.ShortUrlResolver;
+import org.urlApi.services.UrlDictionaryService;
+import org.url.ConcurrentEncodingDictionary;
+import org.url.EncodingDictionary;
 import org.url.UrlLevelEntity;
 import org.url.UrlProcessor;
 import org.company.repositories.TopLevelDomainRepository;
+import org.company.services.CompanyDomainHashIndex;
 import org.user.entities.AppUser;
+import org.user.repositories.HistoryPage;
 import org.user.repositories.UrlEncodingRepository;
 import org.user.repositories.UserRepository;
+import org.user.services.SyncUrlEncodingWriter;
+import org.user.services.UrlEncodingWriter;
 import org.springframework.core.env.Environment;
 
-import java.time.LocalDate;
-import java.time.LocalDateTime;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
 
 
 @RestController
@@ -49,11 +70,27 @@ import java.util.Map;
 @PropertySource("classpath:app.properties")
 public class UrlController extends TokenAuthController {
 
+    // the maximum number of urls of a batch
+    public static final int MAX_BATCH_SIZE = 10_000;
+
+    // the media type of the batch endpoints: one JSON document per line
+    public static final String NDJSON_VALUE = "application/x-ndjson";
+
+    // the maximum number of encodings of a history page
+    public static final int MAX_HISTORY_PAGE_SIZE = 1_000;
+
+    // the response header holding the cursor of the next history page
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final CompanyUrlDataRepository urlDataRepo;
     private final UrlEncodingRepository urlEncodingRepo;
     private final TopLevelDomainRepository topLevelDomainRepo;
     private final UserRepository userRepository;
     private final UrlProcessor urlProcessor;
+    private final UrlDictionaryService urlDictionaryService;
+    private final DailyEncodingCounter dailyEncodingCounter;
+    private final ShortUrlResolver shortUrlResolver;
+    private final UrlEncodingWriter urlEncodingWriter;
     private final UrlValidator urlValidator;
     private final ObjectMapper objectMapper;
     private final Environment environment;
@@ -61,18 +98,27 @@ public class UrlController extends TokenAuthController {
 
     @Autowired
     public UrlController(CompanyUrlDataRepository urlDataRepo,
+                         UrlDictionaryService urlDictionaryService,
                          UrlEncodingRepository urlEncodingRepo,
                          TopLevelDomainRepository topLevelDomainRepo,
                          UserRepository userRepository, 
                          TokenUserLinkRepository tokenUserLinkRepository,
+                         ActiveTokenLinkCache activeTokenLinkCache,
+                         DailyEncodingCounter dailyEncodingCounter,
+                         ShortUrlResolver shortUrlResolver,
+                         UrlEncodingWriter urlEncodingWriter,
                          UrlProcessor urlProcessor,
                          Environment environment) {
-        super(userRepository, tokenUserLinkRepository);
+        super(userRepository, tokenUserLinkRepository, activeTokenLinkCache);
         this.urlDataRepo = urlDataRepo;
         this.urlEncodingRepo = urlEncodingRepo;
         this.topLevelDomainRepo = topLevelDomainRepo;
         this.userRepository = userRepository;
         this.urlProcessor = urlProcessor;
+        this.urlDictionaryService = urlDictionaryService;
+        this.dailyEncodingCounter = dailyEncodingCounter;
+        this.shortUrlResolver = shortUrlResolver;
+        this.urlEncodingWriter = urlEncodingWriter;
         this.urlValidator = new UrlValidator(new String[]{"http", "https"});
         this.environment = environment;
         
@@ -83,6 +129,7 @@ public class UrlController extends TokenAuthController {
 
     // added for unit testing without loading external resources
     public UrlController(CompanyUrlDataRepository urlDataRepo,
+                         UrlDictionaryService urlDictionaryService,
                          UrlEncodingRepository urlEncodingRepo,
                          TopLevelDomainRepository topLevelDomainRepo,
                          UserRepository userRepository,
@@ -91,10 +138,15 @@ public class UrlController extends TokenAuthController {
                          int port) {
         
         this(urlDataRepo, 
+        urlDictionaryService,
         urlEncodingRepo, 
         topLevelDomainRepo, 
         userRepository, 
         tokenUserLinkRepository, 
+        new ActiveTokenLinkCache(tokenUserLinkRepository),
+        new DailyEncodingCounter(urlEncodingRepo, new SyncUrlEncodingWriter(urlEncodingRepo)),
+        new ShortUrlResolver(new CompanyDomainHashIndex(urlDataRepo), topLevelDomainRepo, urlDictionaryService, urlProcessor),
+        new SyncUrlEncodingWriter(urlEncodingRepo),
         urlProcessor,
         null);
 
@@ -129,9 +181,8 @@ public class UrlController extends TokenAuthController {
         Integer userDailyLimit = sub.getEncodingDailyLimit();
 
         if (userDailyLimit != null) {
-            LocalDateTime atStartOfDay = LocalDateTime.from(LocalDate.now().atStartOfDay());
-            
-            int todayCount = this.urlEncodingRepo.findByUserAndUrlEncodingTimeAfter(user, atStartOfDay).size();
+            // counted in memory: the encodings of the day are not loaded
+            long todayCount = this.dailyEncodingCounter.countToday(user);
 
             if (todayCount >= userDailyLimit) {
                 throw new UrlExceptions.DailyLimitExceededException("The user's current subscription encoding daily limit is hit: " + userDailyLimit);
@@ -142,7 +193,12 @@ public class UrlController extends TokenAuthController {
     }
 
 
-    private Map.Entry<String, String> validateUrlCompanyConstraints(String url, Company userCompany) {
+    private Map.Entry<List<UrlLevelEntity>, String> validateUrlCompanyConstraints(String url, Company userCompany) {
+        return this.validateUrlCompanyConstraints(url, this.topLevelDomainRepo.findByCompany(userCompany));
+    }
+
+    // the domains of the company are passed by the caller: a batch of urls loads them once
+    private Map.Entry<List<UrlLevelEntity>, String> validateUrlCompanyConstraints(String url, List<TopLevelDomain> companyDomains) {
         // at this point, the user has not hit the daily limit
 
         // break down the url into path segments
@@ -155,8 +211,6 @@ public class UrlController extends TokenAuthController {
             urlTopLevelDomain = "www." + urlTopLevelDomain;
         }
 
-        List<TopLevelDomain> companyDomains = this.topLevelDomainRepo.findByCompany(userCompany);
-
         // to save a warning in case the url matches an inactive top level domain.
         String urlDomainPossibleWarning = null;
 
@@ -190,28 +244,32 @@ public class UrlController extends TokenAuthController {
         // make sure to work only with the active top level domain
         urlLevels.set(1, new UrlLevelEntity(companyActivateLevelDomain, null, null, null));
 
-        // build the url from the url levels 
-        String urlString = this.urlProcessor.buildUrlFromUrlLevels(urlLevels);
-
-        // create a map entry to return the url level entity and the warning
-        return new AbstractMap.SimpleEntry<>(urlString, urlDomainPossibleWarning);
+        // create a map entry to return the url levels and the warning: the url levels are passed as they are to the encoder
+        // so the url is parsed only once per encode request
+        return new AbstractMap.SimpleEntry<>(urlLevels, urlDomainPossibleWarning);
     }
 
     @SuppressWarnings("OptionalGetWithoutIsPresent")
     @Transactional
-    private String encodeUrlTransaction(Company userCompany, AppUser currentUser, Subscription sub, String urlWithActiveDomain) {
+    private String encodeUrlTransaction(Company userCompany, AppUser currentUser, Subscription sub, List<UrlLevelEntity> urlLevelsWithActiveDomain) {
         CompanyUrlData companyUrlData = this.urlDataRepo.findFirstByCompany(userCompany).get();
 
-        List<Map<String, String>> encodedData = companyUrlData.getDataEncoded();
-        List<Map<String, String>> decodedData = companyUrlData.getDataDecoded();
+        // the dictionary is shared by all the requests of the company: the codes of the new entries are assigned atomically
+        // (and only the new entries are written to the database)
+        ConcurrentEncodingDictionary dictionary = this.urlDictionaryService.getDictionary(companyUrlData);
+
+        String encodedUrl = this.urlProcessor.encode(urlLevelsWithActiveDomain, getUrlEncodePrefix(), companyUrlData.getCompanyDomainHashed(),
+                dictionary, sub.getMinParameterLength(), sub.getMinVariableLength());
 
-        String encodedUrl = this.urlProcessor.encode(urlWithActiveDomain, getUrlEncodePrefix(), companyUrlData.getCompanyDomainHashed(),
-                encodedData, decodedData, sub.getMinParameterLength(), sub.getMinVariableLength());
+        // the url is built back into a string only once: to be saved in the user's history
+        String urlWithActiveDomain = this.urlProcessor.buildUrlFromUrlLevels(urlLevelsWithActiveDomain);
 
-        // make sure to update the urlEncodingRepo with the new encoded url
-        this.urlEncodingRepo.save(new UrlEncoding(currentUser, urlWithActiveDomain, encodedUrl, currentUser.getUrlEncodingCount() + 1));
-        // persist the changes to the url company data
-        this.urlDataRepo.save(companyUrlData);
+        // update the user's url encoding count: atomically, the user instance might be shared with concurrent requests
+        long urlEncodingCount = this.userRepository.incrementUrlEncodingCount(currentUser.getEmail());
+
+        // the history entry is saved right away or buffered, depending on the durability mode (see UrlEncodingWriterConfiguration)
+        this.urlEncodingWriter.write(new UrlEncoding(currentUser, urlWithActiveDomain, encodedUrl, urlEncodingCount));
+        this.dailyEncodingCounter.recordEncoding(currentUser);
         return encodedUrl;
     }
 
@@ -231,17 +289,14 @@ public class UrlController extends TokenAuthController {
         Subscription sub = userCompany.getSubscription();
 
         // 3. check whether the user is passing an url matching the user's company top level domain
-        Map.Entry<String, String> urlLevelEntity = this.validateUrlCompanyConstraints(url, userCompany);
+        Map.Entry<List<UrlLevelEntity>, String> urlLevelEntity = this.validateUrlCompanyConstraints(url, userCompany);
 
-        String urlWithActiveDomain = urlLevelEntity.getKey();
+        List<UrlLevelEntity> urlLevelsWithActiveDomain = urlLevelEntity.getKey();
         String urlDomainPossibleWarning = urlLevelEntity.getValue();
 
         // at this point, all constraints are met, time for the encoding transaction
-        String encodedUrl = this.encodeUrlTransaction(userCompany, currentUser, sub, urlWithActiveDomain);
-        
-        // update the user's url encoding count
-        currentUser.incrementUrlEncodingCount();
-        this.userRepository.save(currentUser);
+        String encodedUrl = this.encodeUrlTransaction(userCompany, currentUser, sub, urlLevelsWithActiveDomain);
+
 
 
         HashMap<String, Object> map = new HashMap<>();
@@ -253,6 +308,189 @@ public class UrlController extends TokenAuthController {
         return ResponseEntity.ok(this.objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(map));
     }
 
+    //////////////////////////////////////// Methods for the encode/batch endpoint ////////////////////////////////////////
+
+    // the url of a batch, and the outcome of its encoding: either the encoded url (and a possible warning) or an error
+    private static final class BatchItem {
+        private final String url;
+        private List<UrlLevelEntity> urlLevels;
+        private String warning;
+        private String encodedUrl;
+        private String error;
+
+        private BatchItem(String url) {
+            this.url = url;
+        }
+
+        private Map<String, Object> toResult(int index) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("index", index);
+            result.put("url", this.url);
+            if (this.error != null) {
+                result.put("error", this.error);
+            } else {
+                result.put("encoded_url", this.encodedUrl);
+                if (this.warning != null) {
+                    result.put("warning", this.warning);
+                }
+            }
+            return result;
+        }
+    }
+
+    // the number of urls the user can still encode today
+    private long remainingDailyEncodings(AppUser user) {
+        Integer userDailyLimit = user.getCompany().getSubscription().getEncodingDailyLimit();
+        if (userDailyLimit == null) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, userDailyLimit - this.dailyEncodingCounter.countToday(user));
+    }
+
+    // every url is validated before anything is written: the invalid ones (and the ones past the daily limit) get an error
+    private void validateBatch(List<BatchItem> items, AppUser currentUser) {
+        long remaining = this.remainingDailyEncodings(currentUser);
+        if (remaining == 0) {
+            throw new UrlExceptions.DailyLimitExceededException("The user's current subscription encoding daily limit is hit: "
+                    + currentUser.getCompany().getSubscription().getEncodingDailyLimit());
+        }
+
+        List<TopLevelDomain> companyDomains = this.topLevelDomainRepo.findByCompany(currentUser.getCompany());
+        long accepted = 0;
+
+        for (BatchItem item : items) {
+            if (item.url == null || !urlValidator.isValid(item.url)) {
+                item.error = "Invalid URL";
+                continue;
+            }
+
+            try {
+                Map.Entry<List<UrlLevelEntity>, String> urlLevelEntity = this.validateUrlCompanyConstraints(item.url, companyDomains);
+                item.urlLevels = urlLevelEntity.getKey();
+                item.warning = urlLevelEntity.getValue();
+            } catch (UrlExceptions.UrlCompanyDomainExpired | UrlExceptions.InvalidTopLevelDomainException | IllegalArgumentException e) {
+                item.error = e.getMessage();
+                continue;
+            }
+
+            if (accepted == remaining) {
+                item.urlLevels = null;
+                item.error = "The user's current subscription encoding daily limit is hit";
+                continue;
+            }
+            accepted++;
+        }
+    }
+
+    @SuppressWarnings("OptionalGetWithoutIsPresent")
+    @Transactional
+    private void encodeBatchTransaction(Company userCompany, AppUser currentUser, Subscription sub, List<BatchItem> validItems) {
+        CompanyUrlData companyUrlData = this.urlDataRepo.findFirstByCompany(userCompany).get();
+
+        // the codes of all the values of the batch are fetched (or assigned) at once: the encodings below only read the dictionary
+        List<Set<String>> values = new ArrayList<>();
+        for (BatchItem item : validItems) {
+            List<Set<String>> itemValues = this.urlProcessor.extractEncodableValues(item.urlLevels, sub.getMinParameterLength(),
+                    sub.getMinVariableLength());
+            for (int level = 0; level < itemValues.size(); level++) {
+                if (level == values.size()) {
+                    values.add(new HashSet<>());
+                }
+                values.get(level).addAll(itemValues.get(level));
+            }
+        }
+        ConcurrentEncodingDictionary dictionary = this.urlDictionaryService.getEncodingDictionary(companyUrlData, values);
+
+        String urlEncodePrefix = getUrlEncodePrefix();
+        for (BatchItem item : validItems) {
+            item.encodedUrl = this.urlProcessor.encode(item.urlLevels, urlEncodePrefix, companyUrlData.getCompanyDomainHashed(),
+                    dictionary, sub.getMinParameterLength(), sub.getMinVariableLength());
+        }
+
+        // a single increment of the user's count: the encodings of the batch take the counts up to the new one
+        long urlEncodingCount = this.userRepository.incrementUrlEncodingCount(currentUser.getEmail(), validItems.size());
+        long count = urlEncodingCount - validItems.size();
+
+        List<UrlEncoding> urlEncodings = new ArrayList<>(validItems.size());
+        for (BatchItem item : validItems) {
+            urlEncodings.add(new UrlEncoding(currentUser, this.urlProcessor.buildUrlFromUrlLevels(item.urlLevels), item.encodedUrl, ++count));
+        }
+        // the new documents are inserted with a single bulk write (or buffered with the other encodings)
+        this.urlEncodingWriter.writeAll(urlEncodings);
+        this.dailyEncodingCounter.recordEncodings(currentUser, validItems.size());
+    }
+
+    private ResponseEntity<StreamingResponseBody> encodeUrlBatch(List<String> urls, AppUser currentUser) {
+        if (urls.isEmpty()) {
+            throw new UrlExceptions.InvalidUrlException("No url to encode");
+        }
+
+        List<BatchItem> items = urls.stream().map(BatchItem::new).toList();
+        this.validateBatch(items, currentUser);
+
+        List<BatchItem> validItems = items.stream().filter(item -> item.error == null).toList();
+        if (!validItems.isEmpty()) {
+            Company userCompany = currentUser.getCompany();
+            this.encodeBatchTransaction(userCompany, currentUser, userCompany.getSubscription(), validItems);
+        }
+
+        return this.ndjsonResponse(items.size(), i -> items.get(i).toResult(i));
+    }
+
+    private static void verifyBatchSize(int size) {
+        if (size > MAX_BATCH_SIZE) {
+            throw new UrlExceptions.BatchSizeExceededException("A batch cannot hold more than " + MAX_BATCH_SIZE + " urls");
+        }
+    }
+
+    @PostMapping(value = "/api/url/encode/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> encodeUrlBatch(@RequestBody List<String> urls,
+                                                                @AuthenticationPrincipal UserDetails currentUserDetails) {
+        AppUser currentUser = this.authorizeUserToken(currentUserDetails);
+        verifyBatchSize(urls.size());
+        return this.encodeUrlBatch(urls, currentUser);
+    }
+
+    // the NDJSON body of the batch endpoints: one url per line, as a JSON string (or as it is); the reading stops past the maximum
+    // batch size, and a malformed line is kept as a null url (reported as an invalid url of the batch)
+    private List<String> readNdjsonUrls(InputStream body) throws IOException {
+        List<String> urls = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.strip();
+            if (line.isEmpty()) {
+                continue;
+            }
+            verifyBatchSize(urls.size() + 1);
+
+            try {
+                urls.add(line.startsWith("\"") ? this.objectMapper.readValue(line, String.class) : line);
+            } catch (JsonProcessingException e) {
+                urls.add(null);
+            }
+        }
+        return urls;
+    }
+
+    // one line per url, in the order of the request: each result is built and written in turn (the results are never all held in memory)
+    private ResponseEntity<StreamingResponseBody> ndjsonResponse(int size, IntFunction<Map<String, Object>> result) {
+        StreamingResponseBody body = outputStream -> {
+            for (int i = 0; i < size; i++) {
+                outputStream.write(this.objectMapper.writeValueAsBytes(result.apply(i)));
+                outputStream.write('\n');
+            }
+        };
+
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON_VALUE)).body(body);
+    }
+
+    @PostMapping(value = "/api/url/encode/batch", consumes = NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> encodeUrlBatchNdjson(InputStream body,
+                                                                      @AuthenticationPrincipal UserDetails currentUserDetails) throws IOException {
+        AppUser currentUser = this.authorizeUserToken(currentUserDetails);
+        return this.encodeUrlBatch(this.readNdjsonUrls(body), currentUser);
+    }
 
     @SuppressWarnings("OptionalGetWithoutIsPresent")
     @GetMapping("/api/url/decode")
@@ -263,8 +501,9 @@ public class UrlController extends TokenAuthController {
 
         CompanyUrlData companyUrlData = this.urlDataRepo.findFirstByCompany(currentUser.getCompany()).get();
 
-        // break down the encoded url into url levels   
-        UrlLevelEntity urlLevel = this.urlProcessor.breakdown(encodedUrl).get(2);
+        // break down the encoded url into url levels (once: the levels are passed as they are to the decoder)
+        List<UrlLevelEntity> encodedUrlLevels = this.urlProcessor.breakdown(encodedUrl);
+        UrlLevelEntity urlLevel = encodedUrlLevels.get(2);
 
         String currentDomainHash = urlLevel.levelName() != null ? (urlLevel.levelName()) : urlLevel.pathVariable();
 
@@ -272,12 +511,15 @@ public class UrlController extends TokenAuthController {
             throw new UrlExceptions.InvalidTopLevelDomainException("The encoded url does not match the user's company top level domain");
         }
 
-        List<Map<String, String>> decodedData = companyUrlData.getDataDecoded();
-
         TopLevelDomain companyTLD = this.topLevelDomainRepo.findByCompanyAndDomainState(currentUser.getCompany(), TopLevelDomain.DomainState.ACTIVE).getFirst();
 
+        // the dictionary of the company is read from the cache (the codes it misses are fetched from the database)
+        String urlEncodePrefix = getUrlEncodePrefix();
+        EncodingDictionary dictionary = this.urlDictionaryService.getDecodingDictionary(companyUrlData,
+                this.urlProcessor.extractEncodedValues(encodedUrlLevels, urlEncodePrefix));
+
         // get the decoded url
-        String decodedUrl = this.urlProcessor.decode(encodedUrl, companyTLD.getDomain(), getUrlEncodePrefix(), decodedData);
+        String decodedUrl = this.urlProcessor.decode(encodedUrlLevels, companyTLD.getDomain(), urlEncodePrefix, dictionary);
 
         Map<String, Object> map = new HashMap<>();  
         map.put("decoded_url", decodedUrl);
@@ -285,41 +527,165 @@ public class UrlController extends TokenAuthController {
         return ResponseEntity.ok(this.objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(map));
     }
 
-    @SuppressWarnings("DataFlowIssue")
+    //////////////////////////////////////// Methods for the decode/batch endpoint ////////////////////////////////////////
+
+    // the short urls of any company can be resolved (as the public redirects do): the urls are grouped by company
+    // and each group is decoded from the dictionary of its company, loaded once (see ShortUrlResolver.resolveAll)
+    private ResponseEntity<StreamingResponseBody> decodeUrlBatch(List<String> encodedUrls, boolean parallel) {
+        if (encodedUrls.isEmpty()) {
+            throw new UrlExceptions.InvalidUrlException("No url to decode");
+        }
+
+        List<String> urls = encodedUrls.stream().map(url -> url == null ? "" : url).toList();
+        List<ShortUrlResolver.Resolution> resolutions = this.shortUrlResolver.resolveAll(urls, getUrlEncodePrefix(), parallel);
+
+        return this.ndjsonResponse(resolutions.size(), i -> {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("index", i);
+            result.put("encoded_url", encodedUrls.get(i));
+            if (resolutions.get(i).error() != null) {
+                result.put("error", resolutions.get(i).error());
+            } else {
+                result.put("decoded_url", resolutions.get(i).originalUrl());
+            }
+            return result;
+        });
+    }
+
+    @PostMapping(value = "/api/url/decode/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> decodeUrlBatch(@RequestBody List<String> encodedUrls,
+                                                                @RequestParam(defaultValue = "false") boolean parallel,
+                                                                @AuthenticationPrincipal UserDetails currentUserDetails) {
+        this.authorizeUserToken(currentUserDetails);
+        verifyBatchSize(encodedUrls.size());
+        return this.decodeUrlBatch(encodedUrls, parallel);
+    }
+
+    @PostMapping(value = "/api/url/decode/batch", consumes = NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> decodeUrlBatchNdjson(InputStream body,
+                                                                      @RequestParam(defaultValue = "false") boolean parallel,
+                                                                      @AuthenticationPrincipal UserDetails currentUserDetails) throws IOException {
+        this.authorizeUserToken(currentUserDetails);
+        return this.decodeUrlBatch(this.readNdjsonUrls(body), parallel);
+    }
+
+    // the current count: the user loaded by the authentication might have been cached before the last encodings
+    private long currentEncodingCount(AppUser currentUser) {
+        return this.userRepository.findById(currentUser.getEmail()).map(AppUser::getUrlEncodingCount).orElse(0L);
+    }
+
+    // the encodings numbered up to the threshold are past the history size of the subscription
+    private static long historyThreshold(AppUser currentUser, long urlEncodingCount) {
+        Integer historySize = currentUser.getCompany().getSubscription().getMaxHistorySize();
+        return historySize == null ? 0 : urlEncodingCount - historySize;
+    }
+
+    // the pages are keyset pages on the number of the encodings (see HistoryPage): the cursor of the next page is returned in the
+    // X-Next-Cursor header. A page number is turned into a cursor as well, since the encodings of a user are numbered one by one
     @GetMapping("/api/url/history")
     public ResponseEntity<String> getHistory(
             @RequestParam(required = false) Integer page,
             @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String cursor,
             @AuthenticationPrincipal UserDetails currentUserDetails) throws JsonProcessingException {
         
         AppUser currentUser = this.authorizeUserToken(currentUserDetails);
         Integer historySize = currentUser.getCompany().getSubscription().getMaxHistorySize();
-        long threshold = 0;
+        long urlEncodingCount = this.currentEncodingCount(currentUser);
+        long threshold = historyThreshold(currentUser, urlEncodingCount);
 
-        if (historySize != null) {
-            threshold = currentUser.getUrlEncodingCount() - historySize;
+        // otherwise return all the results up to the history size limit
+        int pageSize = size != null ? size : historySize != null ? historySize : MAX_HISTORY_PAGE_SIZE;
+        if (pageSize < 1 || pageSize > MAX_HISTORY_PAGE_SIZE) {
+            throw new UrlExceptions.InvalidHistoryRequestException("The page size must be between 1 and " + MAX_HISTORY_PAGE_SIZE);
         }
 
-        List<Map<String, String>> result;
-
-        PageRequest pageable = null;
-        // If both page and size are provided, use pagination
-        if (page != null && size != null) {
-            
-            pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "urlEncodingTime"));
+        // the page number is only used along with the size (and without a cursor)
+        if (cursor == null && page != null && size != null && page > 0) {
+            cursor = HistoryPage.cursorOf(urlEncodingCount - (long) page * size + 1);
+        }
 
-        } else {
-            // otherwise return all the results up to the history size limit 
-            // make sure to set the size to the history size limit and the last page
-            pageable = PageRequest.of(0, historySize, Sort.by(Sort.Direction.DESC, "urlEncodingTime"));
+        HistoryPage history;
+        try {
+            history = this.urlEncodingRepo.findHistoryPage(currentUser, threshold, cursor, pageSize);
+        } catch (IllegalArgumentException e) {
+            throw new UrlExceptions.InvalidHistoryRequestException(e.getMessage());
         }
 
-        Page<UrlEncoding> history = this.urlEncodingRepo.findByUserAndUrlEncodingCountGreaterThan(
-            currentUser, threshold, pageable);
-        result = history.get().map(entry -> 
+        List<Map<String, String>> result = history.entries().stream().map(entry ->
             Map.of("url", entry.getUrl(), "url_encoded", entry.getUrlEncoded())).toList();
 
-        return ResponseEntity.ok(this.objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(result));
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (history.nextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, history.nextCursor());
+        }
+        return response.body(this.objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(result));
+    }
+
+    //////////////////////////////////////// Methods for the history/export endpoint ////////////////////////////////////////
+
+    // the history is written line by line from a database cursor: the memory used does not depend on the size of the history.
+    // The pages are keyset pages: the next page starts before the number ("count") of the last encoding of the previous one,
+    // so a page deep in the history is read from the index as fast as the first one
+    @GetMapping("/api/url/history/export")
+    public ResponseEntity<StreamingResponseBody> exportHistory(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(required = false) Long before,
+            @RequestParam(defaultValue = "0") int limit,
+            @AuthenticationPrincipal UserDetails currentUserDetails) {
+
+        AppUser currentUser = this.authorizeUserToken(currentUserDetails);
+
+        boolean csv = switch (format) {
+            case "ndjson" -> false;
+            case "csv" -> true;
+            default -> throw new UrlExceptions.InvalidHistoryRequestException("The export format must be ndjson or csv");
+        };
+        if (limit < 0) {
+            throw new UrlExceptions.InvalidHistoryRequestException("The limit cannot be negative");
+        }
+
+        long threshold = historyThreshold(currentUser, this.currentEncodingCount(currentUser));
+        long upperBound = before == null ? Long.MAX_VALUE : before;
+
+        StreamingResponseBody body = outputStream -> {
+            try (Stream<UrlEncoding> history = this.urlEncodingRepo.streamHistory(currentUser, threshold, upperBound, limit)) {
+                if (csv) {
+                    outputStream.write("count,url,url_encoded,encoding_time\n".getBytes(StandardCharsets.UTF_8));
+                }
+                for (UrlEncoding entry : (Iterable<UrlEncoding>) history::iterator) {
+                    if (csv) {
+                        String line = entry.getUrlEncodingCount() + "," + csvField(entry.getUrl()) + "," + csvField(entry.getUrlEncoded())
+                                + "," + entry.getUrlEncodingTime() + "\n";
+                        outputStream.write(line.getBytes(StandardCharsets.UTF_8));
+                    } else {
+                        Map<String, Object> line = new LinkedHashMap<>();
+                        line.put("count", entry.getUrlEncodingCount());
+                        line.put("url", entry.getUrl());
+                        line.put("url_encoded", entry.getUrlEncoded());
+                        line.put("encoding_time", String.valueOf(entry.getUrlEncodingTime()));
+                        outputStream.write(this.objectMapper.writeValueAsBytes(line));
+                        outputStream.write('\n');
+                    }
+                }
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(csv ? MediaType.parseMediaType("text/csv") : MediaType.parseMediaType(NDJSON_VALUE))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"history." + format + "\"")
+                .body(body);
+    }
+
+    // the urls may hold commas and quotes (RFC 4180 quoting)
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
     }
 
-}
\ No newline at end of file
+}
@@ -45,4 +45,22 @@ public class UrlControllerHandler extends CustomExceptionHandler {
         return handle(e, request, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(UrlExceptions.ShortUrlNotFoundException.class)
+    public ResponseEntity<CustomErrorMessage> handleShortUrlNotFoundException(
+            UrlExceptions.ShortUrlNotFoundException e, WebRequest request) {
+        return handle(e, request, HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler(UrlExceptions.BatchSizeExceededException.class)
+    public ResponseEntity<CustomErrorMessage> handleBatchSizeExceededException(
+            UrlExceptions.BatchSizeExceededException e, WebRequest request) {
+        return handle(e, request, HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+
+    @ExceptionHandler(UrlExceptions.InvalidHistoryRequestException.class)
+    public ResponseEntity<CustomErrorMessage> handleInvalidHistoryRequestException(
+            UrlExceptions.InvalidHistoryRequestException e, WebRequest request) {
+        return handle(e, request, HttpStatus.BAD_REQUEST);
+    }
+
 }
\ No newline at end of file
@@ -30,4 +30,22 @@ public class UrlExceptions {
             super(message);
         }
     }
+
+    public static class ShortUrlNotFoundException extends RuntimeException {
+        public ShortUrlNotFoundException(String message) {
+            super(message);
+        }
+    }
+
+    public static class BatchSizeExceededException extends RuntimeException {
+        public BatchSizeExceededException(String message) {
+            super(message);
+        }
+    }
+
+    public static class InvalidHistoryRequestException extends RuntimeException {
+        public InvalidHistoryRequestException(String message) {
+            super(message);
+        }
+    }
 }
@@ -0,0 +1,118 @@
+package org.urlApi.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.user.entities.AppUser;
+import org.user.repositories.UrlEncodingRepository;
+import org.user.services.UrlEncodingWriter;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Counts the urls encoded by each user today: the check of the daily encoding limit.
+ * <p>
+ * The counts are kept in memory and incremented by the encodings of the application instance, so the check does not hit the database.
+ * A count is loaded from the repository (an indexed count query) the first time the user encodes an url during the day, and then
+ * again once it is older than the refresh interval: the encodings of the other instances are taken into account within that interval.
+ * The counts of today are loaded at startup, and dropped when the day changes.
+ * <p>
+ * A loaded count includes the encodings written but not saved yet (see {@link UrlEncodingWriter#countPending}): with the batched
+ * history, the encodings still buffered count toward the limit.
+ */
+@Service
+public class DailyEncodingCounter {
+
+    // how long a count is used before being loaded again from the repository
+    public static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofSeconds(60);
+
+    private record DailyCount(AtomicLong count, long loadedAt) {
+    }
+
+    private final UrlEncodingRepository urlEncodingRepo;
+
+    private final UrlEncodingWriter urlEncodingWriter;
+
+    private final Duration refreshInterval;
+
+    private final Clock clock;
+
+    // the day of the counts
+    private volatile LocalDate day;
+
+    // user email -> the number of urls encoded by the user during the day
+    private final ConcurrentMap<String, DailyCount> counts = new ConcurrentHashMap<>();
+
+    @Autowired
+    public DailyEncodingCounter(UrlEncodingRepository urlEncodingRepo, UrlEncodingWriter urlEncodingWriter) {
+        this(urlEncodingRepo, urlEncodingWriter, DEFAULT_REFRESH_INTERVAL, Clock.systemDefaultZone());
+    }
+
+    public DailyEncodingCounter(UrlEncodingRepository urlEncodingRepo, UrlEncodingWriter urlEncodingWriter, Duration refreshInterval, Clock clock) {
+        this.urlEncodingRepo = urlEncodingRepo;
+        this.urlEncodingWriter = urlEncodingWriter;
+        this.refreshInterval = refreshInterval;
+        this.clock = clock;
+        this.day = LocalDate.now(clock);
+    }
+
+    // the counts are reset at the start of a new day
+    private LocalDate today() {
+        LocalDate today = LocalDate.now(this.clock);
+        if (!today.equals(this.day)) {
+            synchronized (this) {
+                if (!today.equals(this.day)) {
+                    this.counts.clear();
+                    this.day = today;
+                }
+            }
+        }
+        return today;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcile() {
+        LocalDate today = this.today();
+        long now = this.clock.millis();
+
+        Map<String, Long> todayCounts = this.urlEncodingRepo.countEncodingsByUserSince(today.atStartOfDay());
+        todayCounts.forEach((email, count) -> this.counts.put(email, new DailyCount(new AtomicLong(count), now)));
+    }
+
+    public long countToday(AppUser user) {
+        LocalDate today = this.today();
+        long now = this.clock.millis();
+
+        DailyCount count = this.counts.get(user.getEmail());
+        if (count == null || now - count.loadedAt() >= this.refreshInterval.toMillis()) {
+            long saved = this.urlEncodingRepo.countByUserAndUrlEncodingTimeAfter(user, today.atStartOfDay());
+            count = new DailyCount(new AtomicLong(saved + this.urlEncodingWriter.countPending(user, today.atStartOfDay())), now);
+            this.counts.put(user.getEmail(), count);
+        }
+        return count.count().get();
+    }
+
+    // called once the encoding is saved
+    public void recordEncoding(AppUser user) {
+        this.recordEncodings(user, 1);
+    }
+
+    // called once a batch of encodings is saved
+    public void recordEncodings(AppUser user, long encodings) {
+        this.today();
+
+        // a missing count is loaded (with these encodings) by the next check
+        DailyCount count = this.counts.get(user.getEmail());
+        if (count != null) {
+            count.count().addAndGet(encodings);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.urlApi.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.user.entities.AppUser;
+import org.user.repositories.UrlEncodingRepository;
+import org.user.repositories.UserRepository;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Deletes the encodings past the history size of the subscription of their user: only the visible history is kept.
+ * <p>
+ * The pruning runs in the background ("history.retention.interval", hourly by default), away from the encodings. The users are
+ * read in keyset pages, and the encodings of each page of users are deleted with one bulk write. The encodings of the day are kept
+ * whatever the history size: they are counted by the daily encoding limit (see {@link DailyEncodingCounter}).
+ */
+@Service
+public class HistoryRetentionService {
+
+    // the number of users handled per bulk write
+    public static final int USERS_PAGE_SIZE = 500;
+
+    public static final String PRUNED_COUNTER = "url.history.pruned";
+
+    public static final String PRUNING_TIMER = "url.history.pruning";
+
+    public static final String FAILURES_COUNTER = "url.history.pruning.failures";
+
+    private final UserRepository userRepository;
+
+    private final UrlEncodingRepository urlEncodingRepo;
+
+    private final Duration interval;
+
+    private final Clock clock;
+
+    private final Counter prunedCounter;
+
+    private final Timer pruningTimer;
+
+    private final Counter failuresCounter;
+
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public HistoryRetentionService(UserRepository userRepository, UrlEncodingRepository urlEncodingRepo,
+                                   @Value("${history.retention.interval:PT1H}") Duration interval,
+                                   ObjectProvider<MeterRegistry> meterRegistry) {
+        this(userRepository, urlEncodingRepo, interval, Clock.systemDefaultZone(), meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+    public HistoryRetentionService(UserRepository userRepository, UrlEncodingRepository urlEncodingRepo, Duration interval,
+                                   Clock clock, MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.urlEncodingRepo = urlEncodingRepo;
+        this.interval = interval;
+        this.clock = clock;
+
+        this.prunedCounter = Counter.builder(PRUNED_COUNTER)
+                .description("The number of encodings deleted past the history size of their user")
+                .register(meterRegistry);
+        this.pruningTimer = Timer.builder(PRUNING_TIMER)
+                .description("The duration of the pruning of the histories")
+                .register(meterRegistry);
+        this.failuresCounter = Counter.builder(FAILURES_COUNTER)
+                .description("The number of prunings stopped by an error")
+                .register(meterRegistry);
+    }
+
+    // a zero interval disables the pruning
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (this.interval.isZero() || this.scheduler != null) {
+            return;
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "history-retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::pruneSafely, this.interval.toMillis(), this.interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+            this.scheduler = null;
+        }
+    }
+
+    // an exception would cancel the next runs
+    private void pruneSafely() {
+        try {
+            this.prune();
+        } catch (RuntimeException e) {
+            // the next run prunes what this one missed
+            this.failuresCounter.increment();
+        }
+    }
+
+    // returns the number of deleted encodings
+    public long prune() {
+        return this.pruningTimer.record(() -> {
+            LocalDateTime startOfDay = LocalDate.now(this.clock).atStartOfDay();
+            PageRequest page = PageRequest.of(0, USERS_PAGE_SIZE, Sort.by(Sort.Direction.ASC, "email"));
+
+            long pruned = 0;
+            String lastEmail = "";
+            List<AppUser> users;
+            do {
+                users = this.userRepository.findByEmailGreaterThan(lastEmail, page);
+
+                // user email -> the number of the last encoding past the history size
+                Map<String, Long> thresholds = new HashMap<>();
+                for (AppUser user : users) {
+                    Integer historySize = user.getCompany() == null ? null : user.getCompany().getSubscription().getMaxHistorySize();
+                    if (historySize != null && user.getUrlEncodingCount() > historySize) {
+                        thresholds.put(user.getEmail(), user.getUrlEncodingCount() - historySize);
+                    }
+                }
+
+                long deleted = this.urlEncodingRepo.pruneHistory(thresholds, startOfDay);
+                this.prunedCounter.increment(deleted);
+                pruned += deleted;
+
+                if (!users.isEmpty()) {
+                    lastEmail = users.getLast().getEmail();
+                }
+            } while (users.size() == USERS_PAGE_SIZE);
+
+            return pruned;
+        });
+    }
+}
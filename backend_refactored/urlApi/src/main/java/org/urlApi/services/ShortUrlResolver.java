@@ -0,0 +1,225 @@
+package org.urlApi.services;
+
+import org.company.entities.CompanyUrlData;
+import org.company.entities.TopLevelDomain;
+import org.company.repositories.TopLevelDomainRepository;
+import org.company.services.CompanyDomainHashIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.url.EncodingDictionary;
+import org.url.UrlLevelEntity;
+import org.url.UrlProcessor;
+import org.urlApi.exceptions.UrlExceptions;
+import org.utils.SegmentedLruCache;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+
+/**
+ * Resolves the short urls clicked by the end users into the original urls (see the RedirectController).
+ * <p>
+ * The resolution goes: the hash of the company domain (the first path segment) -> the CompanyUrlData document
+ * (see {@link CompanyDomainHashIndex}) and the active top level domain of the company (a route) -> the dictionary of the company.
+ * The routes are held by a bounded cache and the dictionaries by the {@link UrlDictionaryService} cache: once both are warm,
+ * a short url is resolved from memory without any database round trip.
+ * <p>
+ * The active top level domain of a company is changed by the auth application, away from this cache: a route is reloaded once
+ * it is older than {@link #ROUTE_TIME_TO_LIVE}, so the short urls decode to the new domain shortly after the change.
+ * <p>
+ * A batch of short urls (see {@link #resolveAll}) is grouped by company: the route and the dictionary of each company are
+ * looked up once for the whole group.
+ */
+@Service
+public class ShortUrlResolver {
+
+    // the maximum number of company routes kept in memory
+    public static final long ROUTE_CACHE_MAX_ENTRIES = 100_000;
+
+    // the time a route is used before it is read again from the database
+    public static final Duration ROUTE_TIME_TO_LIVE = Duration.ofSeconds(30);
+
+    // what a short url needs to be decoded: the dictionary of the company and the domain of the original url
+    private record Route(CompanyUrlData companyUrlData, String activeDomain, Instant loadTime) {
+    }
+
+    // the outcome of one url of a batch: the original url, or the reason it could not be resolved
+    public record Resolution(String originalUrl, String error) {
+    }
+
+    private final CompanyDomainHashIndex companyDomainHashIndex;
+
+    private final TopLevelDomainRepository topLevelDomainRepo;
+
+    private final UrlDictionaryService urlDictionaryService;
+
+    private final UrlProcessor urlProcessor;
+
+    // company domain hash -> route
+    private final SegmentedLruCache<String, Route> routes;
+
+    private final Duration routeTimeToLive;
+
+    private final Clock clock;
+
+    @Autowired
+    public ShortUrlResolver(CompanyDomainHashIndex companyDomainHashIndex,
+                            TopLevelDomainRepository topLevelDomainRepo,
+                            UrlDictionaryService urlDictionaryService,
+                            UrlProcessor urlProcessor) {
+        this(companyDomainHashIndex, topLevelDomainRepo, urlDictionaryService, urlProcessor, ROUTE_TIME_TO_LIVE, Clock.systemUTC());
+    }
+
+    public ShortUrlResolver(CompanyDomainHashIndex companyDomainHashIndex,
+                            TopLevelDomainRepository topLevelDomainRepo,
+                            UrlDictionaryService urlDictionaryService,
+                            UrlProcessor urlProcessor,
+                            Duration routeTimeToLive,
+                            Clock clock) {
+        this.companyDomainHashIndex = companyDomainHashIndex;
+        this.topLevelDomainRepo = topLevelDomainRepo;
+        this.urlDictionaryService = urlDictionaryService;
+        this.urlProcessor = urlProcessor;
+        this.routeTimeToLive = routeTimeToLive;
+        this.clock = clock;
+        this.routes = new SegmentedLruCache<>(ROUTE_CACHE_MAX_ENTRIES, route -> 1);
+    }
+
+    /**
+     * Returns the original url of a short url.
+     *
+     * @param protocol the protocol of the short url (e.g. "https://"): the encoding keeps the protocol of the original url
+     * @param path the path of the short url, starting with "/" and the hash of the company domain
+     * @param query the query string of the short url (without the "?" character), or null
+     */
+    public String resolve(String protocol, String path, String query) {
+        // the short url without its prefix (the host of the application): the hash of the company domain is in place of the top level domain
+        String shortUrl = protocol + path.substring(1) + (query == null ? "" : "?" + query);
+
+        List<UrlLevelEntity> levels;
+        try {
+            levels = this.urlProcessor.breakdown(shortUrl);
+        } catch (RuntimeException e) {
+            throw new UrlExceptions.ShortUrlNotFoundException("Invalid short url");
+        }
+
+        String domainHash = levels.get(1).levelName();
+        Route route = this.getRoute(domainHash);
+
+        if (route == null) {
+            throw new UrlExceptions.ShortUrlNotFoundException("No company matches the short url");
+        }
+
+        EncodingDictionary dictionary = this.urlDictionaryService.getDecodingDictionary(route.companyUrlData(),
+                this.urlProcessor.extractEncodedValues(levels, ""));
+
+        return this.urlProcessor.decode(levels, route.activeDomain(), "", dictionary);
+    }
+
+    /**
+     * Resolves a batch of encoded urls, as returned by the encoding (the prefix, then the hash of the company domain).
+     * <p>
+     * The urls are grouped by the hash of their company domain. For each group, the route is read once and the dictionary entries
+     * missing from the cache are fetched with one query per level for the whole group: the urls of the group are then decoded
+     * in memory, on the common fork-join pool if parallel is set (the dictionaries are thread-safe).
+     *
+     * @return the resolutions, in the order of the urls
+     */
+    public List<Resolution> resolveAll(List<String> encodedUrls, String encodedUrlPrefix, boolean parallel) {
+        Resolution[] resolutions = new Resolution[encodedUrls.size()];
+        List<List<UrlLevelEntity>> allLevels = new ArrayList<>(encodedUrls.size());
+
+        // company domain hash -> the indexes of its urls
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        int hashIndex = 1 + (encodedUrlPrefix.isEmpty() ? 0 : 1);
+
+        for (int i = 0; i < encodedUrls.size(); i++) {
+            List<UrlLevelEntity> levels = null;
+            try {
+                levels = this.urlProcessor.breakdown(encodedUrls.get(i));
+                UrlLevelEntity hashLevel = levels.get(hashIndex);
+                String domainHash = hashLevel.levelName() != null ? hashLevel.levelName() : hashLevel.pathVariable();
+                groups.computeIfAbsent(domainHash, hash -> new ArrayList<>()).add(i);
+            } catch (RuntimeException e) {
+                resolutions[i] = new Resolution(null, "Invalid short url");
+            }
+            allLevels.add(levels);
+        }
+
+        for (Map.Entry<String, List<Integer>> group : groups.entrySet()) {
+            Route route = this.getRoute(group.getKey());
+
+            if (route == null) {
+                for (int i : group.getValue()) {
+                    resolutions[i] = new Resolution(null, "No company matches the short url");
+                }
+                continue;
+            }
+
+            // the encoded values of the whole group, per level
+            List<Set<String>> encodedValues = new ArrayList<>();
+            for (int i : group.getValue()) {
+                List<Set<String>> urlValues = this.urlProcessor.extractEncodedValues(allLevels.get(i), encodedUrlPrefix);
+                for (int level = 0; level < urlValues.size(); level++) {
+                    if (level == encodedValues.size()) {
+                        encodedValues.add(new HashSet<>());
+                    }
+                    encodedValues.get(level).addAll(urlValues.get(level));
+                }
+            }
+            EncodingDictionary dictionary = this.urlDictionaryService.getDecodingDictionary(route.companyUrlData(), encodedValues);
+
+            // each task writes its own slots of the array: the terminal operation publishes them to this thread
+            IntStream indexes = group.getValue().stream().mapToInt(Integer::intValue);
+            (parallel ? indexes.parallel() : indexes).forEach(i -> {
+                try {
+                    resolutions[i] = new Resolution(
+                            this.urlProcessor.decode(allLevels.get(i), route.activeDomain(), encodedUrlPrefix, dictionary), null);
+                } catch (RuntimeException e) {
+                    resolutions[i] = new Resolution(null, "Invalid short url");
+                }
+            });
+        }
+
+        return List.of(resolutions);
+    }
+
+    // drops the route of a company before its time to live (e.g. the domain of the company changed in this application)
+    public void invalidate(String domainHash) {
+        this.routes.invalidate(domainHash);
+    }
+
+    // the cached route, reloaded once expired
+    private Route getRoute(String domainHash) {
+        Route route = this.routes.get(domainHash, this::loadRoute);
+        if (route != null && !this.clock.instant().isBefore(route.loadTime().plus(this.routeTimeToLive))) {
+            this.routes.invalidate(domainHash);
+            route = this.routes.get(domainHash, this::loadRoute);
+        }
+        return route;
+    }
+
+    // null if no company has the given hash (the unknown hashes are not cached)
+    private Route loadRoute(String domainHash) {
+        CompanyUrlData companyUrlData = this.companyDomainHashIndex.find(domainHash).orElse(null);
+        if (companyUrlData == null) {
+            return null;
+        }
+
+        List<TopLevelDomain> activeDomains = this.topLevelDomainRepo.findByCompanyAndDomainState(companyUrlData.getCompany(),
+                TopLevelDomain.DomainState.ACTIVE);
+        if (activeDomains.isEmpty()) {
+            return null;
+        }
+
+        return new Route(companyUrlData, activeDomains.getFirst().getDomain(), this.clock.instant());
+    }
+}
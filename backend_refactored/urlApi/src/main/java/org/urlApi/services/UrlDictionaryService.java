@@ -0,0 +1,285 @@
+package org.urlApi.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.company.entities.CompanyUrlData;
+import org.company.entities.UrlDictionaryEntry;
+import org.company.repositories.CompanyUrlDataRepository;
+import org.company.repositories.UrlDictionaryEntryRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.url.ConcurrentEncodingDictionary;
+import org.url.EncodingDictionary;
+import org.utils.IdAlphabet;
+import org.utils.SegmentedLruCache;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Gives access to the url dictionaries of the companies, saved as one UrlDictionaryEntry document per entry.
+ * <p>
+ * A single (thread-safe) dictionary per company is kept in memory for both the encoding and the decoding: the users of the same company
+ * can encode and decode urls concurrently. The code of a new value is assigned by the database (an atomic counter per level and an upsert
+ * of the entry), so only the new entries are written and several application instances agree on the codes.
+ * The new entries are added to the cached dictionary in place. The dictionaries are held by a bounded cache: the database is the reference,
+ * so an evicted dictionary is simply loaded again. The hits, misses and evictions of the cache are published as meters.
+ * <p>
+ * A dictionary holding a large share of the cache capacity is not read in full: it starts empty and its entries are fetched as the urls
+ * use them (the entries missing from a dictionary are fetched anyway, see {@link #getDecodingDictionary}), so the dictionary cached
+ * for a large company holds its working set. The codes found in no dictionary are remembered for a while: decoding them again
+ * (e.g. a scan of made-up short urls) does not query the database.
+ * <p>
+ * The dictionaries saved in the former layout (the lists of the CompanyUrlData document) are imported at startup, every legacy code
+ * being kept (the extra codes of a value are imported as aliases that are decoded but not used by the encoding).
+ */
+@Service
+public class UrlDictionaryService {
+
+    private final CompanyUrlDataRepository urlDataRepo;
+
+    private final UrlDictionaryEntryRepository dictionaryEntryRepo;
+
+    // the maximum number of dictionary entries held by the dictionaries of all the companies
+    public static final long DICTIONARY_CACHE_MAX_ENTRIES = 1_000_000;
+
+    // the name of the cache in the tags of its meters
+    public static final String DICTIONARY_CACHE_NAME = "urlDictionaries";
+
+    // the dictionaries holding more than this share of the cache capacity are loaded on demand
+    public static final double FULL_LOAD_MAX_SHARE = 0.1;
+
+    // the maximum number of codes remembered as missing, and for how long: a code can be assigned later by another instance
+    public static final long MISSING_CODES_MAX_ENTRIES = 100_000;
+
+    public static final Duration MISSING_CODE_TTL = Duration.ofSeconds(30);
+
+    // company id -> dictionary, weighted by its number of entries
+    private final SegmentedLruCache<String, ConcurrentEncodingDictionary> dictionaries;
+
+    private final long fullLoadMaxEntries;
+
+    // company id, level and code -> the time (System.nanoTime) the code was found missing from the database
+    private final SegmentedLruCache<String, Long> missingCodes;
+
+    @Autowired
+    public UrlDictionaryService(CompanyUrlDataRepository urlDataRepo, UrlDictionaryEntryRepository dictionaryEntryRepo,
+                                ObjectProvider<MeterRegistry> meterRegistry) {
+        this(urlDataRepo, dictionaryEntryRepo, meterRegistry.getIfAvailable(() -> Metrics.globalRegistry), DICTIONARY_CACHE_MAX_ENTRIES);
+    }
+
+    public UrlDictionaryService(CompanyUrlDataRepository urlDataRepo, UrlDictionaryEntryRepository dictionaryEntryRepo,
+                                MeterRegistry meterRegistry, long dictionaryCacheMaxEntries) {
+        this.urlDataRepo = urlDataRepo;
+        this.dictionaryEntryRepo = dictionaryEntryRepo;
+        // an empty dictionary still costs a slot
+        this.dictionaries = new SegmentedLruCache<>(dictionaryCacheMaxEntries, dictionary -> Math.max(1, dictionary.size()));
+        this.fullLoadMaxEntries = (long) (dictionaryCacheMaxEntries * FULL_LOAD_MAX_SHARE);
+        this.missingCodes = new SegmentedLruCache<>(MISSING_CODES_MAX_ENTRIES, time -> 1);
+
+        registerMeters(meterRegistry);
+    }
+
+    // the meters follow the names of the Micrometer cache meters
+    private void registerMeters(MeterRegistry meterRegistry) {
+        FunctionCounter.builder("cache.gets", this.dictionaries, cache -> cache.stats().hits())
+                .tags("cache", DICTIONARY_CACHE_NAME, "result", "hit")
+                .description("The number of times a company dictionary was served from the cache")
+                .register(meterRegistry);
+
+        FunctionCounter.builder("cache.gets", this.dictionaries, cache -> cache.stats().misses())
+                .tags("cache", DICTIONARY_CACHE_NAME, "result", "miss")
+                .description("The number of times a company dictionary was loaded from the database")
+                .register(meterRegistry);
+
+        FunctionCounter.builder("cache.evictions", this.dictionaries, cache -> cache.stats().evictions())
+                .tags("cache", DICTIONARY_CACHE_NAME)
+                .description("The number of company dictionaries evicted from the cache")
+                .register(meterRegistry);
+
+        Gauge.builder("cache.size", this.dictionaries, cache -> cache.stats().size())
+                .tags("cache", DICTIONARY_CACHE_NAME)
+                .description("The number of company dictionaries in the cache")
+                .register(meterRegistry);
+
+        Gauge.builder("cache.weight", this.dictionaries, cache -> cache.stats().weight())
+                .tags("cache", DICTIONARY_CACHE_NAME)
+                .description("The number of dictionary entries in the cache")
+                .register(meterRegistry);
+    }
+
+    // the dictionary is loaded from the database the first time the company encodes or decodes an url (or once it was evicted)
+    public ConcurrentEncodingDictionary getDictionary(CompanyUrlData companyUrlData) {
+        return this.dictionaries.get(companyUrlData.getCompany().getId(), id -> loadDictionary(companyUrlData));
+    }
+
+    private ConcurrentEncodingDictionary loadDictionary(CompanyUrlData companyUrlData) {
+        // the legacy entries must be imported before the dictionary is read: the document might come without its legacy lists
+        // (e.g. the routing data of the CompanyDomainHashIndex), in which case they are read from the database
+        if (companyUrlData.hasLegacyDictionary()) {
+            migrateLegacyDictionary(companyUrlData);
+        } else {
+            this.urlDataRepo.findWithLegacyDictionaryById(companyUrlData.getId()).ifPresent(this::migrateLegacyDictionary);
+        }
+
+        String companyId = companyUrlData.getCompany().getId();
+        IdAlphabet idAlphabet = companyUrlData.getIdAlphabet();
+
+        // the dictionary adds the new entry itself: the cache only weighs it again, without waiting for the lock of the cache
+        ConcurrentEncodingDictionary dictionary = new ConcurrentEncodingDictionary(idAlphabet,
+                (level, value) -> this.dictionaryEntryRepo.getOrAssignCode(companyId, level, value, idAlphabet),
+                () -> this.dictionaries.reweigh(companyId));
+
+        // a large dictionary starts empty: the assignment of a code returns the existing code of a value, and the decoding
+        // fetches the missing codes
+        if (this.dictionaryEntryRepo.countByCompanyId(companyId) <= this.fullLoadMaxEntries) {
+            addEntries(dictionary, this.dictionaryEntryRepo.findByCompanyId(companyId));
+        }
+
+        return dictionary;
+    }
+
+    private static void addEntries(ConcurrentEncodingDictionary dictionary, List<UrlDictionaryEntry> entries) {
+        for (UrlDictionaryEntry entry : entries) {
+            if (entry.isAlias()) {
+                dictionary.putAlias(entry.getLevel(), entry.getValue(), entry.getCode());
+            } else {
+                dictionary.put(entry.getLevel(), entry.getValue(), entry.getCode());
+            }
+        }
+    }
+
+    /**
+     * Returns the dictionary of the company holding the codes of the given values (one set per level, see
+     * {@link org.url.UrlProcessor#extractEncodableValues}): the encoding of a batch of urls then runs in memory.
+     * <p>
+     * The codes the dictionary misses are fetched, or assigned, with a single bulk call per level instead of a database call
+     * per new value. The database agrees on the codes (see {@link UrlDictionaryEntryRepository#getOrAssignCodes}), so adding them
+     * to a dictionary used concurrently by single encodings is safe.
+     */
+    public ConcurrentEncodingDictionary getEncodingDictionary(CompanyUrlData companyUrlData, List<Set<String>> values) {
+        String companyId = companyUrlData.getCompany().getId();
+        IdAlphabet idAlphabet = companyUrlData.getIdAlphabet();
+
+        ConcurrentEncodingDictionary dictionary = getDictionary(companyUrlData);
+
+        for (int level = 0; level < values.size(); level++) {
+            int currentLevel = level;
+            List<String> newValues = values.get(level).stream().filter(value -> dictionary.find(currentLevel, value) == null).toList();
+
+            if (newValues.isEmpty()) {
+                continue;
+            }
+
+            Map<String, String> codes = this.dictionaryEntryRepo.getOrAssignCodes(companyId, level, newValues, idAlphabet);
+
+            // a copy of the dictionary loaded meanwhile might miss these codes: it fetches them when it needs them
+            codes.forEach((value, code) -> dictionary.put(currentLevel, value, code));
+            this.dictionaries.reweigh(companyId);
+        }
+
+        return dictionary;
+    }
+
+    /**
+     * Returns the dictionary needed to decode an url, given the encoded values of the url (one set per path segment).
+     * <p>
+     * The dictionary of the company is served from the cache (or loaded into it): the decoding is then an in-memory lookup.
+     * A value missing from the dictionary might be a code assigned since the dictionary was loaded (e.g. by another application instance,
+     * in any order): the entries of the values that are valid codes are fetched and added to the dictionary.
+     * The codes the database misses are remembered for {@link #MISSING_CODE_TTL}.
+     */
+    public EncodingDictionary getDecodingDictionary(CompanyUrlData companyUrlData, List<Set<String>> encodedValues) {
+        String companyId = companyUrlData.getCompany().getId();
+        IdAlphabet idAlphabet = companyUrlData.getIdAlphabet();
+
+        ConcurrentEncodingDictionary dictionary = getDictionary(companyUrlData);
+
+        for (int level = 0; level < encodedValues.size(); level++) {
+            Set<String> unknownCodes = new HashSet<>();
+
+            for (String value : encodedValues.get(level)) {
+                if (dictionary.decode(level, value) == null && isCode(idAlphabet, value) && !isMissing(companyId, level, value)) {
+                    unknownCodes.add(value);
+                }
+            }
+
+            if (unknownCodes.isEmpty()) {
+                continue;
+            }
+
+            List<UrlDictionaryEntry> entries = this.dictionaryEntryRepo.findByCompanyIdAndLevelAndCodeIn(companyId, level, unknownCodes);
+
+            for (UrlDictionaryEntry entry : entries) {
+                unknownCodes.remove(entry.getCode());
+            }
+            long now = System.nanoTime();
+            for (String code : unknownCodes) {
+                this.missingCodes.put(missingCodeKey(companyId, level, code), now);
+            }
+
+            if (entries.isEmpty()) {
+                continue;
+            }
+
+            // as for the encoding: a copy of the dictionary loaded meanwhile fetches these entries when it needs them
+            addEntries(dictionary, entries);
+            this.dictionaries.reweigh(companyId);
+        }
+
+        return dictionary;
+    }
+
+    private static String missingCodeKey(String companyId, int level, String code) {
+        return companyId + ":" + level + ":" + code;
+    }
+
+    // whether the code was found missing from the database less than MISSING_CODE_TTL ago
+    private boolean isMissing(String companyId, int level, String code) {
+        Long time = this.missingCodes.get(missingCodeKey(companyId, level, code));
+        return time != null && System.nanoTime() - time < MISSING_CODE_TTL.toNanos();
+    }
+
+    // whether the value is made of the characters of the alphabet (otherwise it was kept as it is by the encoding)
+    private static boolean isCode(IdAlphabet idAlphabet, String value) {
+        try {
+            idAlphabet.orderFromId(value);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // the dictionaries saved in the former layout are imported once the application is started
+    // (a dictionary used before its company is reached here is imported when it is loaded, see loadDictionary)
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateLegacyDictionaries() {
+        for (CompanyUrlData companyUrlData : this.urlDataRepo.findWithLegacyDictionary()) {
+            migrateLegacyDictionary(companyUrlData);
+        }
+    }
+
+    // import the dictionary saved in the CompanyUrlData document (if any) as UrlDictionaryEntry documents
+    // (the startup migration might not have run yet, e.g. on a company updated by an instance running the former version)
+    private void migrateLegacyDictionary(CompanyUrlData companyUrlData) {
+        if (!companyUrlData.hasLegacyDictionary()) {
+            return;
+        }
+
+        // the import is idempotent: concurrent migrations of the same company are harmless
+        this.dictionaryEntryRepo.importEntries(companyUrlData.getCompany().getId(), companyUrlData.getDataEncoded(),
+                companyUrlData.getDataDecoded(), companyUrlData.getIdAlphabet());
+
+        companyUrlData.clearLegacyDictionary();
+        this.urlDataRepo.save(companyUrlData);
+    }
+}
@@ -28,6 +28,9 @@ import java.util.Properties;
 @ComponentScan(basePackages = {
         "org.apiUtils",
         "org.urlService.controllers",
+        "org.urlApi.services",
+        "org.company.services",
+        "org.user.services",
 })
 
 @EnableMongoRepositories(basePackages = {"org.company.repositories",
@@ -27,6 +27,9 @@ import org.springframework.core.env.Environment;
         "org.apiUtils",
         "org.stubs.repositories",
         "org.urlService.controllers",
+        "org.urlApi.services",
+        "org.company.services",
+        "org.user.services",
 })
 @PropertySource("classpath:mail.properties")
 @SuppressWarnings({"unused", "deprecation"})
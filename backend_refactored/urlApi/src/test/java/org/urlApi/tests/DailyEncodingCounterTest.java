@@ -0,0 +1,142 @@
+package org.urlApi.tests;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.access.RoleManager;
+import org.access.SubscriptionManager;
+import org.company.entities.Company;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.stubs.repositories.StubUrlEncodingRepo;
+import org.urlApi.services.DailyEncodingCounter;
+import org.user.entities.AppUser;
+import org.user.entities.UrlEncoding;
+import org.user.services.SyncUrlEncodingWriter;
+import org.user.services.WriteBehindUrlEncodingWriter;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+
+class DailyEncodingCounterTest {
+
+    private static final Duration REFRESH_INTERVAL = Duration.ofSeconds(60);
+
+    // a clock moved forward by the tests (the encodings of the stub repository are timed with the system clock: the test day is today)
+    private static class MovingClock extends Clock {
+        private Instant instant = Instant.now();
+
+        void advance(Duration duration) {
+            this.instant = this.instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.systemDefault();
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return this.instant;
+        }
+    }
+
+    private final Company company = new Company("counter_company", "counterCompany", "counterAddress",
+            "owner@counter.com", "counter.com", SubscriptionManager.getSubscription("TIER_1"));
+
+    private final AppUser user = new AppUser("employee@counter.com", "counterEmployee", "password123", "Counter", "Employee",
+            null, company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE));
+
+    private final AppUser otherUser = new AppUser("other@counter.com", "counterOther", "password123", "Counter", "Other",
+            null, company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE));
+
+    private final StubUrlEncodingRepo urlEncodingRepo = Mockito.spy(new StubUrlEncodingRepo());
+
+    private final MovingClock clock = new MovingClock();
+
+    private final DailyEncodingCounter counter = new DailyEncodingCounter(urlEncodingRepo, new SyncUrlEncodingWriter(urlEncodingRepo), REFRESH_INTERVAL, clock);
+
+    private long encodings = 0;
+
+    private void encode(AppUser encodingUser, int count) {
+        for (int i = 0; i < count; i++) {
+            encodings++;
+            urlEncodingRepo.save(new UrlEncoding(encodingUser, "url_" + encodings, "encoded_" + encodings, encodings));
+            counter.recordEncoding(encodingUser);
+        }
+    }
+
+    @Test
+    void testCountsInMemory() {
+        encode(user, 3);
+        assertEquals(3, counter.countToday(user));
+
+        // the count is loaded once, then incremented in memory
+        encode(user, 5);
+        assertEquals(8, counter.countToday(user));
+        assertEquals(0, counter.countToday(otherUser));
+        verify(urlEncodingRepo, times(1)).countByUserAndUrlEncodingTimeAfter(user, clock.instant().atZone(ZoneId.systemDefault())
+                .toLocalDate().atStartOfDay());
+    }
+
+    @Test
+    void testRefresh() {
+        assertEquals(0, counter.countToday(user));
+
+        // the encodings of another instance: seen once the count is refreshed
+        urlEncodingRepo.save(new UrlEncoding(user, "url", "encoded", 1));
+        assertEquals(0, counter.countToday(user));
+
+        clock.advance(REFRESH_INTERVAL);
+        assertEquals(1, counter.countToday(user));
+        verify(urlEncodingRepo, times(2)).countByUserAndUrlEncodingTimeAfter(any(), any());
+    }
+
+    @Test
+    void testReconcile() {
+        encode(user, 4);
+        encode(otherUser, 2);
+
+        // a new instance loads the counts of the day at startup
+        DailyEncodingCounter restarted = new DailyEncodingCounter(urlEncodingRepo, new SyncUrlEncodingWriter(urlEncodingRepo), REFRESH_INTERVAL, clock);
+        restarted.reconcile();
+        assertEquals(4, restarted.countToday(user));
+        assertEquals(2, restarted.countToday(otherUser));
+        verify(urlEncodingRepo, times(0)).countByUserAndUrlEncodingTimeAfter(any(), any());
+    }
+
+    @Test
+    void testBufferedEncodings() {
+        try (WriteBehindUrlEncodingWriter writer = new WriteBehindUrlEncodingWriter(urlEncodingRepo, 100, 50, Duration.ofHours(1),
+                new SimpleMeterRegistry())) {
+            DailyEncodingCounter batchedCounter = new DailyEncodingCounter(urlEncodingRepo, writer, REFRESH_INTERVAL, clock);
+            urlEncodingRepo.save(new UrlEncoding(user, "url_saved", "encoded_saved", 1));
+            writer.writeAll(List.of(new UrlEncoding(user, "url_2", "encoded_2", 2), new UrlEncoding(user, "url_3", "encoded_3", 3)));
+
+            // the encodings not saved yet count toward the limit
+            assertEquals(3, batchedCounter.countToday(user));
+        }
+    }
+
+    @Test
+    void testDayBoundary() {
+        encode(user, 3);
+        assertEquals(3, counter.countToday(user));
+
+        // the encodings of yesterday do not count
+        clock.advance(Duration.ofDays(1));
+        assertEquals(0, counter.countToday(user));
+    }
+}
@@ -0,0 +1,78 @@
+package org.urlApi.tests;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.access.RoleManager;
+import org.access.SubscriptionManager;
+import org.company.entities.Company;
+import org.junit.jupiter.api.Test;
+import org.stubs.repositories.StubCompanyRepo;
+import org.stubs.repositories.StubUrlEncodingRepo;
+import org.stubs.repositories.StubUserRepo;
+import org.urlApi.services.HistoryRetentionService;
+import org.user.entities.AppUser;
+import org.user.entities.UrlEncoding;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class HistoryRetentionServiceTest {
+
+    private final StubUserRepo userRepo = new StubUserRepo(new StubCompanyRepo());
+
+    private final StubUrlEncodingRepo urlEncodingRepo = new StubUrlEncodingRepo();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private AppUser setUpUser(String subscription, int encodings) {
+        Company company = new Company(subscription + "_company", subscription + "Company", "retentionAddress",
+                "owner@" + subscription + ".com", subscription + ".com", SubscriptionManager.getSubscription(subscription));
+        AppUser user = new AppUser("employee@" + subscription + ".com", subscription + "Employee", "password123", "Retention",
+                "Employee", null, company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE));
+        userRepo.save(user);
+
+        for (int i = 0; i < encodings; i++) {
+            long count = userRepo.incrementUrlEncodingCount(user.getEmail());
+            urlEncodingRepo.save(new UrlEncoding(user, "url_" + count, "encoded_" + count, count));
+        }
+        return user;
+    }
+
+    private HistoryRetentionService service(Clock clock) {
+        return new HistoryRetentionService(userRepo, urlEncodingRepo, Duration.ZERO, clock, meterRegistry);
+    }
+
+    private List<Long> history(AppUser user) {
+        return urlEncodingRepo.findByUser(user).stream().map(UrlEncoding::getUrlEncodingCount).sorted().toList();
+    }
+
+    @Test
+    void testPruning() {
+        // history sizes: 0, 10 and 100
+        AppUser freeUser = setUpUser(SubscriptionManager.FREE_SUB, 5);
+        AppUser tierOneUser = setUpUser(SubscriptionManager.TIER1_SUB, 25);
+        AppUser tierInfinityUser = setUpUser(SubscriptionManager.TIER_INF_SUB, 30);
+
+        // the encodings of the day are kept: they are counted by the daily limit
+        assertEquals(0, service(Clock.systemDefaultZone()).prune());
+        assertEquals(60, urlEncodingRepo.count());
+
+        // the next day
+        HistoryRetentionService service = service(Clock.offset(Clock.systemDefaultZone(), Duration.ofDays(1)));
+        assertEquals(20, service.prune());
+
+        assertEquals(List.of(), history(freeUser));
+        assertEquals(10, history(tierOneUser).size());
+        assertEquals(16L, history(tierOneUser).getFirst());
+        assertEquals(30, history(tierInfinityUser).size());
+
+        // nothing left to prune
+        assertEquals(0, service.prune());
+
+        assertEquals(20, meterRegistry.get(HistoryRetentionService.PRUNED_COUNTER).counter().count());
+        assertEquals(3, meterRegistry.get(HistoryRetentionService.PRUNING_TIMER).timer().count());
+    }
+}
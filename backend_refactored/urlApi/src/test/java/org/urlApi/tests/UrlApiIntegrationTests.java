@@ -2,6 +2,7 @@ package org.urlApi.tests;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.access.RateLimit;
 import org.access.Role;
 import org.access.RoleManager;
 import org.access.Subscription;
@@ -9,9 +10,14 @@ import org.access.SubscriptionManager;
 import org.company.entities.Company;
 import org.company.entities.CompanyUrlData;
 import org.company.entities.TopLevelDomain;
+import org.company.entities.UrlDictionaryEntry;
 import org.company.repositories.CompanyRepository;
 import org.company.repositories.CompanyUrlDataRepository;
 import org.company.repositories.TopLevelDomainRepository;
+import org.company.repositories.UrlDictionaryEntryOperationsImpl;
+import org.company.repositories.UrlDictionaryEntryRepository;
+import org.company.repositories.CompanyUrlDataOperationsImpl;
+import org.company.services.CompanyDomainHashIndex;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -19,6 +25,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
 import org.springframework.http.*;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -33,8 +42,13 @@ import org.user.entities.UrlEncoding;
 import org.user.repositories.UrlEncodingRepository;
 import org.user.repositories.UserRepository;
 import org.utils.CustomGenerator;
+import org.utils.IdAlphabet;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -71,6 +85,16 @@ class subForTest implements Subscription {
                 return 1;
         }
 
+        @Override
+        public RateLimit getUserRateLimit() {
+                return new RateLimit(30, 10);
+        }
+
+        @Override
+        public RateLimit getCompanyRateLimit() {
+                return new RateLimit(60, 20);
+        }
+
         @Override
         public Integer getMinUrlLength() {
                 return 5;
@@ -100,6 +124,9 @@ class IntegrationBaseTest {
     
     @Autowired
     protected CompanyUrlDataRepository companyUrlDataRepo;
+
+    @Autowired
+    protected UrlDictionaryEntryRepository urlDictionaryEntryRepo;
     
     @Autowired
     protected TopLevelDomainRepository topLevelDomainRepo;
@@ -151,11 +178,37 @@ class IntegrationBaseTest {
         tokenRepo.deleteAll();
         userRepo.deleteAll();
         companyUrlDataRepo.deleteAll();
+        urlDictionaryEntryRepo.deleteAll();
         topLevelDomainRepo.deleteAll();
         companyRepo.deleteAll();
     }
 
 
+    // the company dictionary in the former layout: one map (value -> code) per level
+    protected List<Map<String, String>> encodedData(Company company) {
+        return dictionaryData(company, true);
+    }
+
+    // the company dictionary in the former layout: one map (code -> value) per level
+    protected List<Map<String, String>> decodedData(Company company) {
+        return dictionaryData(company, false);
+    }
+
+    private List<Map<String, String>> dictionaryData(Company company, boolean encoded) {
+        List<Map<String, String>> data = new ArrayList<>();
+        for (UrlDictionaryEntry entry : urlDictionaryEntryRepo.findByCompanyId(company.getId())) {
+            while (data.size() <= entry.getLevel()) {
+                data.add(new HashMap<>());
+            }
+            if (encoded) {
+                data.get(entry.getLevel()).put(entry.getValue(), entry.getCode());
+            } else {
+                data.get(entry.getLevel()).put(entry.getCode(), entry.getValue());
+            }
+        }
+        return data;
+    }
+
     protected Company setUpCompany(String subscriptionName) {
 
         Subscription sub = subscriptionName.equals("test") ? new subForTest() : SubscriptionManager.getSubscription(subscriptionName);
@@ -350,9 +403,8 @@ class IntegrationUrlEncodeTest extends IntegrationBaseTest {
             long urlEncodingCount = urlEncodingRepo.count();
             long userCount = userRepo.count();
 
-            CompanyUrlData dataBefore = companyUrlDataRepo.findFirstByCompany(company).get();
-            List<String> keysBeforeEncoded = new ArrayList<>(dataBefore.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
-            List<String> keysBeforeDecoded = new ArrayList<>(dataBefore.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysBeforeEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysBeforeDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
 
             ResponseEntity<String> response = restTemplate.exchange(
@@ -379,14 +431,13 @@ class IntegrationUrlEncodeTest extends IntegrationBaseTest {
 
 
 			// 11. Verify company URL data was updated
-			CompanyUrlData dataAfter = companyUrlDataRepo.findFirstByCompany(company).get();
 
-			List<String> keysAfterEncoded = new ArrayList<>(dataAfter.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+			List<String> keysAfterEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
 			assertTrue (keysBeforeEncoded .containsAll(keysAfterEncoded) &&  keysAfterEncoded .containsAll(keysBeforeEncoded),
 					"data encoded keys should not change");
 
-			List<String> keysAfterDecoded = new ArrayList<>(dataAfter.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+			List<String> keysAfterDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
 			assertTrue (keysBeforeDecoded.containsAll(keysAfterDecoded) && keysAfterDecoded.containsAll(keysBeforeDecoded),
 					"data decoded keys should not change");
@@ -418,10 +469,9 @@ class IntegrationUrlEncodeTest extends IntegrationBaseTest {
 				long userCount = userRepo.count();
                 long userEncodingCount = userRepo.findById(user.getEmail()).get().getUrlEncodingCount();
 
-                CompanyUrlData dataBefore = companyUrlDataRepo.findFirstByCompany(company).get();
 
-				List<String> keysBeforeEncoded = new ArrayList<>(dataBefore.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
-				List<String> keysBeforeDecoded = new ArrayList<>(dataBefore.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+				List<String> keysBeforeEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
+				List<String> keysBeforeDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
 				ResponseEntity<String> response = restTemplate.exchange(
 						"/api/url/encode?url=" + originalUrl,
@@ -460,14 +510,13 @@ class IntegrationUrlEncodeTest extends IntegrationBaseTest {
 						"User encoding count should increase by 1");
 				
 				// 11. Verify company URL data was updated
-				CompanyUrlData dataAfter = companyUrlDataRepo.findFirstByCompany(company).get();
 
-				List<String> keysAfterEncoded = new ArrayList<>(dataAfter.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+				List<String> keysAfterEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 		
 				assertTrue (!keysBeforeEncoded .containsAll(keysAfterEncoded) &&  keysAfterEncoded .containsAll(keysBeforeEncoded),
 						"data encoded keys should change");
 
-				List<String> keysAfterDecoded = new ArrayList<>(dataAfter.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+				List<String> keysAfterDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 		
 				assertTrue (! keysBeforeDecoded.containsAll(keysAfterDecoded) && keysAfterDecoded.containsAll(keysBeforeDecoded),
 						"data encoded keys should change");
@@ -476,7 +525,7 @@ class IntegrationUrlEncodeTest extends IntegrationBaseTest {
 				String decodedUrl = this.urlProcessor.decode(encodedUrl,
 						activeDomain.getDomain(),
 						getUrlEncodePrefix(),
-						dataAfter.getDataDecoded());
+						decodedData(company));
 				
 				// The decoded URL should match the original URL
 				assertEquals(originalUrl, decodedUrl, "Decoded URL should match original URL");
@@ -523,9 +572,8 @@ class IntegrationUrlEncodeTest extends IntegrationBaseTest {
 			long userCount = userRepo.count();
 			long userEncodingCount = userRepo.findById(user.getEmail()).get().getUrlEncodingCount();
 
-			CompanyUrlData dataBefore = companyUrlDataRepo.findFirstByCompany(company).get();
-			List<String> keysBeforeEncoded = new ArrayList<>(dataBefore.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
-			List<String> keysBeforeDecoded = new ArrayList<>(dataBefore.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+			List<String> keysBeforeEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
+			List<String> keysBeforeDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
             
 			String anotherValidUrl = "https://" + activeDomain.getDomain() + "/something/something";
 
@@ -557,14 +605,13 @@ class IntegrationUrlEncodeTest extends IntegrationBaseTest {
 			assertEquals(userCount, userRepo.count(), "User count should not change");
 
 			// 11. Verify company URL data was updated
-			CompanyUrlData dataAfter = companyUrlDataRepo.findFirstByCompany(company).get();
 
-			List<String> keysAfterEncoded = new ArrayList<>(dataAfter.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+			List<String> keysAfterEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
 			assertTrue (keysBeforeEncoded .containsAll(keysAfterEncoded) &&  keysAfterEncoded .containsAll(keysBeforeEncoded),
 					"data encoded keys should not change");
 
-			List<String> keysAfterDecoded = new ArrayList<>(dataAfter.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+			List<String> keysAfterDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
 			assertTrue (keysBeforeDecoded.containsAll(keysAfterDecoded) && keysAfterDecoded.containsAll(keysBeforeDecoded),
 					"data decoded keys should not change");
@@ -604,9 +651,8 @@ class IntegrationUrlEncodeTest extends IntegrationBaseTest {
 			long userCount = userRepo.count();
 			long userEncodingCount = user.getUrlEncodingCount();
 
-			CompanyUrlData dataBefore = companyUrlDataRepo.findFirstByCompany(company).get();
-			List<String> keysBeforeEncoded = new ArrayList<>(dataBefore.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
-			List<String> keysBeforeDecoded = new ArrayList<>(dataBefore.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+			List<String> keysBeforeEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
+			List<String> keysBeforeDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
 
 			// send a successful encoding request
@@ -637,14 +683,13 @@ class IntegrationUrlEncodeTest extends IntegrationBaseTest {
 					"User encoding count should not change for invalid domain URL");
 
 			// 11. Verify company URL data was updated
-			CompanyUrlData dataAfter = companyUrlDataRepo.findFirstByCompany(company).get();
 
-			List<String> keysAfterEncoded = new ArrayList<>(dataAfter.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+			List<String> keysAfterEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
 			assertTrue (keysBeforeEncoded .containsAll(keysAfterEncoded) &&  keysAfterEncoded .containsAll(keysBeforeEncoded),
 					"data encoded keys should not change");
 
-			List<String> keysAfterDecoded = new ArrayList<>(dataAfter.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+			List<String> keysAfterDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
 			assertTrue (keysBeforeDecoded.containsAll(keysAfterDecoded) && keysAfterDecoded.containsAll(keysBeforeDecoded),
 					"data decoded keys should not change");
@@ -685,9 +730,8 @@ class IntegrationUrlEncodeTest extends IntegrationBaseTest {
 			long userCount = userRepo.count();
 			long userEncodingCount = user.getUrlEncodingCount();
 			
-			CompanyUrlData dataBefore = companyUrlDataRepo.findFirstByCompany(company).get();
-			List<String> keysBeforeEncoded = new ArrayList<>(dataBefore.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
-			List<String> keysBeforeDecoded = new ArrayList<>(dataBefore.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+			List<String> keysBeforeEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
+			List<String> keysBeforeDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
 			// The request should fail with UrlCompanyDomainExpired
 			ResponseEntity<String> response = restTemplate.exchange(
@@ -713,14 +757,13 @@ class IntegrationUrlEncodeTest extends IntegrationBaseTest {
 				"User encoding count should not change for deprecated domain URL");
 			
 			// 11. Verify company URL data was updated
-			CompanyUrlData dataAfter = companyUrlDataRepo.findFirstByCompany(company).get();
 
-			List<String> keysAfterEncoded = new ArrayList<>(dataAfter.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+			List<String> keysAfterEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
 			assertTrue (keysBeforeEncoded .containsAll(keysAfterEncoded) &&  keysAfterEncoded .containsAll(keysBeforeEncoded),
 					"data encoded keys should not change");
 
-			List<String> keysAfterDecoded = new ArrayList<>(dataAfter.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+			List<String> keysAfterDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
 			assertTrue (keysBeforeDecoded.containsAll(keysAfterDecoded) && keysAfterDecoded.containsAll(keysBeforeDecoded),
 					"data decoded keys should not change");
@@ -779,9 +822,8 @@ class IntegrationUrlDecodeTest extends IntegrationBaseTest {
             // Create an encoded URL with an invalid domain
             String invalidEncodedUrl = "https://localhost:8018/" + this.gen.randomAlphaString(20) + "/some_encoding";
             
-            CompanyUrlData dataBefore = companyUrlDataRepo.findFirstByCompany(company).get();
-            List<String> keysBeforeEncoded = new ArrayList<>(dataBefore.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
-            List<String> keysBeforeDecoded = new ArrayList<>(dataBefore.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysBeforeEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysBeforeDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
 			HttpHeaders headers = createAuthHeaders(user);
 			HttpEntity<Void> requestEntity = new HttpEntity<>(headers);
@@ -808,13 +850,12 @@ class IntegrationUrlDecodeTest extends IntegrationBaseTest {
             assertEquals(verifyUser.getUrlEncodingCount(), user.getUrlEncodingCount(), "User encoding count should not change when daily limit exceeded");
 
             // Verify company URL data hasn't changed
-            CompanyUrlData dataAfter = companyUrlDataRepo.findFirstByCompany(company).get();
 
-            List<String> keysAfterEncoded = new ArrayList<>(dataAfter.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysAfterEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
             assertEquals(keysBeforeEncoded, keysAfterEncoded, "The data should not change");
 
-            List<String> keysAfterDecoded = new ArrayList<>(dataAfter.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysAfterDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
             assertEquals(keysBeforeDecoded, keysAfterDecoded, "The data should not change");
         }
@@ -857,9 +898,8 @@ class IntegrationUrlDecodeTest extends IntegrationBaseTest {
             long userCount = userRepo.count();
 
 
-            CompanyUrlData dataBefore = companyUrlDataRepo.findFirstByCompany(company).get();
-            List<String> keysBeforeEncoded = new ArrayList<>(dataBefore.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
-            List<String> keysBeforeDecoded = new ArrayList<>(dataBefore.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysBeforeEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysBeforeDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
             
 			ResponseEntity<String> decodeResponse = restTemplate.exchange(
 				"/api/url/decode?encodedUrl=" + encodedUrl,
@@ -881,13 +921,12 @@ class IntegrationUrlDecodeTest extends IntegrationBaseTest {
             assertEquals(userCount, userRepo.count(), "User count should not change");
             
             // Verify company URL data hasn't changed
-            CompanyUrlData dataAfter = companyUrlDataRepo.findFirstByCompany(company).get();
 
-            List<String> keysAfterEncoded = new ArrayList<>(dataAfter.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysAfterEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
             assertEquals(keysBeforeEncoded, keysAfterEncoded, "The data should not change");
 
-            List<String> keysAfterDecoded = new ArrayList<>(dataAfter.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysAfterDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
             assertEquals(keysBeforeDecoded, keysAfterDecoded, "The data should not change");
 
@@ -1081,4 +1120,122 @@ class IntegrationUrlHistoryTest extends IntegrationBaseTest {
                     "Full history entry at position " + j + " should match URL in reverse order");
         }
     }
-}   
\ No newline at end of file
+}   
+
+@SpringBootTest(classes = IntegrationTestConfig.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class IntegrationUrlDictionaryTest extends IntegrationBaseTest {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Test
+    void testUniqueIndexesAreCreated() {
+        Map<String, IndexInfo> indexes = new HashMap<>();
+        for (IndexInfo index : mongoTemplate.indexOps(UrlDictionaryEntry.class).getIndexInfo()) {
+            indexes.put(index.getName(), index);
+        }
+
+        assertTrue(indexes.containsKey(UrlDictionaryEntryOperationsImpl.VALUE_INDEX_NAME));
+        assertTrue(indexes.get(UrlDictionaryEntryOperationsImpl.VALUE_INDEX_NAME).isUnique());
+        assertTrue(indexes.containsKey(UrlDictionaryEntryOperationsImpl.CODE_INDEX_NAME));
+        assertTrue(indexes.get(UrlDictionaryEntryOperationsImpl.CODE_INDEX_NAME).isUnique());
+
+        // a second entry for the same value is rejected by the database
+        Company company = setUpCompany();
+        urlDictionaryEntryRepo.insert(new UrlDictionaryEntry(company.getId(), 0, "some_value", "a"));
+        assertThrows(DuplicateKeyException.class,
+                () -> urlDictionaryEntryRepo.insert(new UrlDictionaryEntry(company.getId(), 0, "some_value", "b")));
+    }
+
+    /**
+     * Test: concurrent assignments of overlapping values against the database give a single code per value
+     * and a distinct code per value, without duplicate documents
+     */
+    @Test
+    void testConcurrentCodeAssignment() throws Exception {
+        Company company = setUpCompany();
+        int threads = 16;
+        int values = 200;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Map<String, String>>> futures = new ArrayList<>();
+
+        try {
+            for (int t = 0; t < threads; t++) {
+                int offset = t;
+                futures.add(executor.submit(() -> {
+                    // every thread assigns all the values, starting from a different one
+                    Map<String, String> codes = new HashMap<>();
+                    for (int i = 0; i < values; i++) {
+                        String value = "value_" + ((i + offset * 13) % values);
+                        codes.put(value, urlDictionaryEntryRepo.getOrAssignCode(company.getId(), 0, value, IdAlphabet.BASE_26));
+                    }
+                    return codes;
+                }));
+            }
+
+            Map<String, String> expected = futures.getFirst().get(60, TimeUnit.SECONDS);
+            for (Future<Map<String, String>> future : futures) {
+                assertEquals(expected, future.get(60, TimeUnit.SECONDS), "Every thread should get the same code for a value");
+            }
+
+            assertEquals(values, expected.size());
+            assertEquals(values, new HashSet<>(expected.values()).size(), "The codes of a level should be unique");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<UrlDictionaryEntry> entries = urlDictionaryEntryRepo.findByCompanyId(company.getId());
+        assertEquals(values, entries.size(), "A single document should be saved per value");
+    }
+
+    /**
+     * Test: a code already taken by an entry the counter does not know about is skipped, the value gets the next free code
+     */
+    @Test
+    void testCodeCollision() {
+        Company company = setUpCompany();
+
+        // the first orders of the level are taken, but the counter was not moved
+        urlDictionaryEntryRepo.insert(new UrlDictionaryEntry(company.getId(), 0, "taken_0", IdAlphabet.BASE_26.generateId(0)));
+        urlDictionaryEntryRepo.insert(new UrlDictionaryEntry(company.getId(), 0, "taken_1", IdAlphabet.BASE_26.generateId(1)));
+        urlDictionaryEntryRepo.insert(new UrlDictionaryEntry(company.getId(), 0, "taken_3", IdAlphabet.BASE_26.generateId(3)));
+
+        assertEquals(IdAlphabet.BASE_26.generateId(2),
+                urlDictionaryEntryRepo.getOrAssignCode(company.getId(), 0, "new_value", IdAlphabet.BASE_26));
+
+        Map<String, String> codes = urlDictionaryEntryRepo.getOrAssignCodes(company.getId(), 0,
+                List.of("new_value", "value_a", "value_b"), IdAlphabet.BASE_26);
+        assertEquals(IdAlphabet.BASE_26.generateId(2), codes.get("new_value"));
+        assertEquals(Set.of(IdAlphabet.BASE_26.generateId(4), IdAlphabet.BASE_26.generateId(5)),
+                Set.of(codes.get("value_a"), codes.get("value_b")));
+    }
+}
+
+
+class IntegrationCompanyUrlDataTest extends IntegrationBaseTest {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private CompanyDomainHashIndex companyDomainHashIndex;
+
+    @Test
+    void testDomainHashIndexIsCreated() {
+        Map<String, IndexInfo> indexes = new HashMap<>();
+        for (IndexInfo index : mongoTemplate.indexOps(CompanyUrlData.class).getIndexInfo()) {
+            indexes.put(index.getName(), index);
+        }
+
+        assertTrue(indexes.containsKey(CompanyUrlDataOperationsImpl.DOMAIN_HASH_INDEX_NAME));
+        assertTrue(indexes.get(CompanyUrlDataOperationsImpl.DOMAIN_HASH_INDEX_NAME).isUnique());
+
+        // the short urls of a company are routed by the hash of its domain, without the legacy lists
+        Company company = setUpCompany();
+        String domainHash = companyUrlDataRepo.findFirstByCompany(company).get().getCompanyDomainHashed();
+
+        assertEquals(company.getId(), companyDomainHashIndex.find(domainHash).get().getCompany().getId());
+        assertTrue(companyUrlDataRepo.findAllRoutingData().stream().anyMatch(d -> d.getCompanyDomainHashed().equals(domainHash)));
+    }
+}
@@ -197,6 +197,21 @@ public class UrlApiWebAuthTests {
                 .andExpect(status().isUnauthorized());
     }
     
+    /**
+     * Test that the short urls are public while the other paths stay behind the authentication
+     */
+    @Test
+    public void testShortUrlsArePublic() throws Exception {
+        // the redirect controller is not part of this web layer: the request passes the security and is not found
+        mockMvc.perform(MockMvcRequestBuilders.get("/bmm/abc").param("a", "b"))
+                .andExpect(status().isNotFound());
+
+        for (String path : List.of("/actuator/health", "/bm/abc", "/abc/def")) {
+            mockMvc.perform(MockMvcRequestBuilders.get(path))
+                    .andExpect(status().isUnauthorized());
+        }
+    }
+
     /**
      * Test that authenticated users with proper authorization can access the endpoint
      */
@@ -1,16 +1,23 @@
 package org.urlApi.tests;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.access.Role;
 import org.access.RoleManager;
 import org.access.Subscription;
 import org.access.SubscriptionManager;
 import org.apiUtils.commonClasses.TokenAuthController;
 import org.apiUtils.commonClasses.UserDetailsImp;
+import org.apiUtils.configurations.SecurityConfiguration;
 import org.company.entities.Company;
 import org.company.entities.CompanyUrlData;
 import org.company.entities.TopLevelDomain;
+import org.company.entities.UrlDictionaryEntry;
+import org.company.services.CompanyDomainHashIndex;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -18,15 +25,25 @@ import org.stubs.repositories.*;
 import org.tokens.entities.AppToken;
 import org.tokens.entities.TokenUserLink;
 import org.url.UrlProcessor;
+import org.urlApi.controllers.RedirectController;
 import org.urlApi.controllers.UrlController;
 import org.urlApi.exceptions.UrlExceptions;
+import org.urlApi.services.ShortUrlResolver;
+import org.urlApi.services.UrlDictionaryService;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.user.entities.AppUser;
 import org.user.entities.UrlEncoding;
 import org.utils.CustomGenerator;
+import org.utils.IdAlphabet;
 
 import org.mockito.Mockito;
 
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -35,6 +52,9 @@ class BaseTest {
 
     protected final StubCompanyRepo companyRepo;
     protected final StubCompanyUrlDataRepo companyUrlDataRepo;
+    protected final StubUrlDictionaryEntryRepo urlDictionaryEntryRepo;
+    protected final SimpleMeterRegistry meterRegistry;
+    protected final UrlDictionaryService urlDictionaryService;
     protected final StubTopLevelDomainRepo topLevelDomainRepo;
     protected final StubUserRepo userRepo;
     protected final StubUrlEncodingRepo urlEncodingRepo;
@@ -47,6 +67,9 @@ class BaseTest {
     public BaseTest() {
         companyRepo = new StubCompanyRepo();
         companyUrlDataRepo = new StubCompanyUrlDataRepo();
+        urlDictionaryEntryRepo = new StubUrlDictionaryEntryRepo();
+        meterRegistry = new SimpleMeterRegistry();
+        urlDictionaryService = new UrlDictionaryService(companyUrlDataRepo, urlDictionaryEntryRepo, meterRegistry, UrlDictionaryService.DICTIONARY_CACHE_MAX_ENTRIES);
         topLevelDomainRepo = new StubTopLevelDomainRepo(companyRepo);
         userRepo = new StubUserRepo(companyRepo);
         urlEncodingRepo = new StubUrlEncodingRepo();
@@ -61,11 +84,68 @@ class BaseTest {
         // Reset the repositories before each test
         companyRepo.deleteAll();
         companyUrlDataRepo.deleteAll();
+        urlDictionaryEntryRepo.deleteAll();
         topLevelDomainRepo.deleteAll();
         userRepo.deleteAll();
         urlEncodingRepo.deleteAll();        
     }
 
+    // the company dictionary in the former layout: one map (value -> code) per level
+    protected List<Map<String, String>> encodedData(Company company) {
+        return dictionaryData(company, true);
+    }
+
+    // the company dictionary in the former layout: one map (code -> value) per level
+    protected List<Map<String, String>> decodedData(Company company) {
+        return dictionaryData(company, false);
+    }
+
+    private List<Map<String, String>> dictionaryData(Company company, boolean encoded) {
+        List<Map<String, String>> data = new ArrayList<>();
+        for (UrlDictionaryEntry entry : urlDictionaryEntryRepo.findByCompanyId(company.getId())) {
+            while (data.size() <= entry.getLevel()) {
+                data.add(new HashMap<>());
+            }
+            if (encoded) {
+                // the aliases are not used by the encoding
+                if (!entry.isAlias()) {
+                    data.get(entry.getLevel()).put(entry.getValue(), entry.getCode());
+                }
+            } else {
+                data.get(entry.getLevel()).put(entry.getCode(), entry.getValue());
+            }
+        }
+        return data;
+    }
+
+    protected final com.fasterxml.jackson.databind.ObjectMapper om = new com.fasterxml.jackson.databind.ObjectMapper();
+
+    // the NDJSON lines of the response of a batch endpoint
+    protected List<com.fasterxml.jackson.databind.JsonNode> results(org.springframework.http.ResponseEntity<StreamingResponseBody> response) throws Exception {
+        assertEquals(UrlController.NDJSON_VALUE, String.valueOf(response.getHeaders().getContentType()));
+
+        List<com.fasterxml.jackson.databind.JsonNode> results = new ArrayList<>();
+        for (String line : streamedBody(response).split("\n")) {
+            if (!line.isEmpty()) {
+                results.add(om.readTree(line));
+            }
+        }
+        return results;
+    }
+
+    // the body written by a streaming endpoint
+    protected String streamedBody(org.springframework.http.ResponseEntity<StreamingResponseBody> response) throws Exception {
+        assertEquals(200, response.getStatusCode().value());
+
+        java.io.ByteArrayOutputStream output = new java.io.ByteArrayOutputStream();
+        //noinspection DataFlowIssue
+        response.getBody().writeTo(output);
+        return output.toString(java.nio.charset.StandardCharsets.UTF_8);
+    }
+
+    protected String domain(Company company, TopLevelDomain.DomainState state) {
+        return topLevelDomainRepo.findByCompanyAndDomainState(company, state).getFirst().getDomain();
+    }
 
     // Helper method to set up a test company with domains
     protected Company setUpCompany() {
@@ -166,6 +246,7 @@ class UrlEncodeTest extends BaseTest {
 
         urlController = new UrlController(
             companyUrlDataRepo,
+            urlDictionaryService,
             urlEncodingRepo,
             topLevelDomainRepo,
             userRepo,
@@ -240,9 +321,8 @@ class UrlEncodeTest extends BaseTest {
             long userCount = userRepo.count();
             
 
-            CompanyUrlData dataBefore = companyUrlDataRepo.findFirstByCompany(company).get();
-            List<String> keysBeforeEncoded = new ArrayList<>(dataBefore.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
-            List<String> keysBeforeDecoded = new ArrayList<>(dataBefore.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysBeforeEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysBeforeDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
             // Test the invalid URL
             Exception exception = assertThrows(
@@ -265,14 +345,13 @@ class UrlEncodeTest extends BaseTest {
 
 
             // 11. Verify company URL data was updated
-            CompanyUrlData dataAfter = companyUrlDataRepo.findFirstByCompany(company).get();
 
-            List<String> keysAfterEncoded = new ArrayList<>(dataAfter.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysAfterEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
             assertTrue (keysBeforeEncoded .containsAll(keysAfterEncoded) &&  keysAfterEncoded .containsAll(keysBeforeEncoded),
                     "data encoded keys should not change");
 
-            List<String> keysAfterDecoded = new ArrayList<>(dataAfter.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysAfterDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
             assertTrue (keysBeforeDecoded.containsAll(keysAfterDecoded) && keysAfterDecoded.containsAll(keysBeforeDecoded),
                     "data decoded keys should not change");
@@ -287,22 +366,14 @@ class UrlEncodeTest extends BaseTest {
         // Create a spy of StubUrlEncodingRepo
         StubUrlEncodingRepo spyRepo = Mockito.spy(new StubUrlEncodingRepo());
         
-        // Configure the spy to return a large list for findByUserAndUrlEncodingTimeAfter
-        Mockito.doAnswer(invocation -> {
-            // Get the user from the method arguments
-            AppUser user = invocation.getArgument(0);
-            // Return a list with 1000 dummy encodings (more than any tier's limit)
-            List<UrlEncoding> result = new ArrayList<>();
-            for (int i = 0; i < 1000; i++) {
-                result.add(new UrlEncoding(user, "dummy-original-" + i, "dummy-encoded-" + i, i + 1));
-            }
-            return result;
-        }).when(spyRepo).findByUserAndUrlEncodingTimeAfter(Mockito.any(), Mockito.any());
+        // Configure the spy to count 1000 encodings today (more than any tier's limit)
+        Mockito.doReturn(1000L).when(spyRepo).countByUserAndUrlEncodingTimeAfter(Mockito.any(), Mockito.any());
         
         // Replace the standard stub with our spy
         
         urlController = new UrlController(
             companyUrlDataRepo, 
+            urlDictionaryService,
             spyRepo,
             topLevelDomainRepo,
             userRepo,
@@ -331,9 +402,8 @@ class UrlEncodeTest extends BaseTest {
                 // Valid URL that should work if not for the limit
                 String validUrl = "https://www.validUrl.com";
 
-                CompanyUrlData dataBefore = companyUrlDataRepo.findFirstByCompany(company).get();
-                List<String> keysBeforeEncoded = new ArrayList<>(dataBefore.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
-                List<String> keysBeforeDecoded = new ArrayList<>(dataBefore.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+                List<String> keysBeforeEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
+                List<String> keysBeforeDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
                 // Count repositories before attempting operation
                 long companyCount = companyRepo.count();
@@ -360,14 +430,13 @@ class UrlEncodeTest extends BaseTest {
                 assertEquals(verifyUser.getUrlEncodingCount(), user.getUrlEncodingCount(), "User encoding count should not change when daily limit exceeded");
 
                 // 11. Verify company URL data was updated
-                CompanyUrlData dataAfter = companyUrlDataRepo.findFirstByCompany(company).get();
 
-                List<String> keysAfterEncoded = new ArrayList<>(dataAfter.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+                List<String> keysAfterEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
                 assertTrue (keysBeforeEncoded .containsAll(keysAfterEncoded) &&  keysAfterEncoded .containsAll(keysBeforeEncoded),
                         "data encoded keys should not change");
 
-                List<String> keysAfterDecoded = new ArrayList<>(dataAfter.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+                List<String> keysAfterDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
                 assertTrue (keysBeforeDecoded.containsAll(keysAfterDecoded) && keysAfterDecoded.containsAll(keysBeforeDecoded),
                         "data decoded keys should not change");
@@ -383,21 +452,13 @@ class UrlEncodeTest extends BaseTest {
         // Create a spy of StubUrlEncodingRepo
         StubUrlEncodingRepo spyRepo = Mockito.spy(new StubUrlEncodingRepo());
 
-        // Configure the spy to return a large list for findByUserAndUrlEncodingTimeAfter
-        Mockito.doAnswer(invocation -> {
-            // Get the user from the method arguments
-            AppUser user = invocation.getArgument(0);
-            // Return a list with 1000 dummy encodings (more than any tier's limit)
-            List<UrlEncoding> result = new ArrayList<>();
-            for (int i = 0; i < 1000; i++) {
-                result.add(new UrlEncoding(user, "dummy-original-" + i, "dummy-encoded-" + i, i + 1));
-            }
-            return result;
-        }).when(spyRepo).findByUserAndUrlEncodingTimeAfter(Mockito.any(), Mockito.any());
+        // Configure the spy to count 1000 encodings today (more than any tier's limit)
+        Mockito.doReturn(1000L).when(spyRepo).countByUserAndUrlEncodingTimeAfter(Mockito.any(), Mockito.any());
 
 
         urlController = new UrlController(
             companyUrlDataRepo, 
+            urlDictionaryService,
             urlEncodingRepo,
             topLevelDomainRepo,
             userRepo,
@@ -452,9 +513,8 @@ class UrlEncodeTest extends BaseTest {
             long userCount = userRepo.count();
             long userEncodingCount = user.getUrlEncodingCount();
 
-            CompanyUrlData dataBefore = companyUrlDataRepo.findFirstByCompany(company).get();
-            List<String> keysBeforeEncoded = new ArrayList<>(dataBefore.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
-            List<String> keysBeforeDecoded = new ArrayList<>(dataBefore.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysBeforeEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysBeforeDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
 
             // The request should fail with InvalidTopLevelDomainException
@@ -478,14 +538,13 @@ class UrlEncodeTest extends BaseTest {
                 "User encoding count should not change for invalid domain URL");
             
             // 11. Verify company URL data was updated
-            CompanyUrlData dataAfter = companyUrlDataRepo.findFirstByCompany(company).get();
 
-            List<String> keysAfterEncoded = new ArrayList<>(dataAfter.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysAfterEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
             assertTrue (keysBeforeEncoded .containsAll(keysAfterEncoded) &&  keysAfterEncoded .containsAll(keysBeforeEncoded),
                     "data encoded keys should not change");
 
-            List<String> keysAfterDecoded = new ArrayList<>(dataAfter.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysAfterDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
             assertTrue (keysBeforeDecoded.containsAll(keysAfterDecoded) && keysAfterDecoded.containsAll(keysBeforeDecoded),
                     "data decoded keys should not change");
@@ -526,9 +585,8 @@ class UrlEncodeTest extends BaseTest {
             long userCount = userRepo.count();
             long userEncodingCount = user.getUrlEncodingCount();
             
-            CompanyUrlData dataBefore = companyUrlDataRepo.findFirstByCompany(company).get();
-            List<String> keysBeforeEncoded = new ArrayList<>(dataBefore.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
-            List<String> keysBeforeDecoded = new ArrayList<>(dataBefore.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysBeforeEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysBeforeDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
             // The request should fail with UrlCompanyDomainExpired
             Exception exception = assertThrows(
@@ -551,14 +609,13 @@ class UrlEncodeTest extends BaseTest {
                 "User encoding count should not change for deprecated domain URL");
             
             // 11. Verify company URL data was updated
-            CompanyUrlData dataAfter = companyUrlDataRepo.findFirstByCompany(company).get();
 
-            List<String> keysAfterEncoded = new ArrayList<>(dataAfter.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysAfterEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
             assertTrue (keysBeforeEncoded .containsAll(keysAfterEncoded) &&  keysAfterEncoded .containsAll(keysBeforeEncoded),
                     "data encoded keys should not change");
 
-            List<String> keysAfterDecoded = new ArrayList<>(dataAfter.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysAfterDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
             assertTrue (keysBeforeDecoded.containsAll(keysAfterDecoded) && keysAfterDecoded.containsAll(keysBeforeDecoded),
                     "data decoded keys should not change");
@@ -596,9 +653,8 @@ class UrlEncodeTest extends BaseTest {
                 long userCount = userRepo.count();
                 long userEncodingCount = user.getUrlEncodingCount();
 
-                CompanyUrlData dataBefore = companyUrlDataRepo.findFirstByCompany(company).get();
-                List<String> keysBeforeEncoded = new ArrayList<>(dataBefore.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
-                List<String> keysBeforeDecoded = new ArrayList<>(dataBefore.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+                List<String> keysBeforeEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
+                List<String> keysBeforeDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
                 // 6. Call the encoding endpoint
                 String responseBody = null;
@@ -639,14 +695,13 @@ class UrlEncodeTest extends BaseTest {
                         "User encoding count should increase by 1");
 
                 // 11. Verify company URL data was updated
-                CompanyUrlData dataAfter = companyUrlDataRepo.findFirstByCompany(company).get();
 
-                List<String> keysAfterEncoded = new ArrayList<>(dataAfter.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+                List<String> keysAfterEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
                 assertTrue (!keysBeforeEncoded .containsAll(keysAfterEncoded) &&  keysAfterEncoded .containsAll(keysBeforeEncoded),
                         "data encoded keys should change");
 
-                List<String> keysAfterDecoded = new ArrayList<>(dataAfter.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+                List<String> keysAfterDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
                 assertTrue (! keysBeforeDecoded.containsAll(keysAfterDecoded) && keysAfterDecoded.containsAll(keysBeforeDecoded),
                         "data encoded keys should change");
@@ -655,7 +710,7 @@ class UrlEncodeTest extends BaseTest {
                 String decodedUrl = urlProcessor.decode(encodedUrl,
                         activeDomain,
                         urlController.getUrlEncodePrefix(),
-                        dataAfter.getDataDecoded());
+                        decodedData(company));
 
                 // The decoded URL should match the original URL
                 assertEquals(originalUrl, decodedUrl, "Decoded URL should match original URL");
@@ -705,10 +760,9 @@ class UrlEncodeTest extends BaseTest {
                 long urlEncodingCount = urlEncodingRepo.count();
                 long userCount = userRepo.count();
                 long userEncodingCount = user.getUrlEncodingCount();
-                CompanyUrlData dataBefore = companyUrlDataRepo.findFirstByCompany(company).get();
 
-                List<String> keysBeforeEncoded = new ArrayList<>(dataBefore.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
-                List<String> keysBeforeDecoded = new ArrayList<>(dataBefore.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+                List<String> keysBeforeEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
+                List<String> keysBeforeDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
                 // 6. Call the encoding endpoint
                 String responseBody = null;
@@ -755,12 +809,11 @@ class UrlEncodeTest extends BaseTest {
                     "User encoding count should increase by 1");
                 
                 // 12. Verify company URL data was updated
-                CompanyUrlData dataAfter = companyUrlDataRepo.findFirstByCompany(company).get();
 
                 // make sure the data encoded changes
-                List<String> keysAfterEncoded = new ArrayList<>(dataAfter.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+                List<String> keysAfterEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
                 // make sure the data decoded changes
-                List<String> keysAfterDecoded = new ArrayList<>(dataAfter.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+                List<String> keysAfterDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
 
                 assertTrue (! keysBeforeEncoded.containsAll(keysAfterEncoded) && keysAfterEncoded.containsAll(keysBeforeEncoded),
@@ -775,7 +828,7 @@ class UrlEncodeTest extends BaseTest {
                 String decodedUrl = urlProcessor.decode(encodedUrl, 
                     activeDomain,
                     urlController.getUrlEncodePrefix(),
-                    dataAfter.getDataDecoded());
+                    decodedData(company));
 
                     
                 // The decoded URL should match the URL with active domain
@@ -787,13 +840,285 @@ class UrlEncodeTest extends BaseTest {
 } 
 
 
+class UrlEncodeBatchTest extends BaseTest {
+
+    private final UrlController urlController;
+
+    public UrlEncodeBatchTest() {
+        super();
+        urlController = new UrlController(companyUrlDataRepo, urlDictionaryService, urlEncodingRepo, topLevelDomainRepo, userRepo, tokenUserLinkRepo, urlProcessor, 18);
+    }
+
+    @BeforeEach
+    void setUp() {
+        clear();
+    }
+
+    /**
+     * Test: each url of the batch gets its encoded url or its error, in the order of the request
+     */
+    @SuppressWarnings("OptionalGetWithoutIsPresent")
+    @Test
+    void testBatchEncoding() throws Exception {
+        Company company = setUpCompany();
+        AppUser user = setUpUser(company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), true);
+        String activeDomain = domain(company, TopLevelDomain.DomainState.ACTIVE);
+
+        String shared = this.gen.randomAlphaString(25);
+        List<String> urls = List.of(
+                "https://" + activeDomain + "/" + shared + "/" + this.gen.randomAlphaString(25),
+                "not an url",
+                "https://" + domain(company, TopLevelDomain.DomainState.INACTIVE) + "/" + shared + "/" + this.gen.randomAlphaString(25),
+                "https://" + domain(company, TopLevelDomain.DomainState.DEPRECATED) + "/" + this.gen.randomAlphaString(25),
+                "https://www.other.com/" + this.gen.randomAlphaString(25),
+                "https://" + activeDomain + "/" + shared + "?" + this.gen.randomAlphaString(20) + "=" + this.gen.randomAlphaString(20));
+
+        List<com.fasterxml.jackson.databind.JsonNode> results = results(urlController.encodeUrlBatch(urls, new UserDetailsImp(user)));
+        assertEquals(urls.size(), results.size());
+
+        for (int i = 0; i < urls.size(); i++) {
+            assertEquals(i, results.get(i).get("index").asInt());
+            assertEquals(urls.get(i), results.get(i).get("url").asText());
+        }
+
+        for (int i : List.of(1, 3, 4)) {
+            assertTrue(results.get(i).has("error"), urls.get(i));
+            assertFalse(results.get(i).has("encoded_url"));
+        }
+        assertTrue(results.get(2).has("warning"));
+
+        // the encoded urls decode back to the urls (with the active domain), the shared value has a single code
+        List<UrlEncoding> history = urlEncodingRepo.findByUser(user);
+        assertEquals(3, history.size());
+        assertEquals(3, userRepo.findById(user.getEmail()).get().getUrlEncodingCount());
+
+        int historyIndex = 0;
+        for (int i : List.of(0, 2, 5)) {
+            String encodedUrl = results.get(i).get("encoded_url").asText();
+            String expectedUrl = urls.get(i).replace(domain(company, TopLevelDomain.DomainState.INACTIVE), activeDomain);
+            assertEquals(expectedUrl, urlProcessor.decode(encodedUrl, activeDomain, urlController.getUrlEncodePrefix(), decodedData(company)));
+
+            UrlEncoding urlEncoding = history.get(historyIndex++);
+            assertEquals(expectedUrl, urlEncoding.getUrl());
+            assertEquals(encodedUrl, urlEncoding.getUrlEncoded());
+            assertEquals(historyIndex, urlEncoding.getUrlEncodingCount());
+        }
+        assertEquals(1, urlDictionaryEntryRepo.findByCompanyId(company.getId()).stream().filter(e -> e.getValue().equals(shared)).count());
+
+        // the single encoding agrees with the batch
+        String single = om.readTree(urlController.encodeUrl(urls.getFirst(), new UserDetailsImp(user)).getBody()).get("encoded_url").asText();
+        assertEquals(results.getFirst().get("encoded_url").asText(), single);
+    }
+
+    /**
+     * Test: the codes of a batch are fetched (or assigned) with a single call per level
+     */
+    @Test
+    void testBulkDictionaryCalls() throws Exception {
+        StubUrlDictionaryEntryRepo spyDictionaryRepo = Mockito.spy(new StubUrlDictionaryEntryRepo());
+        UrlController controller = new UrlController(companyUrlDataRepo,
+                new UrlDictionaryService(companyUrlDataRepo, spyDictionaryRepo, new SimpleMeterRegistry(), UrlDictionaryService.DICTIONARY_CACHE_MAX_ENTRIES),
+                urlEncodingRepo, topLevelDomainRepo, userRepo, tokenUserLinkRepo, urlProcessor, 18);
+
+        Company company = setUpCompany();
+        AppUser user = setUpUser(company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), true);
+        String activeDomain = domain(company, TopLevelDomain.DomainState.ACTIVE);
+
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            urls.add("https://" + activeDomain + "/" + this.gen.randomAlphaString(25) + "/" + this.gen.randomAlphaString(25));
+        }
+
+        List<com.fasterxml.jackson.databind.JsonNode> results = results(controller.encodeUrlBatch(urls, new UserDetailsImp(user)));
+        assertTrue(results.stream().allMatch(result -> result.has("encoded_url")));
+
+        // two levels: two bulk calls
+        Mockito.verify(spyDictionaryRepo, Mockito.times(2)).getOrAssignCodes(Mockito.eq(company.getId()), Mockito.anyInt(), Mockito.anyCollection(), Mockito.any());
+        assertEquals(100, spyDictionaryRepo.countByCompanyId(company.getId()));
+    }
+
+    /**
+     * Test: the NDJSON body holds one url per line (JSON strings or plain urls)
+     */
+    @Test
+    void testNdjsonBatch() throws Exception {
+        Company company = setUpCompany();
+        AppUser user = setUpUser(company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), true);
+        String activeDomain = domain(company, TopLevelDomain.DomainState.ACTIVE);
+
+        String first = "https://" + activeDomain + "/" + this.gen.randomAlphaString(25);
+        String second = "https://" + activeDomain + "/" + this.gen.randomAlphaString(25);
+        String body = om.writeValueAsString(first) + "\n\n" + second + "\n\"broken\n";
+
+        List<com.fasterxml.jackson.databind.JsonNode> results = results(urlController.encodeUrlBatchNdjson(
+                new java.io.ByteArrayInputStream(body.getBytes(java.nio.charset.StandardCharsets.UTF_8)), new UserDetailsImp(user)));
+
+        assertEquals(3, results.size());
+        assertEquals(first, results.get(0).get("url").asText());
+        assertTrue(results.get(0).has("encoded_url"));
+        assertEquals(second, results.get(1).get("url").asText());
+        assertTrue(results.get(1).has("encoded_url"));
+        assertTrue(results.get(2).has("error"));
+    }
+
+    /**
+     * Test: the daily limit is checked once for the batch, the urls past the limit get an error
+     */
+    @Test
+    void testBatchDailyLimit() throws Exception {
+        Company company = setUpCompany();
+        AppUser user = setUpUser(company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), true);
+        String activeDomain = domain(company, TopLevelDomain.DomainState.ACTIVE);
+        int dailyLimit = company.getSubscription().getEncodingDailyLimit();
+
+        // one single encoding first
+        urlController.encodeUrl("https://" + activeDomain + "/" + this.gen.randomAlphaString(25), new UserDetailsImp(user));
+
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < dailyLimit + 5; i++) {
+            urls.add("https://" + activeDomain + "/" + this.gen.randomAlphaString(25));
+        }
+
+        List<com.fasterxml.jackson.databind.JsonNode> results = results(urlController.encodeUrlBatch(urls, new UserDetailsImp(user)));
+        assertEquals(dailyLimit - 1, results.stream().filter(result -> result.has("encoded_url")).count());
+        assertEquals(6, results.stream().filter(result -> result.has("error")).count());
+        assertEquals(dailyLimit, urlEncodingRepo.findByUser(user).size());
+
+        // nothing left for today
+        assertThrows(UrlExceptions.DailyLimitExceededException.class,
+                () -> urlController.encodeUrlBatch(urls.subList(0, 1), new UserDetailsImp(user)));
+    }
+
+    /**
+     * Test: the empty batches, the batches over the maximum size and the unauthorized users are rejected
+     */
+    @Test
+    void testRejectedBatches() {
+        Company company = setUpCompany();
+        AppUser user = setUpUser(company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), true);
+        String url = "https://" + domain(company, TopLevelDomain.DomainState.ACTIVE) + "/" + this.gen.randomAlphaString(25);
+
+        assertThrows(UrlExceptions.InvalidUrlException.class, () -> urlController.encodeUrlBatch(List.of(), new UserDetailsImp(user)));
+        assertThrows(UrlExceptions.BatchSizeExceededException.class,
+                () -> urlController.encodeUrlBatch(Collections.nCopies(UrlController.MAX_BATCH_SIZE + 1, url), new UserDetailsImp(user)));
+
+        AppUser unauthorized = setUpUser(company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), false);
+        assertThrows(TokenAuthController.TokenNotFoundException.class,
+                () -> urlController.encodeUrlBatch(List.of(url), new UserDetailsImp(unauthorized)));
+        assertEquals(0, urlEncodingRepo.count());
+    }
+}
+
+
+class UrlDecodeBatchTest extends BaseTest {
+
+    private final UrlController urlController;
+
+    public UrlDecodeBatchTest() {
+        super();
+        urlController = new UrlController(companyUrlDataRepo, urlDictionaryService, urlEncodingRepo, topLevelDomainRepo, userRepo, tokenUserLinkRepo, urlProcessor, 18);
+    }
+
+    @BeforeEach
+    void setUp() {
+        clear();
+    }
+
+    // encodes urls of the company: original url -> encoded url
+    private Map<String, String> encodeUrls(Company company, int count) throws Exception {
+        AppUser user = setUpUser(company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), true);
+        String activeDomain = domain(company, TopLevelDomain.DomainState.ACTIVE);
+
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            urls.add("https://" + activeDomain + "/" + this.gen.randomAlphaString(25) + "/" + (1000000000000L + i)
+                    + "?" + this.gen.randomAlphaString(20) + "=" + this.gen.randomAlphaString(20));
+        }
+
+        List<com.fasterxml.jackson.databind.JsonNode> results = results(urlController.encodeUrlBatch(urls, new UserDetailsImp(user)));
+        Map<String, String> encoded = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            encoded.put(urls.get(i), results.get(i).get("encoded_url").asText());
+        }
+        return encoded;
+    }
+
+    /**
+     * Test: the urls of several companies are decoded in one batch, in the order of the request, sequentially or in parallel
+     */
+    @Test
+    void testBatchDecoding() throws Exception {
+        Company firstCompany = setUpCompany();
+        Iterator<Map.Entry<String, String>> first = encodeUrls(firstCompany, 20).entrySet().iterator();
+        Iterator<Map.Entry<String, String>> second = encodeUrls(setUpCompany(), 20).entrySet().iterator();
+
+        // the urls of both companies, interleaved
+        List<String> originalUrls = new ArrayList<>();
+        List<String> encodedUrls = new ArrayList<>();
+        while (first.hasNext()) {
+            for (Map.Entry<String, String> entry : List.of(first.next(), second.next())) {
+                originalUrls.add(entry.getKey());
+                encodedUrls.add(entry.getValue());
+            }
+        }
+        encodedUrls.add("not an url");
+        encodedUrls.add("https://" + urlController.getUrlEncodePrefix() + "zzzzzz/abc");
+
+        // the user of another company: the short urls are public
+        UserDetailsImp userDetails = new UserDetailsImp(setUpUser(setUpCompany(), RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), true));
+
+        for (boolean parallel : List.of(false, true)) {
+            List<com.fasterxml.jackson.databind.JsonNode> results = results(urlController.decodeUrlBatch(encodedUrls, parallel, userDetails));
+            assertEquals(encodedUrls.size(), results.size());
+
+            for (int i = 0; i < originalUrls.size(); i++) {
+                assertEquals(i, results.get(i).get("index").asInt());
+                assertEquals(encodedUrls.get(i), results.get(i).get("encoded_url").asText());
+                assertEquals(originalUrls.get(i), results.get(i).get("decoded_url").asText());
+            }
+            assertEquals("Invalid short url", results.get(originalUrls.size()).get("error").asText());
+            assertEquals("No company matches the short url", results.get(originalUrls.size() + 1).get("error").asText());
+        }
+
+        // the batch agrees with the single decoding
+        UserDetailsImp firstUser = new UserDetailsImp(setUpUser(firstCompany, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), true));
+        assertEquals(originalUrls.getFirst(), om.readTree(urlController.decodeUrl(encodedUrls.getFirst(), firstUser).getBody())
+                .get("decoded_url").asText());
+    }
+
+    /**
+     * Test: the dictionary of the company is loaded once for the whole batch
+     */
+    @Test
+    void testDictionaryLoadedOnce() throws Exception {
+        Company company = setUpCompany();
+        Map<String, String> encoded = encodeUrls(company, 30);
+
+        // another application instance: its dictionary cache is empty
+        StubUrlDictionaryEntryRepo spyDictionaryRepo = Mockito.spy(urlDictionaryEntryRepo);
+        UrlController otherInstance = new UrlController(companyUrlDataRepo,
+                new UrlDictionaryService(companyUrlDataRepo, spyDictionaryRepo, new SimpleMeterRegistry(), UrlDictionaryService.DICTIONARY_CACHE_MAX_ENTRIES),
+                urlEncodingRepo, topLevelDomainRepo, userRepo, tokenUserLinkRepo, urlProcessor, 18);
+
+        UserDetailsImp userDetails = new UserDetailsImp(setUpUser(company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), true));
+        String body = String.join("\n", encoded.values());
+        List<com.fasterxml.jackson.databind.JsonNode> results = results(otherInstance.decodeUrlBatchNdjson(
+                new java.io.ByteArrayInputStream(body.getBytes(java.nio.charset.StandardCharsets.UTF_8)), true, userDetails));
+
+        assertEquals(new ArrayList<>(encoded.keySet()), results.stream().map(result -> result.get("decoded_url").asText()).toList());
+        Mockito.verify(spyDictionaryRepo, Mockito.times(1)).findByCompanyId(company.getId());
+        Mockito.verify(spyDictionaryRepo, Mockito.never()).findByCompanyIdAndLevelAndCodeIn(Mockito.any(), Mockito.anyInt(), Mockito.any());
+    }
+}
+
+
 class UrlDecodeTest extends BaseTest {
 
     private final UrlController urlController;
 
     public UrlDecodeTest() {
         super();
-        urlController = new UrlController(companyUrlDataRepo, urlEncodingRepo, topLevelDomainRepo, userRepo, tokenUserLinkRepo, urlProcessor, 18);
+        urlController = new UrlController(companyUrlDataRepo, urlDictionaryService, urlEncodingRepo, topLevelDomainRepo, userRepo, tokenUserLinkRepo, urlProcessor, 18);
     }
 
     @BeforeEach
@@ -859,9 +1184,8 @@ class UrlDecodeTest extends BaseTest {
             // Create an encoded URL with an invalid domain
             String invalidEncodedUrl = "https://localhost:8018/" + this.gen.randomAlphaString(20) + "/some_encoding";
             
-            CompanyUrlData dataBefore = companyUrlDataRepo.findFirstByCompany(company).get();
-            List<String> keysBeforeEncoded = new ArrayList<>(dataBefore.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
-            List<String> keysBeforeDecoded = new ArrayList<>(dataBefore.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysBeforeEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysBeforeDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
 
             // Attempt to decode - should throw exception
@@ -880,13 +1204,12 @@ class UrlDecodeTest extends BaseTest {
             assertEquals(verifyUser.getUrlEncodingCount(), user.getUrlEncodingCount(), "User encoding count should not change when daily limit exceeded");
 
             // Verify company URL data hasn't changed
-            CompanyUrlData dataAfter = companyUrlDataRepo.findFirstByCompany(company).get();
 
-            List<String> keysAfterEncoded = new ArrayList<>(dataAfter.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysAfterEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
             assertEquals(keysBeforeEncoded, keysAfterEncoded, "The data should not change");
 
-            List<String> keysAfterDecoded = new ArrayList<>(dataAfter.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysAfterDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
             assertEquals(keysBeforeDecoded, keysAfterDecoded, "The data should not change");
         }
@@ -930,9 +1253,8 @@ class UrlDecodeTest extends BaseTest {
             long userCount = userRepo.count();
 
 
-            CompanyUrlData dataBefore = companyUrlDataRepo.findFirstByCompany(company).get();
-            List<String> keysBeforeEncoded = new ArrayList<>(dataBefore.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
-            List<String> keysBeforeDecoded = new ArrayList<>(dataBefore.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysBeforeEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysBeforeDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
             
             
             // Step 2: Decode the URL
@@ -950,13 +1272,12 @@ class UrlDecodeTest extends BaseTest {
             assertEquals(userCount, userRepo.count(), "User count should not change");
             
             // Verify company URL data hasn't changed
-            CompanyUrlData dataAfter = companyUrlDataRepo.findFirstByCompany(company).get();
 
-            List<String> keysAfterEncoded = new ArrayList<>(dataAfter.getDataEncoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysAfterEncoded = new ArrayList<>(encodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
             assertEquals(keysBeforeEncoded, keysAfterEncoded, "The data should not change");
 
-            List<String> keysAfterDecoded = new ArrayList<>(dataAfter.getDataDecoded().stream().map(Map::keySet).flatMap(Collection::stream).toList());
+            List<String> keysAfterDecoded = new ArrayList<>(decodedData(company).stream().map(Map::keySet).flatMap(Collection::stream).toList());
 
             assertEquals(keysBeforeDecoded, keysAfterDecoded, "The data should not change");
 
@@ -966,6 +1287,356 @@ class UrlDecodeTest extends BaseTest {
         }
     
     }
+
+    /**
+     * Test: the dictionaries of the companies are bounded: an evicted dictionary is loaded again from the database
+     */
+    @Test
+    void testBoundedDictionaries() throws Exception {
+        com.fasterxml.jackson.databind.ObjectMapper om = new com.fasterxml.jackson.databind.ObjectMapper();
+
+        // room for a few entries only: the dictionaries of the companies keep evicting each other
+        UrlDictionaryService smallService = new UrlDictionaryService(companyUrlDataRepo, urlDictionaryEntryRepo, new SimpleMeterRegistry(), 4);
+        UrlController controller = new UrlController(companyUrlDataRepo, smallService, urlEncodingRepo, topLevelDomainRepo, userRepo, tokenUserLinkRepo, urlProcessor, 18);
+
+        Map<Company, Map<String, String>> encodedUrls = new HashMap<>();
+
+        for (int i = 0; i < 5; i++) {
+            Company company = setUpCompany();
+            UserDetailsImp userDetails = new UserDetailsImp(setUpUser(company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), true));
+            String activeDomain = topLevelDomainRepo.findByCompanyAndDomainState(
+                    company, TopLevelDomain.DomainState.ACTIVE).getFirst().getDomain();
+
+            Map<String, String> companyUrls = new HashMap<>();
+            for (int j = 0; j < 3; j++) {
+                String url = "https://" + activeDomain + "/" + this.gen.randomAlphaString(25) + "/" + this.gen.randomAlphaString(25);
+                companyUrls.put(url, om.readTree(controller.encodeUrl(url, userDetails).getBody()).get("encoded_url").asText());
+            }
+            encodedUrls.put(company, companyUrls);
+        }
+
+        // the codes do not depend on the dictionaries kept in memory
+        for (Map.Entry<Company, Map<String, String>> companyUrls : encodedUrls.entrySet()) {
+            // (a single user is authorized at a time by the stubs)
+            UserDetailsImp userDetails = new UserDetailsImp(setUpUser(companyUrls.getKey(), RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), true));
+
+            for (Map.Entry<String, String> entry : companyUrls.getValue().entrySet()) {
+                assertEquals(entry.getValue(), om.readTree(controller.encodeUrl(entry.getKey(), userDetails).getBody()).get("encoded_url").asText());
+                assertEquals(entry.getKey(), om.readTree(controller.decodeUrl(entry.getValue(), userDetails).getBody()).get("decoded_url").asText());
+            }
+        }
+    }
+
+    /**
+     * Test: the short path variables are kept as they are by the encoding and never decoded as codes
+     */
+    @Test
+    void testShortPathVariablesDecoding() throws Exception {
+        com.fasterxml.jackson.databind.ObjectMapper om = new com.fasterxml.jackson.databind.ObjectMapper();
+
+        Company company = setUpCompany();
+        AppUser user = setUpUser(company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), true);
+        UserDetailsImp userDetails = new UserDetailsImp(user);
+
+        String activeDomain = topLevelDomainRepo.findByCompanyAndDomainState(
+                company, TopLevelDomain.DomainState.ACTIVE).getFirst().getDomain();
+
+        // more codes in the level than single character ids
+        for (int i = 0; i < 60; i++) {
+            urlController.encodeUrl("https://" + activeDomain + "/users/" + (1000000000000000000L + i), userDetails);
+        }
+
+        assertTrue(decodedData(company).get(1).size() > 26);
+
+        for (String value : List.of("5", "42", "AB")) {
+            String url = "https://" + activeDomain + "/users/" + value;
+            String encodedUrl = om.readTree(urlController.encodeUrl(url, userDetails).getBody()).get("encoded_url").asText();
+            assertTrue(encodedUrl.endsWith("/" + value));
+            assertEquals(url, om.readTree(urlController.decodeUrl(encodedUrl, userDetails).getBody()).get("decoded_url").asText());
+        }
+    }
+
+    /**
+     * Test: with the alphabet of the new companies, the short values are marked and never decoded as codes
+     */
+    @SuppressWarnings("OptionalGetWithoutIsPresent")
+    @Test
+    void testShortPathVariablesDecodingWithDenseAlphabet() throws Exception {
+        com.fasterxml.jackson.databind.ObjectMapper om = new com.fasterxml.jackson.databind.ObjectMapper();
+
+        Company company = setUpCompany();
+        CompanyUrlData urlData = companyUrlDataRepo.findFirstByCompany(company).get();
+        companyUrlDataRepo.save(new CompanyUrlData(urlData.getId(), company, urlData.getCompanyDomainHashed(), IdAlphabet.BASE_64_URL_SAFE));
+
+        UserDetailsImp userDetails = new UserDetailsImp(setUpUser(company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), true));
+        String activeDomain = topLevelDomainRepo.findByCompanyAndDomainState(
+                company, TopLevelDomain.DomainState.ACTIVE).getFirst().getDomain();
+
+        // more codes in the level than single character ids
+        for (int i = 0; i < 70; i++) {
+            urlController.encodeUrl("https://" + activeDomain + "/users/" + (1000000000000000000L + i), userDetails);
+        }
+        assertTrue(decodedData(company).get(1).keySet().containsAll(List.of("5", "Z", "_")));
+
+        for (String value : List.of("5", "Z", "_", "42")) {
+            String url = "https://" + activeDomain + "/users/" + value;
+            String encodedUrl = om.readTree(urlController.encodeUrl(url, userDetails).getBody()).get("encoded_url").asText();
+            assertTrue(encodedUrl.endsWith("/" + UrlProcessor.RAW_VALUE_MARKER + value));
+            assertEquals(url, om.readTree(urlController.decodeUrl(encodedUrl, userDetails).getBody()).get("decoded_url").asText());
+        }
+    }
+
+    /**
+     * Test: the dictionaries are cached per company and grow in place with the new codes,
+     * and the codes assigned by another application instance (in any order) are still decoded
+     */
+    @Test
+    void testDecodeCache() throws Exception {
+        com.fasterxml.jackson.databind.ObjectMapper om = new com.fasterxml.jackson.databind.ObjectMapper();
+
+        Company company = setUpCompany();
+        AppUser user = setUpUser(company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), true);
+        UserDetailsImp userDetails = new UserDetailsImp(user);
+
+        String activeDomain = topLevelDomainRepo.findByCompanyAndDomainState(
+                company, TopLevelDomain.DomainState.ACTIVE).getFirst().getDomain();
+
+        // the first encode loads the dictionary, the decodes are served from the cache
+        String url1 = "https://" + activeDomain + "/" + this.gen.randomAlphaString(25) + "/" + this.gen.randomAlphaString(25);
+        String encodedUrl1 = om.readTree(urlController.encodeUrl(url1, userDetails).getBody()).get("encoded_url").asText();
+
+        double hits = cacheGets("hit");
+        for (int i = 0; i < 5; i++) {
+            assertEquals(url1, om.readTree(urlController.decodeUrl(encodedUrl1, userDetails).getBody()).get("decoded_url").asText());
+        }
+        assertEquals(1, cacheGets("miss"));
+        assertEquals(hits + 5, cacheGets("hit"));
+
+        // the new codes are added to the cached dictionary
+        String url2 = "https://" + activeDomain + "/" + this.gen.randomAlphaString(25) + "/" + this.gen.randomAlphaString(25);
+        String encodedUrl2 = om.readTree(urlController.encodeUrl(url2, userDetails).getBody()).get("encoded_url").asText();
+
+        assertEquals(url2, om.readTree(urlController.decodeUrl(encodedUrl2, userDetails).getBody()).get("decoded_url").asText());
+        assertEquals(url1, om.readTree(urlController.decodeUrl(encodedUrl1, userDetails).getBody()).get("decoded_url").asText());
+        assertEquals(1, cacheGets("miss"), "The dictionary should not be loaded again");
+        assertEquals(4, meterRegistry.get("cache.weight").tag("cache", UrlDictionaryService.DICTIONARY_CACHE_NAME).gauge().value());
+
+        // another instance sharing the database assigns new codes: they are decoded in any order
+        UrlDictionaryService otherService = new UrlDictionaryService(companyUrlDataRepo, urlDictionaryEntryRepo, new SimpleMeterRegistry(),
+                UrlDictionaryService.DICTIONARY_CACHE_MAX_ENTRIES);
+        UrlController otherInstance = new UrlController(companyUrlDataRepo, otherService, urlEncodingRepo, topLevelDomainRepo, userRepo, tokenUserLinkRepo, urlProcessor, 18);
+
+        String url3 = "https://" + activeDomain + "/" + this.gen.randomAlphaString(25) + "/" + this.gen.randomAlphaString(25);
+        String encodedUrl3 = om.readTree(otherInstance.encodeUrl(url3, userDetails).getBody()).get("encoded_url").asText();
+        String url4 = "https://" + activeDomain + "/" + this.gen.randomAlphaString(25) + "/" + this.gen.randomAlphaString(25);
+        String encodedUrl4 = om.readTree(otherInstance.encodeUrl(url4, userDetails).getBody()).get("encoded_url").asText();
+
+        assertEquals(url4, om.readTree(urlController.decodeUrl(encodedUrl4, userDetails).getBody()).get("decoded_url").asText());
+        assertEquals(url3, om.readTree(urlController.decodeUrl(encodedUrl3, userDetails).getBody()).get("decoded_url").asText());
+
+        assertEquals(1, cacheGets("miss"));
+        assertEquals(8, meterRegistry.get("cache.weight").tag("cache", UrlDictionaryService.DICTIONARY_CACHE_NAME).gauge().value(),
+                "The fetched entries should be added to the cached dictionary");
+        assertEquals(0, meterRegistry.get("cache.evictions").tag("cache", UrlDictionaryService.DICTIONARY_CACHE_NAME).functionCounter().count());
+    }
+
+    /**
+     * Test: a dictionary holding a large share of the cache is loaded on demand: it is cached with the entries the urls use
+     */
+    @Test
+    void testLargeDictionaryLoadedOnDemand() throws Exception {
+        com.fasterxml.jackson.databind.ObjectMapper om = new com.fasterxml.jackson.databind.ObjectMapper();
+
+        Company company = setUpCompany();
+        UserDetailsImp userDetails = new UserDetailsImp(setUpUser(company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), true));
+        String activeDomain = topLevelDomainRepo.findByCompanyAndDomainState(
+                company, TopLevelDomain.DomainState.ACTIVE).getFirst().getDomain();
+
+        Map<String, String> encodedUrls = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            String url = "https://" + activeDomain + "/" + this.gen.randomAlphaString(25) + "/" + this.gen.randomAlphaString(25);
+            encodedUrls.put(url, om.readTree(urlController.encodeUrl(url, userDetails).getBody()).get("encoded_url").asText());
+        }
+        assertEquals(20, urlDictionaryEntryRepo.countByCompanyId(company.getId()));
+
+        // the dictionary of the company holds more than the share of the cache read in full
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        UrlDictionaryService smallService = new UrlDictionaryService(companyUrlDataRepo, urlDictionaryEntryRepo, registry, 50);
+        UrlController controller = new UrlController(companyUrlDataRepo, smallService, urlEncodingRepo, topLevelDomainRepo, userRepo, tokenUserLinkRepo, urlProcessor, 18);
+
+        int decoded = 0;
+        for (Map.Entry<String, String> entry : encodedUrls.entrySet()) {
+            assertEquals(entry.getKey(), om.readTree(controller.decodeUrl(entry.getValue(), userDetails).getBody()).get("decoded_url").asText());
+            assertEquals(entry.getValue(), om.readTree(controller.encodeUrl(entry.getKey(), userDetails).getBody()).get("encoded_url").asText());
+            decoded++;
+
+            // the entries are fetched as they are used
+            assertEquals(2 * decoded, registry.get("cache.weight").tag("cache", UrlDictionaryService.DICTIONARY_CACHE_NAME).gauge().value());
+        }
+
+        assertEquals(1, registry.get("cache.gets").tags("cache", UrlDictionaryService.DICTIONARY_CACHE_NAME, "result", "miss")
+                .functionCounter().count(), "The dictionary should stay cached");
+    }
+
+    /**
+     * Test: the raw values that look like codes are looked up in the database once: the missing codes are remembered
+     */
+    @Test
+    void testMissingCodesCache() throws Exception {
+        com.fasterxml.jackson.databind.ObjectMapper om = new com.fasterxml.jackson.databind.ObjectMapper();
+
+        StubUrlDictionaryEntryRepo entryRepo = Mockito.spy(urlDictionaryEntryRepo);
+        UrlDictionaryService service = new UrlDictionaryService(companyUrlDataRepo, entryRepo, new SimpleMeterRegistry(),
+                UrlDictionaryService.DICTIONARY_CACHE_MAX_ENTRIES);
+        UrlController controller = new UrlController(companyUrlDataRepo, service, urlEncodingRepo, topLevelDomainRepo, userRepo, tokenUserLinkRepo, urlProcessor, 18);
+
+        Company company = setUpCompany();
+        UserDetailsImp userDetails = new UserDetailsImp(setUpUser(company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), true));
+        String activeDomain = topLevelDomainRepo.findByCompanyAndDomainState(
+                company, TopLevelDomain.DomainState.ACTIVE).getFirst().getDomain();
+
+        // a short value is kept as it is by the encoding, but it is made of the characters of the codes
+        String url = "https://" + activeDomain + "/users/zz";
+        String encodedUrl = om.readTree(controller.encodeUrl(url, userDetails).getBody()).get("encoded_url").asText();
+        assertTrue(encodedUrl.endsWith("/zz"));
+
+        // the first decoding looks the values up
+        Mockito.clearInvocations(entryRepo);
+        assertEquals(url, om.readTree(controller.decodeUrl(encodedUrl, userDetails).getBody()).get("decoded_url").asText());
+        Mockito.verify(entryRepo).findByCompanyIdAndLevelAndCodeIn(company.getId(), 1, Set.of("zz"));
+
+        Mockito.clearInvocations(entryRepo);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(url, om.readTree(controller.decodeUrl(encodedUrl, userDetails).getBody()).get("decoded_url").asText());
+        }
+        Mockito.verify(entryRepo, Mockito.never()).findByCompanyIdAndLevelAndCodeIn(Mockito.any(), Mockito.anyInt(), Mockito.any());
+    }
+
+    private double cacheGets(String result) {
+        return meterRegistry.get("cache.gets").tags("cache", UrlDictionaryService.DICTIONARY_CACHE_NAME, "result", result).functionCounter().count();
+    }
+
+    /**
+     * Test: the dictionaries saved in the former layout (the lists of the CompanyUrlData document) are imported
+     * the first time they are used
+     */
+    @SuppressWarnings("OptionalGetWithoutIsPresent")
+    @Test
+    void testLegacyDictionaryMigration() throws Exception {
+        com.fasterxml.jackson.databind.ObjectMapper om = new com.fasterxml.jackson.databind.ObjectMapper();
+
+        for (int i = 0; i < 20; i++) {
+            Company company = setUpCompany();
+            AppUser user = setUpUser(company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), true);
+            UserDetailsImp userDetails = new UserDetailsImp(user);
+
+            String activeDomain = topLevelDomainRepo.findByCompanyAndDomainState(
+                    company, TopLevelDomain.DomainState.ACTIVE).getFirst().getDomain();
+
+            // encode an url into the lists of the CompanyUrlData document (the former layout)
+            CompanyUrlData urlData = companyUrlDataRepo.findFirstByCompany(company).get();
+            String legacyUrl = "https://" + activeDomain + "/" + this.gen.randomAlphaString(25) + "/" + this.gen.randomAlphaString(25);
+            String legacyEncodedUrl = urlProcessor.encode(legacyUrl, urlController.getUrlEncodePrefix(), urlData.getCompanyDomainHashed(),
+                    urlData.getDataEncoded(), urlData.getDataDecoded(), 5, 5);
+
+            List<Map<String, String>> legacyEncoded = new ArrayList<>();
+            urlData.getDataEncoded().forEach(m -> legacyEncoded.add(new HashMap<>(m)));
+            assertTrue(urlData.hasLegacyDictionary());
+
+            // decoding imports the legacy dictionary as dictionary entries
+            var decodeResponse = urlController.decodeUrl(legacyEncodedUrl, userDetails);
+            assertEquals(legacyUrl, om.readTree(decodeResponse.getBody()).get("decoded_url").asText());
+
+            assertFalse(companyUrlDataRepo.findFirstByCompany(company).get().hasLegacyDictionary(),
+                    "The legacy dictionary should be cleared once imported");
+            assertEquals(legacyEncoded, encodedData(company), "The imported entries should match the legacy dictionary");
+
+            // the new codes come after the imported ones
+            String newUrl = "https://" + activeDomain + "/" + this.gen.randomAlphaString(25) + "/" + this.gen.randomAlphaString(25);
+            String newEncodedUrl = om.readTree(urlController.encodeUrl(newUrl, userDetails).getBody()).get("encoded_url").asText();
+
+            for (Map<String, String> level : encodedData(company)) {
+                assertEquals(2, level.size());
+                assertEquals(2, new HashSet<>(level.values()).size(), "The codes of a level should be unique");
+            }
+
+            assertEquals(newUrl, om.readTree(urlController.decodeUrl(newEncodedUrl, userDetails).getBody()).get("decoded_url").asText());
+            assertEquals(legacyUrl, om.readTree(urlController.decodeUrl(legacyEncodedUrl, userDetails).getBody()).get("decoded_url").asText());
+        }
+    }
+
+    /**
+     * Test: a dictionary loaded from the routing data (the documents without their legacy lists) still imports the legacy dictionary
+     */
+    @SuppressWarnings("OptionalGetWithoutIsPresent")
+    @Test
+    void testLegacyDictionaryMigrationFromRoutingData() {
+        Company company = setUpCompany();
+        String activeDomain = topLevelDomainRepo.findByCompanyAndDomainState(
+                company, TopLevelDomain.DomainState.ACTIVE).getFirst().getDomain();
+
+        CompanyUrlData urlData = companyUrlDataRepo.findFirstByCompany(company).get();
+        String legacyUrl = "https://" + activeDomain + "/" + this.gen.randomAlphaString(25) + "/" + this.gen.randomAlphaString(25);
+        urlProcessor.encode(legacyUrl, urlController.getUrlEncodePrefix(), urlData.getCompanyDomainHashed(),
+                urlData.getDataEncoded(), urlData.getDataDecoded(), 5, 5);
+
+        List<Map<String, String>> legacyEncoded = new ArrayList<>();
+        urlData.getDataEncoded().forEach(m -> legacyEncoded.add(new HashMap<>(m)));
+
+        // what the CompanyDomainHashIndex holds: the document without its lists
+        CompanyUrlData routingData = new CompanyUrlData(urlData.getId(), company, urlData.getCompanyDomainHashed(), urlData.getIdAlphabet());
+        assertFalse(routingData.hasLegacyDictionary());
+
+        urlDictionaryService.getDictionary(routingData);
+
+        assertFalse(companyUrlDataRepo.findFirstByCompany(company).get().hasLegacyDictionary(),
+                "The legacy dictionary should be imported before the dictionary is loaded");
+        assertEquals(legacyEncoded, encodedData(company), "The imported entries should match the legacy dictionary");
+    }
+
+    @Test
+    void testLegacyDictionaryAliasesMigratedAtStartup() throws Exception {
+        com.fasterxml.jackson.databind.ObjectMapper om = new com.fasterxml.jackson.databind.ObjectMapper();
+
+        Company company = setUpCompany();
+        AppUser user = setUpUser(company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), true);
+        UserDetailsImp userDetails = new UserDetailsImp(user);
+
+        String activeDomain = topLevelDomainRepo.findByCompanyAndDomainState(
+                company, TopLevelDomain.DomainState.ACTIVE).getFirst().getDomain();
+
+        CompanyUrlData urlData = companyUrlDataRepo.findFirstByCompany(company).get();
+        String firstSegment = this.gen.randomAlphaString(25);
+        String legacyUrl = "https://" + activeDomain + "/" + firstSegment + "/" + this.gen.randomAlphaString(25);
+        String legacyEncodedUrl = urlProcessor.encode(legacyUrl, urlController.getUrlEncodePrefix(), urlData.getCompanyDomainHashed(),
+                urlData.getDataEncoded(), urlData.getDataDecoded(), 5, 5);
+
+        // a dictionary saved concurrently in the former layout might hold several codes for the same value
+        String code = urlData.getDataEncoded().getFirst().get(firstSegment);
+        String extraCode = urlData.getIdAlphabet().generateId(urlData.getIdAlphabet().orderFromId(code) + 1);
+        urlData.getDataDecoded().getFirst().put(extraCode, firstSegment);
+        companyUrlDataRepo.save(urlData);
+
+        String aliasEncodedUrl = legacyEncodedUrl.replace("/" + code + "/", "/" + extraCode + "/");
+        assertNotEquals(legacyEncodedUrl, aliasEncodedUrl);
+
+        urlDictionaryService.migrateLegacyDictionaries();
+
+        assertFalse(companyUrlDataRepo.findFirstByCompany(company).get().hasLegacyDictionary(),
+                "The legacy dictionary should be imported at startup");
+        assertEquals(3, urlDictionaryEntryRepo.findByCompanyId(company.getId()).size(), "Every legacy code should be kept");
+
+        // both codes are decoded, the encoding keeps using the main code
+        assertEquals(legacyUrl, om.readTree(urlController.decodeUrl(legacyEncodedUrl, userDetails).getBody()).get("decoded_url").asText());
+        assertEquals(legacyUrl, om.readTree(urlController.decodeUrl(aliasEncodedUrl, userDetails).getBody()).get("decoded_url").asText());
+        assertEquals(legacyEncodedUrl, om.readTree(urlController.encodeUrl(legacyUrl, userDetails).getBody()).get("encoded_url").asText());
+
+        // the new codes come after all the legacy ones
+        String newUrl = "https://" + activeDomain + "/" + this.gen.randomAlphaString(25) + "/" + this.gen.randomAlphaString(25);
+        String newEncodedUrl = om.readTree(urlController.encodeUrl(newUrl, userDetails).getBody()).get("encoded_url").asText();
+        assertEquals(newUrl, om.readTree(urlController.decodeUrl(newEncodedUrl, userDetails).getBody()).get("decoded_url").asText());
+        assertEquals(legacyUrl, om.readTree(urlController.decodeUrl(aliasEncodedUrl, userDetails).getBody()).get("decoded_url").asText());
+    }
 }
 
 
@@ -975,7 +1646,7 @@ class UrlHistoryTest extends BaseTest {
 
     public UrlHistoryTest() {
         super();
-        urlController = new UrlController(companyUrlDataRepo, urlEncodingRepo, topLevelDomainRepo, userRepo, tokenUserLinkRepo, urlProcessor, 10);
+        urlController = new UrlController(companyUrlDataRepo, urlDictionaryService, urlEncodingRepo, topLevelDomainRepo, userRepo, tokenUserLinkRepo, urlProcessor, 10);
     }
 
     @BeforeEach
@@ -1000,7 +1671,7 @@ class UrlHistoryTest extends BaseTest {
         // Attempt to access history - should throw exception
         TokenAuthController.TokenNotFoundException exception =
             assertThrows(TokenAuthController.TokenNotFoundException.class,
-                () -> urlController.getHistory(0, 10, userDetails),
+                () -> urlController.getHistory(0, 10, null, userDetails),
                 "User without token should not be authorized to access history");
         
         assertTrue(exception.getMessage().contains("His access might have been revoked"), 
@@ -1008,7 +1679,7 @@ class UrlHistoryTest extends BaseTest {
                 
         // Also test the parameterless overload
         assertThrows(TokenAuthController.TokenNotFoundException.class,
-            () -> urlController.getHistory(null, null, userDetails),
+            () -> urlController.getHistory(null, null, null, userDetails),
             "User without token should not be authorized to access history (parameterless method)");
     }
     
@@ -1039,7 +1710,7 @@ class UrlHistoryTest extends BaseTest {
             urlController.encodeUrl(originalUrl, userDetails);
             
             // Test history size at each step
-            var historyResponse = urlController.getHistory(0, totalUrls, userDetails);
+            var historyResponse = urlController.getHistory(0, totalUrls, null, userDetails);
             com.fasterxml.jackson.databind.JsonNode jsonNode = 
                 new com.fasterxml.jackson.databind.ObjectMapper().readTree(historyResponse.getBody());
             
@@ -1051,7 +1722,7 @@ class UrlHistoryTest extends BaseTest {
         }
         
         // Test with the parameterless method too
-        var fullHistoryResponse = urlController.getHistory(null, null, userDetails);
+        var fullHistoryResponse = urlController.getHistory(null, null, null, userDetails);
         com.fasterxml.jackson.databind.JsonNode jsonNode = 
             new com.fasterxml.jackson.databind.ObjectMapper().readTree(fullHistoryResponse.getBody());
         assertEquals(historySize, jsonNode.size(), 
@@ -1088,7 +1759,7 @@ class UrlHistoryTest extends BaseTest {
             urlController.encodeUrl(currentUrl, userDetails);
             
             // Get history
-            var historyResponse = urlController.getHistory(0, i + 1, userDetails);
+            var historyResponse = urlController.getHistory(0, i + 1, null, userDetails);
             com.fasterxml.jackson.databind.JsonNode jsonNode = 
                 new com.fasterxml.jackson.databind.ObjectMapper().readTree(historyResponse.getBody());
             
@@ -1107,7 +1778,7 @@ class UrlHistoryTest extends BaseTest {
         }
         
         // Test with parameterless method too
-        var fullHistoryResponse = urlController.getHistory(null, null, userDetails);
+        var fullHistoryResponse = urlController.getHistory(null, null, null, userDetails);
         com.fasterxml.jackson.databind.JsonNode fullJsonNode = 
             new com.fasterxml.jackson.databind.ObjectMapper().readTree(fullHistoryResponse.getBody());
         
@@ -1120,4 +1791,266 @@ class UrlHistoryTest extends BaseTest {
                     "Full history entry at position " + j + " should match URL in reverse order");
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Test: the history pages follow the cursors (or the page numbers) down to the subscription limit
+     */
+    @Test
+    void testHistoryCursor() throws Exception {
+        Company company = setUpCompany();
+        AppUser user = setUpUser(company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), true);
+        UserDetailsImp userDetails = new UserDetailsImp(user);
+        String activeDomain = domain(company, TopLevelDomain.DomainState.ACTIVE);
+
+        int historySize = company.getSubscription().getMaxHistorySize();
+        List<String> originalUrls = new ArrayList<>();
+        for (int i = 0; i < historySize + 5; i++) {
+            originalUrls.add("https://" + activeDomain + "/cursor/" + i);
+        }
+        results(urlController.encodeUrlBatch(originalUrls, userDetails));
+
+        int pageSize = 4;
+        List<String> urls = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            var response = urlController.getHistory(null, pageSize, cursor, userDetails);
+            com.fasterxml.jackson.databind.JsonNode page = om.readTree(response.getBody());
+            assertTrue(page.size() <= pageSize);
+            page.forEach(entry -> urls.add(entry.get("url").asText()));
+
+            // the page numbers give the same pages
+            assertEquals(page, om.readTree(urlController.getHistory(pages, pageSize, null, userDetails).getBody()));
+
+            cursor = response.getHeaders().getFirst(UrlController.NEXT_CURSOR_HEADER);
+            pages++;
+        } while (cursor != null);
+
+        assertEquals((historySize + pageSize - 1) / pageSize, pages);
+        assertEquals(originalUrls.reversed().subList(0, historySize), urls);
+
+        assertThrows(UrlExceptions.InvalidHistoryRequestException.class,
+                () -> urlController.getHistory(null, pageSize, "not a cursor", userDetails));
+        assertThrows(UrlExceptions.InvalidHistoryRequestException.class,
+                () -> urlController.getHistory(null, UrlController.MAX_HISTORY_PAGE_SIZE + 1, null, userDetails));
+    }
+
+    /**
+     * Test: the history export streams the history within the subscription limit, most recent first, in keyset pages
+     */
+    @Test
+    void testHistoryExport() throws Exception {
+        Company company = setUpCompany();
+        AppUser user = setUpUser(company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), true);
+        UserDetailsImp userDetails = new UserDetailsImp(user);
+        String activeDomain = domain(company, TopLevelDomain.DomainState.ACTIVE);
+
+        int historySize = company.getSubscription().getMaxHistorySize();
+        List<String> originalUrls = new ArrayList<>();
+        for (int i = 0; i < historySize + 5; i++) {
+            originalUrls.add("https://" + activeDomain + "/export/" + i + "?a=" + i + "&b=x,y");
+        }
+        results(urlController.encodeUrlBatch(originalUrls, userDetails));
+
+        // the whole history: the oldest encodings are past the subscription limit
+        List<com.fasterxml.jackson.databind.JsonNode> history = results(urlController.exportHistory("ndjson", null, 0, userDetails));
+        assertEquals(historySize, history.size());
+        for (int i = 0; i < historySize; i++) {
+            assertEquals(originalUrls.get(originalUrls.size() - 1 - i), history.get(i).get("url").asText());
+        }
+
+        // the keyset pages give the same history
+        List<com.fasterxml.jackson.databind.JsonNode> pages = new ArrayList<>();
+        Long before = null;
+        List<com.fasterxml.jackson.databind.JsonNode> page;
+        while (!(page = results(urlController.exportHistory("ndjson", before, 3, userDetails))).isEmpty()) {
+            assertTrue(page.size() <= 3);
+            pages.addAll(page);
+            before = page.getLast().get("count").asLong();
+        }
+        assertEquals(history, pages);
+
+        // the csv export quotes the urls holding commas
+        var csvResponse = urlController.exportHistory("csv", null, 2, userDetails);
+        assertEquals("text/csv", String.valueOf(csvResponse.getHeaders().getContentType()));
+        String[] lines = streamedBody(csvResponse).split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("count,url,url_encoded,encoding_time", lines[0]);
+        assertTrue(lines[1].startsWith(history.get(0).get("count").asText() + ",\"" + originalUrls.getLast() + "\","));
+
+        assertThrows(UrlExceptions.InvalidHistoryRequestException.class,
+                () -> urlController.exportHistory("xml", null, 0, userDetails));
+        assertThrows(UrlExceptions.InvalidHistoryRequestException.class,
+                () -> urlController.exportHistory("csv", null, -1, userDetails));
+    }
+}
+
+
+class RedirectTest extends BaseTest {
+
+    private final UrlController urlController;
+    private final RedirectController redirectController;
+
+    public RedirectTest() {
+        super();
+        urlController = new UrlController(companyUrlDataRepo, urlDictionaryService, urlEncodingRepo, topLevelDomainRepo, userRepo, tokenUserLinkRepo, urlProcessor, 18);
+        redirectController = new RedirectController(new ShortUrlResolver(new CompanyDomainHashIndex(companyUrlDataRepo), topLevelDomainRepo, urlDictionaryService, urlProcessor));
+    }
+
+    @BeforeEach
+    void setUp() {
+        clear();
+    }
+
+    // the request of an end user clicking the short url
+    private MockHttpServletRequest clickRequest(String encodedUrl) {
+        String protocol = encodedUrl.substring(0, encodedUrl.indexOf("://") + 3);
+        String pathAndQuery = encodedUrl.substring(protocol.length() + urlController.getUrlEncodePrefix().length() - 1);
+        int queryStart = pathAndQuery.indexOf('?');
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", queryStart == -1 ? pathAndQuery : pathAndQuery.substring(0, queryStart));
+        request.setScheme(protocol.substring(0, protocol.length() - 3));
+        if (queryStart != -1) {
+            request.setQueryString(pathAndQuery.substring(queryStart + 1));
+        }
+        return request;
+    }
+
+    private String domainHash(Company company) {
+        return companyUrlDataRepo.findFirstByCompany(company).get().getCompanyDomainHashed();
+    }
+
+    /**
+     * Test: a short url redirects to the original url, without any user
+     */
+    @Test
+    void testRedirect() throws Exception {
+        com.fasterxml.jackson.databind.ObjectMapper om = new com.fasterxml.jackson.databind.ObjectMapper();
+
+        for (int i = 0; i < 10; i++) {
+            Company company = setUpCompany();
+            UserDetailsImp userDetails = new UserDetailsImp(setUpUser(company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), true));
+            String activeDomain = topLevelDomainRepo.findByCompanyAndDomainState(
+                    company, TopLevelDomain.DomainState.ACTIVE).getFirst().getDomain();
+
+            List<String> urls = List.of(
+                    "https://" + activeDomain + "/" + this.gen.randomAlphaString(25) + "/" + this.gen.randomAlphaString(25),
+                    "https://" + activeDomain + "/users/" + (1000000000000000000L + i),
+                    "http://" + activeDomain + "/" + this.gen.randomAlphaString(25) + "?" + this.gen.randomAlphaString(20) + "=" + this.gen.randomAlphaString(20));
+
+            for (String url : urls) {
+                String encodedUrl = om.readTree(urlController.encodeUrl(url, userDetails).getBody()).get("encoded_url").asText();
+
+                var response = redirectController.redirect(domainHash(company), clickRequest(encodedUrl));
+                assertEquals(HttpStatus.FOUND, response.getStatusCode());
+                assertEquals(url, response.getHeaders().getFirst(HttpHeaders.LOCATION));
+            }
+        }
+    }
+
+    /**
+     * Test: a change of the active domain of a company (made by the auth application) is seen once the route expires
+     */
+    @Test
+    void testRouteTimeToLive() throws Exception {
+        AtomicReference<Instant> now = new AtomicReference<>(Instant.now());
+        Clock clock = new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return now.get();
+            }
+        };
+        RedirectController resolvingController = new RedirectController(new ShortUrlResolver(new CompanyDomainHashIndex(companyUrlDataRepo),
+                topLevelDomainRepo, urlDictionaryService, urlProcessor, ShortUrlResolver.ROUTE_TIME_TO_LIVE, clock));
+
+        Company company = setUpCompany();
+        UserDetailsImp userDetails = new UserDetailsImp(setUpUser(company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE), true));
+        TopLevelDomain oldDomain = topLevelDomainRepo.findByCompanyAndDomainState(company, TopLevelDomain.DomainState.ACTIVE).getFirst();
+
+        String path = "/" + this.gen.randomAlphaString(25) + "/" + this.gen.randomAlphaString(25);
+        String encodedUrl = new com.fasterxml.jackson.databind.ObjectMapper()
+                .readTree(urlController.encodeUrl("https://" + oldDomain.getDomain() + path, userDetails).getBody()).get("encoded_url").asText();
+        assertEquals("https://" + oldDomain.getDomain() + path,
+                resolvingController.redirect(domainHash(company), clickRequest(encodedUrl)).getHeaders().getFirst(HttpHeaders.LOCATION));
+
+        // the company switches to a new domain
+        oldDomain.deactivate();
+        topLevelDomainRepo.save(oldDomain);
+        TopLevelDomain newDomain = new TopLevelDomain(this.gen.randomAlphaString(10), "www." + this.gen.randomAlphaString(10) + ".com", company);
+        topLevelDomainRepo.save(newDomain);
+
+        // the cached route is used until it expires
+        now.set(now.get().plus(ShortUrlResolver.ROUTE_TIME_TO_LIVE).minusSeconds(1));
+        assertEquals("https://" + oldDomain.getDomain() + path,
+                resolvingController.redirect(domainHash(company), clickRequest(encodedUrl)).getHeaders().getFirst(HttpHeaders.LOCATION));
+
+        now.set(now.get().plusSeconds(1));
+        assertEquals("https://" + newDomain.getDomain() + path,
+                resolvingController.redirect(domainHash(company), clickRequest(encodedUrl)).getHeaders().getFirst(HttpHeaders.LOCATION));
+    }
+
+    /**
+     * Test: the short urls of an unknown company are not found
+     */
+    @Test
+    void testUnknownDomainHash() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/zzzzzz/abc/def");
+        request.setScheme("https");
+
+        assertThrows(UrlExceptions.ShortUrlNotFoundException.class, () -> redirectController.redirect("zzzzzz", request));
+    }
+
+    /**
+     * Test: the domain hash index is warmed with all the companies, and finds the companies added since in the database
+     */
+    @Test
+    void testDomainHashIndex() {
+        List<Company> companies = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            companies.add(setUpCompany());
+        }
+
+        CompanyDomainHashIndex index = new CompanyDomainHashIndex(companyUrlDataRepo);
+        index.warmUp();
+        assertEquals(5, index.size());
+
+        for (Company company : companies) {
+            assertEquals(company.getId(), index.find(domainHash(company)).get().getCompany().getId());
+        }
+
+        // e.g. registered by another application instance
+        Company newCompany = setUpCompany();
+        assertEquals(newCompany.getId(), index.find(domainHash(newCompany)).get().getCompany().getId());
+        assertEquals(6, index.size());
+
+        assertTrue(index.find("zzzzzz").isEmpty());
+    }
+
+    /**
+     * Test: the short urls are public, the endpoints of the application never are
+     */
+    @Test
+    void testShortUrlPathRegex() {
+        java.util.regex.Pattern pattern = java.util.regex.Pattern.compile(SecurityConfiguration.SHORT_URL_PATH_REGEX);
+
+        for (String path : List.of("/bmm", "/bmm/abc", "/bmm/abc/def?ab=cd", "/bmmbmm/abc", "/bmm?a=b", "/errors/abc")) {
+            assertTrue(pattern.matcher(path).matches(), path);
+        }
+
+        for (String path : List.of("/api/url/encode?url=x", "/api", "/error", "/webjars/x.js", "/swagger-ui/index.html",
+                "/v3/api-docs", "/swagger-ui.html", "/BMM/abc", "/actuator", "/actuator/health", "/bm/abc", "/abc/def",
+                "/bmmbmmbmmbmmbmm/abc")) {
+            assertFalse(pattern.matcher(path).matches(), path);
+        }
+    }
+}
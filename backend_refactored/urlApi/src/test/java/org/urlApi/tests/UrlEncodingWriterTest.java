@@ -0,0 +1,172 @@
+package org.urlApi.tests;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.access.RoleManager;
+import org.access.SubscriptionManager;
+import org.company.entities.Company;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.stubs.repositories.StubUrlEncodingRepo;
+import org.user.entities.AppUser;
+import org.user.entities.UrlEncoding;
+import org.user.services.WriteBehindUrlEncodingWriter;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+
+
+class UrlEncodingWriterTest {
+
+    // long enough for the periodic flush not to run during the test
+    private static final Duration NO_PERIODIC_FLUSH = Duration.ofHours(1);
+
+    private final Company company = new Company("writer_company", "writerCompany", "writerAddress",
+            "owner@writer.com", "writer.com", SubscriptionManager.getSubscription("TIER_1"));
+
+    private final AppUser user = new AppUser("employee@writer.com", "writerEmployee", "password123", "Writer", "Employee",
+            null, company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE));
+
+    private final StubUrlEncodingRepo urlEncodingRepo = Mockito.spy(new StubUrlEncodingRepo());
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private List<UrlEncoding> encodings(int from, int count) {
+        List<UrlEncoding> encodings = new ArrayList<>();
+        for (int i = from; i < from + count; i++) {
+            encodings.add(new UrlEncoding(user, "url_" + i, "encoded_" + i, i));
+        }
+        return encodings;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBatches() {
+        try (WriteBehindUrlEncodingWriter writer = new WriteBehindUrlEncodingWriter(urlEncodingRepo, 100, 10, NO_PERIODIC_FLUSH, meterRegistry)) {
+            writer.writeAll(encodings(0, 25));
+            writer.flush();
+
+            assertEquals(0, writer.buffered());
+            assertEquals(25, urlEncodingRepo.count());
+
+            // the encodings are saved with bulk writes of at most a batch
+            ArgumentCaptor<List<UrlEncoding>> batches = ArgumentCaptor.forClass(List.class);
+            verify(urlEncodingRepo, atLeastOnce()).insertAll(batches.capture());
+            assertTrue(batches.getAllValues().stream().allMatch(batch -> batch.size() <= 10));
+        }
+    }
+
+    @Test
+    void testBackpressure() {
+        try (WriteBehindUrlEncodingWriter writer = new WriteBehindUrlEncodingWriter(urlEncodingRepo, 5, 5, NO_PERIODIC_FLUSH, meterRegistry)) {
+            // the buffer never holds more than its size: the writes flush it once it is full
+            for (UrlEncoding encoding : encodings(0, 50)) {
+                writer.write(encoding);
+                assertTrue(writer.buffered() <= 5);
+            }
+            writer.flush();
+            assertEquals(50, urlEncodingRepo.count());
+        }
+    }
+
+    @Test
+    void testPeriodicFlush() throws Exception {
+        try (WriteBehindUrlEncodingWriter writer = new WriteBehindUrlEncodingWriter(urlEncodingRepo, 100, 50, Duration.ofMillis(20), meterRegistry)) {
+            writer.writeAll(encodings(0, 3));
+
+            // less than a batch: saved by the periodic flush
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (writer.buffered() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            writer.flush();
+            assertEquals(3, urlEncodingRepo.count());
+        }
+    }
+
+    @Test
+    void testClose() {
+        WriteBehindUrlEncodingWriter writer = new WriteBehindUrlEncodingWriter(urlEncodingRepo, 100, 50, NO_PERIODIC_FLUSH, meterRegistry);
+        writer.writeAll(encodings(0, 10));
+        assertEquals(0, urlEncodingRepo.count());
+
+        // the buffer is flushed when the application stops
+        writer.close();
+        assertEquals(10, urlEncodingRepo.count());
+
+        // then the encodings are saved right away
+        writer.write(encodings(10, 1).getFirst());
+        assertEquals(11, urlEncodingRepo.count());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRetryAfterPartialFailure() {
+        // the first attempt saves half of the batch, then fails
+        doAnswer(invocation -> {
+            List<UrlEncoding> batch = new ArrayList<>(invocation.getArgument(0, List.class));
+            urlEncodingRepo.insertAll(batch.subList(0, batch.size() / 2));
+            throw new IllegalStateException("connection lost");
+        }).doCallRealMethod().when(urlEncodingRepo).insertAll(anyCollection());
+
+        try (WriteBehindUrlEncodingWriter writer = new WriteBehindUrlEncodingWriter(urlEncodingRepo, 100, 10, NO_PERIODIC_FLUSH, meterRegistry)) {
+            writer.writeAll(encodings(0, 10));
+            writer.flush();
+        }
+
+        // the retry skips the encodings saved by the failed attempt
+        assertEquals(10, urlEncodingRepo.count());
+        assertEquals(10, urlEncodingRepo.findAll().stream().map(UrlEncoding::getId).distinct().count());
+        assertEquals(0, meterRegistry.get(WriteBehindUrlEncodingWriter.DROPPED_COUNTER).counter().count());
+    }
+
+    @Test
+    void testDroppedBatch() {
+        doThrow(new IllegalStateException("connection lost")).when(urlEncodingRepo).insertAll(anyCollection());
+
+        try (WriteBehindUrlEncodingWriter writer = new WriteBehindUrlEncodingWriter(urlEncodingRepo, 100, 10, NO_PERIODIC_FLUSH, meterRegistry)) {
+            writer.writeAll(encodings(0, 10));
+            writer.flush();
+
+            // dropped after the last attempt, and counted
+            assertEquals(0, writer.buffered());
+            assertEquals(0, urlEncodingRepo.count());
+            assertEquals(10, meterRegistry.get(WriteBehindUrlEncodingWriter.DROPPED_COUNTER).counter().count());
+        }
+    }
+
+    @Test
+    void testCountPending() {
+        AppUser otherUser = new AppUser("other@writer.com", "writerOther", "password123", "Writer", "Other",
+                null, company, RoleManager.getRole(RoleManager.EMPLOYEE_ROLE));
+
+        try (WriteBehindUrlEncodingWriter writer = new WriteBehindUrlEncodingWriter(urlEncodingRepo, 100, 50, NO_PERIODIC_FLUSH, meterRegistry)) {
+            LocalDateTime before = LocalDateTime.now().minusMinutes(1);
+            writer.writeAll(encodings(0, 4));
+            writer.write(new UrlEncoding(otherUser, "url_other", "encoded_other", 1));
+
+            // the buffered encodings of the user
+            assertEquals(4, writer.countPending(user, before));
+            assertEquals(1, writer.countPending(otherUser, before));
+            assertEquals(0, writer.countPending(user, LocalDateTime.now().plusMinutes(1)));
+
+            writer.flush();
+            assertEquals(0, writer.countPending(user, before));
+        }
+    }
+
+    @Test
+    void testInvalidSizes() {
+        assertThrows(IllegalArgumentException.class, () -> new WriteBehindUrlEncodingWriter(urlEncodingRepo, 10, 20, NO_PERIODIC_FLUSH, meterRegistry));
+        assertThrows(IllegalArgumentException.class, () -> new WriteBehindUrlEncodingWriter(urlEncodingRepo, 10, 0, NO_PERIODIC_FLUSH, meterRegistry));
+    }
+}
@@ -0,0 +1,141 @@
+package org.url;
+
+import org.utils.IdAlphabet;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A thread-safe encoding dictionary: any number of threads can encode urls of the same company concurrently.
+ * <p>
+ * Each level keeps its maps in {@link ConcurrentHashMap} objects. The code of a new value is assigned by a {@link CodeAssigner}
+ * (e.g. backed by a counter shared by several application instances): the dictionary acts as an in-memory cache in front of the assigner.
+ * The assigner is called outside of any lock, and the first code published for a value wins: a value gets a single code
+ * and no two values of the same level share a code, whatever the number of threads.
+ * <p>
+ * A dictionary without assigner is read-only: it only holds the entries put into it (e.g. loaded from the database for decoding).
+ */
+public class ConcurrentEncodingDictionary implements EncodingDictionary {
+
+    private static final class Level {
+        private final Map<String, String> encoded = new ConcurrentHashMap<>();
+        private final Map<String, String> decoded = new ConcurrentHashMap<>();
+    }
+
+    // assigns the code of a new value of the given level: the assigner might be called several times for the same value
+    // (by concurrent threads), so it should return the same code for a given value or never reuse the codes it returns
+    @FunctionalInterface
+    public interface CodeAssigner {
+        String assign(int level, String value);
+    }
+
+    private final IdAlphabet idAlphabet;
+
+    // null for a read-only dictionary
+    private final CodeAssigner codeAssigner;
+
+    // called once a new code is published (e.g. to weigh the dictionary again), or null
+    private final Runnable growthListener;
+
+    private final Map<Integer, Level> levels;
+
+    public ConcurrentEncodingDictionary(IdAlphabet idAlphabet) {
+        this(idAlphabet, null);
+    }
+
+    public ConcurrentEncodingDictionary(IdAlphabet idAlphabet, CodeAssigner codeAssigner) {
+        this(idAlphabet, codeAssigner, null);
+    }
+
+    public ConcurrentEncodingDictionary(IdAlphabet idAlphabet, CodeAssigner codeAssigner, Runnable growthListener) {
+        this.idAlphabet = idAlphabet;
+        this.codeAssigner = codeAssigner;
+        this.growthListener = growthListener;
+        this.levels = new ConcurrentHashMap<>();
+    }
+
+    private Level level(int level) {
+        return this.levels.computeIfAbsent(level, k -> new Level());
+    }
+
+    /**
+     * Adds an existing entry (e.g. loaded from the database) to the dictionary.
+     */
+    public void put(int level, String value, String code) {
+        Level l = level(level);
+        l.encoded.put(value, code);
+        l.decoded.put(code, value);
+    }
+
+    /**
+     * Adds an extra code of a value: the code is decoded, but the value keeps being encoded with its main code.
+     */
+    public void putAlias(int level, String value, String code) {
+        Level l = level(level);
+        l.decoded.put(code, value);
+    }
+
+    @Override
+    public String find(int level, String value) {
+        Level l = this.levels.get(level);
+        return l == null ? null : l.encoded.get(value);
+    }
+
+    @Override
+    public String getOrAssign(int level, String value) {
+        Level l = level(level);
+
+        String code = l.encoded.get(value);
+        if (code != null) {
+            return code;
+        }
+
+        if (this.codeAssigner == null) {
+            throw new IllegalStateException("No code can be assigned by a read-only dictionary");
+        }
+
+        // the assigner might be slow (e.g. a database round trip): it must not run inside a compute of the map
+        String newCode = this.codeAssigner.assign(level, value);
+
+        // the code is decodable before it is published
+        l.decoded.put(newCode, value);
+        String existing = l.encoded.putIfAbsent(value, newCode);
+
+        if (existing != null && !existing.equals(newCode)) {
+            // a concurrent thread published another code for the value first
+            l.decoded.remove(newCode, value);
+            return existing;
+        }
+
+        if (this.growthListener != null) {
+            this.growthListener.run();
+        }
+        return newCode;
+    }
+
+    @Override
+    public String decode(int level, String code) {
+        Level l = this.levels.get(level);
+        return l == null ? null : l.decoded.get(code);
+    }
+
+    @Override
+    public IdAlphabet getIdAlphabet() {
+        return idAlphabet;
+    }
+
+    // the number of entries (aliases included) in the given level
+    public int size(int level) {
+        Level l = this.levels.get(level);
+        return l == null ? 0 : l.decoded.size();
+    }
+
+    // the number of entries (aliases included) in all the levels
+    public int size() {
+        int size = 0;
+        for (Level l : this.levels.values()) {
+            size += l.decoded.size();
+        }
+        return size;
+    }
+}
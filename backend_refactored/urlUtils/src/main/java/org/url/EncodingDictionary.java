@@ -0,0 +1,22 @@
+package org.url;
+
+import org.utils.IdAlphabet;
+
+/**
+ * The dictionary used to encode (and decode) the values of each url level: path segments, path variables,
+ * query parameter names and values. Every level has its own codes: the same value may have different codes in different levels.
+ */
+public interface EncodingDictionary {
+
+    // the code of the value in the given level: null if the value was never encoded in that level
+    String find(int level, String value);
+
+    // the code of the value in the given level: a new code is assigned if the value was never encoded in that level
+    String getOrAssign(int level, String value);
+
+    // the value of the code in the given level: null if the code is unknown
+    String decode(int level, String code);
+
+    // the alphabet of the codes
+    IdAlphabet getIdAlphabet();
+}
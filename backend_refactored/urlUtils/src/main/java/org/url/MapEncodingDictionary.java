@@ -0,0 +1,76 @@
+package org.url;
+
+import org.utils.CustomGenerator;
+import org.utils.IdAlphabet;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An encoding dictionary backed by the (mutable) lists of maps saved in the company url data:
+ * one map (value -> code) and one map (code -> value) per url level.
+ * <p>
+ * The dictionary is not thread-safe: the codes are assigned from the size of the level map.
+ */
+class MapEncodingDictionary implements EncodingDictionary {
+
+    private final List<Map<String, String>> encodedData;
+    private final List<Map<String, String>> decodedData;
+    private final CustomGenerator customGenerator;
+    private final IdAlphabet idAlphabet;
+
+    MapEncodingDictionary(List<Map<String, String>> encodedData,
+                          List<Map<String, String>> decodedData,
+                          CustomGenerator customGenerator,
+                          IdAlphabet idAlphabet) {
+        this.encodedData = encodedData;
+        this.decodedData = decodedData;
+        this.customGenerator = customGenerator;
+        this.idAlphabet = idAlphabet;
+    }
+
+    private void ensureLevel(int level) {
+        // make sure the data has enough entries
+        while (this.encodedData.size() <= level) {
+            this.encodedData.add(new HashMap<>());
+            this.decodedData.add(new HashMap<>());
+        }
+    }
+
+    @Override
+    public String find(int level, String value) {
+        ensureLevel(level);
+        return this.encodedData.get(level).get(value);
+    }
+
+    @Override
+    public String getOrAssign(int level, String value) {
+        ensureLevel(level);
+
+        Map<String, String> encodedMap = this.encodedData.get(level);
+        String code = encodedMap.get(value);
+
+        if (code == null) {
+            code = this.customGenerator.generateId(encodedMap.size(), this.idAlphabet);
+            // store in both maps
+            encodedMap.put(value, code);
+            this.decodedData.get(level).put(code, value);
+        }
+
+        return code;
+    }
+
+    @Override
+    public String decode(int level, String code) {
+        if (level >= this.decodedData.size()) {
+            return null;
+        }
+        return this.decodedData.get(level).get(code);
+    }
+
+    @Override
+    public IdAlphabet getIdAlphabet() {
+        return this.idAlphabet;
+    }
+}
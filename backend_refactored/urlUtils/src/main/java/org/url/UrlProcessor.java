@@ -2,125 +2,100 @@ package org.url;
 
 
 import org.utils.CustomGenerator;
+import org.utils.IdAlphabet;
 
 import java.lang.StringBuilder;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.Set;
 
 
 public class UrlProcessor {
 
+    // the prefix of the values kept as they are, in the urls encoded with an alphabet that marks them (see IdAlphabet.marksRawValues):
+    // an unreserved url character outside of all the alphabets
+    public static final char RAW_VALUE_MARKER = '~';
+
     private final CustomGenerator customGenerator;
 
     public UrlProcessor(CustomGenerator customGenerator) {
         this.customGenerator = customGenerator;
     }
 
-    private UrlLevelEntity inspectPathSegment(String urlLevel) {
-        // this method assume teh levelUrl is not the top level url (nothing such as www.youtube.com...)
-
-        // the algorithm is simple: a basic set of rules
-
-        // 1. check for the ? character in the level
-        //      1.a if yes: split by the ? character, the first one item is a urlLevelName
-        //          1.b the rest of each item is split by the = character, this split should give 2 elements
-        //              the first being the queryParameterName, the second being the query parameter value
-        //      1.c if no: we know the level does not contain any queryParamNames / Values, set both fields to Null
-        //          and move to step 2
-        // 2. if there are non-alphabetical (and not _ or -) characters then, the level is assumed to be a pathVariable
-
-        // 3. otherwise, it is a levelName variable
-
-        if (urlLevel.contains("?")) {
-            List<String> items = List.of(urlLevel.split("\\?"));
-
-            String queryParamValuePairsString = items.get(1);
-
-            List<String> queryParamValuePairsList = List.of(queryParamValuePairsString.split("&"));
-
-            List<String> qpNames = new ArrayList<>();
-            List<String> qpValues = new ArrayList<>();
-
-            for (String v : queryParamValuePairsList) {
-                // split by the "=" character
-                List<String> qp = List.of(v.split("="));
-                qpNames.add(qp.getFirst());
-                qpValues.add(qp.get(1));
-            }
-
-            // the string right before the "?" delimiter might be either path variable or a levelName
-            String levelName;
-            String pathVariable;
-
-            if (items.getFirst().matches("[a-zA-Z_-]+")) {
-                levelName = items.getFirst();
-                pathVariable = null;
-            }
-            else {
-                pathVariable = items.getFirst();
-                levelName = null;
-            }
-
-            return new UrlLevelEntity(levelName, pathVariable, qpNames, qpValues);
-        }
-
-        if (urlLevel.matches("[a-zA-Z_-]+")) {
-            return new UrlLevelEntity(urlLevel, null, null, null);
-        }
-
-        return new UrlLevelEntity(null, urlLevel, null, null);
-
-    }
-
     public List<UrlLevelEntity> breakdown(String urlString) {
-        // step1: extract the protocol schema
-        // step2: extract the top level Domain 
-        // split the rest of the url by the "/" character 
-        // for each item in the list call the inspectLevel method
-        // return protocol (as urlEntity) + topLevelDomain (as urlEntity) + list of UrlLevelEntity 
-
-        int protocolEndIndex = urlString.indexOf("://"); 
-
-        if (protocolEndIndex == -1) {
-            throw new RuntimeException("The passed url does not contain the protocol delimiter");
-        }
-
-        String protocol = urlString.substring(0, protocolEndIndex + 3);
-
-        String strToWorkWith = urlString.substring(protocolEndIndex + 3);
-
-        // 1. split by the "/" character
-        List<String> levels = List.of(strToWorkWith.split("/"));
-
-        String topLevelUrl = levels.getFirst();
+        // the protocol, the top level domain and each path segment are extracted in a single pass over the url
+        // (see the UrlTokenizer class for the details of the rules used to inspect each path segment)
+        return UrlTokenizer.tokenize(urlString);
+    }
 
-        List<UrlLevelEntity> entities = levels.subList(1, levels.size()).stream().
-                map(this::inspectPathSegment).
-                toList();
 
-        // make sure the 'entities' variable is mutable
-        ArrayList<UrlLevelEntity> m_entities = new ArrayList<>(entities);
+    public String encode(
+                    String urlString, 
+                    String encodedUrlPrefix,
+                    String topLevelDomainHash, 
+                    List<Map<String, String>> encodedData,
+                    List<Map<String, String>> decodedData,
+                    int minVariableLength,
+                    int minParameterLength) {
 
-        m_entities.addFirst(new UrlLevelEntity(topLevelUrl, null, null, null));
+        // 1. Breakdown the urlString into a list of UrlLevelEntity
+        return encode(breakdown(urlString), encodedUrlPrefix, topLevelDomainHash, encodedData, decodedData,
+                minVariableLength, minParameterLength);
+    }
 
-        // add the protocol to the list
-        m_entities.addFirst(new UrlLevelEntity(protocol, null, null, null));
+    /**
+     * Encodes an url that was already broken down into url levels (e.g. by the {@link #breakdown(String)} method).
+     * This overload lets callers that already parsed the url (to validate it, to replace its top level domain...)
+     * encode it without building it back into a string and parsing it a second time.
+     */
+    public String encode(
+                    List<UrlLevelEntity> urlLevels,
+                    String encodedUrlPrefix,
+                    String topLevelDomainHash,
+                    List<Map<String, String>> encodedData,
+                    List<Map<String, String>> decodedData,
+                    int minVariableLength,
+                    int minParameterLength) {
 
-        return m_entities;
+        return encode(urlLevels, encodedUrlPrefix, topLevelDomainHash, encodedData, decodedData,
+                minVariableLength, minParameterLength, CustomGenerator.DEFAULT_ID_ALPHABET);
     }
 
-
+    /**
+     * Encodes the url levels, generating the ids of the new dictionary entries with the given alphabet.
+     * The alphabet must be the one the dictionaries (encodedData / decodedData) were created with:
+     * the ids of different alphabets collide.
+     */
     public String encode(
-                    String urlString, 
+                    List<UrlLevelEntity> urlLevels,
                     String encodedUrlPrefix,
-                    String topLevelDomainHash, 
+                    String topLevelDomainHash,
                     List<Map<String, String>> encodedData,
                     List<Map<String, String>> decodedData,
                     int minVariableLength,
+                    int minParameterLength,
+                    IdAlphabet idAlphabet) {
+
+        return encode(urlLevels, encodedUrlPrefix, topLevelDomainHash,
+                new MapEncodingDictionary(encodedData, decodedData, this.customGenerator, idAlphabet),
+                minVariableLength, minParameterLength);
+    }
+
+    /**
+     * Encodes the url levels with the given dictionary: the values long enough to be encoded get a code from the dictionary
+     * (a new one if they were never encoded in their level). The codes are assigned by the dictionary itself,
+     * so the method is thread-safe as long as the dictionary is (see {@link ConcurrentEncodingDictionary}).
+     */
+    public String encode(
+                    List<UrlLevelEntity> urlLevels,
+                    String encodedUrlPrefix,
+                    String topLevelDomainHash,
+                    EncodingDictionary dictionary,
+                    int minVariableLength,
                     int minParameterLength) {
-        
+
         // make sure the prefix ends with a "/" character
         if (!encodedUrlPrefix.isEmpty() && !encodedUrlPrefix.endsWith("/")) {
             throw new IllegalArgumentException("The prefix must be either empty or ends with a '/' character");
@@ -131,9 +106,6 @@ public class UrlProcessor {
             throw new IllegalArgumentException("The prefix cannot have multiple path segments. The Only \\/ allowed is at the end of the prefix");
         }
 
-        // 1. Breakdown the urlString into a list of UrlLevelEntity
-        List<UrlLevelEntity> urlLevels = breakdown(urlString);
-
         // Check if we have at least protocol and domain
         if (urlLevels.size() < 2) {
             throw new IllegalArgumentException("Invalid URL structure: missing protocol or domain");
@@ -160,69 +132,18 @@ public class UrlProcessor {
             // Current segment index in our encoding data is (i-2) because we skip protocol and domain
             int segmentIndex = i - 2;
 
-            // Make sure encodedData has enough entries
-            while (encodedData.size() <= segmentIndex) {
-                encodedData.add(new HashMap<>());
-                decodedData.add(new HashMap<>());
-            }
-
-            Map<String, String> currentEncodedMap = encodedData.get(segmentIndex);
-            Map<String, String> currentDecodedMap = decodedData.get(segmentIndex);
-
             // Add path separator
             encodedUrl.append("/");
 
             // Handle the path segment based on its type
             if (currentLevel.levelName() != null) {
                 // This is a named level (like "users", "profile", etc.)
-                String levelName = currentLevel.levelName();
-
-                if (currentEncodedMap.containsKey(levelName)) {
-                    // We already have an encoding for this segment
-                    encodedUrl.append(currentEncodedMap.get(levelName));
-                } else {
-                    // if the levelName is not in the encodedMap, we first check whether the levelName is long enough
-                    if (levelName.length() < minParameterLength) {
-                        encodedUrl.append(levelName);
-                    } else {
-                        // at this point, we know that levelName is long enough to be encoded and saved in the encodedMap
-
-                        String encodedSegment = customGenerator.generateId(currentEncodedMap.size());
-
-                        // Store in both maps
-                        currentEncodedMap.put(levelName, encodedSegment);
-                        currentDecodedMap.put(encodedSegment, levelName);
-
-                        encodedUrl.append(encodedSegment);
-
-                    }
-                }
-
+                appendEncodedValue(encodedUrl, dictionary, segmentIndex, currentLevel.levelName(), minParameterLength);
             }
 
             else if (currentLevel.pathVariable() != null) {
                 // This is a path variable (like IDs, etc.)
-                String pathVar = currentLevel.pathVariable();
-
-                if (currentEncodedMap.containsKey(pathVar)) {
-                    // We already have an encoding for this variable
-                    encodedUrl.append(currentEncodedMap.get(pathVar));
-                } else {
-                    // Ensure minimum length
-                    if (pathVar.length() < minVariableLength) {
-                        encodedUrl.append(pathVar);
-                    }
-                    else{
-                        // Generate a new encoding
-                        String encodedVar = customGenerator.generateId(currentEncodedMap.size());
-
-                        // Store in both maps
-                        currentEncodedMap.put(pathVar, encodedVar);
-                        currentDecodedMap.put(encodedVar, pathVar);
-
-                        encodedUrl.append(encodedVar);
-                    }
-                }
+                appendEncodedValue(encodedUrl, dictionary, segmentIndex, currentLevel.pathVariable(), minVariableLength);
             }
 
             // Handle query parameters if present
@@ -230,67 +151,75 @@ public class UrlProcessor {
                 encodedUrl.append("?");
 
                 for (int j = 0; j < currentLevel.queryParamNames().size(); j++) {
-                    String paramName = currentLevel.queryParamNames().get(j);
-                    String paramValue = currentLevel.queryParamValues().get(j);
-
                     // Add parameter separator if not the first param
                     if (j > 0) {
                         encodedUrl.append("&");
                     }
 
-                    // Handle parameter name
-                    if (currentEncodedMap.containsKey(paramName)) {
-                        encodedUrl.append(currentEncodedMap.get(paramName));
-                    } else {
-                        // if the paramName is not in the encodedMap, we first check whether the paramName is long enough
-                        if (paramName.length() < minParameterLength) {
-                            encodedUrl.append(paramName);
-                        } else {
-                            // at this point, we know that paramName is long enough to be encoded and saved in the encodedMap
-
-                            // Generate a new encoding
-                            String encodedParam = customGenerator.generateId(currentEncodedMap.size());
-
-                            // Store in both maps with prefix to avoid collision with path segments
-                            currentEncodedMap.put(paramName, encodedParam);
-                            currentDecodedMap.put(encodedParam, paramName);
-
-                            // add the encoding of the query parameter name to the encodedUrl
-                            encodedUrl.append(encodedParam);
-                        }
-                    }
-
+                    // the names and the values of the query parameters are saved in the same dictionary level as the segment
+                    appendEncodedValue(encodedUrl, dictionary, segmentIndex, currentLevel.queryParamNames().get(j), minParameterLength);
                     encodedUrl.append("=");
-
-                    // Handle parameter value
-                    if (currentEncodedMap.containsKey(paramValue)) {
-                        encodedUrl.append(currentEncodedMap.get(paramValue));
-                    } else {
-                        // if the paramValue is not in the encodedMap, we first check whether the paramValue is long enough
-                        if (paramValue.length() < minVariableLength) {
-                            encodedUrl.append(paramValue);
-                        } else {
-                            // at this point, we know that paramValue is long enough to be encoded and saved in the encodedMap
-                            String encodedValue = customGenerator.generateId(currentEncodedMap.size());
-
-                            // Store in both maps with prefix to avoid collision
-                            currentEncodedMap.put(paramValue, encodedValue);
-                            currentDecodedMap.put(encodedValue, paramValue);
-
-                            // add the encoding of the query parameter value to the encodedUrl
-                            encodedUrl.append(encodedValue);
-                        }
-                    }
+                    appendEncodedValue(encodedUrl, dictionary, segmentIndex, currentLevel.queryParamValues().get(j), minVariableLength);
                 }
             }
+        }
+
+        return encodedUrl.toString();
+    }
 
-            // make sure to save the chances to the hashmap
-            encodedData.set(segmentIndex, currentEncodedMap);
-            decodedData.set(segmentIndex, currentDecodedMap);
+    private void appendEncodedValue(StringBuilder encodedUrl, EncodingDictionary dictionary, int level, String value, int minLength) {
+        // a value that was already encoded keeps its code
+        String code = dictionary.find(level, value);
 
+        // otherwise, the value is encoded only if it is long enough
+        if (code == null && value.length() >= minLength) {
+            code = dictionary.getOrAssign(level, value);
         }
 
-        return encodedUrl.toString();
+        if (code != null) {
+            encodedUrl.append(code);
+        } else if (dictionary.getIdAlphabet().marksRawValues()) {
+            encodedUrl.append(RAW_VALUE_MARKER).append(value);
+        } else {
+            encodedUrl.append(value);
+        }
+    }
+
+    /**
+     * Extracts the values of each path segment of an url (the segments after the domain) that the encoding assigns codes to:
+     * the values long enough to be encoded (same lengths as {@link #encode}). Knowing them beforehand lets the codes of a whole
+     * batch of urls be fetched (or assigned) at once, the encoding then only reads the dictionary.
+     */
+    public List<Set<String>> extractEncodableValues(List<UrlLevelEntity> urlLevels, int minVariableLength, int minParameterLength) {
+        List<Set<String>> values = new ArrayList<>();
+
+        for (int i = 2; i < urlLevels.size(); i++) {
+            UrlLevelEntity currentLevel = urlLevels.get(i);
+            Set<String> levelValues = new HashSet<>();
+
+            if (currentLevel.levelName() != null) {
+                addEncodableValue(levelValues, currentLevel.levelName(), minParameterLength);
+            } else if (currentLevel.pathVariable() != null) {
+                addEncodableValue(levelValues, currentLevel.pathVariable(), minVariableLength);
+            }
+
+            if (currentLevel.queryParamNames() != null) {
+                for (int j = 0; j < currentLevel.queryParamNames().size(); j++) {
+                    addEncodableValue(levelValues, currentLevel.queryParamNames().get(j), minParameterLength);
+                    addEncodableValue(levelValues, currentLevel.queryParamValues().get(j), minVariableLength);
+                }
+            }
+
+            values.add(levelValues);
+        }
+
+        return values;
+    }
+
+    private static void addEncodableValue(Set<String> levelValues, String value, int minLength) {
+        if (value.length() >= minLength) {
+            levelValues.add(value);
+        }
     }
 
     /**
@@ -301,6 +230,14 @@ public class UrlProcessor {
      * @throws IllegalArgumentException if the URL cannot be decoded
      */
     public String decode(String encodedUrl, String originalTopLevelDomain, String encodedUrlPrefix, List<Map<String, String>> decodedData) {
+        return decode(encodedUrl, originalTopLevelDomain, encodedUrlPrefix, decodedData, CustomGenerator.DEFAULT_ID_ALPHABET);
+    }
+
+    /**
+     * Decodes an encoded url with the mapping data created with the given alphabet (see {@link #decode(String, String, String, List)}).
+     */
+    public String decode(String encodedUrl, String originalTopLevelDomain, String encodedUrlPrefix, List<Map<String, String>> decodedData,
+                         IdAlphabet idAlphabet) {
         // Check if there's any data to decode with
         if (decodedData == null || decodedData.isEmpty()) {
             throw new IllegalArgumentException("No decoding data available");
@@ -308,7 +245,48 @@ public class UrlProcessor {
         
         // Break down the encoded URL
         List<UrlLevelEntity> levels = breakdown(encodedUrl);
-        
+
+        // the dictionary is only used to decode: the encoded maps are not needed
+        EncodingDictionary dictionary = new MapEncodingDictionary(List.of(), decodedData, this.customGenerator, idAlphabet);
+
+        // the levels beyond the saved data were never encoded
+        return decode(levels, originalTopLevelDomain, encodedUrlPrefix, dictionary, decodedData.size());
+    }
+
+    /**
+     * Decodes an encoded url that was already broken down into url levels: the values that are not codes of the dictionary
+     * (the values too short to be encoded) are kept as they are.
+     */
+    public String decode(List<UrlLevelEntity> levels, String originalTopLevelDomain, String encodedUrlPrefix, EncodingDictionary dictionary) {
+        return decode(levels, originalTopLevelDomain, encodedUrlPrefix, dictionary, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Extracts the values of each path segment of an encoded url (the segment itself, the names and the values of its query parameters):
+     * the only values a decoder needs to look up in the dictionary.
+     */
+    public List<Set<String>> extractEncodedValues(List<UrlLevelEntity> levels, String encodedUrlPrefix) {
+        int defaultIndex = 2 + (encodedUrlPrefix.isEmpty() ? 0 : 1);
+        List<Set<String>> values = new ArrayList<>();
+
+        for (int i = defaultIndex; i < levels.size(); i++) {
+            UrlLevelEntity currentLevel = levels.get(i);
+            Set<String> levelValues = new HashSet<>();
+
+            levelValues.add(currentLevel.levelName() != null ? currentLevel.levelName() : currentLevel.pathVariable());
+
+            if (currentLevel.queryParamNames() != null) {
+                levelValues.addAll(currentLevel.queryParamNames());
+                levelValues.addAll(currentLevel.queryParamValues());
+            }
+
+            values.add(levelValues);
+        }
+
+        return values;
+    }
+
+    private String decode(List<UrlLevelEntity> levels, String originalTopLevelDomain, String encodedUrlPrefix, EncodingDictionary dictionary, int maxPathSegments) {
         // Need at least protocol and domain to proceed
         if (levels.size() < 2 + (encodedUrlPrefix.isEmpty() ? 0 : 1)) {
             throw new IllegalArgumentException("Invalid encoded URL format");
@@ -343,17 +321,14 @@ public class UrlProcessor {
             // Add path separator
             originalUrl.append("/");
             
-            if (segmentIndex >= decodedData.size()) {
+            if (segmentIndex >= maxPathSegments) {
                 throw new IllegalArgumentException("Either Inconsistent state or invalid encoded url");
             }
 
-            // We need to look up the original value for each segment
-            Map<String, String> currentDecodedMap = decodedData.get(segmentIndex);
-                
             // the exact type of the segment path does not matter (since the encoding is not meant to be human-readable)
             String segmentPath = currentLevel.levelName() != null ? currentLevel.levelName() : currentLevel.pathVariable();
 
-            originalUrl.append(currentDecodedMap.getOrDefault(segmentPath, segmentPath));
+            appendDecodedValue(originalUrl, dictionary, segmentIndex, segmentPath);
             
             // Handle query parameters if present
             if (currentLevel.queryParamNames() != null && !currentLevel.queryParamNames().isEmpty()) {
@@ -368,11 +343,11 @@ public class UrlProcessor {
                         originalUrl.append("&");
                     }
 
-                    originalUrl.append(currentDecodedMap.getOrDefault(encodedParamName, encodedParamName));
+                    appendDecodedValue(originalUrl, dictionary, segmentIndex, encodedParamName);
                     
                     originalUrl.append("="); 
 
-                    originalUrl.append(currentDecodedMap.getOrDefault(encodedParamValue, encodedParamValue));
+                    appendDecodedValue(originalUrl, dictionary, segmentIndex, encodedParamValue);
 
                 }
             }
@@ -381,6 +356,18 @@ public class UrlProcessor {
         return originalUrl.toString();
     }
 
+    private void appendDecodedValue(StringBuilder originalUrl, EncodingDictionary dictionary, int level, String encodedValue) {
+        // a marked value is never a code
+        if (dictionary.getIdAlphabet().marksRawValues() && !encodedValue.isEmpty() && encodedValue.charAt(0) == RAW_VALUE_MARKER) {
+            originalUrl.append(encodedValue, 1, encodedValue.length());
+            return;
+        }
+
+        // the values that were not encoded are kept as they are
+        String value = dictionary.decode(level, encodedValue);
+        originalUrl.append(value == null ? encodedValue : value);
+    }
+
     public String buildUrlFromUrlLevels(List<UrlLevelEntity> urlLevels) {
         if (urlLevels.size() < 2) {
             throw new IllegalArgumentException("Invalid URL structure: missing protocol or domain");
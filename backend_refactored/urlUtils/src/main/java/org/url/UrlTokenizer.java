@@ -0,0 +1,236 @@
+package org.url;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+
+/**
+ * A cursor-based tokenizer that walks a url a single time and yields its levels as {@link UrlLevelEntity} objects.
+ * <p>
+ * The first entity is the protocol (e.g. "https://"), the second one is the top level domain and the remaining ones are
+ * the path segments. The tokenizer works directly on the offsets of the passed {@link CharSequence}: no intermediate
+ * arrays, lists or regular expressions are created; only the strings that end up in the entities are materialized.
+ * <p>
+ * The tokenizer reproduces the semantics of the former {@code String.split} based implementation:
+ * trailing empty segments are ignored, inner empty segments are kept as (empty) path variables and
+ * only the first query string of a segment is considered.
+ */
+public class UrlTokenizer implements Iterator<UrlLevelEntity> {
+
+    private static final String PROTOCOL_DELIMITER = "://";
+
+    private final CharSequence url;
+
+    // the end of the url once the trailing '/' characters are discarded
+    private final int end;
+
+    // the position of the cursor: the start of the next path segment
+    private int cursor;
+
+    // 0: protocol, 1: top level domain, 2: path segments
+    private int state;
+
+    public UrlTokenizer(CharSequence url) {
+        this.url = url;
+
+        int protocolEnd = indexOf(url, PROTOCOL_DELIMITER, 0, url.length());
+
+        if (protocolEnd == -1) {
+            throw new RuntimeException("The passed url does not contain the protocol delimiter");
+        }
+
+        this.cursor = protocolEnd + PROTOCOL_DELIMITER.length();
+
+        int e = url.length();
+        while (e > this.cursor && url.charAt(e - 1) == '/') {
+            e--;
+        }
+
+        // a url such as "https:///" has no top level domain at all
+        if (e == this.cursor && e != url.length()) {
+            throw new IllegalArgumentException("The passed url does not contain a top level domain");
+        }
+
+        this.end = e;
+        this.state = 0;
+    }
+
+    /**
+     * Breaks the url down into a (mutable) list of url levels.
+     */
+    public static List<UrlLevelEntity> tokenize(CharSequence url) {
+        UrlTokenizer tokenizer = new UrlTokenizer(url);
+        List<UrlLevelEntity> levels = new ArrayList<>();
+
+        while (tokenizer.hasNext()) {
+            levels.add(tokenizer.next());
+        }
+
+        return levels;
+    }
+
+    @Override
+    public boolean hasNext() {
+        // the protocol and the top level domain are always present
+        return this.state < 2 || this.cursor < this.end;
+    }
+
+    @Override
+    public UrlLevelEntity next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more url levels");
+        }
+
+        if (this.state == 0) {
+            this.state = 1;
+            // the cursor is placed right after the protocol delimiter
+            return new UrlLevelEntity(this.url.subSequence(0, this.cursor).toString(), null, null, null);
+        }
+
+        int segmentEnd = indexOf(this.url, '/', this.cursor, this.end);
+        if (segmentEnd == -1) {
+            segmentEnd = this.end;
+        }
+
+        UrlLevelEntity entity;
+
+        if (this.state == 1) {
+            this.state = 2;
+            entity = new UrlLevelEntity(this.url.subSequence(this.cursor, segmentEnd).toString(), null, null, null);
+        }
+        else {
+            entity = inspectPathSegment(this.cursor, segmentEnd);
+        }
+
+        // move the cursor past the '/' delimiter
+        this.cursor = segmentEnd + 1;
+        return entity;
+    }
+
+    private UrlLevelEntity inspectPathSegment(int start, int segmentEnd) {
+        // 1. a segment might contain a query string: everything after the first '?' character
+        // 2. the part before the '?' character is a levelName if it is made only of alphabetical, '_' and '-' characters
+        // 3. otherwise, it is a pathVariable
+
+        int queryStart = indexOf(this.url, '?', start, segmentEnd);
+
+        int headEnd = queryStart == -1 ? segmentEnd : queryStart;
+        String head = this.url.subSequence(start, headEnd).toString();
+
+        List<String> qpNames = null;
+        List<String> qpValues = null;
+
+        if (queryStart != -1) {
+            qpNames = new ArrayList<>();
+            qpValues = new ArrayList<>();
+            parseQueryString(queryStart + 1, segmentEnd, qpNames, qpValues);
+        }
+
+        if (isLevelName(this.url, start, headEnd)) {
+            return new UrlLevelEntity(head, null, qpNames, qpValues);
+        }
+
+        return new UrlLevelEntity(null, head, qpNames, qpValues);
+    }
+
+    private void parseQueryString(int start, int segmentEnd, List<String> qpNames, List<String> qpValues) {
+        // only the first query string is considered: anything after a second '?' is ignored
+        int queryEnd = indexOf(this.url, '?', start, segmentEnd);
+        if (queryEnd == -1) {
+            queryEnd = segmentEnd;
+        }
+
+        if (queryEnd == start) {
+            throw new IllegalArgumentException("The query string of the url segment is empty");
+        }
+
+        // trailing '&' characters are ignored
+        while (queryEnd > start && this.url.charAt(queryEnd - 1) == '&') {
+            queryEnd--;
+        }
+
+        int pairStart = start;
+        while (pairStart < queryEnd) {
+            int pairEnd = indexOf(this.url, '&', pairStart, queryEnd);
+            if (pairEnd == -1) {
+                pairEnd = queryEnd;
+            }
+
+            parseQueryPair(pairStart, pairEnd, qpNames, qpValues);
+            pairStart = pairEnd + 1;
+        }
+    }
+
+    private void parseQueryPair(int start, int pairEnd, List<String> qpNames, List<String> qpValues) {
+        int nameEnd = indexOf(this.url, '=', start, pairEnd);
+
+        if (nameEnd == -1) {
+            throw new IllegalArgumentException("The query parameter does not have a value: " + this.url.subSequence(start, pairEnd));
+        }
+
+        // only the part between the first and the second '=' characters is considered as the value
+        int valueEnd = indexOf(this.url, '=', nameEnd + 1, pairEnd);
+        if (valueEnd == -1) {
+            valueEnd = pairEnd;
+        }
+
+        // an empty value is only accepted when it is followed by some (ignored) content
+        if (valueEnd == nameEnd + 1 && indexOfNot(this.url, '=', valueEnd, pairEnd) == -1) {
+            throw new IllegalArgumentException("The query parameter does not have a value: " + this.url.subSequence(start, pairEnd));
+        }
+
+        qpNames.add(this.url.subSequence(start, nameEnd).toString());
+        qpValues.add(this.url.subSequence(nameEnd + 1, valueEnd).toString());
+    }
+
+    ////////////////////////////////////// CharSequence helpers //////////////////////////////////////
+
+    static boolean isLevelName(CharSequence s, int start, int end) {
+        if (start >= end) {
+            return false;
+        }
+
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '-';
+            if (!valid) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence s, char c, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOfNot(CharSequence s, char c, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (s.charAt(i) != c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(CharSequence s, String target, int from, int end) {
+        int last = end - target.length();
+        for (int i = from; i <= last; i++) {
+            int j = 0;
+            while (j < target.length() && s.charAt(i + j) == target.charAt(j)) {
+                j++;
+            }
+            if (j == target.length()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
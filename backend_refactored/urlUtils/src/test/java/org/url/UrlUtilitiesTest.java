@@ -5,10 +5,23 @@ package org.url;
 
 import org.junit.jupiter.api.Test;
 import org.utils.CustomGenerator;
+import org.utils.IdAlphabet;
 
 import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -985,4 +998,395 @@ class UrlUtilitiesTest {
                 "The URL built from breakdown of original URL should match the original URL");
         }
     }
+
+
+    @Test
+    void testEncodeUrlLevelsMatchesEncodeString() {
+        List<Map<String, String>> encodedFromString = new ArrayList<>();
+        List<Map<String, String>> decodedFromString = new ArrayList<>();
+        List<Map<String, String>> encodedFromLevels = new ArrayList<>();
+        List<Map<String, String>> decodedFromLevels = new ArrayList<>();
+
+        for (String url : getTestUrls()) {
+            String fromString = processor.encode(url, "", "sh.rt", encodedFromString, decodedFromString, 8, 6);
+            String fromLevels = processor.encode(processor.breakdown(url), "", "sh.rt", encodedFromLevels, decodedFromLevels, 8, 6);
+            assertEquals(fromString, fromLevels);
+        }
+
+        assertEquals(encodedFromString, encodedFromLevels);
+        assertEquals(decodedFromString, decodedFromLevels);
+
+        // replacing the top level domain in the url levels is the same as encoding the url with the new domain
+        List<UrlLevelEntity> levels = processor.breakdown("https://www.old-domain.com/users/1234567890?tab=repositories");
+        levels.set(1, new UrlLevelEntity("www.new-domain.com", null, null, null));
+
+        String encoded = processor.encode(levels, "", "sh.rt", encodedFromLevels, decodedFromLevels, 8, 6);
+        assertEquals("https://www.new-domain.com/users/1234567890?tab=repositories",
+                processor.decode(encoded, "www.new-domain.com", "", decodedFromLevels));
+    }
+
+    @Test
+    void testEncodeDecodeWithIdAlphabets() {
+        for (IdAlphabet alphabet : IdAlphabet.values()) {
+            List<Map<String, String>> encodedData = new ArrayList<>();
+            List<Map<String, String>> decodedData = new ArrayList<>();
+
+            // enough distinct values in the same level to exhaust the single character ids of every alphabet
+            for (int i = 0; i < 200; i++) {
+                String url = "https://www.example.com/users/" + (1000000000L + i);
+                String encoded = processor.encode(processor.breakdown(url), "", "sh.rt", encodedData, decodedData, 8, 6, alphabet);
+                assertEquals(url, processor.decode(encoded, "www.example.com", "", decodedData, alphabet));
+            }
+
+            // the ids of each level are the first ids of the alphabet
+            Map<String, String> variables = decodedData.get(1);
+            for (int i = 0; i < variables.size(); i++) {
+                assertTrue(variables.containsKey(alphabet.generateId(i)));
+            }
+
+            // 200 values need 2 characters in every alphabet, but only the base 26 one needs 2 characters for 62 values
+            assertEquals(alphabet == IdAlphabet.BASE_26, encodedData.get(1).get("1000000061").length() > 1);
+        }
+
+        // the default alphabet is the base 26 one
+        List<Map<String, String>> defaultEncoded = new ArrayList<>();
+        List<Map<String, String>> defaultDecoded = new ArrayList<>();
+        List<Map<String, String>> base26Encoded = new ArrayList<>();
+        List<Map<String, String>> base26Decoded = new ArrayList<>();
+        for (String url : getTestUrls()) {
+            assertEquals(processor.encode(processor.breakdown(url), "", "sh.rt", defaultEncoded, defaultDecoded, 8, 6),
+                    processor.encode(processor.breakdown(url), "", "sh.rt", base26Encoded, base26Decoded, 8, 6, IdAlphabet.BASE_26));
+        }
+    }
+
+    @Test
+    void testShortValuesAreNotDecodedAsCodes() {
+        List<Map<String, String>> encodedData = new ArrayList<>();
+        List<Map<String, String>> decodedData = new ArrayList<>();
+
+        // enough codes in the level to use more than the single character ids
+        for (int i = 0; i < 60; i++) {
+            String url = "https://www.example.com/users/" + (1000000000L + i);
+            processor.encode(processor.breakdown(url), "", "sh.rt", encodedData, decodedData, 8, 6);
+        }
+
+        // the short values are kept as they are: with the default alphabet they are never mistaken for a code
+        for (String value : List.of("5", "42", "AB", "X1")) {
+            String url = "https://www.example.com/users/" + value;
+            String encoded = processor.encode(processor.breakdown(url), "", "sh.rt", encodedData, decodedData, 8, 6);
+            assertEquals("https://sh.rt/users/" + value, encoded);
+            assertEquals(url, processor.decode(encoded, "www.example.com", "", decodedData));
+        }
+    }
+
+    /////////////////////// Url tokenizer ///////////////////////
+
+    // the split-based implementation the tokenizer replaced: kept here as a reference for the equivalence tests
+    private UrlLevelEntity splitInspectPathSegment(String urlLevel) {
+        if (urlLevel.contains("?")) {
+            List<String> items = List.of(urlLevel.split("\\?"));
+            List<String> qpNames = new ArrayList<>();
+            List<String> qpValues = new ArrayList<>();
+
+            for (String v : List.of(items.get(1).split("&"))) {
+                List<String> qp = List.of(v.split("="));
+                qpNames.add(qp.getFirst());
+                qpValues.add(qp.get(1));
+            }
+
+            if (items.getFirst().matches("[a-zA-Z_-]+")) {
+                return new UrlLevelEntity(items.getFirst(), null, qpNames, qpValues);
+            }
+            return new UrlLevelEntity(null, items.getFirst(), qpNames, qpValues);
+        }
+
+        if (urlLevel.matches("[a-zA-Z_-]+")) {
+            return new UrlLevelEntity(urlLevel, null, null, null);
+        }
+        return new UrlLevelEntity(null, urlLevel, null, null);
+    }
+
+    private List<UrlLevelEntity> splitBreakdown(String urlString) {
+        int protocolEndIndex = urlString.indexOf("://");
+        String protocol = urlString.substring(0, protocolEndIndex + 3);
+        List<String> levels = List.of(urlString.substring(protocolEndIndex + 3).split("/"));
+
+        List<UrlLevelEntity> entities = new ArrayList<>();
+        entities.add(new UrlLevelEntity(protocol, null, null, null));
+        entities.add(new UrlLevelEntity(levels.getFirst(), null, null, null));
+        levels.subList(1, levels.size()).stream().map(this::splitInspectPathSegment).forEach(entities::add);
+        return entities;
+    }
+
+    @Test
+    void testTokenizerMatchesSplitBreakdown() {
+        List<String> urls = new ArrayList<>(getTestUrls());
+        urls.addAll(List.of(
+                "https://",
+                "https://example.com/",
+                "https://example.com///",
+                "https://example.com//users//42/",
+                "https:///users",
+                "https://example.com/search?q=a?b=c",
+                "https://example.com/search?q==1&p=2=3",
+                "https://example.com/search?=1",
+                "https://example.com/search?q=1&&&",
+                "https://example.com/search?&&",
+                "https://example.com/?q=1",
+                "https://example.com/users/42?sort=desc/profile?tab=repos",
+                "http://192.168.1.1:8080/admin/settings?section=network&debug=true"
+        ));
+
+        for (String url : urls) {
+            assertEquals(splitBreakdown(url), processor.breakdown(url), "The tokenizer does not match the split breakdown for: " + url);
+        }
+    }
+
+    @Test
+    void testTokenizerMalformedQueryString() {
+        List<String> urls = List.of(
+                "https://example.com/search?",
+                "https://example.com/search??q=1",
+                "https://example.com/search?q",
+                "https://example.com/search?q=",
+                "https://example.com/search?q=1&&p",
+                "https://example.com/search?="
+        );
+
+        for (String url : urls) {
+            // the split based implementation fails on these urls as well
+            assertThrows(RuntimeException.class, () -> splitBreakdown(url));
+            assertThrows(IllegalArgumentException.class, () -> processor.breakdown(url), "Should reject the url: " + url);
+        }
+
+        assertThrows(RuntimeException.class, () -> processor.breakdown("example.com/users"));
+    }
+
+    @Test
+    void testTokenizerIsLazy() {
+        UrlTokenizer tokenizer = new UrlTokenizer("https://example.com/users/42?tab=repos");
+
+        assertEquals(new UrlLevelEntity("https://", null, null, null), tokenizer.next());
+        assertEquals(new UrlLevelEntity("example.com", null, null, null), tokenizer.next());
+        assertEquals(new UrlLevelEntity("users", null, null, null), tokenizer.next());
+        assertEquals(new UrlLevelEntity(null, "42", List.of("tab"), List.of("repos")), tokenizer.next());
+        assertFalse(tokenizer.hasNext());
+
+        // the tokenizer works on any CharSequence, not only strings
+        StringBuilder builder = new StringBuilder("http://example.com/a_b-c");
+        assertEquals(new UrlLevelEntity("a_b-c", null, null, null), UrlTokenizer.tokenize(builder).get(2));
+    }
+
+    /////////////////////// Encoding dictionaries ///////////////////////
+
+    // a dictionary assigning the codes from in-memory counters (one per level)
+    private static ConcurrentEncodingDictionary counterDictionary(IdAlphabet idAlphabet) {
+        Map<Integer, AtomicLong> counters = new ConcurrentHashMap<>();
+        return new ConcurrentEncodingDictionary(idAlphabet,
+                (level, value) -> idAlphabet.generateId(counters.computeIfAbsent(level, k -> new AtomicLong()).getAndIncrement()));
+    }
+
+    @Test
+    void testConcurrentDictionaryMatchesMapDictionary() {
+        // on a single thread, the concurrent dictionary assigns the same codes as the map based one
+        List<Map<String, String>> encodedData = new ArrayList<>();
+        List<Map<String, String>> decodedData = new ArrayList<>();
+        ConcurrentEncodingDictionary dictionary = counterDictionary(IdAlphabet.BASE_26);
+
+        for (String url : getTestUrls()) {
+            String fromMaps = processor.encode(processor.breakdown(url), "", "sh.rt", encodedData, decodedData, 8, 6);
+            String fromDictionary = processor.encode(processor.breakdown(url), "", "sh.rt", dictionary, 8, 6);
+            assertEquals(fromMaps, fromDictionary);
+        }
+
+        // the dictionary holds exactly the content of the maps
+        for (int i = 0; i < encodedData.size(); i++) {
+            assertEquals(encodedData.get(i).size(), dictionary.size(i));
+            for (Map.Entry<String, String> entry : encodedData.get(i).entrySet()) {
+                assertEquals(entry.getValue(), dictionary.find(i, entry.getKey()));
+                assertEquals(entry.getKey(), dictionary.decode(i, entry.getValue()));
+            }
+        }
+
+        // a read-only dictionary cannot assign codes
+        ConcurrentEncodingDictionary readOnly = new ConcurrentEncodingDictionary(IdAlphabet.BASE_26);
+        readOnly.put(0, "users", "a");
+        assertEquals("a", readOnly.getOrAssign(0, "users"));
+        assertThrows(IllegalStateException.class, () -> readOnly.getOrAssign(0, "repositories"));
+    }
+
+    @Test
+    void testConcurrentDictionaryAssignsUniqueCodes() throws Exception {
+        int threads = 16;
+        int levels = 4;
+        int valuesPerLevel = 2000;
+
+        ConcurrentEncodingDictionary dictionary = counterDictionary(IdAlphabet.BASE_62);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        // every thread encodes all the values (in a different order): the threads constantly race on the same values
+        List<Future<Map<String, String>>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            results.add(executor.submit(() -> {
+                List<Integer> order = new ArrayList<>();
+                for (int i = 0; i < levels * valuesPerLevel; i++) {
+                    order.add(i);
+                }
+                Collections.shuffle(order, new Random(seed));
+
+                start.await();
+
+                Map<String, String> codes = new HashMap<>();
+                for (int i : order) {
+                    int level = i % levels;
+                    String value = "value_" + (i / levels);
+                    codes.put(level + "/" + value, dictionary.getOrAssign(level, value));
+                }
+                return codes;
+            }));
+        }
+
+        start.countDown();
+
+        List<Map<String, String>> codesPerThread = new ArrayList<>();
+        for (Future<Map<String, String>> result : results) {
+            codesPerThread.add(result.get(60, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        // 1. all the threads saw the same code for each value
+        for (Map<String, String> codes : codesPerThread) {
+            assertEquals(codesPerThread.getFirst(), codes);
+        }
+
+        // 2. no two values of the same level share a code
+        // (the codes assigned to a value by the threads losing the race are dropped: the counters might skip some codes)
+        for (int level = 0; level < levels; level++) {
+            Set<String> levelCodes = new HashSet<>();
+            for (int v = 0; v < valuesPerLevel; v++) {
+                String code = codesPerThread.getFirst().get(level + "/value_" + v);
+                assertTrue(levelCodes.add(code), "duplicate code " + code + " in level " + level);
+                assertEquals("value_" + v, dictionary.decode(level, code));
+            }
+
+            assertEquals(valuesPerLevel, dictionary.size(level));
+        }
+    }
+
+    @Test
+    void testConcurrentEncodeDecode() throws Exception {
+        int threads = 8;
+        ConcurrentEncodingDictionary dictionary = counterDictionary(IdAlphabet.BASE_26);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        // the threads encode overlapping urls of the same company
+        List<Future<Map<String, String>>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * 50;
+            results.add(executor.submit(() -> {
+                Map<String, String> encodedUrls = new HashMap<>();
+                for (int i = 0; i < 500; i++) {
+                    String url = "https://www.example.com/repositories/" + (1000000000L + offset + i) + "?tab=contributors";
+                    encodedUrls.put(url, processor.encode(processor.breakdown(url), "", "sh.rt", dictionary, 8, 6));
+                }
+                return encodedUrls;
+            }));
+        }
+
+        Map<String, String> allEncoded = new HashMap<>();
+        for (Future<Map<String, String>> result : results) {
+            for (Map.Entry<String, String> entry : result.get(60, TimeUnit.SECONDS).entrySet()) {
+                // the same url is always encoded the same way
+                String previous = allEncoded.putIfAbsent(entry.getKey(), entry.getValue());
+                assertTrue(previous == null || previous.equals(entry.getValue()));
+            }
+        }
+        executor.shutdown();
+
+        // the encoded urls are all distinct and decode back to the original ones
+        assertEquals(allEncoded.size(), new HashSet<>(allEncoded.values()).size());
+
+        for (Map.Entry<String, String> entry : allEncoded.entrySet()) {
+            assertEquals(entry.getKey(), processor.decode(processor.breakdown(entry.getValue()), "www.example.com", "", dictionary));
+        }
+    }
+
+    @Test
+    void testDictionaryWithCodeAssigner() {
+        // an assigner standing for a counter shared with other dictionaries (e.g. other application instances)
+        Map<Integer, Integer> sharedCounters = new HashMap<>();
+        List<String> assignedValues = new ArrayList<>();
+
+        ConcurrentEncodingDictionary dictionary = new ConcurrentEncodingDictionary(IdAlphabet.BASE_62, (level, value) -> {
+            assignedValues.add(value);
+            return IdAlphabet.BASE_62.generateId(sharedCounters.merge(level, 1, Integer::sum) + 100);
+        });
+
+        String url = "https://www.example.com/repositories/1234567890?tab=contributors";
+        String encoded = processor.encode(processor.breakdown(url), "", "sh.rt", dictionary, 8, 6);
+        assertEquals(encoded, processor.encode(processor.breakdown(url), "", "sh.rt", dictionary, 8, 6));
+
+        // the assigner is called once per new value: the dictionary caches its codes
+        assertEquals(List.of("repositories", "1234567890", "contributors"), assignedValues);
+
+        // only the values of the encoded url are needed to decode it
+        List<UrlLevelEntity> encodedLevels = processor.breakdown(encoded);
+        List<Set<String>> encodedValues = processor.extractEncodedValues(encodedLevels, "");
+        assertEquals(2, encodedValues.size());
+        assertEquals(Set.of(dictionary.find(0, "repositories")), encodedValues.get(0));
+        // (the value kept as it is is marked: the base 62 codes cover the short values)
+        assertEquals(Set.of(dictionary.find(1, "1234567890"), UrlProcessor.RAW_VALUE_MARKER + "tab", dictionary.find(1, "contributors")),
+                encodedValues.get(1));
+
+        assertEquals(url, processor.decode(encodedLevels, "www.example.com", "", dictionary));
+
+        // the values missing from the dictionary are kept as they are
+        assertEquals("https://www.example.com/unknown/abc?x=y",
+                processor.decode(processor.breakdown("https://sh.rt/unknown/abc?x=y"), "www.example.com", "", dictionary));
+    }
+
+    @Test
+    void testRawValuesMarked() {
+        // enough codes for the short values to be codes of the dense alphabets as well
+        ConcurrentEncodingDictionary dense = counterDictionary(IdAlphabet.BASE_64_URL_SAFE);
+        ConcurrentEncodingDictionary base26 = counterDictionary(IdAlphabet.BASE_26);
+        for (int i = 0; i < 5000; i++) {
+            dense.getOrAssign(1, "value_" + i);
+            base26.getOrAssign(1, "value_" + i);
+        }
+
+        for (String value : List.of("5", "42", "AB", "a-_", "~x")) {
+            String url = "https://www.example.com/users/" + value + "?id=" + value;
+
+            String encoded = processor.encode(processor.breakdown(url), "", "sh.rt", dense, 8, 6);
+            assertEquals("https://sh.rt/~users/~" + value + "?~id=~" + value, encoded);
+            assertEquals(url, processor.decode(processor.breakdown(encoded), "www.example.com", "", dense));
+        }
+
+        // the base 26 urls are not marked: the short values made of other characters are still kept as they are
+        String url = "https://www.example.com/users/42";
+        String encoded = processor.encode(processor.breakdown(url), "", "sh.rt", base26, 8, 6);
+        assertEquals("https://sh.rt/users/42", encoded);
+        assertEquals(url, processor.decode(processor.breakdown(encoded), "www.example.com", "", base26));
+    }
+
+    @Test
+    void testExtractEncodableValues() {
+        List<String> assignedValues = new ArrayList<>();
+        ConcurrentEncodingDictionary dictionary = new ConcurrentEncodingDictionary(IdAlphabet.BASE_62, (level, value) -> {
+            assignedValues.add(value);
+            return IdAlphabet.BASE_62.generateId(assignedValues.size());
+        });
+
+        List<UrlLevelEntity> levels = processor.breakdown("https://www.example.com/repositories/1234567890?tab=contributors&page=12");
+        List<Set<String>> encodableValues = processor.extractEncodableValues(levels, 8, 6);
+
+        // exactly the values the encoding assigns codes to, per level
+        assertEquals(List.of(Set.of("repositories"), Set.of("1234567890", "contributors")), encodableValues);
+
+        processor.encode(levels, "", "sh.rt", dictionary, 8, 6);
+        assertEquals(Set.of("repositories", "1234567890", "contributors"), new HashSet<>(assignedValues));
+    }
 }
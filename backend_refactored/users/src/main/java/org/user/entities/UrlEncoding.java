@@ -1,6 +1,9 @@
 package org.user.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.DocumentReference;
 
@@ -11,7 +14,11 @@ import java.time.LocalDateTime;
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class UrlEncoding {
 
-    
+    // assigned when the encoding is created (not by the database): a bulk write retried after a partial failure
+    // does not save the encoding twice (see UrlEncodingOperations.insertAll)
+    @Id
+    private String id;
+
     @DocumentReference 
     private AppUser user;
 
@@ -24,6 +31,7 @@ public class UrlEncoding {
     private LocalDateTime urlEncodingTime;
 
     public UrlEncoding(AppUser user, String url, String urlEncoded, long urlEncodingCount) {
+        this.id = new ObjectId().toHexString();
         this.user = user;
         this.url = url;
         this.urlEncoded = urlEncoded;
@@ -69,6 +77,11 @@ public class UrlEncoding {
     }
     
     // some useful getters
+    @JsonIgnore
+    public String getId() {
+        return id;
+    }
+
     public AppUser getUser() {
         return user;
     }
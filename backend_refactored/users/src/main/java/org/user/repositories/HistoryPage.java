@@ -0,0 +1,38 @@
+package org.user.repositories;
+
+import org.user.entities.UrlEncoding;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+
+/**
+ * A page of the history of a user (most recent first) and the cursor of the next page (null on the last page).
+ * <p>
+ * The cursor is an opaque token holding the number (urlEncodingCount) of the last encoding of the page: the next page starts
+ * right before it in the (user, urlEncodingCount) index, however deep in the history it is.
+ */
+public record HistoryPage(List<UrlEncoding> entries, String nextCursor) {
+
+    private static final String CURSOR_PREFIX = "before:";
+
+    public static String cursorOf(long urlEncodingCount) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((CURSOR_PREFIX + urlEncodingCount).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // the number the next page starts before
+    public static long countOf(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!decoded.startsWith(CURSOR_PREFIX)) {
+                throw new IllegalArgumentException("Invalid history cursor");
+            }
+            return Long.parseLong(decoded.substring(CURSOR_PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException is an IllegalArgumentException as well
+            throw new IllegalArgumentException("Invalid history cursor", e);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.user.repositories;
+
+import org.user.entities.AppUser;
+import org.user.entities.UrlEncoding;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+
+// the operations on the UrlEncoding documents that cannot be expressed as derived queries (implemented with the MongoTemplate)
+public interface UrlEncodingOperations {
+
+    // inserts the encodings with a single unordered bulk write: the number of inserted encodings. The encodings already saved
+    // (same id) are skipped, so a write retried after a partial failure is harmless
+    long insertAll(Collection<UrlEncoding> urlEncodings);
+
+    // the number of urls encoded by each user since the given time: user email -> count (the users without encodings are left out)
+    Map<String, Long> countEncodingsByUserSince(LocalDateTime time);
+
+    // the encodings of the user numbered in (after, before), most recent first, at most limit of them (no limit if 0).
+    // The stream is read from a database cursor (it must be closed) and only holds the url fields: the user is not loaded
+    Stream<UrlEncoding> streamHistory(AppUser user, long after, long before, int limit);
+
+    // deletes the encodings of each user numbered up to its threshold (user email -> threshold) and made before the given time,
+    // with a single bulk write: the number of deleted encodings
+    long pruneHistory(Map<String, Long> thresholds, LocalDateTime before);
+
+    // a keyset page of the history: the encodings numbered above after, starting at the cursor (the most recent ones if null).
+    // One extra encoding is read to tell whether there is a next page: no count query is needed
+    default HistoryPage findHistoryPage(AppUser user, long after, String cursor, int size) {
+        long before = cursor == null ? Long.MAX_VALUE : HistoryPage.countOf(cursor);
+
+        List<UrlEncoding> entries;
+        try (Stream<UrlEncoding> history = this.streamHistory(user, after, before, size + 1)) {
+            entries = history.toList();
+        }
+
+        if (entries.size() <= size) {
+            return new HistoryPage(entries, null);
+        }
+        entries = entries.subList(0, size);
+        return new HistoryPage(entries, HistoryPage.cursorOf(entries.getLast().getUrlEncodingCount()));
+    }
+}
@@ -0,0 +1,131 @@
+package org.user.repositories;
+
+import com.mongodb.bulk.BulkWriteError;
+import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.user.entities.AppUser;
+import org.user.entities.UrlEncoding;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+
+// the implementation of the custom repository fragment: Spring Data finds it thanks to the "Impl" suffix
+@SuppressWarnings("unused")
+public class UrlEncodingOperationsImpl implements UrlEncodingOperations {
+
+    public static final String USER_TIME_INDEX_NAME = "user_urlEncodingTime";
+
+    public static final String TIME_INDEX_NAME = "urlEncodingTime";
+
+    public static final String USER_COUNT_INDEX_NAME = "user_urlEncodingCount";
+
+    // the number of documents fetched per round trip by the history cursors
+    private static final int HISTORY_CURSOR_BATCH_SIZE = 500;
+
+    // the error code of a duplicate key
+    private static final int DUPLICATE_KEY_ERROR = 11000;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public UrlEncodingOperationsImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    // the encodings of a user since a time are counted (the daily limit) from the first index, the encodings of all the users
+    // since a time are found with the second one, and the history of a user is read from the third one (a range of the
+    // numbers of the user's encodings: a page deep in the history costs the same as the first one)
+    // (the automatic index creation of Spring Data is disabled by default), ensureIndex does nothing if the index already exists
+    @PostConstruct
+    public void ensureIndexes() {
+        this.mongoTemplate.indexOps(UrlEncoding.class).ensureIndex(new Index()
+                .on("user", Sort.Direction.ASC)
+                .on("urlEncodingTime", Sort.Direction.ASC)
+                .named(USER_TIME_INDEX_NAME));
+
+        this.mongoTemplate.indexOps(UrlEncoding.class).ensureIndex(new Index()
+                .on("urlEncodingTime", Sort.Direction.ASC)
+                .named(TIME_INDEX_NAME));
+
+        this.mongoTemplate.indexOps(UrlEncoding.class).ensureIndex(new Index()
+                .on("user", Sort.Direction.ASC)
+                .on("urlEncodingCount", Sort.Direction.DESC)
+                .named(USER_COUNT_INDEX_NAME));
+    }
+
+    @Override
+    public Map<String, Long> countEncodingsByUserSince(LocalDateTime time) {
+        // the user field holds the id (email) of the referenced user
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("urlEncodingTime").gt(time)),
+                Aggregation.group("user").count().as("count"));
+
+        Map<String, Long> counts = new HashMap<>();
+        for (Document result : this.mongoTemplate.aggregate(aggregation, UrlEncoding.class, Document.class)) {
+            counts.put(result.get("_id").toString(), ((Number) result.get("count")).longValue());
+        }
+        return counts;
+    }
+
+    @Override
+    public Stream<UrlEncoding> streamHistory(AppUser user, long after, long before, int limit) {
+        Query query = new Query(Criteria.where("user").is(user.getEmail()).and("urlEncodingCount").gt(after).lt(before))
+                .with(Sort.by(Sort.Direction.DESC, "urlEncodingCount"))
+                .limit(limit)
+                .cursorBatchSize(HISTORY_CURSOR_BATCH_SIZE);
+        // the user reference would be resolved for each document
+        query.fields().include("url", "urlEncoded", "urlEncodingCount", "urlEncodingTime");
+
+        return this.mongoTemplate.stream(query, UrlEncoding.class);
+    }
+
+    @Override
+    public long insertAll(Collection<UrlEncoding> urlEncodings) {
+        if (urlEncodings.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            return this.mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UrlEncoding.class)
+                    .insert(new ArrayList<>(urlEncodings)).execute().getInsertedCount();
+        }
+        catch (BulkOperationException e) {
+            // the encodings saved by a previous attempt are rejected by the index on the id
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY_ERROR) {
+                    throw e;
+                }
+            }
+            return e.getResult().getInsertedCount();
+        }
+    }
+
+    @Override
+    public long pruneHistory(Map<String, Long> thresholds, LocalDateTime before) {
+        if (thresholds.isEmpty()) {
+            return 0;
+        }
+
+        // each delete is a range of the (user, urlEncodingCount) index
+        BulkOperations bulk = this.mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UrlEncoding.class);
+        thresholds.forEach((email, threshold) -> bulk.remove(new Query(Criteria.where("user").is(email)
+                .and("urlEncodingCount").lte(threshold)
+                .and("urlEncodingTime").lt(before))));
+
+        return bulk.execute().getDeletedCount();
+    }
+}
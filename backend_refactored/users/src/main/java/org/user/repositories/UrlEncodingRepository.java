@@ -11,7 +11,7 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
-public interface UrlEncodingRepository extends MongoRepository<UrlEncoding, String> {
+public interface UrlEncodingRepository extends MongoRepository<UrlEncoding, String>, UrlEncodingOperations {
     @SuppressWarnings("null")
     List<UrlEncoding> findAll();
 
@@ -31,4 +31,7 @@ public interface UrlEncodingRepository extends MongoRepository<UrlEncoding, Stri
 
     List<UrlEncoding> findByUserAndUrlEncodingTimeAfter(AppUser user, LocalDateTime time);
 
+    // served by the (user, urlEncodingTime) index (see UrlEncodingOperationsImpl.ensureIndexes): no document is loaded
+    long countByUserAndUrlEncodingTimeAfter(AppUser user, LocalDateTime time);
+
 }
@@ -0,0 +1,22 @@
+package org.user.repositories;
+
+
+// the operations on the AppUser documents that cannot be expressed as derived queries (implemented with the MongoTemplate)
+public interface UserOperations {
+
+    /**
+     * Increments the url encoding count of the user atomically and returns the new count.
+     * <p>
+     * The AppUser instances might be shared by concurrent requests (e.g. the principal of a cached authentication):
+     * the count is never incremented in memory and saved back.
+     */
+    default long incrementUrlEncodingCount(String email) {
+        return this.incrementUrlEncodingCount(email, 1);
+    }
+
+    // adds the given number of encodings at once (a batch of encodings): returns the new count
+    long incrementUrlEncodingCount(String email, long count);
+
+    // replaces the password hash of the user (the other fields of a shared instance are left untouched)
+    void updatePassword(String email, String passwordHash);
+}
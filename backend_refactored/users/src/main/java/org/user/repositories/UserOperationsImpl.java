@@ -0,0 +1,42 @@
+package org.user.repositories;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.user.entities.AppUser;
+
+
+// the implementation of the custom repository fragment: Spring Data finds it thanks to the "Impl" suffix
+@SuppressWarnings("unused")
+public class UserOperationsImpl implements UserOperations {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public UserOperationsImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public long incrementUrlEncodingCount(String email, long count) {
+        Query query = new Query(Criteria.where("_id").is(email));
+        query.fields().include("urlEncodingCount");
+
+        AppUser user = this.mongoTemplate.findAndModify(query, new Update().inc("urlEncodingCount", count),
+                FindAndModifyOptions.options().returnNew(true), AppUser.class);
+
+        if (user == null) {
+            throw new IllegalStateException("There is no user with the email: " + email);
+        }
+        return user.getUrlEncodingCount();
+    }
+
+    @Override
+    public void updatePassword(String email, String passwordHash) {
+        this.mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(email)),
+                new Update().set("password", passwordHash), AppUser.class);
+    }
+}
@@ -1,15 +1,20 @@
 package org.user.repositories;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 import org.user.entities.AppUser;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface UserRepository extends MongoRepository<AppUser, String> {
+public interface UserRepository extends MongoRepository<AppUser, String>, UserOperations {
     Optional<AppUser> findById(String id);
 
     Optional<AppUser> findByUsername(String username);
 
     Optional<AppUser> findByEmail(String email);
+
+    // the users after the given email (keyset pages over all the users: sort the pageable by email, no count query is run)
+    List<AppUser> findByEmailGreaterThan(String email, Pageable pageable);
 }
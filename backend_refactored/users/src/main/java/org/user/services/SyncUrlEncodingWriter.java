@@ -0,0 +1,28 @@
+package org.user.services;
+
+import org.user.entities.UrlEncoding;
+import org.user.repositories.UrlEncodingRepository;
+
+import java.util.List;
+
+
+// the encodings are saved before the encode request returns
+public class SyncUrlEncodingWriter implements UrlEncodingWriter {
+
+    private final UrlEncodingRepository urlEncodingRepo;
+
+    public SyncUrlEncodingWriter(UrlEncodingRepository urlEncodingRepo) {
+        this.urlEncodingRepo = urlEncodingRepo;
+    }
+
+    @Override
+    public void write(UrlEncoding urlEncoding) {
+        this.urlEncodingRepo.save(urlEncoding);
+    }
+
+    @Override
+    public void writeAll(List<UrlEncoding> urlEncodings) {
+        // a single bulk write
+        this.urlEncodingRepo.insertAll(urlEncodings);
+    }
+}
@@ -0,0 +1,26 @@
+package org.user.services;
+
+import org.user.entities.AppUser;
+import org.user.entities.UrlEncoding;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+
+// writes the history of the encodings (see UrlEncodingWriterConfiguration): right away, or later in batches
+public interface UrlEncodingWriter {
+
+    void write(UrlEncoding urlEncoding);
+
+    void writeAll(List<UrlEncoding> urlEncodings);
+
+    // returns once the encodings written before the call are saved
+    default void flush() {
+    }
+
+    // the number of encodings of the user made after the given time that are written but not saved yet
+    // (e.g. the daily limit adds them to the encodings counted in the database)
+    default long countPending(AppUser user, LocalDateTime after) {
+        return 0;
+    }
+}
@@ -0,0 +1,36 @@
+package org.user.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.user.repositories.UrlEncodingRepository;
+
+import java.time.Duration;
+
+
+// the durability of the history of the encodings ("url-encoding.durability"):
+// - "sync" (default): the encoding is saved before the encode request returns
+// - "batched": the encodings are buffered ("url-encoding.write-behind.buffer-size") and saved with bulk writes every
+//   "url-encoding.write-behind.flush-interval" or every "url-encoding.write-behind.batch-size" encodings, see WriteBehindUrlEncodingWriter
+@Configuration
+@SuppressWarnings("unused")
+public class UrlEncodingWriterConfiguration {
+
+    @Bean
+    public UrlEncodingWriter urlEncodingWriter(UrlEncodingRepository urlEncodingRepo,
+                                               @Value("${url-encoding.durability:sync}") String durability,
+                                               @Value("${url-encoding.write-behind.buffer-size:10000}") int bufferSize,
+                                               @Value("${url-encoding.write-behind.batch-size:500}") int batchSize,
+                                               @Value("${url-encoding.write-behind.flush-interval:PT0.1S}") Duration flushInterval,
+                                               ObjectProvider<MeterRegistry> meterRegistry) {
+        return switch (durability.toLowerCase()) {
+            case "sync" -> new SyncUrlEncodingWriter(urlEncodingRepo);
+            case "batched" -> new WriteBehindUrlEncodingWriter(urlEncodingRepo, bufferSize, batchSize, flushInterval,
+                    meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+            default -> throw new IllegalArgumentException("Unknown url encoding durability: " + durability + " (sync or batched)");
+        };
+    }
+}
@@ -0,0 +1,187 @@
+package org.user.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.user.entities.AppUser;
+import org.user.entities.UrlEncoding;
+import org.user.repositories.UrlEncodingRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * Queues the encodings in a bounded buffer and saves them in the background with bulk writes: the encode requests do not wait
+ * for the history to be written.
+ * <p>
+ * The buffer is flushed every flush interval, and as soon as it holds a batch. When the buffer is full, the request flushes it
+ * itself (the backpressure: the request then waits for the database as a synchronous write would). The buffer is flushed when the
+ * application stops; the encodings still in the buffer are lost if the instance crashes, and an encoding shows in the history
+ * once it is flushed.
+ * <p>
+ * A failed bulk write is retried: the encodings carry their ids, so the ones saved by a partially failed attempt are not saved twice.
+ * A batch still failing after the last attempt is dropped (the buffer must keep room for the new encodings): the dropped encodings
+ * are counted ("url.encodings.dropped") and logged. The encodings waiting in the buffer are reported by {@link #countPending},
+ * so the daily limit counts them before they are saved.
+ */
+public class WriteBehindUrlEncodingWriter implements UrlEncodingWriter, AutoCloseable {
+
+    // the number of attempts of a bulk write before its encodings are dropped
+    private static final int MAX_ATTEMPTS = 3;
+
+    public static final String DROPPED_COUNTER = "url.encodings.dropped";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindUrlEncodingWriter.class);
+
+    private final UrlEncodingRepository urlEncodingRepo;
+
+    private final BlockingQueue<UrlEncoding> buffer;
+
+    private final int batchSize;
+
+    private final ScheduledExecutorService flusher;
+
+    private final Counter droppedCounter;
+
+    // the batch being saved: taken from the buffer, but not saved yet
+    private volatile List<UrlEncoding> inFlight = List.of();
+
+    // whether a flush of a full batch is already submitted
+    private final AtomicBoolean batchFlushPending = new AtomicBoolean();
+
+    private volatile boolean closed;
+
+    public WriteBehindUrlEncodingWriter(UrlEncodingRepository urlEncodingRepo, int bufferSize, int batchSize, Duration flushInterval,
+                                        MeterRegistry meterRegistry) {
+        if (bufferSize < 1 || batchSize < 1 || batchSize > bufferSize) {
+            throw new IllegalArgumentException("The batch size must be positive and at most the buffer size");
+        }
+        this.urlEncodingRepo = urlEncodingRepo;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.batchSize = batchSize;
+
+        this.droppedCounter = Counter.builder(DROPPED_COUNTER)
+                .description("The number of encodings dropped from the history after the failed attempts of their bulk write")
+                .register(meterRegistry);
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "url-encoding-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flush, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void write(UrlEncoding urlEncoding) {
+        while (!this.buffer.offer(urlEncoding)) {
+            this.flush();
+        }
+
+        // the writer is closed: the encodings are saved right away
+        if (this.closed) {
+            this.flush();
+            return;
+        }
+
+        if (this.buffer.size() >= this.batchSize && this.batchFlushPending.compareAndSet(false, true)) {
+            try {
+                this.flusher.execute(() -> {
+                    this.batchFlushPending.set(false);
+                    this.flush();
+                });
+            } catch (RejectedExecutionException e) {
+                // closed meanwhile
+                this.batchFlushPending.set(false);
+                this.flush();
+            }
+        }
+    }
+
+    @Override
+    public void writeAll(List<UrlEncoding> urlEncodings) {
+        for (UrlEncoding urlEncoding : urlEncodings) {
+            this.write(urlEncoding);
+        }
+    }
+
+    // the flushes are serialized: the encodings taken from the buffer by another flush are saved once this one starts
+    @Override
+    public synchronized void flush() {
+        List<UrlEncoding> batch = new ArrayList<>(this.batchSize);
+        while (this.buffer.drainTo(batch, this.batchSize) > 0) {
+            this.inFlight = List.copyOf(batch);
+            this.save(batch);
+            this.inFlight = List.of();
+            batch.clear();
+        }
+    }
+
+    private void save(List<UrlEncoding> batch) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                // the ids are assigned with the encodings: the encodings saved by a failed attempt are skipped by the next one
+                this.urlEncodingRepo.insertAll(batch);
+                return;
+            } catch (RuntimeException e) {
+                // the buffer must keep room for the new encodings: the batch is dropped once the attempts are exhausted
+                // (some of its encodings might have been saved by the failed attempts)
+                if (attempt == MAX_ATTEMPTS) {
+                    this.droppedCounter.increment(batch.size());
+                    LOGGER.error("Dropped a batch of {} url encodings after {} failed attempts", batch.size(), MAX_ATTEMPTS, e);
+                    return;
+                }
+            }
+        }
+    }
+
+    // the encodings in the buffer and in the batch being saved (an encoding moving from one to the other might be missed)
+    @Override
+    public long countPending(AppUser user, LocalDateTime after) {
+        long pending = 0;
+        for (UrlEncoding urlEncoding : this.buffer) {
+            if (isPendingOf(urlEncoding, user, after)) {
+                pending++;
+            }
+        }
+        for (UrlEncoding urlEncoding : this.inFlight) {
+            if (isPendingOf(urlEncoding, user, after)) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    private static boolean isPendingOf(UrlEncoding urlEncoding, AppUser user, LocalDateTime after) {
+        return urlEncoding.getUser() != null && urlEncoding.getUser().getEmail().equals(user.getEmail())
+                && urlEncoding.getUrlEncodingTime().isAfter(after);
+    }
+
+    public int buffered() {
+        return this.buffer.size();
+    }
+
+    // called when the application stops: the buffer is flushed
+    @Override
+    public void close() {
+        this.closed = true;
+        this.flusher.shutdown();
+        try {
+            this.flusher.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.flush();
+    }
+}
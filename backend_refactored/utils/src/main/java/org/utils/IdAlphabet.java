@@ -0,0 +1,142 @@
+package org.utils;
+
+import java.util.Arrays;
+
+/**
+ * The alphabets used to generate the (short) ids of the url dictionaries.
+ * <p>
+ * The id of a number is its decomposition in the base of the alphabet: the first character stands for 0,
+ * the second one for 1 and so on. All the alphabets start with the lowercase letters,
+ * so the first 26 ids are the same regardless of the alphabet.
+ * <p>
+ * The ids generated by two different alphabets collide (e.g. "ba" is 26 in base 26 and 62 in base 62),
+ * so a given dictionary must always be extended with the alphabet it was created with.
+ * <p>
+ * The values too short to be encoded are kept as they are in the encoded urls. With the base 26 alphabet, they are told from the ids
+ * by their characters (in practice: an id of the dictionary is decoded, anything else is kept). The denser alphabets cover the digits
+ * and the uppercase letters too (e.g. "5" is an id in base 62), so the encoded urls mark the values kept as they are
+ * (see {@link #marksRawValues()}).
+ */
+public enum IdAlphabet {
+    // the original alphabet: used by the dictionaries created before the alphabet was configurable
+    BASE_26("abcdefghijklmnopqrstuvwxyz"),
+
+    BASE_62("abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789"),
+
+    // the characters of the url-safe base 64 alphabet (RFC 4648): none of them has a special meaning in a url path
+    BASE_64_URL_SAFE("abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-_");
+
+    // the ids of the first orders are computed once and served from memory: the cache holds at most that many ids
+    private static final int MAX_CACHED_IDS = 1 << 15;
+
+    private final char[] chars;
+
+    private final int base;
+
+    // the value of each (ascii) character in the alphabet, -1 for the characters outside the alphabet
+    private final int[] digits;
+
+    // no id is longer than this: base^maxIdLength > Long.MAX_VALUE
+    private final int maxIdLength;
+
+    // all the ids of at most n characters, where base^n is the largest power not exceeding MAX_CACHED_IDS
+    private final int cachedIdsCount;
+
+    // built the first time an id is generated with the alphabet
+    private volatile String[] cachedIds;
+
+    IdAlphabet(String characters) {
+        this.chars = characters.toCharArray();
+        this.base = this.chars.length;
+
+        this.digits = new int[128];
+        Arrays.fill(this.digits, -1);
+        for (int i = 0; i < this.base; i++) {
+            this.digits[this.chars[i]] = i;
+        }
+
+        int length = 0;
+        long power = 1;
+        while (power <= Long.MAX_VALUE / this.base) {
+            power *= this.base;
+            length++;
+        }
+        this.maxIdLength = length + 1;
+
+        int count = this.base;
+        while ((long) count * this.base <= MAX_CACHED_IDS) {
+            count *= this.base;
+        }
+        this.cachedIdsCount = count;
+    }
+
+    // whether the encoded urls mark the values kept as they are: the base 26 dictionaries predate the marking
+    public boolean marksRawValues() {
+        return this != BASE_26;
+    }
+
+    public int getBase() {
+        return base;
+    }
+
+    public int getCachedIdsCount() {
+        return cachedIdsCount;
+    }
+
+    public String generateId(long order) {
+        if (order < 0) {
+            throw new IllegalArgumentException("The order of an id cannot be negative: " + order);
+        }
+
+        if (order < this.cachedIdsCount) {
+            return getCachedIds()[(int) order];
+        }
+
+        return encodeId(order);
+    }
+
+    public long orderFromId(String id) {
+        long number = 0;
+
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            int digit = c < this.digits.length ? this.digits[c] : -1;
+
+            if (digit == -1) {
+                throw new IllegalArgumentException("The id contains a character outside of the " + this + " alphabet: " + c);
+            }
+
+            number = number * this.base + digit;
+        }
+
+        return number;
+    }
+
+    private String[] getCachedIds() {
+        String[] ids = this.cachedIds;
+
+        if (ids == null) {
+            // two threads might build the cache concurrently: both build the same ids, so there is no harm in that
+            ids = new String[this.cachedIdsCount];
+            for (int i = 0; i < this.cachedIdsCount; i++) {
+                ids[i] = encodeId(i);
+            }
+            this.cachedIds = ids;
+        }
+
+        return ids;
+    }
+
+    private String encodeId(long order) {
+        // the digits are written from the least significant one, starting from the end of the buffer
+        char[] buffer = new char[this.maxIdLength];
+        int position = this.maxIdLength;
+
+        do {
+            buffer[--position] = this.chars[(int) (order % this.base)];
+            order = order / this.base;
+        } while (order > 0);
+
+        return new String(buffer, position, this.maxIdLength - position);
+    }
+}
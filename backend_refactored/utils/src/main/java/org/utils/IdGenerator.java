@@ -0,0 +1,14 @@
+package org.utils;
+
+
+/**
+ * Generates the ids of the new documents.
+ * <p>
+ * The ids are unique without checking the database: there is no need to probe for an existing id before an insert.
+ * The implementations generate time-ordered ids: the ids of the new documents are appended at the end of the _id index
+ * instead of being spread across it (as the random UUIDs are).
+ */
+public interface IdGenerator {
+
+    String nextId();
+}
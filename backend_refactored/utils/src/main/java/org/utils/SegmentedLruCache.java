@@ -0,0 +1,389 @@
+package org.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * A bounded, size-aware, thread-safe cache with a segmented LRU eviction policy.
+ * <p>
+ * The capacity is a total weight (e.g. a number of entries of the cached values) rather than a number of values.
+ * The cache is split into two segments:
+ * <ul>
+ *     <li>the probation segment receives the new values,</li>
+ *     <li>the protected segment receives the values of the probation segment that are read again.</li>
+ * </ul>
+ * The values overflowing the protected segment go back to the probation segment, and the values overflowing the probation
+ * segment are evicted: a value read only once (e.g. a scan over many keys) never evicts the values that are read repeatedly.
+ * <p>
+ * The reads never lock: the values are served from a {@link ConcurrentHashMap} and a read only marks the value as referenced.
+ * The segments are reordered lazily, when a write needs room: a referenced value gets promoted (or a second chance)
+ * instead of being demoted or evicted. Only the writes (put, update, invalidate) take the lock of the eviction policy.
+ * A value changed in place can be weighed again without waiting for the lock (see {@link #reweigh}).
+ * <p>
+ * The hits, the misses and the evictions are counted, see {@link #stats()}.
+ */
+public class SegmentedLruCache<K, V> {
+
+    // the share of the capacity kept for the values read more than once
+    private static final double PROTECTED_RATIO = 0.8;
+
+    public record Stats(long hits, long misses, long evictions, long size, long weight) {
+        public double hitRate() {
+            long requests = this.hits + this.misses;
+            return requests == 0 ? 0 : (double) this.hits / requests;
+        }
+    }
+
+    private static final class Node<V> {
+        private final V value;
+        // guarded by the policy lock
+        private long weight;
+        private boolean protectedSegment;
+        // set by the reads (without lock), cleared by the policy
+        private volatile boolean referenced;
+        // set by reweigh (without lock), cleared by the policy once the value is weighed again
+        private volatile boolean stale;
+
+        private Node(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    private final long maxWeight;
+
+    private final long maxProtectedWeight;
+
+    private final ToLongFunction<V> weigher;
+
+    private final ConcurrentHashMap<K, Node<V>> data;
+
+    // the segments of the policy, guarded by the policy lock: the first key is the least recently used one
+    private final LinkedHashMap<K, Node<V>> probation;
+
+    private final LinkedHashMap<K, Node<V>> protectedSegment;
+
+    private final ReentrantLock policyLock;
+
+    // the keys of the values to weigh again, drained by the holder of the policy lock
+    private final ConcurrentLinkedQueue<K> staleKeys;
+
+    private long probationWeight;
+
+    private long protectedWeight;
+
+    // the token of the load in progress for each key: a write of the key in the meantime cancels the caching of the loaded value
+    private final ConcurrentHashMap<K, Object> loadTokens;
+
+    private final LongAdder hits;
+
+    private final LongAdder misses;
+
+    private final LongAdder evictions;
+
+    public SegmentedLruCache(long maxWeight, ToLongFunction<V> weigher) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("The maximum weight of the cache must be positive: " + maxWeight);
+        }
+
+        this.maxWeight = maxWeight;
+        this.maxProtectedWeight = (long) (maxWeight * PROTECTED_RATIO);
+        this.weigher = weigher;
+        this.data = new ConcurrentHashMap<>();
+        this.probation = new LinkedHashMap<>();
+        this.protectedSegment = new LinkedHashMap<>();
+        this.policyLock = new ReentrantLock();
+        this.staleKeys = new ConcurrentLinkedQueue<>();
+        this.loadTokens = new ConcurrentHashMap<>();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    /**
+     * Returns the cached value of the key, or null (counted as a miss) if there is none.
+     */
+    public V get(K key) {
+        Node<V> node = this.data.get(key);
+
+        if (node == null) {
+            this.misses.increment();
+            return null;
+        }
+
+        node.referenced = true;
+        this.hits.increment();
+        return node.value;
+    }
+
+    /**
+     * Returns the cached value of the key, or loads and caches it on a miss.
+     * <p>
+     * The loader runs outside any lock, so a slow load never blocks the other keys. If the key is written while the value loads
+     * (an update or an invalidation), the loaded value might be outdated: it is returned but not cached.
+     * If two threads load the same key, the first value cached is returned to both.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+
+        Object token = new Object();
+        this.loadTokens.put(key, token);
+
+        try {
+            value = loader.apply(key);
+        }
+        catch (RuntimeException e) {
+            this.loadTokens.remove(key, token);
+            throw e;
+        }
+
+        if (value == null) {
+            this.loadTokens.remove(key, token);
+            return null;
+        }
+
+        this.policyLock.lock();
+        try {
+            Node<V> cached = this.data.get(key);
+            if (cached != null) {
+                this.loadTokens.remove(key, token);
+                return cached.value;
+            }
+
+            if (this.loadTokens.remove(key, token)) {
+                insert(key, value);
+            }
+        } finally {
+            this.policyLock.unlock();
+        }
+
+        return value;
+    }
+
+    /**
+     * Caches the value in the probation segment. A value heavier than the whole cache is not cached.
+     */
+    public void put(K key, V value) {
+        this.policyLock.lock();
+        try {
+            this.loadTokens.remove(key);
+            removeNode(key);
+            insert(key, value);
+        } finally {
+            this.policyLock.unlock();
+        }
+    }
+
+    /**
+     * Applies the action to the cached value of the key (if any) and weighs the value again.
+     * The loads of the key in progress are not cached: they might miss the changes of the action.
+     */
+    public void update(K key, Consumer<? super V> action) {
+        this.policyLock.lock();
+        try {
+            this.loadTokens.remove(key);
+
+            Node<V> node = this.data.get(key);
+            if (node == null) {
+                return;
+            }
+
+            action.accept(node.value);
+            weighAgain(key, node);
+            evict();
+        } finally {
+            this.policyLock.unlock();
+        }
+    }
+
+    /**
+     * Weighs again the cached value of the key (if any), once it was changed in place by its owner (e.g. a thread-safe value).
+     * <p>
+     * Unlike {@link #update}, the caller never waits for the lock of the eviction policy: if another thread holds it, the value
+     * is weighed by the next write of the cache. The loads of the key in progress are still cached.
+     */
+    public void reweigh(K key) {
+        Node<V> node = this.data.get(key);
+        if (node == null) {
+            return;
+        }
+
+        if (!node.stale) {
+            node.stale = true;
+            this.staleKeys.add(key);
+        }
+
+        if (this.policyLock.tryLock()) {
+            try {
+                evict();
+            } finally {
+                this.policyLock.unlock();
+            }
+        }
+    }
+
+    public void invalidate(K key) {
+        this.policyLock.lock();
+        try {
+            this.loadTokens.remove(key);
+            removeNode(key);
+        } finally {
+            this.policyLock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        this.policyLock.lock();
+        try {
+            this.loadTokens.clear();
+            this.staleKeys.clear();
+            this.data.clear();
+            this.probation.clear();
+            this.protectedSegment.clear();
+            this.probationWeight = 0;
+            this.protectedWeight = 0;
+        } finally {
+            this.policyLock.unlock();
+        }
+    }
+
+    public Stats stats() {
+        long weight;
+        this.policyLock.lock();
+        try {
+            weight = this.probationWeight + this.protectedWeight;
+        } finally {
+            this.policyLock.unlock();
+        }
+        return new Stats(this.hits.sum(), this.misses.sum(), this.evictions.sum(), this.data.size(), weight);
+    }
+
+    // must hold the policy lock
+    private void insert(K key, V value) {
+        long weight = this.weigher.applyAsLong(value);
+        if (weight > this.maxWeight) {
+            return;
+        }
+
+        Node<V> node = new Node<>(value, weight);
+        this.data.put(key, node);
+        this.probation.put(key, node);
+        this.probationWeight += weight;
+        evict();
+    }
+
+    // must hold the policy lock
+    private void removeNode(K key) {
+        Node<V> node = this.data.remove(key);
+        if (node == null) {
+            return;
+        }
+
+        if (node.protectedSegment) {
+            this.protectedSegment.remove(key);
+            this.protectedWeight -= node.weight;
+        } else {
+            this.probation.remove(key);
+            this.probationWeight -= node.weight;
+        }
+    }
+
+    // must hold the policy lock
+    private void weighAgain(K key, Node<V> node) {
+        long weight = this.weigher.applyAsLong(node.value);
+        if (node.protectedSegment) {
+            this.protectedWeight += weight - node.weight;
+        } else {
+            this.probationWeight += weight - node.weight;
+        }
+        node.weight = weight;
+
+        if (weight > this.maxWeight) {
+            removeNode(key);
+        }
+    }
+
+    // must hold the policy lock: weighs again the values marked by reweigh
+    private void drainStaleKeys() {
+        K key;
+        while ((key = this.staleKeys.poll()) != null) {
+            Node<V> node = this.data.get(key);
+            // the flag is cleared first: a change made while the value is weighed marks it again
+            if (node != null && node.stale) {
+                node.stale = false;
+                weighAgain(key, node);
+            }
+        }
+    }
+
+    // must hold the policy lock
+    private void evict() {
+        drainStaleKeys();
+
+        // the reads keep marking the values concurrently: the number of promotions is bounded so that the eviction always ends
+        long promotions = this.data.size();
+
+        while (this.probationWeight + this.protectedWeight > this.maxWeight) {
+            Iterator<Map.Entry<K, Node<V>>> it = this.probation.entrySet().iterator();
+
+            if (!it.hasNext()) {
+                // only protected values left: the least recently used ones go back to the probation segment
+                demoteProtected(0);
+                continue;
+            }
+
+            Map.Entry<K, Node<V>> head = it.next();
+            Node<V> node = head.getValue();
+            it.remove();
+            this.probationWeight -= node.weight;
+
+            if (node.referenced && promotions-- > 0) {
+                // read again since it was cached: promoted instead of evicted
+                node.referenced = false;
+                node.protectedSegment = true;
+                this.protectedSegment.put(head.getKey(), node);
+                this.protectedWeight += node.weight;
+                demoteProtected(this.maxProtectedWeight);
+            } else {
+                this.data.remove(head.getKey(), node);
+                this.evictions.increment();
+            }
+        }
+    }
+
+    // moves the least recently used values of the protected segment to the probation segment, down to the given weight
+    private void demoteProtected(long targetWeight) {
+        Iterator<Map.Entry<K, Node<V>>> it = this.protectedSegment.entrySet().iterator();
+        long secondChances = this.protectedSegment.size();
+
+        while (this.protectedWeight > targetWeight && it.hasNext()) {
+            Map.Entry<K, Node<V>> head = it.next();
+            Node<V> node = head.getValue();
+            it.remove();
+
+            if (node.referenced && targetWeight > 0 && secondChances-- > 0) {
+                // read since its promotion: a second chance at the end of the protected segment
+                node.referenced = false;
+                this.protectedSegment.put(head.getKey(), node);
+                it = this.protectedSegment.entrySet().iterator();
+                continue;
+            }
+
+            this.protectedWeight -= node.weight;
+            node.protectedSegment = false;
+            this.probation.put(head.getKey(), node);
+            this.probationWeight += node.weight;
+        }
+    }
+}
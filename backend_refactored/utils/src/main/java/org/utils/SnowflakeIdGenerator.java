@@ -0,0 +1,77 @@
+package org.utils;
+
+import java.time.Instant;
+import java.util.function.LongSupplier;
+
+
+/**
+ * Generates Snowflake ids: 64 bits numbers made of a 41 bits timestamp in milliseconds (since 2025-01-01, which lasts about
+ * 69 years), a 10 bits node id and a 12 bits sequence.
+ * <p>
+ * The ids are unique as long as each application instance has its own node id (0 to 1023). The ids of an instance are strictly
+ * increasing: the sequence orders the ids generated within the same millisecond (4096 of them, after which the timestamp moves one
+ * millisecond forward), and a clock going backwards does not move the timestamp back.
+ * <p>
+ * The ids are written with 19 digits (padded with zeros), so that their string form sorts in the same order as the numbers.
+ */
+public class SnowflakeIdGenerator implements IdGenerator {
+
+    public static final long EPOCH_MILLIS = Instant.parse("2025-01-01T00:00:00Z").toEpochMilli();
+
+    private static final int NODE_ID_BITS = 10;
+
+    private static final int SEQUENCE_BITS = 12;
+
+    public static final int MAX_NODE_ID = (1 << NODE_ID_BITS) - 1;
+
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+
+    private final long nodeId;
+
+    private final LongSupplier clock;
+
+    // the timestamp (since the epoch) and the sequence of the last id
+    private long lastMillis = -1;
+    private long sequence;
+
+    public SnowflakeIdGenerator(int nodeId) {
+        this(nodeId, System::currentTimeMillis);
+    }
+
+    // the clock gives the current time in milliseconds
+    public SnowflakeIdGenerator(int nodeId, LongSupplier clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("The node id must be between 0 and " + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.nodeId = nodeId;
+        this.clock = clock;
+    }
+
+    @Override
+    public String nextId() {
+        return String.format("%019d", this.nextLongId());
+    }
+
+    public synchronized long nextLongId() {
+        long now = this.clock.getAsLong() - EPOCH_MILLIS;
+        if (now > this.lastMillis) {
+            this.lastMillis = now;
+            this.sequence = 0;
+        }
+        else if (this.sequence < MAX_SEQUENCE) {
+            this.sequence++;
+        }
+        else {
+            // the sequence overflows: the timestamp moves forward
+            this.lastMillis++;
+            this.sequence = 0;
+        }
+
+        return (this.lastMillis << (NODE_ID_BITS + SEQUENCE_BITS)) | (this.nodeId << SEQUENCE_BITS) | this.sequence;
+    }
+
+    // the node id of an id generated by any instance
+    public static int nodeIdOf(long id) {
+        return (int) ((id >>> SEQUENCE_BITS) & MAX_NODE_ID);
+    }
+}
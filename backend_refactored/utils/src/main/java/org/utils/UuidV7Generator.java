@@ -0,0 +1,75 @@
+package org.utils;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+
+/**
+ * Generates version 7 UUIDs (RFC 9562): a 48 bits timestamp in milliseconds, a 12 bits counter and 62 random bits.
+ * <p>
+ * The ids of an instance are strictly increasing: the counter orders the ids generated within the same millisecond (it starts
+ * at a random value in the lower half of its range, and moves the timestamp one millisecond forward when it overflows),
+ * and a clock going backwards does not move the timestamp back. The ids of several instances are unique thanks to the
+ * random bits. Their string form sorts in the same order as the ids.
+ * <p>
+ * The random bits only make the ids unique, they are not secrets: they are drawn from a ThreadLocalRandom, which does not
+ * contend on the lock of a shared SecureRandom.
+ */
+public class UuidV7Generator implements IdGenerator {
+
+    private static final int COUNTER_BITS = 12;
+
+    private static final long MAX_COUNTER = (1L << COUNTER_BITS) - 1;
+
+    private final LongSupplier clock;
+
+    // the timestamp and the counter of the last id
+    private long lastMillis = -1;
+    private long counter;
+
+    public UuidV7Generator() {
+        this(System::currentTimeMillis);
+    }
+
+    // the clock gives the current time in milliseconds
+    public UuidV7Generator(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public String nextId() {
+        return this.nextUuid().toString();
+    }
+
+    public UUID nextUuid() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long millis;
+        long sequence;
+
+        synchronized (this) {
+            long now = this.clock.getAsLong();
+            if (now > this.lastMillis) {
+                this.lastMillis = now;
+                this.counter = random.nextLong(MAX_COUNTER / 2 + 1);
+            }
+            else if (this.counter < MAX_COUNTER) {
+                this.counter++;
+            }
+            else {
+                // the counter overflows: the timestamp moves forward
+                this.lastMillis++;
+                this.counter = 0;
+            }
+            millis = this.lastMillis;
+            sequence = this.counter;
+        }
+
+        // timestamp | version (7) | counter
+        long mostSignificantBits = (millis << 16) | (0x7L << 12) | sequence;
+        // variant (0b10) | random bits
+        long leastSignificantBits = (0b10L << 62) | (random.nextLong() >>> 2);
+
+        return new UUID(mostSignificantBits, leastSignificantBits);
+    }
+}
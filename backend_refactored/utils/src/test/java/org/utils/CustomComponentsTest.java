@@ -5,12 +5,15 @@ package org.utils;
 
 import org.junit.jupiter.api.Test;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -54,19 +57,74 @@ class CustomComponentsTest {
     }
 
     @Test
-    // TODO: make the verify_power_26 private and access it through reflection in the tests...
-    void testCustomerGeneratorPowers26() throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
-        for (int i = 1; i <= 6; i++) {
-            long power26 = (long) Math.pow(26, i);
-
-            Method m = customGenerator.getClass().getDeclaredMethod("verify_power_26", long.class);
-            m.setAccessible(true);
-            assertEquals(i , (int) m.invoke(customGenerator, power26));
+    void testCustomerGeneratorPowers26() {
+        long power26 = 1;
+        for (int i = 1; i <= 13; i++) {
+            power26 *= 26;
 
             String id = customGenerator.generateId(power26);
             String realId = "b" + "a".repeat(i);
             assertEquals(realId, id, "it does not work with powers of 26...");
+
+            // the number right before a power of 26 is the largest id with i characters
+            assertEquals("z".repeat(i), customGenerator.generateId(power26 - 1));
+        }
+    }
+
+    // the floating-point implementation the integer-only codec replaced: kept as a reference for the equivalence tests
+    private String legacyGenerateId(long order) {
+        if (order == 0) {
+            return "a";
+        }
+
+        long number = order;
+        int log26 = 0;
+        while (number > 0 && number % 26 == 0) {
+            number /= 26;
+            log26 += 1;
+        }
+
+        int n = number == 1 ? log26 : (int) Math.floor(Math.log(order) / Math.log(26));
+
+        StringBuilder instanceId = new StringBuilder();
+        long power = (long) Math.pow(26, n);
+
+        while (power > 0) {
+            long quotient = order / power;
+            instanceId.append((char) ('a' + quotient));
+            order = order - power * quotient;
+            power = power / 26;
         }
+
+        return instanceId.toString();
+    }
+
+    @Test
+    void testGenerateIdMatchesLegacyImplementation() {
+        // exhaustive check over all the ids of at most 4 characters (the cached ids and beyond)
+        for (long i = 0; i < 26L * 26 * 26 * 26; i++) {
+            assertEquals(legacyGenerateId(i), customGenerator.generateId(i), "the ids differ for the order " + i);
+        }
+
+        // a random sample of larger orders
+        Random random = new Random(26);
+        for (int i = 0; i < 100000; i++) {
+            long order = random.nextLong(0, (long) Math.pow(26, 8));
+            assertEquals(legacyGenerateId(order), customGenerator.generateId(order), "the ids differ for the order " + order);
+        }
+    }
+
+    @Test
+    void testCachedIdsAreShared() {
+        // the short ids are served from the precomputed table: no new string is created for them
+        int cachedIdsCount = IdAlphabet.BASE_26.getCachedIdsCount();
+        for (long i = 0; i < cachedIdsCount; i += 97) {
+            assertSame(customGenerator.generateId(i), customGenerator.generateId(i));
+        }
+
+        assertEquals("baaa", customGenerator.generateId(cachedIdsCount));
+        assertThrows(IllegalArgumentException.class, () -> customGenerator.generateId(-1));
+        assertThrows(IllegalArgumentException.class, () -> customGenerator.orderFromId("aB"));
     }
 
     @Test
@@ -77,6 +135,66 @@ class CustomComponentsTest {
             long numberId = customGenerator.orderFromId(id);
             assertEquals(i, numberId);
         }
+
+        assertEquals(Long.MAX_VALUE, customGenerator.orderFromId(customGenerator.generateId(Long.MAX_VALUE)));
+    }
+
+    @Test
+    void testIdAlphabets() {
+        for (IdAlphabet alphabet : IdAlphabet.values()) {
+            int base = alphabet.getBase();
+
+            // the first ids are the lowercase letters, whatever the alphabet
+            assertEquals("a", customGenerator.generateId(0, alphabet));
+            assertEquals("z", customGenerator.generateId(25, alphabet));
+
+            // the powers of the base are the first ids of each length
+            long power = 1;
+            for (int i = 1; power <= Long.MAX_VALUE / base; i++) {
+                power *= base;
+                assertEquals("b" + "a".repeat(i), customGenerator.generateId(power, alphabet));
+            }
+
+            // round trip over the cached ids and beyond
+            for (long i = 0; i <= 2L * alphabet.getCachedIdsCount(); i++) {
+                String id = customGenerator.generateId(i, alphabet);
+                assertEquals(i, customGenerator.orderFromId(id, alphabet), "the round trip fails for the order " + i);
+            }
+
+            Random random = new Random(base);
+            for (int i = 0; i < 10000; i++) {
+                long order = random.nextLong(0, Long.MAX_VALUE);
+                assertEquals(order, customGenerator.orderFromId(customGenerator.generateId(order, alphabet), alphabet));
+            }
+
+            assertEquals(Long.MAX_VALUE, alphabet.orderFromId(alphabet.generateId(Long.MAX_VALUE)));
+            assertThrows(IllegalArgumentException.class, () -> alphabet.generateId(-1));
+            assertThrows(IllegalArgumentException.class, () -> alphabet.orderFromId("a/"));
+        }
+
+        // the default alphabet is the base 26 one
+        assertEquals(customGenerator.generateId(123456789L, IdAlphabet.BASE_26), customGenerator.generateId(123456789L));
+    }
+
+    @Test
+    void testDenserAlphabetsProduceShorterIds() {
+        // base 26: 2 characters after 26 ids, 3 characters after 676 ids
+        assertEquals(2, customGenerator.generateId(26, IdAlphabet.BASE_26).length());
+        assertEquals(3, customGenerator.generateId(676, IdAlphabet.BASE_26).length());
+
+        // base 62: a single character for the first 62 ids, 2 characters up to 3844 ids
+        assertEquals("Z", customGenerator.generateId(51, IdAlphabet.BASE_62));
+        assertEquals("9", customGenerator.generateId(61, IdAlphabet.BASE_62));
+        assertEquals(2, customGenerator.generateId(3843, IdAlphabet.BASE_62).length());
+
+        // url-safe base 64: '-' and '_' are the last digits
+        assertEquals("_", customGenerator.generateId(63, IdAlphabet.BASE_64_URL_SAFE));
+        assertEquals("ba", customGenerator.generateId(64, IdAlphabet.BASE_64_URL_SAFE));
+
+        // the same id stands for different orders in different alphabets
+        assertEquals(26, IdAlphabet.BASE_26.orderFromId("ba"));
+        assertEquals(62, IdAlphabet.BASE_62.orderFromId("ba"));
+        assertThrows(IllegalArgumentException.class, () -> IdAlphabet.BASE_26.orderFromId("Z"));
     }
 
     @Test
@@ -178,6 +296,153 @@ class CustomComponentsTest {
         }, "Should throw exception when all characters are excluded");
     }
 
+    @Test
+    void testSegmentedLruCacheWeightAndCounters() {
+        // the weight of a value is its length
+        SegmentedLruCache<Integer, String> cache = new SegmentedLruCache<>(10, String::length);
+
+        assertNull(cache.get(1));
+        assertEquals("aaa", cache.get(1, k -> "aaa"));
+        assertEquals("aaa", cache.get(1, k -> fail("a cached value should not be loaded again")));
+
+        SegmentedLruCache.Stats stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(2, stats.misses());
+        assertEquals(1, stats.size());
+        assertEquals(3, stats.weight());
+
+        // a value heavier than the whole cache is not cached
+        cache.put(2, "b".repeat(11));
+        assertNull(cache.get(2));
+
+        // the total weight never exceeds the capacity
+        for (int i = 3; i < 20; i++) {
+            cache.put(i, "cc");
+            assertTrue(cache.stats().weight() <= 10, "The weight of the cache should not exceed its capacity");
+        }
+        assertTrue(cache.stats().evictions() > 0);
+
+        cache.invalidate(1);
+        assertNull(cache.get(1));
+
+        cache.invalidateAll();
+        assertEquals(0, cache.stats().size());
+        assertEquals(0, cache.stats().weight());
+
+        assertThrows(IllegalArgumentException.class, () -> new SegmentedLruCache<Integer, String>(0, String::length));
+    }
+
+    @Test
+    void testSegmentedLruCacheProtectsFrequentValues() {
+        SegmentedLruCache<Integer, Integer> cache = new SegmentedLruCache<>(100, v -> 1);
+
+        // the values read more than once are promoted to the protected segment
+        for (int i = 0; i < 50; i++) {
+            cache.put(i, i);
+            cache.get(i);
+        }
+
+        // a scan over many keys read only once goes through the probation segment
+        for (int i = 1000; i < 2000; i++) {
+            cache.put(i, i);
+        }
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, cache.get(i), "A frequently read value should survive a scan");
+        }
+        assertEquals(100, cache.stats().size());
+        assertEquals(950, cache.stats().evictions());
+    }
+
+    @Test
+    void testSegmentedLruCacheUpdatesAndLoads() {
+        SegmentedLruCache<Integer, List<Integer>> cache = new SegmentedLruCache<>(10, List::size);
+
+        // an update changes the cached value in place and weighs it again
+        cache.put(1, new ArrayList<>(List.of(1, 2)));
+        cache.update(1, list -> list.add(3));
+        assertEquals(List.of(1, 2, 3), cache.get(1));
+        assertEquals(3, cache.stats().weight());
+
+        // nothing to update for a missing key
+        cache.update(2, list -> fail("a missing value should not be updated"));
+        assertNull(cache.get(2));
+
+        // a value written while it loads is returned but not cached: it might miss the write
+        assertEquals(List.of(4), cache.get(3, k -> {
+            cache.invalidate(k);
+            return new ArrayList<>(List.of(4));
+        }));
+        assertNull(cache.get(3));
+
+        // the first value cached wins over a concurrent load
+        assertEquals(List.of(5), cache.get(4, k -> {
+            cache.put(k, new ArrayList<>(List.of(5)));
+            return new ArrayList<>(List.of(6));
+        }));
+        assertEquals(List.of(5), cache.get(4));
+    }
+
+    @Test
+    void testSegmentedLruCacheReweigh() {
+        SegmentedLruCache<Integer, List<Integer>> cache = new SegmentedLruCache<>(10, List::size);
+
+        // a value changed in place by its owner is weighed again
+        List<Integer> list = Collections.synchronizedList(new ArrayList<>(List.of(1, 2)));
+        cache.put(1, list);
+        list.add(3);
+        cache.reweigh(1);
+        assertEquals(3, cache.stats().weight());
+
+        // nothing to weigh for a missing key
+        cache.reweigh(2);
+        assertEquals(1, cache.stats().size());
+
+        // a value grown heavier than the whole cache is dropped
+        for (int i = 4; i <= 11; i++) {
+            list.add(i);
+        }
+        cache.reweigh(1);
+        assertNull(cache.get(1));
+        assertEquals(0, cache.stats().weight());
+    }
+
+    @Test
+    void testSegmentedLruCacheConcurrentAccess() throws Exception {
+        SegmentedLruCache<Integer, Integer> cache = new SegmentedLruCache<>(64, v -> 1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final Random random = new Random(t);
+            results.add(executor.submit(() -> {
+                int checked = 0;
+                for (int i = 0; i < 10000; i++) {
+                    int key = random.nextInt(256);
+                    if (i % 100 == 0) {
+                        cache.invalidate(key);
+                    }
+                    assertEquals(key, cache.get(key, k -> k));
+                    checked++;
+                }
+                return checked;
+            }));
+        }
+
+        int checked = 0;
+        for (Future<Integer> result : results) {
+            // get() rethrows the assertion errors of the threads
+            checked += result.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertEquals(80000, checked);
+
+        SegmentedLruCache.Stats stats = cache.stats();
+        assertEquals(80000, stats.hits() + stats.misses());
+        assertTrue(stats.size() <= 64);
+        assertEquals(stats.size(), stats.weight());
+    }
+
     // Helper method to convert string to list of characters
     private List<Character> stringToCharList(String str) {
         List<Character> chars = new ArrayList<>();
@@ -0,0 +1,130 @@
+package org.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdGeneratorTest {
+
+    // a clock moved by the tests (milliseconds)
+    private final AtomicLong millis = new AtomicLong(SnowflakeIdGenerator.EPOCH_MILLIS + 1_000_000);
+
+    private void assertIncreasing(IdGenerator generator, int count) {
+        String previous = generator.nextId();
+        for (int i = 0; i < count; i++) {
+            String id = generator.nextId();
+            assertTrue(id.compareTo(previous) > 0, "the ids should be increasing: " + previous + " then " + id);
+            previous = id;
+        }
+    }
+
+    private void assertUniqueUnderConcurrency(IdGenerator generator) throws Exception {
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        int threads = 8;
+        int idsPerThread = 10_000;
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < idsPerThread; i++) {
+                        assertTrue(ids.add(generator.nextId()));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        assertEquals(threads * idsPerThread, ids.size());
+    }
+
+    @Test
+    void testUuidV7Format() {
+        UuidV7Generator generator = new UuidV7Generator(millis::get);
+        UUID uuid = generator.nextUuid();
+
+        assertEquals(7, uuid.version());
+        assertEquals(2, uuid.variant());
+        // the timestamp is in the first 48 bits
+        assertEquals(millis.get(), uuid.getMostSignificantBits() >>> 16);
+        assertEquals(uuid, UUID.fromString(uuid.toString()));
+    }
+
+    @Test
+    void testUuidV7Order() {
+        UuidV7Generator generator = new UuidV7Generator(millis::get);
+
+        // within the same millisecond (the counter overflows several times)
+        assertIncreasing(generator, 20_000);
+
+        // across the milliseconds, and with a clock going backwards
+        for (int i = 0; i < 100; i++) {
+            millis.addAndGet(i % 3 == 0 ? -5 : 1);
+            assertIncreasing(generator, 10);
+        }
+    }
+
+    @Test
+    void testUuidV7Uniqueness() throws Exception {
+        assertUniqueUnderConcurrency(new UuidV7Generator());
+
+        // two instances generating ids at the same millisecond
+        UuidV7Generator first = new UuidV7Generator(millis::get);
+        UuidV7Generator second = new UuidV7Generator(millis::get);
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(ids.add(first.nextId()));
+            assertTrue(ids.add(second.nextId()));
+        }
+    }
+
+    @Test
+    void testSnowflakeFormat() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(42, millis::get);
+        long id = generator.nextLongId();
+
+        assertEquals(42, SnowflakeIdGenerator.nodeIdOf(id));
+        assertEquals(millis.get() - SnowflakeIdGenerator.EPOCH_MILLIS, id >>> 22);
+        assertEquals(19, generator.nextId().length());
+
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(-1));
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE_ID + 1));
+    }
+
+    @Test
+    void testSnowflakeOrder() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, millis::get);
+
+        assertIncreasing(generator, 20_000);
+
+        for (int i = 0; i < 100; i++) {
+            millis.addAndGet(i % 3 == 0 ? -5 : 1);
+            assertIncreasing(generator, 10);
+        }
+    }
+
+    @Test
+    void testSnowflakeUniqueness() throws Exception {
+        assertUniqueUnderConcurrency(new SnowflakeIdGenerator(1));
+
+        // the node ids keep the ids of the instances apart
+        SnowflakeIdGenerator first = new SnowflakeIdGenerator(1, millis::get);
+        SnowflakeIdGenerator second = new SnowflakeIdGenerator(2, millis::get);
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(ids.add(first.nextId()));
+            assertTrue(ids.add(second.nextId()));
+        }
+    }
+}